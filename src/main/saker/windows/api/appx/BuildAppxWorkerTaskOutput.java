@@ -0,0 +1,17 @@
+package saker.windows.api.appx;
+
+import saker.build.file.path.SakerPath;
+
+/**
+ * Output of the fused .appx build task.
+ */
+public interface BuildAppxWorkerTaskOutput {
+	/**
+	 * Gets the output path of the .appx archive.
+	 * <p>
+	 * The archive is signed if a certificate was specified for the task.
+	 * 
+	 * @return The absolute execution path.
+	 */
+	public SakerPath getPath();
+}
@@ -0,0 +1,35 @@
+package saker.windows.api.appx;
+
+import java.util.NavigableMap;
+
+import saker.build.file.path.SakerPath;
+
+/**
+ * Output of the multi-architecture .appxbundle build task.
+ */
+public interface BuildBundleAppxWorkerTaskOutput {
+	/**
+	 * Gets the output path of the .appxbundle archive.
+	 * <p>
+	 * The archive is signed if a certificate was specified for the task.
+	 * 
+	 * @return The absolute execution path.
+	 */
+	public SakerPath getPath();
+
+	/**
+	 * Gets the output path of the .appxbundle archive before signing.
+	 * <p>
+	 * If the bundle is not signed, this is the same as {@link #getPath()}.
+	 * 
+	 * @return The absolute execution path.
+	 */
+	public SakerPath getUnsignedPath();
+
+	/**
+	 * Gets the paths of the .appx packages that were created for each processor architecture.
+	 * 
+	 * @return The absolute execution paths of the packages mapped to their processor architectures.
+	 */
+	public NavigableMap<String, SakerPath> getPackages();
+}
@@ -1,34 +1,39 @@
 package saker.windows.impl;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.NavigableMap;
 import java.util.NavigableSet;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
 import saker.build.file.path.SakerPath;
 import saker.build.file.provider.FileEntry;
 import saker.build.file.provider.LocalFileProvider;
+import saker.build.runtime.environment.SakerEnvironment;
 import saker.build.task.TaskContext;
 import saker.build.thirdparty.saker.util.ImmutableUtils;
-import saker.build.thirdparty.saker.util.ObjectUtils;
 import saker.build.thirdparty.saker.util.function.Functionals;
+import saker.build.thirdparty.saker.util.io.ByteArrayRegion;
 import saker.nest.bundle.BundleIdentifier;
-import saker.process.api.CollectingProcessIOConsumer;
-import saker.process.api.SakerProcess;
-import saker.process.api.SakerProcessBuilder;
+import saker.windows.impl.json.JSONPullParser;
+import saker.windows.impl.json.JSONPullParserException;
+import saker.windows.impl.powershell.PowershellCommandException;
+import saker.windows.impl.powershell.PowershellHost;
+import saker.windows.impl.powershell.PowershellHostCacheKey;
+import saker.windows.impl.powershell.PowershellHostProtocol;
+import saker.windows.impl.powershell.PowershellResponse;
+import saker.windows.impl.powershell.PowershellResponseReader;
 import saker.windows.impl.sdk.WindowsAppCertKitSDKReference;
 import saker.windows.impl.sdk.WindowsKitsSDKReference;
 import saker.windows.impl.sdk.WindowsUapSDKReference;
@@ -38,10 +43,248 @@ public class SakerWindowsImplUtils {
 	public static final SakerPath PATH_PROGRAM_FILES = SakerPath.valueOf("c:/Program Files");
 	public static final SakerPath PATH_PROGRAM_FILES_X86 = SakerPath.valueOf("c:/Program Files (x86)");
 
+	/**
+	 * Environment user parameter for the directories in which the SDKs are searched for.
+	 * <p>
+	 * The value is a <code>;</code> separated list of absolute paths. Each of them is expected to contain a
+	 * <code>Windows Kits</code> directory, the same way as the Program Files directories do. The roots are
+	 * prioritized in the specified order.
+	 * <p>
+	 * If not specified, {@link #PATH_PROGRAM_FILES_X86} and {@link #PATH_PROGRAM_FILES} are searched.
+	 */
+	public static final String ENV_PARAMETER_SDK_SEARCH_ROOTS = "saker.windows.sdk.search.roots";
+	/**
+	 * Environment user parameter for the maximum time in milliseconds that the search in a single SDK search root
+	 * may take.
+	 * <p>
+	 * If the search in a root doesn't finish in time, the SDK search fails. The lower priority roots are not used in
+	 * this case, as that could silently select a different SDK.
+	 */
+	public static final String ENV_PARAMETER_SDK_SEARCH_TIMEOUT = "saker.windows.sdk.search.timeout";
+	/**
+	 * Environment user parameter for the command that starts the PowerShell host process.
+	 * <p>
+	 * The value is a <code>;</code> separated list of the command arguments. The process is expected to implement the
+	 * {@link PowershellHostProtocol}.
+	 * <p>
+	 * If not specified, a <code>powershell</code> process is started with the default host script.
+	 */
+	public static final String ENV_PARAMETER_POWERSHELL_HOST_COMMAND = "saker.windows.powershell.host.command";
+	/**
+	 * Environment user parameter for the maximum time in milliseconds that the PowerShell host may take to respond to
+	 * a command.
+	 * <p>
+	 * If the host doesn't respond in time, the command fails and the host process is restarted.
+	 */
+	public static final String ENV_PARAMETER_POWERSHELL_HOST_TIMEOUT = "saker.windows.powershell.host.timeout";
+	/**
+	 * Environment user parameter for the maximum number of PowerShell host processes that execute commands
+	 * concurrently.
+	 * <p>
+	 * The processes are started on demand, when all of the running ones are busy.
+	 */
+	public static final String ENV_PARAMETER_POWERSHELL_HOST_PROCESSES = "saker.windows.powershell.host.processes";
+
+	private static final List<SakerPath> DEFAULT_SDK_SEARCH_ROOTS = ImmutableUtils
+			.asUnmodifiableArrayList(PATH_PROGRAM_FILES_X86, PATH_PROGRAM_FILES);
+	private static final long DEFAULT_SDK_SEARCH_TIMEOUT_MILLIS = 10_000;
+	private static final long DEFAULT_POWERSHELL_HOST_TIMEOUT_MILLIS = 10 * 60 * 1000;
+	private static final int DEFAULT_POWERSHELL_HOST_PROCESSES = 4;
+
 	private SakerWindowsImplUtils() {
 		throw new UnsupportedOperationException();
 	}
 
+	public static List<SakerPath> getSDKSearchRoots(SakerEnvironment environment) {
+		String rootsparam = environment.getUserParameters().get(ENV_PARAMETER_SDK_SEARCH_ROOTS);
+		if (rootsparam == null) {
+			return DEFAULT_SDK_SEARCH_ROOTS;
+		}
+		List<SakerPath> result = new ArrayList<>();
+		for (String r : rootsparam.split(";")) {
+			r = r.trim();
+			if (r.isEmpty()) {
+				continue;
+			}
+			SakerPath rootpath = SakerPath.valueOf(r);
+			if (!rootpath.isAbsolute()) {
+				throw new IllegalArgumentException("SDK search root is not absolute: " + r + " (specified in "
+						+ ENV_PARAMETER_SDK_SEARCH_ROOTS + " environment user parameter)");
+			}
+			if (!result.contains(rootpath)) {
+				result.add(rootpath);
+			}
+		}
+		return result;
+	}
+
+	public static long getSDKSearchTimeoutMillis(SakerEnvironment environment) {
+		String timeoutparam = environment.getUserParameters().get(ENV_PARAMETER_SDK_SEARCH_TIMEOUT);
+		if (timeoutparam == null) {
+			return DEFAULT_SDK_SEARCH_TIMEOUT_MILLIS;
+		}
+		try {
+			long result = Long.parseLong(timeoutparam.trim());
+			if (result <= 0) {
+				throw new IllegalArgumentException("SDK search timeout must be positive: " + timeoutparam);
+			}
+			return result;
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Failed to parse SDK search timeout: " + timeoutparam + " (specified in "
+					+ ENV_PARAMETER_SDK_SEARCH_TIMEOUT + " environment user parameter)", e);
+		}
+	}
+
+	public static List<String> getPowershellHostCommand(SakerEnvironment environment) {
+		String commandparam = environment.getUserParameters().get(ENV_PARAMETER_POWERSHELL_HOST_COMMAND);
+		if (commandparam == null) {
+			return PowershellHost.getDefaultCommand();
+		}
+		List<String> result = new ArrayList<>();
+		for (String arg : commandparam.split(";")) {
+			if (arg.isEmpty()) {
+				continue;
+			}
+			result.add(arg);
+		}
+		if (result.isEmpty()) {
+			throw new IllegalArgumentException("Empty PowerShell host command specified in "
+					+ ENV_PARAMETER_POWERSHELL_HOST_COMMAND + " environment user parameter.");
+		}
+		return result;
+	}
+
+	public static long getPowershellHostTimeoutMillis(SakerEnvironment environment) {
+		String timeoutparam = environment.getUserParameters().get(ENV_PARAMETER_POWERSHELL_HOST_TIMEOUT);
+		if (timeoutparam == null) {
+			return DEFAULT_POWERSHELL_HOST_TIMEOUT_MILLIS;
+		}
+		try {
+			long result = Long.parseLong(timeoutparam.trim());
+			if (result <= 0) {
+				throw new IllegalArgumentException("PowerShell host timeout must be positive: " + timeoutparam);
+			}
+			return result;
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Failed to parse PowerShell host timeout: " + timeoutparam
+					+ " (specified in " + ENV_PARAMETER_POWERSHELL_HOST_TIMEOUT + " environment user parameter)", e);
+		}
+	}
+
+	public static int getPowershellHostMaxProcesses(SakerEnvironment environment) {
+		String processesparam = environment.getUserParameters().get(ENV_PARAMETER_POWERSHELL_HOST_PROCESSES);
+		if (processesparam == null) {
+			return DEFAULT_POWERSHELL_HOST_PROCESSES;
+		}
+		try {
+			int result = Integer.parseInt(processesparam.trim());
+			if (result <= 0) {
+				throw new IllegalArgumentException(
+						"PowerShell host process count must be positive: " + processesparam);
+			}
+			return result;
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Failed to parse PowerShell host process count: " + processesparam
+					+ " (specified in " + ENV_PARAMETER_POWERSHELL_HOST_PROCESSES + " environment user parameter)", e);
+		}
+	}
+
+	public static PowershellHost getPowershellHost(SakerEnvironment environment) throws Exception {
+		return environment.getCachedData(new PowershellHostCacheKey(getPowershellHostCommand(environment),
+				getPowershellHostTimeoutMillis(environment), getPowershellHostMaxProcesses(environment)));
+	}
+
+	/**
+	 * Runs the given command using the PowerShell host of the build environment.
+	 * 
+	 * @param taskcontext
+	 *            The task context.
+	 * @param command
+	 *            The PowerShell command.
+	 * @return The response of the command.
+	 * @throws Exception
+	 *             If the communication with the host failed.
+	 */
+	public static PowershellResponse runPowershellCommand(TaskContext taskcontext, String command) throws Exception {
+		return getPowershellHost(taskcontext.getExecutionContext().getEnvironment()).execute(command);
+	}
+
+	/**
+	 * Converts the argument string to a single quoted PowerShell string literal.
+	 * 
+	 * @param str
+	 *            The string.
+	 * @return The string literal.
+	 */
+	public static String powershellStringLiteral(String str) {
+		return "'" + str.replace("'", "''") + "'";
+	}
+
+	/**
+	 * Searches the SDK search roots of the environment concurrently using the given function.
+	 * <p>
+	 * Each root is searched on its own thread. The results are examined in the order of the roots, and the first
+	 * non-<code>null</code> result is returned.
+	 * <p>
+	 * If a root doesn't finish in the configured time, or its search fails, the method throws instead of examining
+	 * the lower priority roots. Otherwise the selected SDK would depend on the timing of the file system.
+	 * 
+	 * @param environment
+	 *            The build environment.
+	 * @param searcher
+	 *            The function that searches a given root. It returns <code>null</code> if no SDK was found.
+	 * @return The found result or <code>null</code> if none.
+	 * @throws InterruptedException
+	 *             If the current thread was interrupted while waiting for the results.
+	 * @throws IOException
+	 *             If the search of a root didn't finish in time, or failed before a result was found.
+	 */
+	public static <T> T searchSDKRoots(SakerEnvironment environment, Function<? super SakerPath, ? extends T> searcher)
+			throws InterruptedException, IOException {
+		List<SakerPath> roots = getSDKSearchRoots(environment);
+		long timeoutnanos = TimeUnit.MILLISECONDS.toNanos(getSDKSearchTimeoutMillis(environment));
+
+		List<FutureTask<T>> futures = new ArrayList<>(roots.size());
+		for (SakerPath root : roots) {
+			FutureTask<T> ft = new FutureTask<>(() -> searcher.apply(root));
+			Thread thread = new Thread(ft, "saker.windows SDK search: " + root);
+			thread.setDaemon(true);
+			thread.start();
+			futures.add(ft);
+		}
+		//all searches were started at the same time, so a common deadline is the per-root timeout
+		long deadline = System.nanoTime() + timeoutnanos;
+		try {
+			for (int i = 0; i < futures.size(); i++) {
+				T result;
+				try {
+					result = futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new IOException("Failed to search for SDK in: " + roots.get(i), cause);
+				} catch (TimeoutException e) {
+					throw new IOException("SDK search didn't finish in time in: " + roots.get(i)
+							+ " (The timeout can be set using the " + ENV_PARAMETER_SDK_SEARCH_TIMEOUT
+							+ " environment user parameter.)", e);
+				}
+				if (result != null) {
+					return result;
+				}
+			}
+			return null;
+		} finally {
+			for (FutureTask<T> ft : futures) {
+				ft.cancel(true);
+			}
+		}
+	}
+
 	public static Predicate<? super String> getSDKVersionsPredicate(Set<String> versions) {
 		if (versions == null) {
 			return Functionals.alwaysPredicate();
@@ -219,68 +462,78 @@ public class SakerWindowsImplUtils {
 		return null;
 	}
 
-	public static String getAppxManifestIdentityName(InputStream is) throws Exception {
-		DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-		//not namespace aware
-		DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-		Document doc = dBuilder.parse(is);
-		Element rootelem = doc.getDocumentElement();
-		if (!"Package".equals(rootelem.getNodeName())) {
-			throw new IllegalArgumentException(
-					"Invalid AppxManifest.xml, expected Package root element instead of " + rootelem.getNodeName());
-		}
-		NodeList children = rootelem.getChildNodes();
-		for (int i = 0, clen = children.getLength(); i < clen; i++) {
-			Node item = children.item(i);
-			if (item.getNodeType() != Node.ELEMENT_NODE) {
-				continue;
-			}
-			if (!"Identity".equals(item.getNodeName())) {
-				continue;
-			}
-			Element elem = (Element) item;
-			String name = elem.getAttribute("Name");
-			if (ObjectUtils.isNullOrEmpty(name)) {
-				throw new IllegalArgumentException("Name attribute not found in Identity element of AppxManifest.xml.");
-			}
-			return name;
-		}
-		throw new IllegalArgumentException("Identity element not found in AppxManifest.");
-	}
-
-	public static String getAppxPackagePackageFullName(TaskContext taskcontext, String identityName) throws Exception {
-		Object val = runPowershellJSONCommand(taskcontext, "(Get-AppxPackage " + identityName + ").PackageFullName");
-		if (val instanceof String) {
-			return (String) val;
-		}
-		throw new UnsupportedOperationException(
-				"Failed to determine appx package full name. Unexpected output: " + val);
-	}
-
+	/**
+	 * Runs the given command and converts its output to JSON.
+	 * 
+	 * @param taskcontext
+	 *            The task context.
+	 * @param command
+	 *            The PowerShell command.
+	 * @return The parsed JSON value, or <code>null</code> if the command had no output.
+	 * @throws Exception
+	 *             If the command failed, or the output couldn't be parsed.
+	 */
 	public static Object runPowershellJSONCommand(TaskContext taskcontext, String command) throws Exception {
-		SakerProcessBuilder pb = SakerProcessBuilder.create();
-		pb.setCommand(ImmutableUtils.asUnmodifiableArrayList("powershell", "-NoProfile", "-NonInteractive", "-Command",
-				command + " | ConvertTo-Json -Compress"));
-		CollectingProcessIOConsumer outconsumer = new CollectingProcessIOConsumer();
-		CollectingProcessIOConsumer errconsumer = new CollectingProcessIOConsumer();
-		pb.setStandardOutputConsumer(outconsumer);
-		pb.setStandardErrorConsumer(errconsumer);
-		try (SakerProcess proc = pb.start()) {
-			proc.processIO();
-			int ec = proc.waitFor();
-			if (ec != 0) {
-				taskcontext.getStandardOut().write(outconsumer.getByteArrayRegion());
-				taskcontext.getStandardOut().write(errconsumer.getByteArrayRegion());
-				throw new IOException("Failed to run powershell command: " + command + " Exit code: " + ec);
-			}
+		PowershellResponse response = runPowershellCommand(taskcontext, command + " | ConvertTo-Json -Compress");
+		String outputstr = response.getOutput();
+		if (!response.isSuccessful()) {
+			taskcontext.getStandardOut().write(ByteArrayRegion.wrap(outputstr.getBytes(StandardCharsets.UTF_8)));
+			throw new IOException("Failed to run powershell command: " + command);
+		}
+		if (outputstr.trim().isEmpty()) {
+			//ConvertTo-Json produces no output for empty input
+			return null;
 		}
-		String outputstr = outconsumer.getOutputString();
 		try {
 			return new JSONTokener(outputstr).nextValue();
 		} catch (Exception e) {
-			taskcontext.getStandardOut().write(outconsumer.getByteArrayRegion());
-			taskcontext.getStandardOut().write(errconsumer.getByteArrayRegion());
+			taskcontext.getStandardOut().write(ByteArrayRegion.wrap(outputstr.getBytes(StandardCharsets.UTF_8)));
 			throw new IOException("Failed to parse powershell cmdlet JSON output: " + command);
 		}
 	}
+
+	/**
+	 * Runs the given command, converts its output to JSON, and parses it incrementally using the argument reader.
+	 * <p>
+	 * Unlike {@link #runPowershellJSONCommand(TaskContext, String)}, the output is not buffered in memory, but parsed
+	 * as it is received. If the command had no output, the first token of the parser is
+	 * {@link JSONPullParser.Token#END_DOCUMENT}.
+	 * 
+	 * @param <T>
+	 *            The result type.
+	 * @param taskcontext
+	 *            The task context.
+	 * @param command
+	 *            The PowerShell command.
+	 * @param reader
+	 *            The reader that parses the output.
+	 * @return The result of the reader.
+	 * @throws Exception
+	 *             If the command failed, or the output couldn't be parsed.
+	 */
+	public static <T> T runPowershellJSONCommand(TaskContext taskcontext, String command,
+			JSONResponseReader<T> reader) throws Exception {
+		PowershellResponseReader<T> responsereader = payload -> reader.read(new JSONPullParser(payload));
+		try {
+			return getPowershellHost(taskcontext.getExecutionContext().getEnvironment())
+					.execute(command + " | ConvertTo-Json -Compress", responsereader);
+		} catch (PowershellCommandException e) {
+			taskcontext.getStandardOut().write(ByteArrayRegion.wrap(e.getOutput().getBytes(StandardCharsets.UTF_8)));
+			throw new IOException("Failed to run powershell command: " + command);
+		} catch (JSONPullParserException e) {
+			throw new IOException("Failed to parse powershell cmdlet JSON output: " + command, e);
+		}
+	}
+
+	/**
+	 * Functional interface for parsing the JSON output of a PowerShell command.
+	 *
+	 * @param <T>
+	 *            The result type.
+	 * @see SakerWindowsImplUtils#runPowershellJSONCommand(TaskContext, String, JSONResponseReader)
+	 */
+	@FunctionalInterface
+	public interface JSONResponseReader<T> {
+		public T read(JSONPullParser parser) throws IOException;
+	}
 }
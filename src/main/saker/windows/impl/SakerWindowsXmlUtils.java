@@ -0,0 +1,54 @@
+package saker.windows.impl;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+
+/**
+ * Shared XML parser and writer facilities.
+ * <p>
+ * Looking up the StAX factory implementations involves service loading, so the factories are created once and
+ * reused by all the XML processing code.
+ * <p>
+ * The parsers are configured to not resolve external entities and DTDs.
+ */
+public class SakerWindowsXmlUtils {
+	private static final XMLInputFactory XML_INPUT_FACTORY;
+	static {
+		XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		try {
+			//report CDATA sections separately instead of characters (JDK implementation specific)
+			XML_INPUT_FACTORY.setProperty("http://java.sun.com/xml/stream/properties/report-cdata-event", true);
+		} catch (IllegalArgumentException e) {
+			//not supported by the implementation
+		}
+	}
+	private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+	private SakerWindowsXmlUtils() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Gets the shared StAX input factory.
+	 * <p>
+	 * The factory shouldn't be configured by the callers.
+	 *
+	 * @return The input factory.
+	 */
+	public static XMLInputFactory getXMLInputFactory() {
+		return XML_INPUT_FACTORY;
+	}
+
+	/**
+	 * Gets the shared StAX output factory.
+	 * <p>
+	 * The factory shouldn't be configured by the callers.
+	 *
+	 * @return The output factory.
+	 */
+	public static XMLOutputFactory getXMLOutputFactory() {
+		return XML_OUTPUT_FACTORY;
+	}
+}
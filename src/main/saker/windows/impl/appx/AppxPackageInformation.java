@@ -1,5 +1,8 @@
 package saker.windows.impl.appx;
 
+import java.io.IOException;
+
+import saker.windows.impl.json.JSONPullParser;
 import saker.windows.impl.thirdparty.org.json.JSONObject;
 
 public class AppxPackageInformation {
@@ -9,6 +12,9 @@ public class AppxPackageInformation {
 	private String version;
 	private String installLocation;
 
+	private AppxPackageInformation() {
+	}
+
 	public AppxPackageInformation(JSONObject json) {
 		name = json.optString("Name", null);
 		packageFamilyName = json.optString("PackageFamilyName", null);
@@ -17,6 +23,52 @@ public class AppxPackageInformation {
 		installLocation = json.optString("InstallLocation", null);
 	}
 
+	/**
+	 * Reads the package information from the next object of the argument parser.
+	 * <p>
+	 * The unrecognized properties of the object are skipped.
+	 *
+	 * @param parser
+	 *            The parser.
+	 * @return The package information.
+	 * @throws IOException
+	 *             If the next value is not an object, or the parsing failed.
+	 */
+	public static AppxPackageInformation read(JSONPullParser parser) throws IOException {
+		AppxPackageInformation result = new AppxPackageInformation();
+		parser.beginObject();
+		while (parser.hasNext()) {
+			switch (parser.nextName()) {
+				case "Name": {
+					result.name = parser.nextStringOrNull();
+					break;
+				}
+				case "PackageFamilyName": {
+					result.packageFamilyName = parser.nextStringOrNull();
+					break;
+				}
+				case "PackageFullName": {
+					result.packageFullName = parser.nextStringOrNull();
+					break;
+				}
+				case "Version": {
+					result.version = parser.nextStringOrNull();
+					break;
+				}
+				case "InstallLocation": {
+					result.installLocation = parser.nextStringOrNull();
+					break;
+				}
+				default: {
+					parser.skipValue();
+					break;
+				}
+			}
+		}
+		parser.endObject();
+		return result;
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -0,0 +1,154 @@
+package saker.windows.impl.appx;
+
+import saker.windows.impl.thirdparty.org.json.JSONObject;
+
+/**
+ * The interpreted output of an {@link AppxRegistrationScript}.
+ * <p>
+ * The class has no dependencies on the build system, so it can be used with recorded script outputs as well.
+ */
+public final class AppxRegistrationResult {
+	public static final String STAGE_REGISTER = "register";
+	public static final String STAGE_IDENTITY = "identity";
+	public static final String STAGE_REMOVE = "remove";
+	public static final String STAGE_REREGISTER = "reregister";
+
+	/**
+	 * The deployment error code if the developer mode is not enabled on the computer.
+	 */
+	public static final String HRESULT_DEVELOPER_MODE_NOT_ENABLED = "0x80073CFF";
+	/**
+	 * The deployment error code if the package is already registered.
+	 */
+	public static final String HRESULT_ALREADY_REGISTERED = "0x80073CFB";
+
+	private final String stage;
+	private final boolean registered;
+	private final String registerOutput;
+	private final String output;
+	private final String identityName;
+	private final String packageFullName;
+
+	public AppxRegistrationResult(JSONObject json) {
+		this.stage = json.optString("Stage", STAGE_REGISTER);
+		this.registered = json.optBoolean("Registered", false);
+		this.registerOutput = json.optString("RegisterOutput", null);
+		this.output = json.optString("Output", null);
+		this.identityName = json.optString("IdentityName", null);
+		this.packageFullName = json.optString("PackageFullName", null);
+	}
+
+	public String getStage() {
+		return stage;
+	}
+
+	public boolean isRegistered() {
+		return registered;
+	}
+
+	/**
+	 * Checks if the package was removed and registered again.
+	 *
+	 * @return <code>true</code> if the package was reinstalled.
+	 */
+	public boolean isReinstalled() {
+		return registered && !STAGE_REGISTER.equals(stage);
+	}
+
+	/**
+	 * Gets the error output of the first registration attempt.
+	 *
+	 * @return The output or <code>null</code> if the first attempt was successful.
+	 */
+	public String getRegisterOutput() {
+		return registerOutput;
+	}
+
+	/**
+	 * Gets the error output of the failed reinstallation stage.
+	 *
+	 * @return The output or <code>null</code> if the reinstallation was not attempted or successful.
+	 */
+	public String getOutput() {
+		return output;
+	}
+
+	public String getIdentityName() {
+		return identityName;
+	}
+
+	public String getPackageFullName() {
+		return packageFullName;
+	}
+
+	/**
+	 * Gets the <code>HRESULT</code> error code of the first registration attempt.
+	 *
+	 * @return The error code or <code>null</code> if not found in the output.
+	 */
+	public String getRegisterHResult() {
+		if (registerOutput == null) {
+			return null;
+		}
+		int index = registerOutput.indexOf("HRESULT:");
+		if (index < 0) {
+			return null;
+		}
+		String hres = registerOutput.substring(index + 8).trim();
+		int end = 0;
+		while (end < hres.length() && Character.isLetterOrDigit(hres.charAt(end))) {
+			++end;
+		}
+		return hres.substring(0, end);
+	}
+
+	/**
+	 * Gets the message that describes the failure of the registration.
+	 *
+	 * @param manifestpath
+	 *            The path of the registered manifest.
+	 * @param allowreinstall
+	 *            Whether or not the reinstallation was allowed for the registration.
+	 * @return The failure message, or <code>null</code> if the registration was successful.
+	 */
+	public String getFailureMessage(String manifestpath, boolean allowreinstall) {
+		if (registered) {
+			return null;
+		}
+		switch (stage) {
+			case STAGE_IDENTITY: {
+				if (identityName == null || identityName.isEmpty()) {
+					return "Failed to determine Identity Name from AppxManifest.xml: " + manifestpath;
+				}
+				return "Failed to determine appx package full name for: " + identityName;
+			}
+			case STAGE_REMOVE: {
+				return "Failed to remove appx package: " + packageFullName;
+			}
+			case STAGE_REREGISTER: {
+				return "Failed to register appx after removing it: " + manifestpath;
+			}
+			default: {
+				break;
+			}
+		}
+		String hres = getRegisterHResult();
+		if (HRESULT_DEVELOPER_MODE_NOT_ENABLED.equalsIgnoreCase(hres)) {
+			return "Error: Failed to register appx, make sure developer mode is enabled on this computer. "
+					+ "(Settings/Update and Security/Developers)";
+		}
+		if (!allowreinstall) {
+			if (HRESULT_ALREADY_REGISTERED.equalsIgnoreCase(hres)) {
+				return "Appx is already registered in developement mode on this computer: " + manifestpath;
+			}
+			return "Unknown deployment error, see output for more info.";
+		}
+		return "Failed to register appx: " + manifestpath;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[stage=" + stage + ", registered=" + registered
+				+ (packageFullName != null ? ", packageFullName=" + packageFullName : "") + "]";
+	}
+}
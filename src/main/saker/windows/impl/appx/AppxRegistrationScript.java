@@ -0,0 +1,141 @@
+package saker.windows.impl.appx;
+
+import java.util.Iterator;
+import java.util.List;
+
+import saker.windows.impl.SakerWindowsImplUtils;
+
+/**
+ * Generates the PowerShell script that registers an appx manifest, and reinstalls the package if necessary.
+ * <p>
+ * The whole register-remove-reregister sequence is performed by the script, and it outputs a single object that
+ * describes the outcome. The output is interpreted by {@link AppxRegistrationResult}.
+ */
+public final class AppxRegistrationScript {
+	private static final String SCRIPT_BODY = String.join("\n", //
+			"$ErrorActionPreference = 'Stop'", //
+			"$ProgressPreference = 'SilentlyContinue'", //
+			"$result = [ordered]@{ Stage = '" + AppxRegistrationResult.STAGE_REGISTER
+					+ "'; Registered = $false; RegisterOutput = $null; Output = $null; "
+					+ "IdentityName = $null; PackageFullName = $null }", //
+			"try {", //
+			"	Add-AppxPackage -Path $path -Register | Out-Null", //
+			"	$result.Registered = $true", //
+			"} catch {", //
+			"	$result.RegisterOutput = ($_ | Out-String).Trim()", //
+			"}", //
+			//reinstalling doesn't help if the developer mode is not enabled
+			"if (-not $result.Registered -and $allowReinstall -and $result.RegisterOutput -notmatch 'HRESULT:\\s*"
+					+ AppxRegistrationResult.HRESULT_DEVELOPER_MODE_NOT_ENABLED + "') {", //
+			"	try {", //
+			"		$result.Stage = '" + AppxRegistrationResult.STAGE_IDENTITY + "'", //
+			//the identity name is read from the manifest only if it wasn't passed by the caller
+			"		$result.IdentityName = if ($identityName) { $identityName } else { "
+					+ "[string]([xml](Get-Content -LiteralPath $path -Raw)).Package.Identity.Name }", //
+			"		if (-not $result.IdentityName) { throw 'Identity Name not found in AppxManifest.xml.' }", //
+			"		$packages = @(Get-AppxPackage -Name "
+					+ "([System.Management.Automation.WildcardPattern]::Escape($result.IdentityName)))", //
+			"		if ($packages.Count -ne 1) { throw ('Found ' + $packages.Count + ' installed packages with name: ' "
+					+ "+ $result.IdentityName) }", //
+			"		$result.PackageFullName = [string]$packages[0].PackageFullName", //
+			"		$result.Stage = '" + AppxRegistrationResult.STAGE_REMOVE + "'", //
+			"		Remove-AppxPackage -Package $result.PackageFullName | Out-Null", //
+			"		$result.Stage = '" + AppxRegistrationResult.STAGE_REREGISTER + "'", //
+			"		Add-AppxPackage -Path $path -Register | Out-Null", //
+			"		$result.Registered = $true", //
+			"	} catch {", //
+			"		$result.Output = ($_ | Out-String).Trim()", //
+			"	}", //
+			"}", //
+			"[pscustomobject]$result");
+
+	/**
+	 * Runs the registration scripts concurrently in a runspace pool, and outputs their results in order.
+	 * <p>
+	 * The <code>$scripts</code> variable is expected to contain the registration scripts.
+	 */
+	private static final String PARALLEL_SCRIPT_BODY = String.join("\n", //
+			"$pool = [RunspaceFactory]::CreateRunspacePool(1, $scripts.Count)", //
+			"$pool.Open()", //
+			"try {", //
+			"	$jobs = @(foreach ($s in $scripts) {", //
+			"		$ps = [PowerShell]::Create()", //
+			"		$ps.RunspacePool = $pool", //
+			"		[void]$ps.AddScript($s)", //
+			"		[pscustomobject]@{ PowerShell = $ps; Handle = $ps.BeginInvoke() }", //
+			"	})", //
+			"	foreach ($j in $jobs) {", //
+			"		try {", //
+			"			$out = @($j.PowerShell.EndInvoke($j.Handle))", //
+			"			if ($out.Count -ne 1) { throw ('Unexpected registration output: ' + ($out | Out-String)) }", //
+			"			$out[0]", //
+			"		} catch {", //
+			"			[pscustomobject]@{ Stage = '" + AppxRegistrationResult.STAGE_REGISTER
+					+ "'; Registered = $false; RegisterOutput = ($_ | Out-String).Trim() }", //
+			"		} finally {", //
+			"			$j.PowerShell.Dispose()", //
+			"		}", //
+			"	}", //
+			"} finally {", //
+			"	$pool.Close()", //
+			"}");
+
+	private AppxRegistrationScript() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Creates the registration script for the given manifest.
+	 * <p>
+	 * The script outputs a single object that should be converted to JSON and interpreted using
+	 * {@link AppxRegistrationResult}.
+	 *
+	 * @param manifestpath
+	 *            The local path of the <code>AppxManifest.xml</code> to register.
+	 * @param allowreinstall
+	 *            <code>true</code> to remove and register the package again if the first registration attempt fails.
+	 * @param identityname
+	 *            The identity name declared in the manifest, or <code>null</code> to let the script read it from the
+	 *            manifest when reinstalling.
+	 * @return The script block.
+	 */
+	public static String create(String manifestpath, boolean allowreinstall, String identityname) {
+		return "& {\n$path = " + SakerWindowsImplUtils.powershellStringLiteral(manifestpath) + "\n$allowReinstall = "
+				+ (allowreinstall ? "$true" : "$false") + "\n$identityName = "
+				+ (identityname == null ? "$null" : SakerWindowsImplUtils.powershellStringLiteral(identityname)) + "\n"
+				+ SCRIPT_BODY + "\n}";
+	}
+
+	/**
+	 * Creates a script that registers multiple manifests concurrently.
+	 * <p>
+	 * The script outputs an object for each manifest in the same order as the argument paths. The outputs should be
+	 * interpreted using {@link AppxRegistrationResult}.
+	 *
+	 * @param manifestpaths
+	 *            The local paths of the <code>AppxManifest.xml</code> files to register.
+	 * @param identitynames
+	 *            The identity names declared in the manifests, in the same order as the paths. The elements may be
+	 *            <code>null</code> if not known.
+	 * @param allowreinstall
+	 *            <code>true</code> to remove and register the packages again if the first registration attempt fails.
+	 * @return The script block.
+	 */
+	public static String createParallel(List<String> manifestpaths, List<String> identitynames,
+			boolean allowreinstall) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("& {\n$scripts = @(");
+		Iterator<String> nameit = identitynames.iterator();
+		for (Iterator<String> it = manifestpaths.iterator(); it.hasNext();) {
+			String path = it.next();
+			sb.append(SakerWindowsImplUtils.powershellStringLiteral(create(path, allowreinstall, nameit.next())));
+			if (it.hasNext()) {
+				sb.append(", ");
+			}
+		}
+		sb.append(")\n");
+		sb.append(PARALLEL_SCRIPT_BODY);
+		sb.append("\n}");
+		return sb.toString();
+	}
+}
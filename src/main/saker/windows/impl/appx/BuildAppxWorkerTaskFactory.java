@@ -0,0 +1,354 @@
+package saker.windows.impl.appx;
+
+import java.io.Externalizable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import saker.build.file.SakerDirectory;
+import saker.build.file.SakerFile;
+import saker.build.file.content.ContentDescriptor;
+import saker.build.file.content.DirectoryContentDescriptor;
+import saker.build.file.path.ProviderHolderPathKey;
+import saker.build.file.path.SakerPath;
+import saker.build.file.provider.LocalFileProvider;
+import saker.build.file.provider.SakerPathFiles;
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.runtime.execution.SakerLog;
+import saker.build.task.Task;
+import saker.build.task.TaskContext;
+import saker.build.task.TaskExecutionUtilities;
+import saker.build.task.TaskFactory;
+import saker.build.task.utils.dependencies.EqualityTaskOutputChangeDetector;
+import saker.build.thirdparty.saker.util.ImmutableUtils;
+import saker.build.thirdparty.saker.util.ObjectUtils;
+import saker.build.thirdparty.saker.util.io.ByteArrayRegion;
+import saker.build.thirdparty.saker.util.io.SerialUtils;
+import saker.build.thirdparty.saker.util.io.UnsyncByteArrayOutputStream;
+import saker.build.trace.BuildTrace;
+import saker.sdk.support.api.SDKDescription;
+import saker.sdk.support.api.SDKSupportUtils;
+import saker.std.api.file.location.ExecutionFileLocation;
+import saker.std.api.file.location.FileLocation;
+import saker.std.api.file.location.FileLocationVisitor;
+import saker.std.api.file.location.LocalFileLocation;
+import saker.std.api.util.SakerStandardUtils;
+import saker.windows.api.appx.BuildAppxWorkerTaskOutput;
+import saker.windows.impl.appx.manifest.AppxManifestPatch;
+import saker.windows.impl.metrics.WorkerTaskMetrics;
+import saker.windows.impl.signtool.SigntoolSignWorkerTaskFactory;
+import saker.windows.main.appx.BuildAppxTaskFactory;
+
+/**
+ * Creates an .appx package directly from the application contents, and optionally signs it.
+ * <p>
+ * The task performs the work of the prepare, manifest patching, packaging, and signing tasks without creating their
+ * intermediate outputs. The input files are passed to makeappx from their original locations (or their mirror paths),
+ * the manifest is patched in memory, and the package is signed in place.
+ */
+public class BuildAppxWorkerTaskFactory
+		implements TaskFactory<BuildAppxWorkerTaskOutput>, Task<BuildAppxWorkerTaskOutput>, Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	private static final SakerPath PATH_APPXMANIFESTXML = SakerPath.valueOf("AppxManifest.xml");
+
+	private NavigableMap<SakerPath, FileLocation> contents;
+	private AppxManifestPatch manifestPatch;
+
+	/**
+	 * /f
+	 */
+	private FileLocation certificate;
+	/**
+	 * /fd
+	 */
+	private String algorithm;
+	/**
+	 * /p
+	 */
+	private String password;
+
+	private NavigableMap<String, SDKDescription> sdks;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public BuildAppxWorkerTaskFactory() {
+	}
+
+	public BuildAppxWorkerTaskFactory(NavigableMap<SakerPath, FileLocation> contents) {
+		this.contents = ImmutableUtils.makeImmutableNavigableMap(contents);
+	}
+
+	public void setManifestPatch(AppxManifestPatch manifestPatch) {
+		if (manifestPatch != null && manifestPatch.isEmpty()) {
+			manifestPatch = null;
+		}
+		this.manifestPatch = manifestPatch;
+	}
+
+	public void setSdks(NavigableMap<String, SDKDescription> sdks) {
+		this.sdks = ImmutableUtils.makeImmutableNavigableMap(sdks);
+	}
+
+	public void setCertificate(FileLocation certificate) {
+		this.certificate = certificate;
+	}
+
+	public void setAlgorithm(String algorithm) {
+		this.algorithm = algorithm;
+	}
+
+	public void setPassword(String password) {
+		this.password = password;
+	}
+
+	@Override
+	public Task<? extends BuildAppxWorkerTaskOutput> createTask(ExecutionContext executioncontext) {
+		return this;
+	}
+
+	@Override
+	public BuildAppxWorkerTaskOutput run(TaskContext taskcontext) throws Exception {
+		WorkerTaskMetrics metrics = new WorkerTaskMetrics(this);
+		try {
+			return runWithMetrics(taskcontext, metrics);
+		} finally {
+			metrics.finish();
+		}
+	}
+
+	private BuildAppxWorkerTaskOutput runWithMetrics(TaskContext taskcontext, WorkerTaskMetrics metrics)
+			throws Exception {
+		if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
+			BuildTrace.classifyTask(BuildTrace.CLASSIFICATION_WORKER);
+		}
+		taskcontext.setStandardOutDisplayIdentifier(BuildAppxTaskFactory.TASK_NAME);
+
+		BuildAppxWorkerTaskIdentifier taskid = (BuildAppxWorkerTaskIdentifier) taskcontext.getTaskId();
+		SakerPath relativeoutputpath = taskid.getRelativeOutput();
+		TaskExecutionUtilities taskutils = taskcontext.getTaskUtilities();
+		SakerDirectory outputdir = taskutils.resolveDirectoryAtRelativePathCreate(
+				SakerPathFiles.requireBuildDirectory(taskcontext), relativeoutputpath.getParent());
+		String outputappxfilename = relativeoutputpath.getFileName();
+
+		metrics.startPhase("Resolve inputs");
+		NavigableMap<SakerPath, SakerPath> localmappings = new TreeMap<>();
+		NavigableMap<SakerPath, ContentDescriptor> inputcontents = new TreeMap<>();
+		for (Entry<SakerPath, FileLocation> entry : contents.entrySet()) {
+			SakerPath apppath = entry.getKey();
+			FileLocation fl = entry.getValue();
+			Path localpath;
+			if (manifestPatch != null && PATH_APPXMANIFESTXML.equals(apppath)) {
+				//the manifest is patched in memory, only the patched file is written to the build directory
+				ContentHashSakerFile manifestfile = new ContentHashSakerFile(
+						outputappxfilename + "." + PATH_APPXMANIFESTXML.getFileName(),
+						patchManifest(taskcontext, fl, inputcontents));
+				outputdir.add(manifestfile);
+				localpath = taskcontext.mirror(manifestfile);
+			} else {
+				localpath = getLocalPath(taskcontext, fl, inputcontents);
+			}
+			localmappings.put(apppath, SakerPath.valueOf(localpath));
+			metrics.addFiles(1);
+		}
+		taskutils.reportInputFileDependency(null, inputcontents);
+
+		metrics.startPhase("Write mappings");
+		MappingsSakerFile mappingsfile = new MappingsSakerFile(outputappxfilename + ".mappings",
+				new MappingsContentDescriptor(localmappings));
+		outputdir.add(mappingsfile);
+		//do not report output dependency on the mappings file as we dont care if its deleted or modified.
+
+		Path mappingsfilemirrorpath = taskcontext.mirror(mappingsfile);
+		Path outputfilepath = mappingsfilemirrorpath.resolveSibling(outputappxfilename);
+		metrics.addFiles(1);
+		metrics.addBytesWritten(Files.size(mappingsfilemirrorpath));
+
+		metrics.startPhase("Run makeappx");
+		SakerPath makeappxpath = MakeAppxWithMappingsWorkerTaskFactoryBase.getMakeAppxExecutablePath(taskcontext,
+				sdks);
+		MakeAppxWithMappingsWorkerTaskFactoryBase.runMakeAppx(taskcontext,
+				ImmutableUtils.asUnmodifiableArrayList(makeappxpath.toString(), "pack", "/o", "/f",
+						mappingsfilemirrorpath.toString(), "/p", outputfilepath.toString()));
+		metrics.addBytesWritten(Files.size(outputfilepath));
+
+		if (certificate != null) {
+			//sign in place, no unsigned copy of the package is kept
+			metrics.startPhase("Run signtool");
+			metrics.addFiles(1);
+			Path certpath = SigntoolSignWorkerTaskFactory.getPathOfFile(taskcontext, certificate);
+			SakerPath signtoolexe = SigntoolSignWorkerTaskFactory.getSigntoolExecutablePath(taskcontext, sdks);
+			SigntoolSignWorkerTaskFactory.runSigntool(taskcontext, signtoolexe, outputfilepath, certpath, algorithm,
+					password, relativeoutputpath);
+		}
+
+		metrics.startPhase("Synchronize output");
+		metrics.addFiles(1);
+		ProviderHolderPathKey outputpathkey = LocalFileProvider.getInstance().getPathKey(outputfilepath);
+		taskutils.addSynchronizeInvalidatedProviderPathFileToDirectory(outputdir, outputpathkey, outputappxfilename);
+		SakerFile outfile = outputdir.get(outputappxfilename);
+
+		SakerPath outputpath = outfile.getSakerPath();
+		taskcontext.reportOutputFileDependency(null, outputpath, outfile.getContentDescriptor());
+
+		SakerLog.success().verbose().println("Created appx: " + outputpath);
+
+		BuildAppxWorkerTaskOutput result = new BuildAppxWorkerTaskOutputImpl(outputpath);
+		taskcontext.reportSelfTaskOutputChangeDetector(new EqualityTaskOutputChangeDetector(result));
+		return result;
+	}
+
+	private static Path getLocalPath(TaskContext taskcontext, FileLocation fl,
+			NavigableMap<SakerPath, ContentDescriptor> inputcontents) {
+		Path[] result = { null };
+		fl.accept(new FileLocationVisitor() {
+			@Override
+			public void visit(LocalFileLocation loc) {
+				SakerPath path = loc.getLocalPath();
+				ContentDescriptor cd = taskcontext.getTaskUtilities().getReportExecutionDependency(
+						SakerStandardUtils.createLocalFileContentDescriptorExecutionProperty(path, UUID.randomUUID()));
+				if (cd == null || cd instanceof DirectoryContentDescriptor) {
+					throw ObjectUtils.sneakyThrow(new FileNotFoundException(path.toString()));
+				}
+				result[0] = LocalFileProvider.toRealPath(path);
+			}
+
+			@Override
+			public void visit(ExecutionFileLocation loc) {
+				SakerPath path = loc.getPath();
+				SakerFile f = taskcontext.getTaskUtilities().resolveFileAtPath(path);
+				if (f == null) {
+					throw ObjectUtils.sneakyThrow(new FileNotFoundException(path.toString()));
+				}
+				try {
+					result[0] = taskcontext.mirror(f);
+				} catch (IOException e) {
+					throw ObjectUtils.sneakyThrow(e);
+				}
+				inputcontents.put(path, f.getContentDescriptor());
+			}
+		});
+		return result[0];
+	}
+
+	private ByteArrayRegion patchManifest(TaskContext taskcontext, FileLocation fl,
+			NavigableMap<SakerPath, ContentDescriptor> inputcontents) {
+		UnsyncByteArrayOutputStream os = new UnsyncByteArrayOutputStream();
+		fl.accept(new FileLocationVisitor() {
+			@Override
+			public void visit(LocalFileLocation loc) {
+				SakerPath path = loc.getLocalPath();
+				ContentDescriptor cd = taskcontext.getTaskUtilities().getReportExecutionDependency(
+						SakerStandardUtils.createLocalFileContentDescriptorExecutionProperty(path, UUID.randomUUID()));
+				if (cd == null || cd instanceof DirectoryContentDescriptor) {
+					throw ObjectUtils.sneakyThrow(new FileNotFoundException(path.toString()));
+				}
+				try (InputStream is = LocalFileProvider.getInstance().openInputStream(path)) {
+					manifestPatch.apply(is, os);
+				} catch (IOException e) {
+					throw ObjectUtils.sneakyThrow(e);
+				}
+			}
+
+			@Override
+			public void visit(ExecutionFileLocation loc) {
+				SakerPath path = loc.getPath();
+				SakerFile f = taskcontext.getTaskUtilities().resolveFileAtPath(path);
+				if (f == null) {
+					throw ObjectUtils.sneakyThrow(new FileNotFoundException(path.toString()));
+				}
+				inputcontents.put(path, f.getContentDescriptor());
+				try (InputStream is = f.openInputStream()) {
+					manifestPatch.apply(is, os);
+				} catch (IOException e) {
+					throw ObjectUtils.sneakyThrow(e);
+				}
+			}
+		});
+		return os.toByteArrayRegion();
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		SerialUtils.writeExternalMap(out, sdks);
+		SerialUtils.writeExternalMap(out, contents);
+		out.writeObject(manifestPatch);
+		out.writeObject(certificate);
+		out.writeObject(algorithm);
+		out.writeObject(password);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		sdks = SerialUtils.readExternalSortedImmutableNavigableMap(in, SDKSupportUtils.getSDKNameComparator());
+		contents = SerialUtils.readExternalSortedImmutableNavigableMap(in);
+		manifestPatch = SerialUtils.readExternalObject(in);
+		certificate = SerialUtils.readExternalObject(in);
+		algorithm = SerialUtils.readExternalObject(in);
+		password = SerialUtils.readExternalObject(in);
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((algorithm == null) ? 0 : algorithm.hashCode());
+		result = prime * result + ((certificate == null) ? 0 : certificate.hashCode());
+		result = prime * result + ((contents == null) ? 0 : contents.hashCode());
+		result = prime * result + ((manifestPatch == null) ? 0 : manifestPatch.hashCode());
+		result = prime * result + ((password == null) ? 0 : password.hashCode());
+		result = prime * result + ((sdks == null) ? 0 : sdks.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		BuildAppxWorkerTaskFactory other = (BuildAppxWorkerTaskFactory) obj;
+		if (algorithm == null) {
+			if (other.algorithm != null)
+				return false;
+		} else if (!algorithm.equals(other.algorithm))
+			return false;
+		if (certificate == null) {
+			if (other.certificate != null)
+				return false;
+		} else if (!certificate.equals(other.certificate))
+			return false;
+		if (contents == null) {
+			if (other.contents != null)
+				return false;
+		} else if (!contents.equals(other.contents))
+			return false;
+		if (manifestPatch == null) {
+			if (other.manifestPatch != null)
+				return false;
+		} else if (!manifestPatch.equals(other.manifestPatch))
+			return false;
+		if (password == null) {
+			if (other.password != null)
+				return false;
+		} else if (!password.equals(other.password))
+			return false;
+		if (sdks == null) {
+			if (other.sdks != null)
+				return false;
+		} else if (!sdks.equals(other.sdks))
+			return false;
+		return true;
+	}
+}
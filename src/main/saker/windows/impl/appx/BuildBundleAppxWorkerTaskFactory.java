@@ -0,0 +1,235 @@
+package saker.windows.impl.appx;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import saker.build.file.path.SakerPath;
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.task.Task;
+import saker.build.task.TaskContext;
+import saker.build.task.TaskExecutionUtilities;
+import saker.build.task.TaskFactory;
+import saker.build.task.utils.dependencies.EqualityTaskOutputChangeDetector;
+import saker.build.thirdparty.saker.util.ImmutableUtils;
+import saker.build.thirdparty.saker.util.io.SerialUtils;
+import saker.build.trace.BuildTrace;
+import saker.sdk.support.api.SDKDescription;
+import saker.sdk.support.api.SDKSupportUtils;
+import saker.std.api.file.location.ExecutionFileLocation;
+import saker.std.api.file.location.FileLocation;
+import saker.windows.api.appx.BuildAppxWorkerTaskOutput;
+import saker.windows.api.appx.BuildBundleAppxWorkerTaskOutput;
+import saker.windows.api.appx.BundleAppxWorkerTaskOutput;
+import saker.windows.api.signtool.SigntoolSignWorkerTaskOutput;
+import saker.windows.impl.metrics.WorkerTaskMetrics;
+import saker.windows.impl.signtool.SigntoolSignWorkerTaskFactory;
+import saker.windows.impl.signtool.SigntoolSignWorkerTaskIdentifier;
+import saker.windows.main.appx.BuildBundleAppxTaskFactory;
+
+/**
+ * Bundles the .appx packages of multiple processor architectures, and optionally signs the bundle.
+ * <p>
+ * The packages are built by {@link BuildAppxWorkerTaskFactory} tasks that are started by the frontend task before this
+ * one, so they run concurrently. This task waits for them, and creates the bundle using
+ * {@link BundleAppxWorkerTaskFactory}.
+ */
+public class BuildBundleAppxWorkerTaskFactory implements TaskFactory<BuildBundleAppxWorkerTaskOutput>,
+		Task<BuildBundleAppxWorkerTaskOutput>, Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Processor architectures mapped to the package building tasks.
+	 */
+	private NavigableMap<String, BuildAppxWorkerTaskIdentifier> packageTasks;
+
+	/**
+	 * /f
+	 */
+	private FileLocation certificate;
+	/**
+	 * /fd
+	 */
+	private String algorithm;
+	/**
+	 * /p
+	 */
+	private String password;
+
+	private NavigableMap<String, SDKDescription> sdks;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public BuildBundleAppxWorkerTaskFactory() {
+	}
+
+	public BuildBundleAppxWorkerTaskFactory(NavigableMap<String, BuildAppxWorkerTaskIdentifier> packageTasks) {
+		this.packageTasks = ImmutableUtils.makeImmutableNavigableMap(packageTasks);
+	}
+
+	public void setSdks(NavigableMap<String, SDKDescription> sdks) {
+		this.sdks = ImmutableUtils.makeImmutableNavigableMap(sdks);
+	}
+
+	public void setCertificate(FileLocation certificate) {
+		this.certificate = certificate;
+	}
+
+	public void setAlgorithm(String algorithm) {
+		this.algorithm = algorithm;
+	}
+
+	public void setPassword(String password) {
+		this.password = password;
+	}
+
+	@Override
+	public Task<? extends BuildBundleAppxWorkerTaskOutput> createTask(ExecutionContext executioncontext) {
+		return this;
+	}
+
+	@Override
+	public BuildBundleAppxWorkerTaskOutput run(TaskContext taskcontext) throws Exception {
+		WorkerTaskMetrics metrics = new WorkerTaskMetrics(this);
+		try {
+			return runWithMetrics(taskcontext, metrics);
+		} finally {
+			metrics.finish();
+		}
+	}
+
+	private BuildBundleAppxWorkerTaskOutput runWithMetrics(TaskContext taskcontext, WorkerTaskMetrics metrics)
+			throws Exception {
+		if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
+			BuildTrace.classifyTask(BuildTrace.CLASSIFICATION_WORKER);
+		}
+		taskcontext.setStandardOutDisplayIdentifier(BuildBundleAppxTaskFactory.TASK_NAME);
+
+		BuildBundleAppxWorkerTaskIdentifier taskid = (BuildBundleAppxWorkerTaskIdentifier) taskcontext.getTaskId();
+		SakerPath relativeoutputpath = taskid.getRelativeOutput();
+		TaskExecutionUtilities taskutils = taskcontext.getTaskUtilities();
+
+		metrics.startPhase("Wait for packages");
+		metrics.addFiles(packageTasks.size());
+		NavigableMap<String, SakerPath> packagepaths = new TreeMap<>();
+		NavigableMap<SakerPath, SakerPath> bundlemappings = new TreeMap<>();
+		for (Entry<String, BuildAppxWorkerTaskIdentifier> entry : packageTasks.entrySet()) {
+			BuildAppxWorkerTaskOutput packageout = (BuildAppxWorkerTaskOutput) taskcontext
+					.getTaskResult(entry.getValue());
+			SakerPath packagepath = packageout.getPath();
+			SakerPath bundleentrypath = SakerPath.valueOf(packagepath.getFileName());
+			SakerPath prev = bundlemappings.put(bundleentrypath, packagepath);
+			if (prev != null) {
+				throw new IllegalArgumentException(
+						"Multiple packages with the same name: " + packagepath + " and " + prev);
+			}
+			packagepaths.put(entry.getKey(), packagepath);
+		}
+
+		SakerPath bundlerelativeoutput = relativeoutputpath;
+		if (certificate != null) {
+			String filename = relativeoutputpath.getFileName();
+			bundlerelativeoutput = relativeoutputpath.getParent().resolve(filename + ".unsigned").resolve(filename);
+		}
+		metrics.startPhase("Bundle");
+		metrics.addFiles(bundlemappings.size());
+		BundleAppxWorkerTaskFactory bundletask = new BundleAppxWorkerTaskFactory(bundlemappings);
+		bundletask.setSdks(sdks);
+		BundleAppxWorkerTaskOutput bundleout = taskutils
+				.runTaskResult(new BundleAppxWorkerTaskIdentifier(bundlerelativeoutput), bundletask);
+		SakerPath unsignedpath = bundleout.getPath();
+		SakerPath outputpath = unsignedpath;
+
+		if (certificate != null) {
+			metrics.startPhase("Sign");
+			metrics.addFiles(1);
+			SigntoolSignWorkerTaskFactory signtask = new SigntoolSignWorkerTaskFactory(
+					ExecutionFileLocation.create(unsignedpath));
+			signtask.setSdks(sdks);
+			signtask.setCertificate(certificate);
+			signtask.setAlgorithm(algorithm);
+			signtask.setPassword(password);
+			SigntoolSignWorkerTaskOutput signout = taskutils
+					.runTaskResult(new SigntoolSignWorkerTaskIdentifier(relativeoutputpath), signtask);
+			outputpath = signout.getPath();
+		}
+
+		BuildBundleAppxWorkerTaskOutput result = new BuildBundleAppxWorkerTaskOutputImpl(outputpath, unsignedpath,
+				packagepaths);
+		taskcontext.reportSelfTaskOutputChangeDetector(new EqualityTaskOutputChangeDetector(result));
+		return result;
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		SerialUtils.writeExternalMap(out, sdks);
+		SerialUtils.writeExternalMap(out, packageTasks);
+		out.writeObject(certificate);
+		out.writeObject(algorithm);
+		out.writeObject(password);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		sdks = SerialUtils.readExternalSortedImmutableNavigableMap(in, SDKSupportUtils.getSDKNameComparator());
+		packageTasks = SerialUtils.readExternalSortedImmutableNavigableMap(in);
+		certificate = SerialUtils.readExternalObject(in);
+		algorithm = SerialUtils.readExternalObject(in);
+		password = SerialUtils.readExternalObject(in);
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((algorithm == null) ? 0 : algorithm.hashCode());
+		result = prime * result + ((certificate == null) ? 0 : certificate.hashCode());
+		result = prime * result + ((packageTasks == null) ? 0 : packageTasks.hashCode());
+		result = prime * result + ((password == null) ? 0 : password.hashCode());
+		result = prime * result + ((sdks == null) ? 0 : sdks.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		BuildBundleAppxWorkerTaskFactory other = (BuildBundleAppxWorkerTaskFactory) obj;
+		if (algorithm == null) {
+			if (other.algorithm != null)
+				return false;
+		} else if (!algorithm.equals(other.algorithm))
+			return false;
+		if (certificate == null) {
+			if (other.certificate != null)
+				return false;
+		} else if (!certificate.equals(other.certificate))
+			return false;
+		if (packageTasks == null) {
+			if (other.packageTasks != null)
+				return false;
+		} else if (!packageTasks.equals(other.packageTasks))
+			return false;
+		if (password == null) {
+			if (other.password != null)
+				return false;
+		} else if (!password.equals(other.password))
+			return false;
+		if (sdks == null) {
+			if (other.sdks != null)
+				return false;
+		} else if (!sdks.equals(other.sdks))
+			return false;
+		return true;
+	}
+
+}
@@ -0,0 +1,107 @@
+package saker.windows.impl.appx;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.NavigableMap;
+
+import saker.build.file.path.SakerPath;
+import saker.build.thirdparty.saker.util.ImmutableUtils;
+import saker.build.thirdparty.saker.util.io.SerialUtils;
+import saker.windows.api.appx.BuildBundleAppxWorkerTaskOutput;
+
+final class BuildBundleAppxWorkerTaskOutputImpl implements BuildBundleAppxWorkerTaskOutput, Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	private SakerPath path;
+	private SakerPath unsignedPath;
+	private NavigableMap<String, SakerPath> packages;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public BuildBundleAppxWorkerTaskOutputImpl() {
+	}
+
+	public BuildBundleAppxWorkerTaskOutputImpl(SakerPath path, SakerPath unsignedPath,
+			NavigableMap<String, SakerPath> packages) {
+		this.path = path;
+		this.unsignedPath = unsignedPath;
+		this.packages = ImmutableUtils.makeImmutableNavigableMap(packages);
+	}
+
+	@Override
+	public SakerPath getPath() {
+		return path;
+	}
+
+	@Override
+	public SakerPath getUnsignedPath() {
+		return unsignedPath;
+	}
+
+	@Override
+	public NavigableMap<String, SakerPath> getPackages() {
+		return packages;
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeObject(path);
+		out.writeObject(unsignedPath);
+		SerialUtils.writeExternalMap(out, packages);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		path = SerialUtils.readExternalObject(in);
+		unsignedPath = SerialUtils.readExternalObject(in);
+		packages = SerialUtils.readExternalSortedImmutableNavigableMap(in);
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((packages == null) ? 0 : packages.hashCode());
+		result = prime * result + ((path == null) ? 0 : path.hashCode());
+		result = prime * result + ((unsignedPath == null) ? 0 : unsignedPath.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		BuildBundleAppxWorkerTaskOutputImpl other = (BuildBundleAppxWorkerTaskOutputImpl) obj;
+		if (packages == null) {
+			if (other.packages != null)
+				return false;
+		} else if (!packages.equals(other.packages))
+			return false;
+		if (path == null) {
+			if (other.path != null)
+				return false;
+		} else if (!path.equals(other.path))
+			return false;
+		if (unsignedPath == null) {
+			if (other.unsignedPath != null)
+				return false;
+		} else if (!unsignedPath.equals(other.unsignedPath))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + (path != null ? "path=" + path + ", " : "")
+				+ (unsignedPath != null ? "unsignedPath=" + unsignedPath + ", " : "")
+				+ (packages != null ? "packages=" + packages : "") + "]";
+	}
+
+}
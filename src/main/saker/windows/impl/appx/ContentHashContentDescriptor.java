@@ -0,0 +1,91 @@
+package saker.windows.impl.appx;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import saker.build.file.content.ContentDescriptor;
+import saker.build.thirdparty.saker.util.StringUtils;
+import saker.build.thirdparty.saker.util.io.ByteArrayRegion;
+
+/**
+ * Content descriptor that is based on the SHA-256 hash of the actual file contents.
+ * <p>
+ * Used for generated files where the inputs may change without changing the output. Two files with the same bytes
+ * have equal content descriptors, so the dependent tasks aren't rerun.
+ */
+public final class ContentHashContentDescriptor implements ContentDescriptor, Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	private static final String HASH_ALGORITHM = "SHA-256";
+
+	private byte[] hash;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public ContentHashContentDescriptor() {
+	}
+
+	private ContentHashContentDescriptor(byte[] hash) {
+		this.hash = hash;
+	}
+
+	/**
+	 * Creates a content descriptor for the argument file contents.
+	 *
+	 * @param contents
+	 *            The contents.
+	 * @return The content descriptor.
+	 */
+	public static ContentHashContentDescriptor create(ByteArrayRegion contents) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(HASH_ALGORITHM + " algorithm not found.", e);
+		}
+		digest.update(contents.getArray(), contents.getOffset(), contents.getLength());
+		return new ContentHashContentDescriptor(digest.digest());
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeInt(hash.length);
+		out.write(hash);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		hash = new byte[in.readInt()];
+		in.readFully(hash);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(hash);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		ContentHashContentDescriptor other = (ContentHashContentDescriptor) obj;
+		if (!Arrays.equals(hash, other.hash))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "ContentHashContentDescriptor[" + StringUtils.toHexString(hash) + "]";
+	}
+}
@@ -0,0 +1,34 @@
+package saker.windows.impl.appx;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import saker.build.exception.InvalidPathFormatException;
+import saker.build.file.SakerFileBase;
+import saker.build.file.content.ContentDescriptor;
+import saker.build.thirdparty.saker.util.io.ByteArrayRegion;
+
+/**
+ * Generated file with in-memory contents that uses {@link ContentHashContentDescriptor}.
+ */
+public class ContentHashSakerFile extends SakerFileBase {
+	private ByteArrayRegion contents;
+	private ContentHashContentDescriptor contentDescriptor;
+
+	public ContentHashSakerFile(String name, ByteArrayRegion contents)
+			throws NullPointerException, InvalidPathFormatException {
+		super(name);
+		this.contents = contents;
+		this.contentDescriptor = ContentHashContentDescriptor.create(contents);
+	}
+
+	@Override
+	public ContentDescriptor getContentDescriptor() {
+		return contentDescriptor;
+	}
+
+	@Override
+	public void writeToStreamImpl(OutputStream os) throws IOException, NullPointerException {
+		os.write(contents.getArray(), contents.getOffset(), contents.getLength());
+	}
+}
@@ -11,11 +11,13 @@ import java.util.NavigableMap;
 import saker.build.file.path.SakerPath;
 import saker.build.task.TaskContext;
 import saker.build.thirdparty.saker.util.ImmutableUtils;
+import saker.build.thirdparty.saker.util.ObjectUtils;
 import saker.build.thirdparty.saker.util.io.SerialUtils;
 import saker.sdk.support.api.SDKReference;
 import saker.windows.impl.SakerWindowsImplUtils;
+import saker.windows.impl.appx.manifest.AppxManifest;
+import saker.windows.impl.json.JSONPullParser;
 import saker.windows.impl.thirdparty.org.json.JSONArray;
-import saker.windows.impl.thirdparty.org.json.JSONObject;
 
 public class DynamicLaunchAppxWorkerTaskFactory extends LaunchAppxWorkerTaskFactoryBase {
 	private static final long serialVersionUID = 1L;
@@ -55,7 +57,7 @@ public class DynamicLaunchAppxWorkerTaskFactory extends LaunchAppxWorkerTaskFact
 		if (applicationId != null) {
 			return applicationId;
 		}
-		List<String> appids = getAppxApplicationIds(taskcontext, packageinfo.getPackageFullName());
+		List<String> appids = getAppxApplicationIds(taskcontext, packageinfo);
 		if (appids.size() != 1) {
 			throw new IllegalArgumentException("Failed to select Application Id to launch for appx: "
 					+ packageinfo.getPackageFullName() + " with Ids: " + appids);
@@ -64,9 +66,49 @@ public class DynamicLaunchAppxWorkerTaskFactory extends LaunchAppxWorkerTaskFact
 		return string;
 	}
 
-	public static List<String> getAppxApplicationIds(TaskContext taskcontext, String packagefullname) throws Exception {
+	public static List<String> getAppxApplicationIds(TaskContext taskcontext, AppxPackageInformation packageinfo)
+			throws Exception {
+		String packagefullname = packageinfo.getPackageFullName();
+		InstalledAppxPackageIndex index = InstalledAppxPackageIndex
+				.get(taskcontext.getExecutionContext().getEnvironment());
+		List<String> result = index.getApplicationIds(packagefullname);
+		if (result != null) {
+			return result;
+		}
+		result = readInstalledManifestApplicationIds(taskcontext, packageinfo);
+		if (ObjectUtils.isNullOrEmpty(result)) {
+			result = queryAppxApplicationIds(taskcontext, packagefullname);
+		}
+		index.putApplicationIds(packagefullname, result);
+		return result;
+	}
+
+	/**
+	 * Reads the application ids from the manifest in the install location of the package.
+	 * 
+	 * @return The application ids, or <code>null</code> if the manifest couldn't be read.
+	 */
+	private static List<String> readInstalledManifestApplicationIds(TaskContext taskcontext,
+			AppxPackageInformation packageinfo) {
+		String installlocation = packageinfo.getInstallLocation();
+		if (ObjectUtils.isNullOrEmpty(installlocation)) {
+			return null;
+		}
+		try {
+			SakerPath manifestpath = SakerPath.valueOf(installlocation).resolve("AppxManifest.xml");
+			return AppxManifest.getLocal(taskcontext, manifestpath).getApplicationIds();
+		} catch (Exception e) {
+			//fall back to querying the manifest using PowerShell
+			taskcontext.getTaskUtilities().reportIgnoredException(e);
+			return null;
+		}
+	}
+
+	private static List<String> queryAppxApplicationIds(TaskContext taskcontext, String packagefullname)
+			throws Exception {
 		Object val = SakerWindowsImplUtils.runPowershellJSONCommand(taskcontext,
-				"(Get-AppxPackageManifest " + packagefullname + ").package.applications.application.id");
+				"(Get-AppxPackageManifest -Package " + SakerWindowsImplUtils.powershellStringLiteral(packagefullname)
+						+ ").package.applications.application.id");
 		if (val instanceof String) {
 			return ImmutableUtils.singletonList((String) val);
 		}
@@ -91,52 +133,159 @@ public class DynamicLaunchAppxWorkerTaskFactory extends LaunchAppxWorkerTaskFact
 		if (input == null && searchinstallloc == null) {
 			return null;
 		}
-		StringBuilder sb = new StringBuilder();
-		sb.append("Get-AppxPackage | Select-Object -Property PackageFullName, PackageFamilyName");
+		InstalledAppxPackageIndex index = InstalledAppxPackageIndex
+				.get(taskcontext.getExecutionContext().getEnvironment());
+		AppxPackageInformation result;
 		if (input != null) {
-			sb.append(", Name");
+			result = index.findByNameOrFamilyOrFullName(input);
+			if (result != null) {
+				return result;
+			}
 		}
 		if (searchinstallloc != null) {
-			sb.append(", InstallLocation");
+			result = index.findByInstallLocation(searchinstallloc);
+			if (result != null) {
+				return result;
+			}
 		}
-		Object val = SakerWindowsImplUtils.runPowershellJSONCommand(taskcontext, sb.toString());
-		if (val instanceof JSONObject) {
-			JSONArray narray = new JSONArray();
-			narray.put(val);
-			val = narray;
+		String namefilter = null;
+		if (searchinstallloc == null) {
+			//the package name is the first part of the family and full names
+			int idx = input.indexOf('_');
+			namefilter = idx < 0 ? input : input.substring(0, idx);
 		}
-		if (val instanceof JSONArray) {
-			JSONArray arr = (JSONArray) val;
-			for (Object o : arr) {
-				if (!(o instanceof JSONObject)) {
-					throw new UnsupportedOperationException(
-							"Failed to interpret appx package information. Unexpected array element type: " + o);
-				}
-				JSONObject jsono = (JSONObject) o;
-				AppxPackageInformation appxpackageinfo = new AppxPackageInformation(jsono);
-				if (input != null) {
-					if (input.equals(appxpackageinfo.getName()) || input.equals(appxpackageinfo.getPackageFamilyName())
-							|| input.equals(appxpackageinfo.getPackageFullName())) {
-						return appxpackageinfo;
-					}
-				}
-				if (searchinstallloc != null) {
-					String installloc = appxpackageinfo.getInstallLocation();
-					try {
-						if (installloc != null && searchinstallloc.equals(SakerPath.valueOf(installloc))) {
-							return appxpackageinfo;
+		result = findPackageInformation(taskcontext, index, input, searchinstallloc,
+				getPackageFilterCommand(namefilter, input, searchinstallloc));
+		if (result != null) {
+			return result;
+		}
+		//the filtering in PowerShell may be stricter than the matching here, e.g. because of path formatting
+		//fall back to examining all of the packages
+		return findPackageInformation(taskcontext, index, input, searchinstallloc, "Get-AppxPackage");
+	}
+
+	/**
+	 * Queries the package that is installed at the given location.
+	 * <p>
+	 * Unlike {@link #getPackageInformation(TaskContext, String, SakerPath)}, the cached package information is not
+	 * used, the installed packages are always queried.
+	 *
+	 * @param taskcontext
+	 *            The task context.
+	 * @param name
+	 *            The name of the package, or <code>null</code> to examine all of the installed packages.
+	 * @param installlocation
+	 *            The install location.
+	 * @return The package information, or <code>null</code> if no package is installed at the location.
+	 * @throws Exception
+	 *             If the query failed.
+	 */
+	public static AppxPackageInformation queryPackageInformationAtInstallLocation(TaskContext taskcontext,
+			String name, SakerPath installlocation) throws Exception {
+		InstalledAppxPackageIndex index = InstalledAppxPackageIndex
+				.get(taskcontext.getExecutionContext().getEnvironment());
+		return findPackageInformation(taskcontext, index, null, installlocation,
+				getPackageFilterCommand(name, null, installlocation));
+	}
+
+	private static String getPackageFilterCommand(String namefilter, String input, SakerPath searchinstallloc) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Get-AppxPackage");
+		if (namefilter != null) {
+			sb.append(" -Name ([System.Management.Automation.WildcardPattern]::Escape(");
+			sb.append(SakerWindowsImplUtils.powershellStringLiteral(namefilter));
+			sb.append("))");
+		}
+		sb.append(" | Where-Object { ");
+		if (input != null) {
+			String inputliteral = SakerWindowsImplUtils.powershellStringLiteral(input);
+			sb.append("$_.Name -eq ");
+			sb.append(inputliteral);
+			sb.append(" -or $_.PackageFamilyName -eq ");
+			sb.append(inputliteral);
+			sb.append(" -or $_.PackageFullName -eq ");
+			sb.append(inputliteral);
+			if (searchinstallloc != null) {
+				sb.append(" -or ");
+			}
+		}
+		if (searchinstallloc != null) {
+			sb.append("($_.InstallLocation -and $_.InstallLocation.TrimEnd('\\') -eq ");
+			sb.append(SakerWindowsImplUtils.powershellStringLiteral(searchinstallloc.toString().replace('/', '\\')));
+			sb.append(")");
+		}
+		sb.append(" }");
+		return sb.toString();
+	}
+
+	private static AppxPackageInformation findPackageInformation(TaskContext taskcontext,
+			InstalledAppxPackageIndex index, String input, SakerPath searchinstallloc, String packagescommand)
+			throws Exception {
+		//select all the indexed properties
+		//the output is parsed as it is received, as the package listing can be large
+		return SakerWindowsImplUtils.runPowershellJSONCommand(taskcontext, packagescommand
+				+ " | Select-Object -Property PackageFullName, PackageFamilyName, Name, Version, InstallLocation",
+				parser -> {
+					switch (parser.peek()) {
+						case END_DOCUMENT: {
+							//no packages matched
+							return null;
+						}
+						case BEGIN_OBJECT: {
+							AppxPackageInformation appxpackageinfo = AppxPackageInformation.read(parser);
+							index.add(appxpackageinfo);
+							if (isMatchingPackage(taskcontext, appxpackageinfo, input, searchinstallloc)) {
+								return appxpackageinfo;
+							}
+							return null;
+						}
+						case BEGIN_ARRAY: {
+							parser.beginArray();
+							while (parser.hasNext()) {
+								if (parser.peek() != JSONPullParser.Token.BEGIN_OBJECT) {
+									throw new UnsupportedOperationException(
+											"Failed to interpret appx package information. Unexpected array element: "
+													+ parser.peek());
+								}
+								AppxPackageInformation appxpackageinfo = AppxPackageInformation.read(parser);
+								index.add(appxpackageinfo);
+								if (isMatchingPackage(taskcontext, appxpackageinfo, input, searchinstallloc)) {
+									//the rest of the output is skipped
+									return appxpackageinfo;
+								}
+							}
+							parser.endArray();
+							return null;
+						}
+						default: {
+							throw new UnsupportedOperationException(
+									"Failed to interpret appx package information. Unexpected output: "
+											+ parser.peek());
 						}
-					} catch (Exception e) {
-						//path parsing error
-						taskcontext.getTaskUtilities().reportIgnoredException(e);
 					}
+				});
+	}
+
+	private static boolean isMatchingPackage(TaskContext taskcontext, AppxPackageInformation appxpackageinfo,
+			String input, SakerPath searchinstallloc) {
+		if (input != null) {
+			if (input.equals(appxpackageinfo.getName()) || input.equals(appxpackageinfo.getPackageFamilyName())
+					|| input.equals(appxpackageinfo.getPackageFullName())) {
+				return true;
+			}
+		}
+		if (searchinstallloc != null) {
+			String installloc = appxpackageinfo.getInstallLocation();
+			try {
+				if (installloc != null && searchinstallloc.equals(SakerPath.valueOf(installloc))) {
+					return true;
 				}
+			} catch (Exception e) {
+				//path parsing error
+				taskcontext.getTaskUtilities().reportIgnoredException(e);
 			}
-		} else {
-			throw new UnsupportedOperationException(
-					"Failed to interpret appx package information. Unexpected output: " + val);
 		}
-		return null;
+		return false;
 	}
 
 	private SakerPath getSearchInstallLocation(TaskContext taskcontext) {
@@ -49,8 +49,7 @@ public class InstallLocationLaunchAppxWorkerTaskFactory extends LaunchAppxWorker
 		if (applicationId != null) {
 			return applicationId;
 		}
-		List<String> appids = DynamicLaunchAppxWorkerTaskFactory.getAppxApplicationIds(taskcontext,
-				packageinfo.getPackageFullName());
+		List<String> appids = DynamicLaunchAppxWorkerTaskFactory.getAppxApplicationIds(taskcontext, packageinfo);
 		if (appids.size() != 1) {
 			throw new IllegalArgumentException("Failed to select Application Id to launch for appx: "
 					+ packageinfo.getPackageFullName() + " with Ids: " + appids);
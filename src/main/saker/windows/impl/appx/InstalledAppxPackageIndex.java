@@ -0,0 +1,217 @@
+package saker.windows.impl.appx;
+
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import saker.build.file.path.SakerPath;
+import saker.build.file.provider.LocalFileProvider;
+import saker.build.runtime.environment.SakerEnvironment;
+import saker.build.thirdparty.saker.util.ImmutableUtils;
+import saker.build.thirdparty.saker.util.ObjectUtils;
+import saker.build.util.cache.CacheKey;
+
+/**
+ * Cache of the installed appx package information in the build environment.
+ * <p>
+ * The packages are stored by their full names. The name, family name, and install location of the packages are not
+ * necessarily unique, e.g. if multiple architectures or versions of a package are installed. These keys are mapped to
+ * the package full names, and lookups by a key that has been seen with different full names are not served from the
+ * index. The application ids of the packages are cached by the package full names.
+ * <p>
+ * The index is populated with the results of the package queries. It needs to be {@linkplain #invalidate()
+ * invalidated} when a package is registered or removed by the build. As the packages may also change outside of the
+ * build, each found package is validated before it is returned: the <code>AppxManifest.xml</code> in its install
+ * location must still exist with the same size and last modification time as when the package was indexed. If not,
+ * the package is removed from the index, and the callers query it again.
+ */
+public final class InstalledAppxPackageIndex {
+	/**
+	 * Marker value for keys that are associated with multiple package full names.
+	 */
+	private static final String AMBIGUOUS_FULL_NAME = "";
+
+	private final ConcurrentHashMap<String, IndexedPackage> byFullName = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, String> nameFullNames = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, String> familyNameFullNames = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<SakerPath, String> installLocationFullNames = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<String, List<String>> applicationIds = new ConcurrentHashMap<>();
+
+	private InstalledAppxPackageIndex() {
+	}
+
+	public static InstalledAppxPackageIndex get(SakerEnvironment environment) throws Exception {
+		return environment.getCachedData(IndexCacheKey.INSTANCE);
+	}
+
+	/**
+	 * Finds a package that has the argument full name, or the unique package with the argument family name or name.
+	 *
+	 * @param input
+	 *            The name to search for.
+	 * @return The found package or <code>null</code> if not found in the index, or it is out of date.
+	 */
+	public AppxPackageInformation findByNameOrFamilyOrFullName(String input) {
+		AppxPackageInformation result = findByFullName(input);
+		if (result != null) {
+			return result;
+		}
+		result = findByFullName(familyNameFullNames.get(input));
+		if (result != null) {
+			return result;
+		}
+		return findByFullName(nameFullNames.get(input));
+	}
+
+	public AppxPackageInformation findByInstallLocation(SakerPath installlocation) {
+		return findByFullName(installLocationFullNames.get(installlocation));
+	}
+
+	public List<String> getApplicationIds(String packagefullname) {
+		return applicationIds.get(packagefullname);
+	}
+
+	public void putApplicationIds(String packagefullname, List<String> appids) {
+		applicationIds.put(packagefullname, ImmutableUtils.makeImmutableList(appids));
+	}
+
+	/**
+	 * Adds the package information to the index.
+	 * <p>
+	 * Packages without a full name, or without an <code>AppxManifest.xml</code> in their install location are not
+	 * indexed, as they couldn't be validated later.
+	 *
+	 * @param packageinfo
+	 *            The package information.
+	 */
+	public void add(AppxPackageInformation packageinfo) {
+		String fullname = packageinfo.getPackageFullName();
+		String installloc = packageinfo.getInstallLocation();
+		if (ObjectUtils.isNullOrEmpty(fullname) || ObjectUtils.isNullOrEmpty(installloc)) {
+			return;
+		}
+		SakerPath installpath;
+		BasicFileAttributes manifestattrs;
+		try {
+			installpath = SakerPath.valueOf(installloc);
+			manifestattrs = getManifestAttributes(installpath);
+		} catch (IllegalArgumentException | IOException e) {
+			//failed to parse the path, or the manifest is not accessible, don't index the package
+			return;
+		}
+		byFullName.put(fullname, new IndexedPackage(packageinfo, installpath, manifestattrs));
+		putFullName(nameFullNames, packageinfo.getName(), fullname);
+		putFullName(familyNameFullNames, packageinfo.getPackageFamilyName(), fullname);
+		putFullName(installLocationFullNames, installpath, fullname);
+	}
+
+	/**
+	 * Clears the index.
+	 * <p>
+	 * Should be called when the installed packages change.
+	 */
+	public void invalidate() {
+		byFullName.clear();
+		nameFullNames.clear();
+		familyNameFullNames.clear();
+		installLocationFullNames.clear();
+		applicationIds.clear();
+	}
+
+	private AppxPackageInformation findByFullName(String fullname) {
+		if (fullname == null || fullname == AMBIGUOUS_FULL_NAME) {
+			return null;
+		}
+		IndexedPackage indexed = byFullName.get(fullname);
+		if (indexed == null) {
+			return null;
+		}
+		if (!indexed.isUpToDate()) {
+			//the package was removed or updated outside of the build
+			byFullName.remove(fullname, indexed);
+			applicationIds.remove(fullname);
+			return null;
+		}
+		return indexed.packageInfo;
+	}
+
+	private static BasicFileAttributes getManifestAttributes(SakerPath installlocation) throws IOException {
+		return LocalFileProvider.getInstance().getFileAttributes(installlocation.resolve("AppxManifest.xml"));
+	}
+
+	private static <K> void putFullName(ConcurrentHashMap<K, String> map, K key, String fullname) {
+		if (key == null) {
+			return;
+		}
+		map.merge(key, fullname, (prev, fn) -> prev.equals(fn) ? prev : AMBIGUOUS_FULL_NAME);
+	}
+
+	private static final class IndexedPackage {
+		protected final AppxPackageInformation packageInfo;
+		protected final SakerPath installLocation;
+		protected final long manifestSize;
+		protected final Object manifestLastModified;
+
+		public IndexedPackage(AppxPackageInformation packageInfo, SakerPath installLocation,
+				BasicFileAttributes manifestattrs) {
+			this.packageInfo = packageInfo;
+			this.installLocation = installLocation;
+			this.manifestSize = manifestattrs.size();
+			this.manifestLastModified = manifestattrs.lastModifiedTime();
+		}
+
+		public boolean isUpToDate() {
+			BasicFileAttributes attrs;
+			try {
+				attrs = getManifestAttributes(installLocation);
+			} catch (IOException e) {
+				return false;
+			}
+			return manifestSize == attrs.size() && Objects.equals(manifestLastModified, attrs.lastModifiedTime());
+		}
+	}
+
+	private static final class IndexCacheKey implements CacheKey<InstalledAppxPackageIndex, InstalledAppxPackageIndex> {
+		public static final IndexCacheKey INSTANCE = new IndexCacheKey();
+
+		private static final long EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+		@Override
+		public InstalledAppxPackageIndex allocate() throws Exception {
+			return new InstalledAppxPackageIndex();
+		}
+
+		@Override
+		public InstalledAppxPackageIndex generate(InstalledAppxPackageIndex resource) throws Exception {
+			return resource;
+		}
+
+		@Override
+		public boolean validate(InstalledAppxPackageIndex data, InstalledAppxPackageIndex resource) {
+			return true;
+		}
+
+		@Override
+		public long getExpiry() {
+			return EXPIRY_MILLIS;
+		}
+
+		@Override
+		public void close(InstalledAppxPackageIndex data, InstalledAppxPackageIndex resource) throws Exception {
+		}
+
+		@Override
+		public int hashCode() {
+			return getClass().getName().hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof IndexCacheKey;
+		}
+	}
+}
@@ -25,6 +25,7 @@ import saker.sdk.support.api.SDKReference;
 import saker.sdk.support.api.SDKSupportUtils;
 import saker.sdk.support.api.exc.SDKPathNotFoundException;
 import saker.windows.api.SakerWindowsUtils;
+import saker.windows.impl.metrics.WorkerTaskMetrics;
 import saker.windows.main.appx.LaunchAppxTaskFactory;
 
 public abstract class LaunchAppxWorkerTaskFactoryBase
@@ -45,11 +46,21 @@ public abstract class LaunchAppxWorkerTaskFactoryBase
 
 	@Override
 	public Object run(TaskContext taskcontext) throws Exception {
+		WorkerTaskMetrics metrics = new WorkerTaskMetrics(this);
+		try {
+			return runWithMetrics(taskcontext, metrics);
+		} finally {
+			metrics.finish();
+		}
+	}
+
+	private Object runWithMetrics(TaskContext taskcontext, WorkerTaskMetrics metrics) throws Exception {
 		if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
 			BuildTrace.classifyTask(BuildTrace.CLASSIFICATION_META);
 		}
 		taskcontext.setStandardOutDisplayIdentifier(LaunchAppxTaskFactory.TASK_NAME);
 
+		metrics.startPhase("Resolve application");
 		NavigableMap<String, SDKReference> sdkrefs = SDKSupportUtils.resolveSDKReferences(taskcontext, sdks);
 		SDKReference appcertkitsdk = SDKSupportUtils.requireSDK(sdkrefs, SakerWindowsUtils.SDK_NAME_WINDOWSAPPCERTKIT);
 		SakerPath launcherpath = appcertkitsdk.getPath(SakerWindowsUtils.SDK_WINDOWSAPPCERTKIT_PATH_APPXLAUNCHER);
@@ -58,6 +69,7 @@ public abstract class LaunchAppxWorkerTaskFactoryBase
 		}
 		String entrypoint = getAppUserModelId(taskcontext, sdkrefs);
 
+		metrics.startPhase("Launch");
 		SakerLog.log().verbose().println("Launching: " + entrypoint);
 
 		SakerProcessBuilder pb = SakerProcessBuilder.create();
@@ -70,6 +82,8 @@ public abstract class LaunchAppxWorkerTaskFactoryBase
 			//the exit code is the process id
 			int exitcode = proc.waitFor();
 			if (exitcode == 0) {
+				//the cached package information may be out of date, e.g. if it was removed outside of the build
+				InstalledAppxPackageIndex.get(taskcontext.getExecutionContext().getEnvironment()).invalidate();
 				throw new IOException("Failed to start application (" + entrypoint + "). Exit code: " + exitcode);
 			}
 		} finally {
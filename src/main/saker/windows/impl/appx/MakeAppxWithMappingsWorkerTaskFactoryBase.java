@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Locale;
@@ -26,7 +27,6 @@ import saker.build.task.TaskContext;
 import saker.build.task.TaskExecutionUtilities;
 import saker.build.task.TaskFactory;
 import saker.build.task.utils.dependencies.EqualityTaskOutputChangeDetector;
-import saker.build.thirdparty.saker.util.ArrayUtils;
 import saker.build.thirdparty.saker.util.ImmutableUtils;
 import saker.build.thirdparty.saker.util.io.ByteArrayRegion;
 import saker.build.thirdparty.saker.util.io.SerialUtils;
@@ -35,10 +35,9 @@ import saker.process.api.CollectingProcessIOConsumer;
 import saker.process.api.SakerProcess;
 import saker.process.api.SakerProcessBuilder;
 import saker.sdk.support.api.SDKDescription;
-import saker.sdk.support.api.SDKReference;
 import saker.sdk.support.api.SDKSupportUtils;
-import saker.sdk.support.api.exc.SDKPathNotFoundException;
-import saker.windows.api.SakerWindowsUtils;
+import saker.windows.impl.metrics.WorkerTaskMetrics;
+import saker.windows.impl.sdk.SDKToolExecutablePathExecutionProperty;
 
 public abstract class MakeAppxWithMappingsWorkerTaskFactoryBase<T> implements TaskFactory<T>, Task<T>, Externalizable {
 	private static final long serialVersionUID = 1L;
@@ -54,7 +53,7 @@ public abstract class MakeAppxWithMappingsWorkerTaskFactoryBase<T> implements Ta
 	}
 
 	public MakeAppxWithMappingsWorkerTaskFactoryBase(NavigableMap<SakerPath, SakerPath> mappings) {
-		this.mappings = mappings;
+		this.mappings = PrefixSharingPathMap.create(mappings);
 	}
 
 	public void setSdks(NavigableMap<String, SDKDescription> sdks) {
@@ -63,6 +62,15 @@ public abstract class MakeAppxWithMappingsWorkerTaskFactoryBase<T> implements Ta
 
 	@Override
 	public T run(TaskContext taskcontext) throws Exception {
+		WorkerTaskMetrics metrics = new WorkerTaskMetrics(this);
+		try {
+			return runWithMetrics(taskcontext, metrics);
+		} finally {
+			metrics.finish();
+		}
+	}
+
+	private T runWithMetrics(TaskContext taskcontext, WorkerTaskMetrics metrics) throws Exception {
 		if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
 			BuildTrace.classifyTask(BuildTrace.CLASSIFICATION_WORKER);
 		}
@@ -72,6 +80,7 @@ public abstract class MakeAppxWithMappingsWorkerTaskFactoryBase<T> implements Ta
 		SakerDirectory outputdir = taskutils.resolveDirectoryAtRelativePathCreate(
 				SakerPathFiles.requireBuildDirectory(taskcontext), relativeoutputpath.getParent());
 
+		metrics.startPhase("Mirror inputs");
 		NavigableMap<SakerPath, SakerPath> mirroredmappings = new TreeMap<>();
 		NavigableMap<SakerPath, ContentDescriptor> inputcontents = new TreeMap<>();
 		//TODO this should be done more efficiently in bulk
@@ -82,11 +91,13 @@ public abstract class MakeAppxWithMappingsWorkerTaskFactoryBase<T> implements Ta
 				throw new FileNotFoundException(fpath.toString());
 			}
 			Path mirroredpath = taskcontext.mirror(f, DirectoryVisitPredicate.synchronizeNothing());
-			mirroredmappings.put(SakerPath.valueOf(mirroredpath), entry.getKey());
+			mirroredmappings.put(entry.getKey(), SakerPath.valueOf(mirroredpath));
+			metrics.addFiles(1);
 			inputcontents.put(fpath, f.getContentDescriptor());
 		}
 		taskutils.reportInputFileDependency(null, inputcontents);
 
+		metrics.startPhase("Write mappings");
 		String outputappxfilename = relativeoutputpath.getFileName();
 		MappingsSakerFile mappingsfile = new MappingsSakerFile(outputappxfilename + ".mappings",
 				new MappingsContentDescriptor(mirroredmappings));
@@ -95,11 +106,54 @@ public abstract class MakeAppxWithMappingsWorkerTaskFactoryBase<T> implements Ta
 
 		Path mappingsfilemirrorpath = taskcontext.mirror(mappingsfile);
 		Path outputfilepath = mappingsfilemirrorpath.resolveSibling(outputappxfilename);
+		metrics.addFiles(1);
+		metrics.addBytesWritten(Files.size(mappingsfilemirrorpath));
 
+		metrics.startPhase("Run makeappx");
 		SakerPath makeappxpath = MakeAppxWithMappingsWorkerTaskFactoryBase.getMakeAppxExecutablePath(taskcontext, sdks);
 
+		runMakeAppx(taskcontext, getCommand(mappingsfilemirrorpath, outputfilepath, makeappxpath));
+		metrics.addBytesWritten(Files.size(outputfilepath));
+
+		metrics.startPhase("Synchronize output");
+		metrics.addFiles(1);
+		taskutils.addSynchronizeInvalidatedProviderPathFileToDirectory(outputdir,
+				LocalFileProvider.getInstance().getPathKey(outputfilepath), outputappxfilename);
+		SakerFile outfile = outputdir.get(outputappxfilename);
+
+		SakerPath outputpath = outfile.getSakerPath();
+		taskcontext.reportOutputFileDependency(null, outputpath, outfile.getContentDescriptor());
+
+		T result = getResult(outputpath);
+		taskcontext.reportSelfTaskOutputChangeDetector(new EqualityTaskOutputChangeDetector(result));
+		return result;
+	}
+
+	protected abstract List<String> getCommand(Path mappingsfilemirrorpath, Path outputfilepath,
+			SakerPath makeappxpath);
+
+	protected abstract T getResult(SakerPath outputpath);
+
+	protected abstract SakerPath getRelativeOutputPath(TaskContext taskcontext);
+
+	@Override
+	public Task<? extends T> createTask(ExecutionContext executioncontext) {
+		return this;
+	}
+
+	/**
+	 * Runs makeappx with the given command, and displays its output if necessary.
+	 *
+	 * @param taskcontext
+	 *            The task context.
+	 * @param command
+	 *            The command to run, including the makeappx executable path.
+	 * @throws Exception
+	 *             If makeappx fails.
+	 */
+	public static void runMakeAppx(TaskContext taskcontext, List<String> command) throws Exception {
 		SakerProcessBuilder pb = SakerProcessBuilder.create();
-		pb.setCommand(getCommand(mappingsfilemirrorpath, outputfilepath, makeappxpath));
+		pb.setCommand(command);
 		pb.setStandardErrorMerge(true);
 		CollectingProcessIOConsumer outconsumer = new CollectingProcessIOConsumer();
 		pb.setStandardOutputConsumer(outconsumer);
@@ -131,117 +185,24 @@ public abstract class MakeAppxWithMappingsWorkerTaskFactoryBase<T> implements Ta
 						ByteArrayRegion.wrap(outputstr.replace("\r\r\n", "\r\n").getBytes(StandardCharsets.UTF_8)));
 			}
 		}
-
-		taskutils.addSynchronizeInvalidatedProviderPathFileToDirectory(outputdir,
-				LocalFileProvider.getInstance().getPathKey(outputfilepath), outputappxfilename);
-		SakerFile outfile = outputdir.get(outputappxfilename);
-
-		SakerPath outputpath = outfile.getSakerPath();
-		taskcontext.reportOutputFileDependency(null, outputpath, outfile.getContentDescriptor());
-
-		T result = getResult(outputpath);
-		taskcontext.reportSelfTaskOutputChangeDetector(new EqualityTaskOutputChangeDetector(result));
-		return result;
-	}
-
-	protected abstract List<String> getCommand(Path mappingsfilemirrorpath, Path outputfilepath,
-			SakerPath makeappxpath);
-
-	protected abstract T getResult(SakerPath outputpath);
-
-	protected abstract SakerPath getRelativeOutputPath(TaskContext taskcontext);
-
-	@Override
-	public Task<? extends T> createTask(ExecutionContext executioncontext) {
-		return this;
 	}
 
 	public static SakerPath getMakeAppxExecutablePath(TaskContext taskcontext,
 			NavigableMap<String, SDKDescription> sdks) throws Exception {
-		Throwable[] causes = {};
-		boolean haswk = sdks.containsKey(SakerWindowsUtils.SDK_NAME_WINDOWSKITS);
-		if (haswk) {
-			try {
-				SDKReference sdk = SDKSupportUtils.requireSDK(SDKSupportUtils.resolveSDKReferences(taskcontext, sdks),
-						SakerWindowsUtils.SDK_NAME_WINDOWSKITS);
-				return tryGetExecutablePathFromSDK(sdk, SakerWindowsUtils.SDK_WINDOWSKITS_PATH_MAKEAPPX_X86);
-			} catch (Exception e) {
-				causes = ArrayUtils.appended(causes, e);
-			}
-		}
-		boolean hasuap = sdks.containsKey(SakerWindowsUtils.SDK_NAME_WINDOWSUAP);
-		if (hasuap) {
-			try {
-				SDKReference sdk = SDKSupportUtils.requireSDK(SDKSupportUtils.resolveSDKReferences(taskcontext, sdks),
-						SakerWindowsUtils.SDK_NAME_WINDOWSUAP);
-				return tryGetExecutablePathFromSDK(sdk, SakerWindowsUtils.SDK_WINDOWSUAP_PATH_MAKEAPPX_X86);
-			} catch (Exception e) {
-				causes = ArrayUtils.appended(causes, e);
-			}
-		}
-		boolean hasappcertkit = sdks.containsKey(SakerWindowsUtils.SDK_NAME_WINDOWSAPPCERTKIT);
-		if (hasappcertkit) {
-			try {
-				SDKReference sdk = SDKSupportUtils.requireSDK(SDKSupportUtils.resolveSDKReferences(taskcontext, sdks),
-						SakerWindowsUtils.SDK_NAME_WINDOWSAPPCERTKIT);
-				return tryGetExecutablePathFromSDK(sdk, SakerWindowsUtils.SDK_WINDOWSAPPCERTKIT_PATH_MAKEAPPX);
-			} catch (Exception e) {
-				causes = ArrayUtils.appended(causes, e);
-			}
-		}
-		if (!haswk) {
-			try {
-				SDKReference sdk = SDKSupportUtils.resolveSDKReference(taskcontext,
-						SakerWindowsUtils.getDefaultWindowsKitsSDK());
-				return tryGetExecutablePathFromSDK(sdk, SakerWindowsUtils.SDK_WINDOWSKITS_PATH_MAKEAPPX_X86);
-			} catch (Exception e) {
-				causes = ArrayUtils.appended(causes, e);
-			}
-		}
-		if (!hasuap) {
-			try {
-				SDKReference sdk = SDKSupportUtils.resolveSDKReference(taskcontext,
-						SakerWindowsUtils.getDefaultWindowsUapSDK());
-				return tryGetExecutablePathFromSDK(sdk, SakerWindowsUtils.SDK_WINDOWSUAP_PATH_MAKEAPPX_X86);
-			} catch (Exception e) {
-				causes = ArrayUtils.appended(causes, e);
-			}
-		}
-		if (!hasappcertkit) {
-			try {
-				SDKReference sdk = SDKSupportUtils.resolveSDKReference(taskcontext,
-						SakerWindowsUtils.getDefaultWindowsAppCertKitSDK());
-				return tryGetExecutablePathFromSDK(sdk, SakerWindowsUtils.SDK_WINDOWSAPPCERTKIT_PATH_MAKEAPPX);
-			} catch (Exception e) {
-				causes = ArrayUtils.appended(causes, e);
-			}
-		}
-		SDKPathNotFoundException exc = new SDKPathNotFoundException("makeappx.exe not found in SDKs.");
-		for (Throwable c : causes) {
-			exc.addSuppressed(c);
-		}
-		throw exc;
-	}
-
-	private static SakerPath tryGetExecutablePathFromSDK(SDKReference sdk, String pathid)
-			throws Exception, IOException {
-		SakerPath makeappxpath = sdk.getPath(pathid);
-		if (makeappxpath != null && LocalFileProvider.getInstance().getFileAttributes(makeappxpath).isRegularFile()) {
-			return makeappxpath;
-		}
-		throw new SDKPathNotFoundException("Executable not found in SDK: " + sdk + " with path identifier: " + pathid);
+		return SDKToolExecutablePathExecutionProperty.getExecutablePath(taskcontext, sdks,
+				SDKToolExecutablePathExecutionProperty.Tool.MAKEAPPX);
 	}
 
 	@Override
 	public void writeExternal(ObjectOutput out) throws IOException {
 		SerialUtils.writeExternalMap(out, sdks);
-		SerialUtils.writeExternalMap(out, mappings);
+		out.writeObject(mappings);
 	}
 
 	@Override
 	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
 		sdks = SerialUtils.readExternalSortedImmutableNavigableMap(in, SDKSupportUtils.getSDKNameComparator());
-		mappings = SerialUtils.readExternalSortedImmutableNavigableMap(in);
+		mappings = SerialUtils.readExternalObject(in);
 	}
 
 	@Override
@@ -8,9 +8,14 @@ import java.util.NavigableMap;
 
 import saker.build.file.content.ContentDescriptor;
 import saker.build.file.path.SakerPath;
-import saker.build.thirdparty.saker.util.ObjectUtils;
 import saker.build.thirdparty.saker.util.io.SerialUtils;
 
+/**
+ * Content descriptor of a makeappx mappings file.
+ * <p>
+ * The mappings are keyed by the paths in the package, and the values are the local paths of the source files. The
+ * same source file may be mapped to multiple paths in the package.
+ */
 public class MappingsContentDescriptor implements ContentDescriptor, Externalizable {
 	private static final long serialVersionUID = 1L;
 
@@ -23,7 +28,7 @@ public class MappingsContentDescriptor implements ContentDescriptor, Externaliza
 	}
 
 	public MappingsContentDescriptor(NavigableMap<SakerPath, SakerPath> mappings) {
-		this.mappings = mappings;
+		this.mappings = PrefixSharingPathMap.create(mappings);
 	}
 
 	public NavigableMap<SakerPath, SakerPath> getMappings() {
@@ -32,12 +37,12 @@ public class MappingsContentDescriptor implements ContentDescriptor, Externaliza
 
 	@Override
 	public void writeExternal(ObjectOutput out) throws IOException {
-		SerialUtils.writeExternalMap(out, mappings);
+		out.writeObject(mappings);
 	}
 
 	@Override
 	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-		mappings = SerialUtils.readExternalSortedImmutableNavigableMap(in);
+		mappings = SerialUtils.readExternalObject(in);
 	}
 
 	@Override
@@ -57,9 +62,11 @@ public class MappingsContentDescriptor implements ContentDescriptor, Externaliza
 		if (getClass() != obj.getClass())
 			return false;
 		MappingsContentDescriptor other = (MappingsContentDescriptor) obj;
-		if (!ObjectUtils.mapOrderedEquals(this.mappings, other.mappings)) {
+		if (mappings == null) {
+			if (other.mappings != null)
+				return false;
+		} else if (!mappings.equals(other.mappings))
 			return false;
-		}
 		return true;
 	}
 
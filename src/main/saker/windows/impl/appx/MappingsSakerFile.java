@@ -33,11 +33,12 @@ public class MappingsSakerFile extends SakerFileBase {
 		os.write(BRACKET_FILES_BYTES);
 		os.write(ls);
 
+		//the lines are in "<source path>" "<package path>" format
 		for (Entry<SakerPath, SakerPath> entry : contents.getMappings().entrySet()) {
 			os.write('"');
-			os.write(entry.getKey().toString().getBytes(StandardCharsets.UTF_8));
-			os.write(QUOT_TAB_QUOT_BYTES);
 			os.write(entry.getValue().toString().getBytes(StandardCharsets.UTF_8));
+			os.write(QUOT_TAB_QUOT_BYTES);
+			os.write(entry.getKey().toString().getBytes(StandardCharsets.UTF_8));
 			os.write('"');
 			os.write(ls);
 		}
@@ -0,0 +1,1129 @@
+package saker.windows.impl.appx;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+import saker.build.file.path.SakerPath;
+import saker.build.thirdparty.saker.util.ImmutableUtils;
+
+/**
+ * Immutable {@link NavigableMap} of path mappings that stores the keys and values in a shared trie of path names.
+ * <p>
+ * The mappings used for packaging usually contain paths with long common parent directories. Instead of storing a
+ * {@link SakerPath} instance for each key and value, the map stores each distinct path name once per parent, and
+ * the entries only reference the trie nodes. The {@link SakerPath} instances are created on access. The lookups
+ * compare the argument path with the trie nodes name by name, and the iterators create the paths by resolving the
+ * last names against the parent paths of the previous entry, so the paths are not created from strings.
+ * <p>
+ * The map uses the natural ordering of {@link SakerPath}, and behaves the same way as an unmodifiable
+ * {@link java.util.TreeMap} with the same contents. The views of the map are also backed by the same trie.
+ * <p>
+ * The hash code and a SHA-256 fingerprint of the entries are cached. Two prefix sharing maps are compared by their
+ * fingerprints, so the equality checks don't iterate over the entries after the first time.
+ */
+public final class PrefixSharingPathMap extends AbstractMap<SakerPath, SakerPath>
+		implements NavigableMap<SakerPath, SakerPath>, Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	private static final String FINGERPRINT_ALGORITHM = "SHA-256";
+
+	private PathTrie trie;
+	/**
+	 * The start index of the view in the trie entries. (inclusive)
+	 */
+	private int start;
+	/**
+	 * The end index of the view in the trie entries. (exclusive)
+	 */
+	private int end;
+	private boolean descending;
+
+	/**
+	 * The lazily computed {@link Map#hashCode()}, or 0 if not yet computed.
+	 * <p>
+	 * Racy single-check caching, same as {@link String#hashCode()}. The value is an <code>int</code>, so it can't be
+	 * observed partially written.
+	 */
+	private transient int hashCode;
+	/**
+	 * The lazily computed SHA-256 hash of the serialized entries.
+	 * <p>
+	 * Volatile, so the contents of the array are visible to the other threads that read the reference.
+	 */
+	private transient volatile byte[] fingerprint;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public PrefixSharingPathMap() {
+	}
+
+	private PrefixSharingPathMap(PathTrie trie, int start, int end, boolean descending) {
+		this.trie = trie;
+		this.start = start;
+		this.end = end;
+		this.descending = descending;
+	}
+
+	/**
+	 * Creates a new prefix sharing map with the contents of the argument map.
+	 * <p>
+	 * If the argument is already a prefix sharing map, it is returned without copying.
+	 *
+	 * @param map
+	 *            The map to copy. May be <code>null</code>.
+	 * @return The created map or <code>null</code> if the argument is <code>null</code>.
+	 * @throws NullPointerException
+	 *             If the argument contains <code>null</code> keys or values.
+	 */
+	public static PrefixSharingPathMap create(Map<? extends SakerPath, ? extends SakerPath> map)
+			throws NullPointerException {
+		if (map == null) {
+			return null;
+		}
+		if (map instanceof PrefixSharingPathMap) {
+			return (PrefixSharingPathMap) map;
+		}
+		int size = map.size();
+		@SuppressWarnings("unchecked")
+		Entry<? extends SakerPath, ? extends SakerPath>[] entries = map.entrySet().toArray(new Entry[size]);
+		if (!(map instanceof SortedMap) || ((SortedMap<?, ?>) map).comparator() != null) {
+			Arrays.sort(entries, (l, r) -> l.getKey().compareTo(r.getKey()));
+		}
+		TrieBuilder builder = new TrieBuilder(size);
+		int[] keys = new int[size];
+		int[] values = new int[size];
+		for (int i = 0; i < size; i++) {
+			Entry<? extends SakerPath, ? extends SakerPath> entry = entries[i];
+			keys[i] = builder.add(Objects.requireNonNull(entry.getKey(), "key"));
+			values[i] = builder.add(Objects.requireNonNull(entry.getValue(), "value"));
+		}
+		PathTrie trie = builder.build(keys, values);
+		return new PrefixSharingPathMap(trie, 0, size, false);
+	}
+
+	@Override
+	public int size() {
+		return end - start;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return start == end;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	@Override
+	public SakerPath get(Object key) {
+		int idx = indexOf(key);
+		if (idx < 0) {
+			return null;
+		}
+		return trie.getValue(idx);
+	}
+
+	@Override
+	public Comparator<? super SakerPath> comparator() {
+		if (descending) {
+			return Collections.reverseOrder();
+		}
+		return null;
+	}
+
+	@Override
+	public SakerPath firstKey() {
+		return requireKey(firstEntry());
+	}
+
+	@Override
+	public SakerPath lastKey() {
+		return requireKey(lastEntry());
+	}
+
+	@Override
+	public Entry<SakerPath, SakerPath> firstEntry() {
+		if (isEmpty()) {
+			return null;
+		}
+		return entryAt(descending ? end - 1 : start);
+	}
+
+	@Override
+	public Entry<SakerPath, SakerPath> lastEntry() {
+		if (isEmpty()) {
+			return null;
+		}
+		return entryAt(descending ? start : end - 1);
+	}
+
+	@Override
+	public Entry<SakerPath, SakerPath> lowerEntry(SakerPath key) {
+		return entryAtChecked(descending ? ceilingIndex(key, false) : floorIndex(key, false));
+	}
+
+	@Override
+	public SakerPath lowerKey(SakerPath key) {
+		return keyOf(lowerEntry(key));
+	}
+
+	@Override
+	public Entry<SakerPath, SakerPath> floorEntry(SakerPath key) {
+		return entryAtChecked(descending ? ceilingIndex(key, true) : floorIndex(key, true));
+	}
+
+	@Override
+	public SakerPath floorKey(SakerPath key) {
+		return keyOf(floorEntry(key));
+	}
+
+	@Override
+	public Entry<SakerPath, SakerPath> ceilingEntry(SakerPath key) {
+		return entryAtChecked(descending ? floorIndex(key, true) : ceilingIndex(key, true));
+	}
+
+	@Override
+	public SakerPath ceilingKey(SakerPath key) {
+		return keyOf(ceilingEntry(key));
+	}
+
+	@Override
+	public Entry<SakerPath, SakerPath> higherEntry(SakerPath key) {
+		return entryAtChecked(descending ? floorIndex(key, false) : ceilingIndex(key, false));
+	}
+
+	@Override
+	public SakerPath higherKey(SakerPath key) {
+		return keyOf(higherEntry(key));
+	}
+
+	@Override
+	public Entry<SakerPath, SakerPath> pollFirstEntry() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Entry<SakerPath, SakerPath> pollLastEntry() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public NavigableMap<SakerPath, SakerPath> descendingMap() {
+		return new PrefixSharingPathMap(trie, start, end, !descending);
+	}
+
+	@Override
+	public NavigableSet<SakerPath> navigableKeySet() {
+		return new KeySet(this);
+	}
+
+	@Override
+	public Set<SakerPath> keySet() {
+		return navigableKeySet();
+	}
+
+	@Override
+	public NavigableSet<SakerPath> descendingKeySet() {
+		return descendingMap().navigableKeySet();
+	}
+
+	@Override
+	public NavigableMap<SakerPath, SakerPath> subMap(SakerPath fromKey, boolean fromInclusive, SakerPath toKey,
+			boolean toInclusive) {
+		int cmp = fromKey.compareTo(toKey);
+		if (descending ? cmp < 0 : cmp > 0) {
+			throw new IllegalArgumentException("fromKey > toKey");
+		}
+		if (descending) {
+			return subView(ceilingIndex(toKey, toInclusive), floorIndex(fromKey, fromInclusive) + 1);
+		}
+		return subView(ceilingIndex(fromKey, fromInclusive), floorIndex(toKey, toInclusive) + 1);
+	}
+
+	@Override
+	public NavigableMap<SakerPath, SakerPath> headMap(SakerPath toKey, boolean inclusive) {
+		if (descending) {
+			return subView(ceilingIndex(toKey, inclusive), end);
+		}
+		return subView(start, floorIndex(toKey, inclusive) + 1);
+	}
+
+	@Override
+	public NavigableMap<SakerPath, SakerPath> tailMap(SakerPath fromKey, boolean inclusive) {
+		if (descending) {
+			return subView(start, floorIndex(fromKey, inclusive) + 1);
+		}
+		return subView(ceilingIndex(fromKey, inclusive), end);
+	}
+
+	@Override
+	public SortedMap<SakerPath, SakerPath> subMap(SakerPath fromKey, SakerPath toKey) {
+		return subMap(fromKey, true, toKey, false);
+	}
+
+	@Override
+	public SortedMap<SakerPath, SakerPath> headMap(SakerPath toKey) {
+		return headMap(toKey, false);
+	}
+
+	@Override
+	public SortedMap<SakerPath, SakerPath> tailMap(SakerPath fromKey) {
+		return tailMap(fromKey, true);
+	}
+
+	/**
+	 * Gets the SHA-256 fingerprint of the entries in this map.
+	 * <p>
+	 * The fingerprint is computed over the serialized form of the entries in ascending order. It is the same for maps
+	 * with equal contents, and is computed only once.
+	 *
+	 * @return The fingerprint. The array shouldn't be modified.
+	 */
+	public byte[] getFingerprint() {
+		byte[] result = this.fingerprint;
+		if (result == null) {
+			MessageDigest digest;
+			try {
+				digest = MessageDigest.getInstance(FINGERPRINT_ALGORITHM);
+			} catch (NoSuchAlgorithmException e) {
+				throw new AssertionError(FINGERPRINT_ALGORITHM + " algorithm not found.", e);
+			}
+			try (ObjectOutputStream out = new ObjectOutputStream(new DigestingOutputStream(digest))) {
+				trie.writeExternal(out, start, end);
+			} catch (IOException e) {
+				//shouldn't happen, as the digest doesn't throw
+				throw new UncheckedIOException(e);
+			}
+			result = digest.digest();
+			this.fingerprint = result;
+		}
+		return result;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = this.hashCode;
+		if (result == 0) {
+			result = super.hashCode();
+			this.hashCode = result;
+		}
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o instanceof PrefixSharingPathMap) {
+			PrefixSharingPathMap other = (PrefixSharingPathMap) o;
+			if (this.size() != other.size()) {
+				return false;
+			}
+			if (this.hashCode != 0 && other.hashCode != 0 && this.hashCode != other.hashCode) {
+				return false;
+			}
+			return Arrays.equals(this.getFingerprint(), other.getFingerprint());
+		}
+		return super.equals(o);
+	}
+
+	@Override
+	public Set<Entry<SakerPath, SakerPath>> entrySet() {
+		return new AbstractSet<Entry<SakerPath, SakerPath>>() {
+			@Override
+			public Iterator<Entry<SakerPath, SakerPath>> iterator() {
+				return new EntryIterator();
+			}
+
+			@Override
+			public int size() {
+				return PrefixSharingPathMap.this.size();
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				if (!(o instanceof Entry)) {
+					return false;
+				}
+				Entry<?, ?> e = (Entry<?, ?>) o;
+				int idx = indexOf(e.getKey());
+				return idx >= 0 && trie.getValue(idx).equals(e.getValue());
+			}
+		};
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		trie.writeExternal(out, start, end);
+		out.writeBoolean(descending);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		trie = PathTrie.readExternal(in);
+		start = 0;
+		end = trie.size();
+		descending = in.readBoolean();
+	}
+
+	private PrefixSharingPathMap subView(int from, int to) {
+		if (to < from) {
+			to = from;
+		}
+		return new PrefixSharingPathMap(trie, from, to, descending);
+	}
+
+	private Entry<SakerPath, SakerPath> entryAt(int idx) {
+		return ImmutableUtils.makeImmutableMapEntry(trie.getKey(idx), trie.getValue(idx));
+	}
+
+	private Entry<SakerPath, SakerPath> entryAtChecked(int idx) {
+		if (idx < start || idx >= end) {
+			return null;
+		}
+		return entryAt(idx);
+	}
+
+	/**
+	 * Searches for the key in the range of this view in ascending order.
+	 *
+	 * @return The index of the key, or <code>(-(insertion point) - 1)</code>, the same way as
+	 *             {@link Arrays#binarySearch(Object[], Object)}.
+	 */
+	private int indexOf(Object key) {
+		SakerPath path = (SakerPath) Objects.requireNonNull(key, "key");
+		int low = start;
+		int high = end - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = trie.compareKey(mid, path);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Gets the index of the least key that is greater (or equal) than the argument in ascending order.
+	 */
+	private int ceilingIndex(SakerPath key, boolean inclusive) {
+		int idx = indexOf(key);
+		if (idx >= 0) {
+			return inclusive ? idx : idx + 1;
+		}
+		return -(idx + 1);
+	}
+
+	/**
+	 * Gets the index of the greatest key that is less (or equal) than the argument in ascending order.
+	 */
+	private int floorIndex(SakerPath key, boolean inclusive) {
+		int idx = indexOf(key);
+		if (idx >= 0) {
+			return inclusive ? idx : idx - 1;
+		}
+		return -(idx + 1) - 1;
+	}
+
+	private static SakerPath keyOf(Entry<SakerPath, SakerPath> entry) {
+		return entry == null ? null : entry.getKey();
+	}
+
+	private static SakerPath requireKey(Entry<SakerPath, SakerPath> entry) {
+		if (entry == null) {
+			throw new NoSuchElementException();
+		}
+		return entry.getKey();
+	}
+
+	private static final class DigestingOutputStream extends OutputStream {
+		private final MessageDigest digest;
+
+		public DigestingOutputStream(MessageDigest digest) {
+			this.digest = digest;
+		}
+
+		@Override
+		public void write(int b) {
+			digest.update((byte) b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			digest.update(b, off, len);
+		}
+	}
+
+	private final class EntryIterator implements Iterator<Entry<SakerPath, SakerPath>> {
+		private final PathTrie.PathCursor keyCursor = trie.new PathCursor();
+		private final PathTrie.PathCursor valueCursor = trie.new PathCursor();
+		private int position = 0;
+
+		@Override
+		public boolean hasNext() {
+			return position < end - start;
+		}
+
+		@Override
+		public Entry<SakerPath, SakerPath> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			int idx = descending ? end - 1 - position : start + position;
+			++position;
+			return ImmutableUtils.makeImmutableMapEntry(keyCursor.getKey(idx), valueCursor.getValue(idx));
+		}
+	}
+
+	private static final class KeySet extends AbstractSet<SakerPath> implements NavigableSet<SakerPath> {
+		private final NavigableMap<SakerPath, SakerPath> map;
+
+		public KeySet(NavigableMap<SakerPath, SakerPath> map) {
+			this.map = map;
+		}
+
+		@Override
+		public Iterator<SakerPath> iterator() {
+			Iterator<Entry<SakerPath, SakerPath>> it = map.entrySet().iterator();
+			return new Iterator<SakerPath>() {
+				@Override
+				public boolean hasNext() {
+					return it.hasNext();
+				}
+
+				@Override
+				public SakerPath next() {
+					return it.next().getKey();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return map.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return map.containsKey(o);
+		}
+
+		@Override
+		public Comparator<? super SakerPath> comparator() {
+			return map.comparator();
+		}
+
+		@Override
+		public SakerPath first() {
+			return map.firstKey();
+		}
+
+		@Override
+		public SakerPath last() {
+			return map.lastKey();
+		}
+
+		@Override
+		public SakerPath lower(SakerPath e) {
+			return map.lowerKey(e);
+		}
+
+		@Override
+		public SakerPath floor(SakerPath e) {
+			return map.floorKey(e);
+		}
+
+		@Override
+		public SakerPath ceiling(SakerPath e) {
+			return map.ceilingKey(e);
+		}
+
+		@Override
+		public SakerPath higher(SakerPath e) {
+			return map.higherKey(e);
+		}
+
+		@Override
+		public SakerPath pollFirst() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public SakerPath pollLast() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public NavigableSet<SakerPath> descendingSet() {
+			return new KeySet(map.descendingMap());
+		}
+
+		@Override
+		public Iterator<SakerPath> descendingIterator() {
+			return descendingSet().iterator();
+		}
+
+		@Override
+		public NavigableSet<SakerPath> subSet(SakerPath fromElement, boolean fromInclusive, SakerPath toElement,
+				boolean toInclusive) {
+			return new KeySet(map.subMap(fromElement, fromInclusive, toElement, toInclusive));
+		}
+
+		@Override
+		public NavigableSet<SakerPath> headSet(SakerPath toElement, boolean inclusive) {
+			return new KeySet(map.headMap(toElement, inclusive));
+		}
+
+		@Override
+		public NavigableSet<SakerPath> tailSet(SakerPath fromElement, boolean inclusive) {
+			return new KeySet(map.tailMap(fromElement, inclusive));
+		}
+
+		@Override
+		public SortedSet<SakerPath> subSet(SakerPath fromElement, SakerPath toElement) {
+			return subSet(fromElement, true, toElement, false);
+		}
+
+		@Override
+		public SortedSet<SakerPath> headSet(SakerPath toElement) {
+			return headSet(toElement, false);
+		}
+
+		@Override
+		public SortedSet<SakerPath> tailSet(SakerPath fromElement) {
+			return tailSet(fromElement, true);
+		}
+	}
+
+	/**
+	 * The shared storage of the map and its views.
+	 * <p>
+	 * Each node has a parent node and a name. The nodes without a parent are the path roots, their names are the
+	 * {@linkplain SakerPath#getRoot() roots}, or <code>null</code> for relative paths.
+	 */
+	private static final class PathTrie {
+		private static final int NO_PARENT = -1;
+
+		private static final int FORMAT_EXPLICIT = 0;
+		/**
+		 * The values are the keys resolved against a common base path.
+		 */
+		private static final int FORMAT_VALUES_BASED = 1;
+		/**
+		 * The keys are the values resolved against a common base path.
+		 */
+		private static final int FORMAT_KEYS_BASED = 2;
+
+		private final int[] nodeParents;
+		private final String[] nodeNames;
+		private final int[] keyNodes;
+		private final int[] valueNodes;
+
+		PathTrie(int[] nodeParents, String[] nodeNames, int[] keyNodes, int[] valueNodes) {
+			this.nodeParents = nodeParents;
+			this.nodeNames = nodeNames;
+			this.keyNodes = keyNodes;
+			this.valueNodes = valueNodes;
+		}
+
+		public SakerPath getKey(int idx) {
+			return getPath(keyNodes[idx]);
+		}
+
+		public SakerPath getValue(int idx) {
+			return getPath(valueNodes[idx]);
+		}
+
+		/**
+		 * Compares the key at the given index to the argument, the same way as {@link SakerPath#compareTo(SakerPath)}.
+		 * <p>
+		 * The path of the key is not created, the names of the nodes are compared directly.
+		 */
+		public int compareKey(int idx, SakerPath path) {
+			int node = keyNodes[idx];
+			int depth = getDepth(node);
+			int namecount = path.getNameCount();
+			//the nodes are visited towards the root, so the last difference is the first differing name
+			int namecmp = 0;
+			int n = node;
+			for (int i = depth - 1; i >= 0; --i) {
+				if (i < namecount) {
+					String name = nodeNames[n];
+					String pathname = path.getName(i);
+					if (name != pathname) {
+						int cmp = name.compareTo(pathname);
+						if (cmp != 0) {
+							namecmp = cmp;
+						}
+					}
+				}
+				n = nodeParents[n];
+			}
+			int rootcmp = compareRoots(nodeNames[n], path.getRoot());
+			if (rootcmp != 0) {
+				return rootcmp;
+			}
+			if (namecmp != 0) {
+				return namecmp;
+			}
+			return Integer.compare(depth, namecount);
+		}
+
+		/**
+		 * Gets the number of names in the path of the node.
+		 */
+		private int getDepth(int node) {
+			int depth = 0;
+			for (int n = nodeParents[node]; n != NO_PARENT; n = nodeParents[n]) {
+				++depth;
+			}
+			return depth;
+		}
+
+		private static int compareRoots(String l, String r) {
+			//relative paths are ordered first
+			if (l == null) {
+				return r == null ? 0 : -1;
+			}
+			if (r == null) {
+				return 1;
+			}
+			return l.compareTo(r);
+		}
+
+		private static SakerPath getRootPath(String root) {
+			if (root == null) {
+				return SakerPath.EMPTY;
+			}
+			return SakerPath.valueOf("/".equals(root) ? root : root + "/");
+		}
+
+		/**
+		 * Creates the path of the node for random access. The iterators use {@link PathCursor} instead.
+		 */
+		private SakerPath getPath(int node) {
+			int depth = getDepth(node);
+			String[] names = new String[depth];
+			int n = node;
+			while (depth-- > 0) {
+				names[depth] = nodeNames[n];
+				n = nodeParents[n];
+			}
+			String root = nodeNames[n];
+			StringBuilder sb = new StringBuilder();
+			if (root != null) {
+				sb.append(root);
+				if (!"/".equals(root)) {
+					sb.append('/');
+				}
+			}
+			for (int i = 0; i < names.length; i++) {
+				if (i > 0) {
+					sb.append('/');
+				}
+				sb.append(names[i]);
+			}
+			return SakerPath.valueOf(sb.toString());
+		}
+
+		public int size() {
+			return keyNodes.length;
+		}
+
+		/**
+		 * Creates the paths of the nodes for sequential access.
+		 * <p>
+		 * The cursor keeps the paths of the parent nodes of the last created path. Subsequent entries usually share
+		 * most of their parent directories, so creating the next path only requires resolving its last few names
+		 * against an already created parent path.
+		 */
+		public final class PathCursor {
+			private int[] chainNodes = new int[16];
+			private SakerPath[] chainPaths = new SakerPath[16];
+			/**
+			 * The number of valid elements in the chain arrays. The element at a given index is the node and path
+			 * with that many names.
+			 */
+			private int chainLength = 0;
+
+			public SakerPath getKey(int idx) {
+				return get(keyNodes[idx]);
+			}
+
+			public SakerPath getValue(int idx) {
+				return get(valueNodes[idx]);
+			}
+
+			private SakerPath get(int node) {
+				int depth = getDepth(node);
+				if (depth >= chainNodes.length) {
+					int ncap = Math.max(depth + 1, chainNodes.length * 2);
+					chainNodes = Arrays.copyOf(chainNodes, ncap);
+					chainPaths = Arrays.copyOf(chainPaths, ncap);
+				}
+				//replace the nodes in the chain until the deepest common parent node is found
+				int common = depth;
+				for (int n = node; common >= 0; --common, n = nodeParents[n]) {
+					if (common < chainLength && chainNodes[common] == n) {
+						break;
+					}
+					chainNodes[common] = n;
+				}
+				for (int i = common + 1; i <= depth; i++) {
+					String name = nodeNames[chainNodes[i]];
+					chainPaths[i] = i == 0 ? getRootPath(name) : chainPaths[i - 1].resolve(name);
+				}
+				chainLength = depth + 1;
+				return chainPaths[depth];
+			}
+		}
+
+		/**
+		 * Writes the entries in the given index range.
+		 * <p>
+		 * The path names are written to a string table first, and the paths are written as string table indexes.
+		 * Each path only contains the names that differ from the previous path. If all values are the same base
+		 * path resolved with the corresponding relative keys (or the other way around), then the base path is
+		 * written only once instead of the resolved paths.
+		 */
+		public void writeExternal(ObjectOutput out, int start, int end) throws IOException {
+			int size = end - start;
+			int mode = FORMAT_EXPLICIT;
+			int base = findBase(keyNodes, valueNodes, start, end);
+			if (base != NO_PARENT) {
+				mode = FORMAT_VALUES_BASED;
+			} else {
+				base = findBase(valueNodes, keyNodes, start, end);
+				if (base != NO_PARENT) {
+					mode = FORMAT_KEYS_BASED;
+				}
+			}
+
+			Map<String, Integer> stringindexes = new HashMap<>();
+			List<String> strings = new ArrayList<>();
+			//the relative root is always at index 0
+			stringindexes.put(null, 0);
+			strings.add(null);
+
+			int[][] keycomponents = mode == FORMAT_KEYS_BASED ? null : new int[size][];
+			int[][] valuecomponents = mode == FORMAT_VALUES_BASED ? null : new int[size][];
+			for (int i = 0; i < size; i++) {
+				if (keycomponents != null) {
+					keycomponents[i] = getComponents(keyNodes[start + i], stringindexes, strings);
+				}
+				if (valuecomponents != null) {
+					valuecomponents[i] = getComponents(valueNodes[start + i], stringindexes, strings);
+				}
+			}
+			int[][] basecomponents = null;
+			if (mode != FORMAT_EXPLICIT) {
+				basecomponents = new int[][] { getComponents(base, stringindexes, strings) };
+			}
+
+			int stringcount = strings.size();
+			writeVarInt(out, stringcount);
+			for (int i = 1; i < stringcount; i++) {
+				out.writeUTF(strings.get(i));
+			}
+			writeVarInt(out, size);
+			out.writeByte(mode);
+			switch (mode) {
+				case FORMAT_VALUES_BASED: {
+					writeComponents(out, keycomponents);
+					writeComponents(out, basecomponents);
+					break;
+				}
+				case FORMAT_KEYS_BASED: {
+					writeComponents(out, valuecomponents);
+					writeComponents(out, basecomponents);
+					break;
+				}
+				default: {
+					writeComponents(out, keycomponents);
+					writeComponents(out, valuecomponents);
+					break;
+				}
+			}
+		}
+
+		public static PathTrie readExternal(ObjectInput in) throws IOException {
+			int stringcount = readVarInt(in);
+			String[] strings = new String[stringcount];
+			for (int i = 1; i < stringcount; i++) {
+				strings[i] = in.readUTF();
+			}
+			int size = readVarInt(in);
+			int mode = in.readByte();
+			TrieBuilder builder = new TrieBuilder(size);
+			int[] keys;
+			int[] values;
+			switch (mode) {
+				case FORMAT_EXPLICIT: {
+					keys = readComponents(in, size, strings, builder);
+					values = readComponents(in, size, strings, builder);
+					break;
+				}
+				case FORMAT_VALUES_BASED: {
+					keys = readComponents(in, size, strings, builder);
+					int base = readComponents(in, 1, strings, builder)[0];
+					values = new int[size];
+					for (int i = 0; i < size; i++) {
+						values[i] = builder.resolve(base, keys[i]);
+					}
+					break;
+				}
+				case FORMAT_KEYS_BASED: {
+					values = readComponents(in, size, strings, builder);
+					int base = readComponents(in, 1, strings, builder)[0];
+					keys = new int[size];
+					for (int i = 0; i < size; i++) {
+						keys[i] = builder.resolve(base, values[i]);
+					}
+					break;
+				}
+				default: {
+					throw new InvalidObjectException("Unknown path map format: " + mode);
+				}
+			}
+			return builder.build(keys, values);
+		}
+
+		/**
+		 * Finds the node that the relative paths of the first nodes need to be resolved against to get the second
+		 * nodes.
+		 *
+		 * @return The base node or {@link #NO_PARENT} if there's none.
+		 */
+		private int findBase(int[] relativenodes, int[] resolvednodes, int start, int end) {
+			int base = NO_PARENT;
+			for (int i = start; i < end; i++) {
+				int r = relativenodes[i];
+				int n = resolvednodes[i];
+				while (nodeParents[r] != NO_PARENT) {
+					if (nodeParents[n] == NO_PARENT || !nodeNames[r].equals(nodeNames[n])) {
+						return NO_PARENT;
+					}
+					r = nodeParents[r];
+					n = nodeParents[n];
+				}
+				if (nodeNames[r] != null) {
+					//not relative
+					return NO_PARENT;
+				}
+				if (base == NO_PARENT) {
+					base = n;
+				} else if (base != n) {
+					return NO_PARENT;
+				}
+			}
+			return base;
+		}
+
+		/**
+		 * Gets the root and the names of the node path as string table indexes.
+		 */
+		private int[] getComponents(int node, Map<String, Integer> stringindexes, List<String> strings) {
+			int count = 1;
+			for (int n = node; nodeParents[n] != NO_PARENT; n = nodeParents[n]) {
+				++count;
+			}
+			int[] result = new int[count];
+			for (int n = node; count-- > 0; n = nodeParents[n]) {
+				String name = nodeNames[n];
+				Integer idx = stringindexes.get(name);
+				if (idx == null) {
+					idx = strings.size();
+					strings.add(name);
+					stringindexes.put(name, idx);
+				}
+				result[count] = idx;
+			}
+			return result;
+		}
+
+		private static void writeComponents(ObjectOutput out, int[][] paths) throws IOException {
+			int[] prev = {};
+			for (int[] comps : paths) {
+				int common = 0;
+				int maxcommon = Math.min(prev.length, comps.length);
+				while (common < maxcommon && prev[common] == comps[common]) {
+					++common;
+				}
+				writeVarInt(out, common);
+				writeVarInt(out, comps.length - common);
+				for (int i = common; i < comps.length; i++) {
+					writeVarInt(out, comps[i]);
+				}
+				prev = comps;
+			}
+		}
+
+		private static int[] readComponents(ObjectInput in, int count, String[] strings, TrieBuilder builder)
+				throws IOException {
+			int[] result = new int[count];
+			//the nodes of the previous path at each depth
+			int[] pathnodes = new int[16];
+			for (int i = 0; i < count; i++) {
+				int common = readVarInt(in);
+				int len = common + readVarInt(in);
+				if (common < 0 || len <= 0) {
+					throw new InvalidObjectException("Invalid path encoding.");
+				}
+				if (len > pathnodes.length) {
+					pathnodes = Arrays.copyOf(pathnodes, Math.max(len, pathnodes.length * 2));
+				}
+				for (int j = common; j < len; j++) {
+					String name = strings[readVarInt(in)];
+					pathnodes[j] = builder.getNode(j == 0 ? NO_PARENT : pathnodes[j - 1], name);
+				}
+				result[i] = pathnodes[len - 1];
+			}
+			return result;
+		}
+
+		/**
+		 * Writes a non-negative integer using 7 bits per byte, as most of the written numbers are small.
+		 */
+		private static void writeVarInt(ObjectOutput out, int value) throws IOException {
+			while ((value & ~0x7F) != 0) {
+				out.writeByte((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			out.writeByte(value);
+		}
+
+		private static int readVarInt(ObjectInput in) throws IOException {
+			int result = 0;
+			for (int shift = 0; shift < 32; shift += 7) {
+				int b = in.readUnsignedByte();
+				result |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return result;
+				}
+			}
+			throw new InvalidObjectException("Malformed integer.");
+		}
+	}
+
+	private static final class TrieBuilder {
+		private int[] parents;
+		private String[] names;
+		private int nodeCount = 0;
+
+		private final Map<NodeKey, Integer> nodes = new HashMap<>();
+		private final Map<String, String> internedNames = new HashMap<>();
+
+		public TrieBuilder(int sizehint) {
+			int cap = Math.max(sizehint * 2, 16);
+			this.parents = new int[cap];
+			this.names = new String[cap];
+		}
+
+		public int add(SakerPath path) {
+			int node = getNode(PathTrie.NO_PARENT, path.getRoot());
+			int namecount = path.getNameCount();
+			for (int i = 0; i < namecount; i++) {
+				node = getNode(node, path.getName(i));
+			}
+			return node;
+		}
+
+		/**
+		 * Gets the node of the path of the relative node resolved against the base node.
+		 */
+		public int resolve(int base, int relative) {
+			if (parents[relative] == PathTrie.NO_PARENT) {
+				return base;
+			}
+			return getNode(resolve(base, parents[relative]), names[relative]);
+		}
+
+		public PathTrie build(int[] keys, int[] values) {
+			return new PathTrie(Arrays.copyOf(parents, nodeCount), Arrays.copyOf(names, nodeCount), keys, values);
+		}
+
+		public int getNode(int parent, String name) {
+			NodeKey key = new NodeKey(parent, name);
+			Integer present = nodes.get(key);
+			if (present != null) {
+				return present;
+			}
+			if (nodeCount == parents.length) {
+				parents = Arrays.copyOf(parents, nodeCount * 2);
+				names = Arrays.copyOf(names, nodeCount * 2);
+			}
+			if (name != null) {
+				String prevname = internedNames.putIfAbsent(name, name);
+				if (prevname != null) {
+					name = prevname;
+				}
+			}
+			int node = nodeCount++;
+			parents[node] = parent;
+			names[node] = name;
+			nodes.put(key, node);
+			return node;
+		}
+	}
+
+	private static final class NodeKey {
+		private final int parent;
+		private final String name;
+
+		public NodeKey(int parent, String name) {
+			this.parent = parent;
+			this.name = name;
+		}
+
+		@Override
+		public int hashCode() {
+			return parent * 31 + Objects.hashCode(name);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			NodeKey other = (NodeKey) obj;
+			return parent == other.parent && Objects.equals(name, other.name);
+		}
+	}
+}
@@ -53,7 +53,7 @@ public class PrepareAppxWorkerTaskFactory
 		NavigableSet<SakerPath> outfilepaths = prepareout.getFilePaths();
 
 		int diroutnamecount = diroutpath.getNameCount();
-		NavigableMap<SakerPath, SakerPath> mappingpaths = ImmutableUtils.makeImmutableNavigableMap(
+		NavigableMap<SakerPath, SakerPath> mappingpaths = PrefixSharingPathMap.create(
 				new SetTransformingNavigableMap<SakerPath, SakerPath, SakerPath>(outfilepaths) {
 					@Override
 					protected Entry<SakerPath, SakerPath> transformEntry(SakerPath e) {
@@ -25,7 +25,7 @@ final class PrepareAppxWorkerTaskOutputImpl implements Externalizable, PrepareAp
 
 	public PrepareAppxWorkerTaskOutputImpl(SakerPath appxDirectory, NavigableMap<SakerPath, SakerPath> mappingpaths) {
 		this.appxDirectory = appxDirectory;
-		this.mappings = mappingpaths;
+		this.mappings = PrefixSharingPathMap.create(mappingpaths);
 	}
 
 	@Override
@@ -41,13 +41,13 @@ final class PrepareAppxWorkerTaskOutputImpl implements Externalizable, PrepareAp
 	@Override
 	public void writeExternal(ObjectOutput out) throws IOException {
 		out.writeObject(appxDirectory);
-		SerialUtils.writeExternalMap(out, mappings);
+		out.writeObject(mappings);
 	}
 
 	@Override
 	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
 		appxDirectory = SerialUtils.readExternalObject(in);
-		mappings = SerialUtils.readExternalSortedImmutableNavigableMap(in);
+		mappings = SerialUtils.readExternalObject(in);
 	}
 
 	@Override
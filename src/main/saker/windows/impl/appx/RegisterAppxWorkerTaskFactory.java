@@ -2,13 +2,13 @@ package saker.windows.impl.appx;
 
 import java.io.Externalizable;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
 
+import saker.build.file.content.ContentDescriptor;
 import saker.build.file.path.SakerPath;
-import saker.build.file.provider.LocalFileProvider;
 import saker.build.runtime.execution.ExecutionContext;
 import saker.build.runtime.execution.SakerLog;
 import saker.build.task.Task;
@@ -17,15 +17,15 @@ import saker.build.task.TaskFactory;
 import saker.build.task.identifier.TaskIdentifier;
 import saker.build.task.utils.StructuredTaskResult;
 import saker.build.task.utils.dependencies.EqualityTaskOutputChangeDetector;
-import saker.build.thirdparty.saker.util.ImmutableUtils;
 import saker.build.thirdparty.saker.util.ObjectUtils;
+import saker.build.thirdparty.saker.util.io.ByteArrayRegion;
 import saker.build.thirdparty.saker.util.io.SerialUtils;
 import saker.build.trace.BuildTrace;
-import saker.process.api.CollectingProcessIOConsumer;
-import saker.process.api.SakerProcess;
-import saker.process.api.SakerProcessBuilder;
 import saker.std.api.util.SakerStandardUtils;
 import saker.windows.impl.SakerWindowsImplUtils;
+import saker.windows.impl.appx.manifest.AppxManifest;
+import saker.windows.impl.metrics.WorkerTaskMetrics;
+import saker.windows.impl.thirdparty.org.json.JSONObject;
 import saker.windows.main.appx.RegisterAppxTaskFactory;
 
 public class RegisterAppxWorkerTaskFactory
@@ -56,123 +56,102 @@ public class RegisterAppxWorkerTaskFactory
 
 	@Override
 	public Object run(TaskContext taskcontext) throws Exception {
+		WorkerTaskMetrics metrics = new WorkerTaskMetrics(this);
+		try {
+			return runWithMetrics(taskcontext, metrics);
+		} finally {
+			metrics.finish();
+		}
+	}
+
+	private Object runWithMetrics(TaskContext taskcontext, WorkerTaskMetrics metrics) throws Exception {
 		if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
 			BuildTrace.classifyTask(BuildTrace.CLASSIFICATION_WORKER);
 		}
 		taskcontext.setStandardOutDisplayIdentifier(RegisterAppxTaskFactory.TASK_NAME);
 
+		metrics.startPhase("Check registration");
 		SakerPath appxlocalpath = (SakerPath) appxManifestLocalSakerPathResult.toResult(taskcontext);
 
-		taskcontext.getTaskUtilities().getReportExecutionDependency(
+		ContentDescriptor manifestcontents = taskcontext.getTaskUtilities().getReportExecutionDependency(
 				SakerStandardUtils.createLocalFileContentDescriptorExecutionProperty(appxlocalpath, UUID.randomUUID()));
 
-		SakerProcessBuilder registerpb = SakerProcessBuilder.create();
-		registerpb.setCommand(ImmutableUtils.asUnmodifiableArrayList("powershell", "-NoProfile", "-NonInteractive",
-				"-Command", "Add-AppxPackage " + appxlocalpath.toString() + " -Register"));
-		CollectingProcessIOConsumer registeroutconsumer = new CollectingProcessIOConsumer();
-		CollectingProcessIOConsumer registererrconsumer = new CollectingProcessIOConsumer();
-		registerpb.setStandardOutputConsumer(registeroutconsumer);
-		registerpb.setStandardErrorConsumer(registererrconsumer);
-
-		int ec;
-		try (SakerProcess proc = registerpb.start()) {
-			proc.processIO();
-			ec = proc.waitFor();
-			if (ec == 0) {
-				//success.
-				SakerLog.success().verbose().println("Registered appx at: " + appxlocalpath);
-				return returnTaskResult(taskcontext, appxlocalpath);
-			}
-			String errstr = registererrconsumer.getOutputString();
-			int index = errstr.indexOf("HRESULT:");
-			String hres = errstr.substring(index + 8).trim();
-			if (hres.startsWith("0x80073CFF")) {
-				throw new IOException(
-						"Error: Failed to register appx, make sure developer mode is enabled on this computer. "
-								+ "(Settings/Update and Security/Developers)");
-			} else if (hres.startsWith("0x80073CFB")) {
-				if (!allowReinstall) {
-					throw new IOException(
-							"Appx is already registered in developement mode on this computer: " + appxlocalpath);
-				}
-				SakerLog.info().verbose().println("Appx is already registered. Reinstalling. (" + appxlocalpath + ")");
-			} else {
-				if (!allowReinstall) {
-					throw new IOException("Unknown deployment error, see output for more info.");
-				}
-				//even though the deployment error is unrecognized, we reinstall the app
-				//these issues can happen e.g. when the Application.Id attribute is modified
-			}
-		} catch (Throwable e) {
+		String identityname = getIdentityName(taskcontext, appxlocalpath);
+
+		//loose file registered apps read the payload files from the install location
+		//so if only they change, the registration doesn't need to be performed again
+		RegistrationState prevstate = taskcontext.getPreviousTaskOutput(RegistrationState.class,
+				RegistrationState.class);
+		if (prevstate != null && prevstate.isSameManifest(appxlocalpath, manifestcontents)
+				&& isRegisteredAt(taskcontext, identityname, appxlocalpath.getParent())) {
+			taskcontext.setTaskOutput(RegistrationState.class, prevstate);
+			SakerLog.info().verbose().println("Appx manifest unchanged, registration skipped: " + appxlocalpath);
+			return returnTaskResult(taskcontext, appxlocalpath);
+		}
+
+		metrics.startPhase("Register");
+		metrics.addFiles(1);
+		//the whole registration sequence is performed by a single script
+		Object val = SakerWindowsImplUtils.runPowershellJSONCommand(taskcontext,
+				AppxRegistrationScript.create(appxlocalpath.toString(), allowReinstall, identityname));
+		//the installed packages may have changed, clear the cached information about them
+		InstalledAppxPackageIndex.get(taskcontext.getExecutionContext().getEnvironment()).invalidate();
+		if (!(val instanceof JSONObject)) {
+			throw new UnsupportedOperationException(
+					"Failed to interpret appx registration result. Unexpected output: " + val);
+		}
+		AppxRegistrationResult registration = new AppxRegistrationResult((JSONObject) val);
+		String failuremessage = registration.getFailureMessage(appxlocalpath.toString(), allowReinstall);
+		if (failuremessage != null) {
 			try {
 				SakerLog.error().verbose().println("Appx registration failed at: " + appxlocalpath);
-				taskcontext.getStandardOut().write(registeroutconsumer.getByteArrayRegion());
-				taskcontext.getStandardOut().write(registererrconsumer.getByteArrayRegion());
-			} catch (Throwable e2) {
-				e.addSuppressed(e2);
-			}
-			throw e;
-		}
-		//attempt removing and reinstalling
-		//first determine the package full name
-
-		String identityname;
-		try (InputStream is = LocalFileProvider.getInstance().openInputStream(appxlocalpath)) {
-			identityname = SakerWindowsImplUtils.getAppxManifestIdentityName(is);
-		}
-		if (ObjectUtils.isNullOrEmpty(identityname)) {
-			throw new IllegalArgumentException(
-					"Failed to determine Identity Name from AppxManifest.xml: " + appxlocalpath);
-		}
-
-		String packagefullname = SakerWindowsImplUtils.getAppxPackagePackageFullName(taskcontext, identityname);
-		if (ObjectUtils.isNullOrEmpty(packagefullname)) {
-			throw new IllegalStateException("Failed to determine appx package full name for: " + identityname);
-		}
-
-		SakerLog.info().verbose().println("Removing appx package with full name: " + packagefullname);
-		SakerProcessBuilder removepb = SakerProcessBuilder.create();
-		removepb.setCommand(ImmutableUtils.asUnmodifiableArrayList("powershell", "-NoProfile", "-NonInteractive",
-				"-Command", "Remove-AppxPackage " + packagefullname));
-		CollectingProcessIOConsumer removeoutconsumer = new CollectingProcessIOConsumer();
-		CollectingProcessIOConsumer removeerrconsumer = new CollectingProcessIOConsumer();
-		removepb.setStandardOutputConsumer(removeoutconsumer);
-		removepb.setStandardErrorConsumer(removeerrconsumer);
-		try (SakerProcess proc = removepb.start()) {
-			proc.processIO();
-			int removeec = proc.waitFor();
-			if (removeec != 0) {
-				throw new IOException(
-						"Failed to remove appx package: " + packagefullname + " (Exit code: " + removeec + ")");
+				writeOutput(taskcontext, registration.getRegisterOutput());
+				writeOutput(taskcontext, registration.getOutput());
+			} catch (Throwable e) {
+				IOException exc = new IOException(failuremessage);
+				exc.addSuppressed(e);
+				throw exc;
 			}
-		} catch (Throwable e) {
-			try {
-				taskcontext.getStandardOut().write(removeoutconsumer.getByteArrayRegion());
-				taskcontext.getStandardOut().write(removeerrconsumer.getByteArrayRegion());
-			} catch (Throwable e2) {
-				e.addSuppressed(e2);
-			}
-			throw e;
-		}
-
-		//remove the old package, try to register it again
-		CollectingProcessIOConsumer newregisteroutconsumer = new CollectingProcessIOConsumer();
-		CollectingProcessIOConsumer newregistererrconsumer = new CollectingProcessIOConsumer();
-		registerpb.setStandardOutputConsumer(newregisteroutconsumer);
-		registerpb.setStandardErrorConsumer(newregistererrconsumer);
-		try (SakerProcess proc = registerpb.start()) {
-			proc.processIO();
-			int newec = proc.waitFor();
-			if (newec == 0) {
-				//success.
-				SakerLog.success().verbose().println("Registered appx at: " + appxlocalpath);
-				return returnTaskResult(taskcontext, appxlocalpath);
-			}
-			throw new IOException("Failed to register appx after removing it: " + appxlocalpath);
-		} finally {
-			taskcontext.getStandardOut().write(newregisteroutconsumer.getByteArrayRegion());
-			taskcontext.getStandardOut().write(newregistererrconsumer.getByteArrayRegion());
+			throw new IOException(failuremessage);
 		}
+		if (registration.isReinstalled()) {
+			SakerLog.info().verbose().println("Appx was already registered. Reinstalled package: "
+					+ registration.getPackageFullName() + " (" + appxlocalpath + ")");
+		}
+		SakerLog.success().verbose().println("Registered appx at: " + appxlocalpath);
+		if (manifestcontents != null) {
+			taskcontext.setTaskOutput(RegistrationState.class, new RegistrationState(appxlocalpath, manifestcontents));
+		}
+		return returnTaskResult(taskcontext, appxlocalpath);
+	}
+
+	private static String getIdentityName(TaskContext taskcontext, SakerPath appxlocalpath) {
+		try {
+			return AppxManifest.getLocal(taskcontext, appxlocalpath).getIdentityName();
+		} catch (Exception e) {
+			//the registration script reads it if necessary, and reports the errors
+			taskcontext.getTaskUtilities().reportIgnoredException(e);
+			return null;
+		}
+	}
+
+	private static boolean isRegisteredAt(TaskContext taskcontext, String identityname, SakerPath installlocation) {
+		//query the installed packages, as they may have been removed outside of the build
+		try {
+			return DynamicLaunchAppxWorkerTaskFactory.queryPackageInformationAtInstallLocation(taskcontext,
+					identityname, installlocation) != null;
+		} catch (Exception e) {
+			//failed to query, register again
+			taskcontext.getTaskUtilities().reportIgnoredException(e);
+			return false;
+		}
+	}
+
+	private static void writeOutput(TaskContext taskcontext, String output) throws IOException {
+		if (ObjectUtils.isNullOrEmpty(output)) {
+			return;
+		}
+		taskcontext.getStandardOut().write(ByteArrayRegion.wrap((output + "\n").getBytes(StandardCharsets.UTF_8)));
 	}
 
 	private static Object returnTaskResult(TaskContext taskcontext, SakerPath appxlocalpath) {
@@ -229,4 +208,49 @@ public class RegisterAppxWorkerTaskFactory
 				: "") + "allowReinstall=" + allowReinstall + "]";
 	}
 
+	/**
+	 * The state of a successful registration, stored as a task output.
+	 */
+	private static final class RegistrationState implements Externalizable {
+		private static final long serialVersionUID = 1L;
+
+		private SakerPath manifestPath;
+		private ContentDescriptor manifestContents;
+
+		/**
+		 * For {@link Externalizable}.
+		 */
+		public RegistrationState() {
+		}
+
+		public RegistrationState(SakerPath manifestPath, ContentDescriptor manifestContents) {
+			this.manifestPath = manifestPath;
+			this.manifestContents = manifestContents;
+		}
+
+		public boolean isSameManifest(SakerPath manifestpath, ContentDescriptor manifestcontents) {
+			if (manifestcontents == null) {
+				//the manifest doesn't exist
+				return false;
+			}
+			return manifestpath.equals(this.manifestPath) && !manifestcontents.isChanged(this.manifestContents);
+		}
+
+		@Override
+		public void writeExternal(ObjectOutput out) throws IOException {
+			out.writeObject(manifestPath);
+			out.writeObject(manifestContents);
+		}
+
+		@Override
+		public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+			manifestPath = SerialUtils.readExternalObject(in);
+			manifestContents = SerialUtils.readExternalObject(in);
+		}
+
+		@Override
+		public String toString() {
+			return getClass().getSimpleName() + "[" + manifestPath + "]";
+		}
+	}
 }
@@ -0,0 +1,84 @@
+package saker.windows.impl.appx;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.List;
+
+import saker.build.task.TaskResultResolver;
+import saker.build.task.identifier.TaskIdentifier;
+import saker.build.task.utils.StructuredTaskResult;
+import saker.build.thirdparty.saker.util.io.SerialUtils;
+
+/**
+ * Structured task result of a single package registered by a {@link RegisterMultiAppxWorkerTaskFactory}.
+ */
+public class RegisterMultiAppxElementTaskResult implements StructuredTaskResult, Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	private TaskIdentifier workerTaskId;
+	private int index;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public RegisterMultiAppxElementTaskResult() {
+	}
+
+	public RegisterMultiAppxElementTaskResult(TaskIdentifier workerTaskId, int index) {
+		this.workerTaskId = workerTaskId;
+		this.index = index;
+	}
+
+	@Override
+	public Object toResult(TaskResultResolver results) throws NullPointerException, RuntimeException {
+		List<?> outputs = (List<?>) results.getTaskResult(workerTaskId);
+		return outputs.get(index);
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeObject(workerTaskId);
+		out.writeInt(index);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		workerTaskId = SerialUtils.readExternalObject(in);
+		index = in.readInt();
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + index;
+		result = prime * result + ((workerTaskId == null) ? 0 : workerTaskId.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		RegisterMultiAppxElementTaskResult other = (RegisterMultiAppxElementTaskResult) obj;
+		if (index != other.index)
+			return false;
+		if (workerTaskId == null) {
+			if (other.workerTaskId != null)
+				return false;
+		} else if (!workerTaskId.equals(other.workerTaskId))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[workerTaskId=" + workerTaskId + ", index=" + index + "]";
+	}
+}
@@ -0,0 +1,303 @@
+package saker.windows.impl.appx;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import saker.build.file.path.SakerPath;
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.runtime.execution.SakerLog;
+import saker.build.task.Task;
+import saker.build.task.TaskContext;
+import saker.build.task.TaskFactory;
+import saker.build.task.identifier.TaskIdentifier;
+import saker.build.task.utils.StructuredTaskResult;
+import saker.build.task.utils.dependencies.EqualityTaskOutputChangeDetector;
+import saker.build.thirdparty.saker.util.ImmutableUtils;
+import saker.build.thirdparty.saker.util.ObjectUtils;
+import saker.build.thirdparty.saker.util.io.ByteArrayRegion;
+import saker.build.thirdparty.saker.util.io.SerialUtils;
+import saker.build.trace.BuildTrace;
+import saker.windows.api.appx.RegisterAppxWorkerTaskOutput;
+import saker.windows.impl.SakerWindowsImplUtils;
+import saker.windows.impl.appx.manifest.AppxManifest;
+import saker.windows.impl.metrics.WorkerTaskMetrics;
+import saker.windows.impl.thirdparty.org.json.JSONArray;
+import saker.windows.impl.thirdparty.org.json.JSONObject;
+import saker.windows.main.appx.RegisterMultiAppxTaskFactory;
+
+/**
+ * Registers multiple appx packages concurrently.
+ * <p>
+ * The packages are registered in waves. A package is registered after the packages it depends on in the same task.
+ * The packages in a wave are registered concurrently by a single PowerShell host request.
+ * <p>
+ * The task result is a list of {@link RegisterAppxWorkerTaskOutput} in the same order as the inputs.
+ */
+public class RegisterMultiAppxWorkerTaskFactory
+		implements TaskFactory<Object>, Task<Object>, TaskIdentifier, Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	private List<StructuredTaskResult> appxManifestLocalSakerPathResults;
+	private boolean allowReinstall;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public RegisterMultiAppxWorkerTaskFactory() {
+	}
+
+	public RegisterMultiAppxWorkerTaskFactory(List<StructuredTaskResult> appxManifestLocalSakerPathResults) {
+		this.appxManifestLocalSakerPathResults = ImmutableUtils.makeImmutableList(appxManifestLocalSakerPathResults);
+	}
+
+	public void setAllowReinstall(boolean allowReinstall) {
+		this.allowReinstall = allowReinstall;
+	}
+
+	@Override
+	public Task<? extends Object> createTask(ExecutionContext executioncontext) {
+		return this;
+	}
+
+	@Override
+	public Object run(TaskContext taskcontext) throws Exception {
+		WorkerTaskMetrics metrics = new WorkerTaskMetrics(this);
+		try {
+			return runWithMetrics(taskcontext, metrics);
+		} finally {
+			metrics.finish();
+		}
+	}
+
+	private Object runWithMetrics(TaskContext taskcontext, WorkerTaskMetrics metrics) throws Exception {
+		if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
+			BuildTrace.classifyTask(BuildTrace.CLASSIFICATION_WORKER);
+		}
+		taskcontext.setStandardOutDisplayIdentifier(RegisterMultiAppxTaskFactory.TASK_NAME);
+
+		metrics.startPhase("Read manifests");
+		int count = appxManifestLocalSakerPathResults.size();
+		metrics.addFiles(count);
+		List<SakerPath> manifestpaths = new ArrayList<>(count);
+		List<ManifestDependencyInfo> manifestinfos = new ArrayList<>(count);
+		for (StructuredTaskResult manifestresult : appxManifestLocalSakerPathResults) {
+			SakerPath appxlocalpath = (SakerPath) manifestresult.toResult(taskcontext);
+			manifestpaths.add(appxlocalpath);
+			manifestinfos.add(getManifestDependencyInfo(AppxManifest.getLocal(taskcontext, appxlocalpath),
+					appxlocalpath));
+		}
+
+		metrics.startPhase("Register");
+		metrics.addFiles(count);
+		List<List<Integer>> waves = getRegistrationWaves(manifestinfos);
+
+		List<RegisterAppxWorkerTaskOutput> outputs = new ArrayList<>(Collections.nCopies(count, null));
+		InstalledAppxPackageIndex packageindex = InstalledAppxPackageIndex
+				.get(taskcontext.getExecutionContext().getEnvironment());
+		for (List<Integer> wave : waves) {
+			List<String> wavepaths = new ArrayList<>(wave.size());
+			List<String> waveidentitynames = new ArrayList<>(wave.size());
+			for (Integer idx : wave) {
+				wavepaths.add(manifestpaths.get(idx).toString());
+				waveidentitynames.add(manifestinfos.get(idx).identityName);
+			}
+			Object val = SakerWindowsImplUtils.runPowershellJSONCommand(taskcontext,
+					AppxRegistrationScript.createParallel(wavepaths, waveidentitynames, allowReinstall));
+			//the installed packages may have changed, clear the cached information about them
+			packageindex.invalidate();
+			if (val instanceof JSONObject) {
+				JSONArray narray = new JSONArray();
+				narray.put(val);
+				val = narray;
+			}
+			if (!(val instanceof JSONArray) || ((JSONArray) val).length() != wave.size()) {
+				throw new UnsupportedOperationException(
+						"Failed to interpret appx registration results. Unexpected output: " + val);
+			}
+			JSONArray resultsarray = (JSONArray) val;
+			IOException failexc = null;
+			for (int i = 0; i < wave.size(); i++) {
+				Object resultobj = resultsarray.get(i);
+				if (!(resultobj instanceof JSONObject)) {
+					throw new UnsupportedOperationException(
+							"Failed to interpret appx registration result. Unexpected output: " + resultobj);
+				}
+				int idx = wave.get(i);
+				SakerPath appxlocalpath = manifestpaths.get(idx);
+				AppxRegistrationResult registration = new AppxRegistrationResult((JSONObject) resultobj);
+				String failuremessage = registration.getFailureMessage(appxlocalpath.toString(), allowReinstall);
+				if (failuremessage != null) {
+					SakerLog.error().verbose().println("Appx registration failed at: " + appxlocalpath);
+					writeOutput(taskcontext, registration.getRegisterOutput());
+					writeOutput(taskcontext, registration.getOutput());
+					if (failexc == null) {
+						failexc = new IOException("Failed to register appx packages.");
+					}
+					failexc.addSuppressed(new IOException(failuremessage));
+					continue;
+				}
+				if (registration.isReinstalled()) {
+					SakerLog.info().verbose().println("Appx was already registered. Reinstalled package: "
+							+ registration.getPackageFullName() + " (" + appxlocalpath + ")");
+				}
+				SakerLog.success().verbose().println("Registered appx at: " + appxlocalpath);
+				outputs.set(idx, new RegisterAppxWorkerTaskOutputImpl(appxlocalpath));
+			}
+			if (failexc != null) {
+				//don't register the dependent packages
+				throw failexc;
+			}
+		}
+
+		List<RegisterAppxWorkerTaskOutput> result = ImmutableUtils.unmodifiableList(outputs);
+		taskcontext.reportSelfTaskOutputChangeDetector(new EqualityTaskOutputChangeDetector(result));
+		return result;
+	}
+
+	/**
+	 * Groups the manifests into registration waves based on their dependencies.
+	 * <p>
+	 * Each wave only contains packages which depend on packages in the previous waves. Dependencies on packages that
+	 * are not registered by the task are ignored.
+	 */
+	private static List<List<Integer>> getRegistrationWaves(List<ManifestDependencyInfo> manifestinfos) {
+		int count = manifestinfos.size();
+		Map<String, Integer> nameindices = new HashMap<>();
+		for (int i = 0; i < count; i++) {
+			ManifestDependencyInfo info = manifestinfos.get(i);
+			Integer prev = nameindices.putIfAbsent(info.identityName, i);
+			if (prev != null) {
+				throw new IllegalArgumentException("Multiple appx manifests with the same Identity Name: "
+						+ info.identityName + " (" + manifestinfos.get(prev).manifestPath + " and "
+						+ info.manifestPath + ")");
+			}
+		}
+		List<List<Integer>> result = new ArrayList<>();
+		boolean[] registered = new boolean[count];
+		int registeredcount = 0;
+		while (registeredcount < count) {
+			List<Integer> wave = new ArrayList<>();
+			for (int i = 0; i < count; i++) {
+				if (registered[i]) {
+					continue;
+				}
+				if (isDependenciesRegistered(manifestinfos.get(i), nameindices, registered)) {
+					wave.add(i);
+				}
+			}
+			if (wave.isEmpty()) {
+				List<SakerPath> remaining = new ArrayList<>();
+				for (int i = 0; i < count; i++) {
+					if (!registered[i]) {
+						remaining.add(manifestinfos.get(i).manifestPath);
+					}
+				}
+				throw new IllegalArgumentException("Circular dependencies between appx packages: " + remaining);
+			}
+			for (Integer idx : wave) {
+				registered[idx] = true;
+			}
+			registeredcount += wave.size();
+			result.add(wave);
+		}
+		return result;
+	}
+
+	private static boolean isDependenciesRegistered(ManifestDependencyInfo info, Map<String, Integer> nameindices,
+			boolean[] registered) {
+		for (String dep : info.dependencyNames) {
+			Integer depidx = nameindices.get(dep);
+			if (depidx != null && !registered[depidx]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static ManifestDependencyInfo getManifestDependencyInfo(AppxManifest manifest, SakerPath manifestpath) {
+		String identityname = manifest.getIdentityName();
+		if (ObjectUtils.isNullOrEmpty(identityname)) {
+			throw new IllegalArgumentException(
+					"Failed to determine Identity Name from AppxManifest.xml: " + manifestpath);
+		}
+		return new ManifestDependencyInfo(manifestpath, identityname,
+				new LinkedHashSet<>(manifest.getDependencyNames()));
+	}
+
+	private static void writeOutput(TaskContext taskcontext, String output) throws IOException {
+		if (ObjectUtils.isNullOrEmpty(output)) {
+			return;
+		}
+		taskcontext.getStandardOut().write(ByteArrayRegion.wrap((output + "\n").getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		SerialUtils.writeExternalCollection(out, appxManifestLocalSakerPathResults);
+		out.writeBoolean(allowReinstall);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		appxManifestLocalSakerPathResults = SerialUtils.readExternalImmutableList(in);
+		allowReinstall = in.readBoolean();
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + (allowReinstall ? 1231 : 1237);
+		result = prime * result
+				+ ((appxManifestLocalSakerPathResults == null) ? 0 : appxManifestLocalSakerPathResults.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		RegisterMultiAppxWorkerTaskFactory other = (RegisterMultiAppxWorkerTaskFactory) obj;
+		if (allowReinstall != other.allowReinstall)
+			return false;
+		if (appxManifestLocalSakerPathResults == null) {
+			if (other.appxManifestLocalSakerPathResults != null)
+				return false;
+		} else if (!appxManifestLocalSakerPathResults.equals(other.appxManifestLocalSakerPathResults))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "RegisterMultiAppxWorkerTaskFactory[" + (appxManifestLocalSakerPathResults != null
+				? "appxManifestLocalSakerPathResults=" + appxManifestLocalSakerPathResults + ", "
+				: "") + "allowReinstall=" + allowReinstall + "]";
+	}
+
+	private static final class ManifestDependencyInfo {
+		protected final SakerPath manifestPath;
+		protected final String identityName;
+		protected final Set<String> dependencyNames;
+
+		public ManifestDependencyInfo(SakerPath manifestPath, String identityName, Set<String> dependencyNames) {
+			this.manifestPath = manifestPath;
+			this.identityName = identityName;
+			this.dependencyNames = dependencyNames;
+		}
+	}
+}
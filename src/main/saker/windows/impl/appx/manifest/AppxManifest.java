@@ -0,0 +1,379 @@
+package saker.windows.impl.appx.manifest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import saker.build.file.content.ContentDescriptor;
+import saker.build.file.content.DirectoryContentDescriptor;
+import saker.build.file.path.SakerPath;
+import saker.build.file.provider.LocalFileProvider;
+import saker.build.runtime.environment.SakerEnvironment;
+import saker.build.task.TaskContext;
+import saker.build.thirdparty.saker.util.ImmutableUtils;
+import saker.build.thirdparty.saker.util.ObjectUtils;
+import saker.build.thirdparty.saker.util.io.function.IOSupplier;
+import saker.build.util.cache.CacheKey;
+import saker.std.api.util.SakerStandardUtils;
+import saker.windows.impl.SakerWindowsXmlUtils;
+
+/**
+ * Immutable model of the information in an <code>AppxManifest.xml</code> that is used by the tasks.
+ * <p>
+ * The elements are matched by their local names, the namespaces are not examined.
+ * <p>
+ * The parsed manifests are cached in the build environment by their path and contents, so the tasks that work with the
+ * same manifest don't need to parse it again.
+ */
+public final class AppxManifest {
+	private static final String ELEM_PACKAGE = "Package";
+	private static final String ELEM_IDENTITY = "Identity";
+	private static final String ELEM_APPLICATIONS = "Applications";
+	private static final String ELEM_APPLICATION = "Application";
+	private static final String ELEM_CAPABILITIES = "Capabilities";
+	private static final String ELEM_DEPENDENCIES = "Dependencies";
+	private static final String ELEM_PACKAGE_DEPENDENCY = "PackageDependency";
+	private static final String ELEM_MAIN_PACKAGE_DEPENDENCY = "MainPackageDependency";
+
+	private final String identityName;
+	private final String identityVersion;
+	private final String identityProcessorArchitecture;
+	private final String identityPublisher;
+	private final List<String> applicationIds;
+	private final List<String> capabilities;
+	private final List<String> dependencyNames;
+
+	private AppxManifest(String identityName, String identityVersion, String identityProcessorArchitecture,
+			String identityPublisher, List<String> applicationIds, List<String> capabilities,
+			List<String> dependencyNames) {
+		this.identityName = identityName;
+		this.identityVersion = identityVersion;
+		this.identityProcessorArchitecture = identityProcessorArchitecture;
+		this.identityPublisher = identityPublisher;
+		this.applicationIds = applicationIds;
+		this.capabilities = capabilities;
+		this.dependencyNames = dependencyNames;
+	}
+
+	/**
+	 * Parses the manifest from the argument stream.
+	 *
+	 * @param is
+	 *            The input.
+	 * @return The parsed manifest.
+	 * @throws IOException
+	 *             If the reading or parsing failed.
+	 * @throws IllegalArgumentException
+	 *             If the input is not a valid manifest.
+	 */
+	public static AppxManifest parse(InputStream is) throws IOException, IllegalArgumentException {
+		try {
+			XMLStreamReader reader = SakerWindowsXmlUtils.getXMLInputFactory().createXMLStreamReader(is);
+			try {
+				return parse(reader);
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Failed to parse AppxManifest.xml.", e);
+		}
+	}
+
+	/**
+	 * Gets the manifest for the given file contents.
+	 * <p>
+	 * The manifest is parsed, or retrieved from the cache of the build environment if it was already parsed with the
+	 * same contents.
+	 *
+	 * @param environment
+	 *            The build environment.
+	 * @param path
+	 *            The path of the manifest file.
+	 * @param contents
+	 *            The content descriptor of the file, or <code>null</code> if not available. In that case the file is
+	 *            parsed without caching.
+	 * @param input
+	 *            The supplier of the file contents.
+	 * @return The manifest.
+	 * @throws Exception
+	 *             If the parsing failed.
+	 */
+	public static AppxManifest get(SakerEnvironment environment, SakerPath path, ContentDescriptor contents,
+			IOSupplier<? extends InputStream> input) throws Exception {
+		if (contents == null) {
+			try (InputStream is = input.get()) {
+				return parse(is);
+			}
+		}
+		return environment.getCachedData(new ManifestCacheKey(path, contents, input));
+	}
+
+	/**
+	 * Gets the manifest at the given local path, and reports an execution dependency on its contents.
+	 *
+	 * @param taskcontext
+	 *            The task context.
+	 * @param localpath
+	 *            The local path of the manifest.
+	 * @return The manifest.
+	 * @throws NoSuchFileException
+	 *             If the manifest file doesn't exist.
+	 * @throws Exception
+	 *             If the parsing failed.
+	 */
+	public static AppxManifest getLocal(TaskContext taskcontext, SakerPath localpath)
+			throws NoSuchFileException, Exception {
+		ContentDescriptor contents = taskcontext.getTaskUtilities().getReportExecutionDependency(
+				SakerStandardUtils.createLocalFileContentDescriptorExecutionProperty(localpath, UUID.randomUUID()));
+		if (contents == null || contents instanceof DirectoryContentDescriptor) {
+			throw new NoSuchFileException("AppxManifest is not a file: " + localpath);
+		}
+		return get(taskcontext.getExecutionContext().getEnvironment(), localpath, contents,
+				() -> LocalFileProvider.getInstance().openInputStream(localpath));
+	}
+
+	/**
+	 * Gets the <code>Name</code> attribute of the <code>Identity</code> element.
+	 *
+	 * @return The identity name or <code>null</code> if not present.
+	 */
+	public String getIdentityName() {
+		return identityName;
+	}
+
+	public String getIdentityVersion() {
+		return identityVersion;
+	}
+
+	public String getIdentityProcessorArchitecture() {
+		return identityProcessorArchitecture;
+	}
+
+	public String getIdentityPublisher() {
+		return identityPublisher;
+	}
+
+	/**
+	 * Gets the <code>Id</code> attributes of the declared <code>Application</code> elements.
+	 *
+	 * @return The unmodifiable list of application ids in declaration order.
+	 */
+	public List<String> getApplicationIds() {
+		return applicationIds;
+	}
+
+	/**
+	 * Gets the names of the declared capabilities.
+	 *
+	 * @return The unmodifiable list of capability names in declaration order.
+	 */
+	public List<String> getCapabilities() {
+		return capabilities;
+	}
+
+	/**
+	 * Gets the names of the packages that the manifest declares a dependency on.
+	 * <p>
+	 * Both the <code>PackageDependency</code> and <code>MainPackageDependency</code> elements are included.
+	 *
+	 * @return The unmodifiable list of dependency names in declaration order.
+	 */
+	public List<String> getDependencyNames() {
+		return dependencyNames;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[identityName=" + identityName + ", identityVersion=" + identityVersion
+				+ ", identityProcessorArchitecture=" + identityProcessorArchitecture + ", applicationIds="
+				+ applicationIds + "]";
+	}
+
+	private static AppxManifest parse(XMLStreamReader reader) throws XMLStreamException {
+		boolean identityfound = false;
+		String name = null;
+		String version = null;
+		String arch = null;
+		String publisher = null;
+		List<String> appids = new ArrayList<>();
+		List<String> capabilities = new ArrayList<>();
+		Set<String> dependencies = new LinkedHashSet<>();
+
+		int depth = 0;
+		//the local name of the current element at depth 2
+		String section = null;
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				--depth;
+				continue;
+			}
+			if (event != XMLStreamConstants.START_ELEMENT) {
+				continue;
+			}
+			++depth;
+			String localname = reader.getLocalName();
+			switch (depth) {
+				case 1: {
+					if (!ELEM_PACKAGE.equals(localname)) {
+						throw new IllegalArgumentException(
+								"Invalid AppxManifest.xml, expected Package root element instead of "
+										+ reader.getName());
+					}
+					break;
+				}
+				case 2: {
+					section = localname;
+					if (!identityfound && ELEM_IDENTITY.equals(localname)) {
+						identityfound = true;
+						name = getAttributeValue(reader, "Name");
+						version = getAttributeValue(reader, "Version");
+						arch = getAttributeValue(reader, "ProcessorArchitecture");
+						publisher = getAttributeValue(reader, "Publisher");
+					}
+					break;
+				}
+				case 3: {
+					switch (section) {
+						case ELEM_APPLICATIONS: {
+							if (ELEM_APPLICATION.equals(localname)) {
+								addIfNotEmpty(appids, getAttributeValue(reader, "Id"));
+							}
+							break;
+						}
+						case ELEM_CAPABILITIES: {
+							//Capability, DeviceCapability, and the namespace prefixed variants
+							addIfNotEmpty(capabilities, getAttributeValue(reader, "Name"));
+							break;
+						}
+						case ELEM_DEPENDENCIES: {
+							if (ELEM_PACKAGE_DEPENDENCY.equals(localname)
+									|| ELEM_MAIN_PACKAGE_DEPENDENCY.equals(localname)) {
+								addIfNotEmpty(dependencies, getAttributeValue(reader, "Name"));
+							}
+							break;
+						}
+						default: {
+							break;
+						}
+					}
+					break;
+				}
+				default: {
+					break;
+				}
+			}
+		}
+		if (!identityfound) {
+			throw new IllegalArgumentException("Identity element not found in AppxManifest.");
+		}
+		return new AppxManifest(name, version, arch, publisher, ImmutableUtils.unmodifiableList(appids),
+				ImmutableUtils.unmodifiableList(capabilities),
+				ImmutableUtils.unmodifiableList(new ArrayList<>(dependencies)));
+	}
+
+	private static String getAttributeValue(XMLStreamReader reader, String localname) {
+		String result = reader.getAttributeValue(null, localname);
+		if (ObjectUtils.isNullOrEmpty(result)) {
+			return null;
+		}
+		return result;
+	}
+
+	private static void addIfNotEmpty(Collection<String> coll, String value) {
+		if (value != null) {
+			coll.add(value);
+		}
+	}
+
+	private static final class ManifestCacheKey implements CacheKey<AppxManifest, AppxManifest> {
+		private static final long EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+		private final SakerPath path;
+		private final ContentDescriptor contents;
+		/**
+		 * The input of the manifest. Not part of the equality, and cleared after the manifest is parsed.
+		 */
+		private transient IOSupplier<? extends InputStream> input;
+
+		public ManifestCacheKey(SakerPath path, ContentDescriptor contents, IOSupplier<? extends InputStream> input) {
+			this.path = path;
+			this.contents = contents;
+			this.input = input;
+		}
+
+		@Override
+		public AppxManifest allocate() throws Exception {
+			IOSupplier<? extends InputStream> in = input;
+			//don't keep references to the input in the cache
+			input = null;
+			if (in == null) {
+				throw new IllegalStateException("AppxManifest input is not available: " + path);
+			}
+			try (InputStream is = in.get()) {
+				return parse(is);
+			}
+		}
+
+		@Override
+		public AppxManifest generate(AppxManifest resource) throws Exception {
+			return resource;
+		}
+
+		@Override
+		public boolean validate(AppxManifest data, AppxManifest resource) {
+			return true;
+		}
+
+		@Override
+		public long getExpiry() {
+			return EXPIRY_MILLIS;
+		}
+
+		@Override
+		public void close(AppxManifest data, AppxManifest resource) throws Exception {
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((contents == null) ? 0 : contents.hashCode());
+			result = prime * result + ((path == null) ? 0 : path.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			ManifestCacheKey other = (ManifestCacheKey) obj;
+			if (contents == null) {
+				if (other.contents != null)
+					return false;
+			} else if (!contents.equals(other.contents))
+				return false;
+			if (path == null) {
+				if (other.path != null)
+					return false;
+			} else if (!path.equals(other.path))
+				return false;
+			return true;
+		}
+	}
+}
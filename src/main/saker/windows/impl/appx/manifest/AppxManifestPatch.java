@@ -0,0 +1,335 @@
+package saker.windows.impl.appx.manifest;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.OutputStream;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import saker.build.thirdparty.saker.util.io.SerialUtils;
+
+/**
+ * Declarative description of the modifications that should be applied to an <code>AppxManifest.xml</code>.
+ * <p>
+ * The operations are collected by the setter methods, and applied in a single streaming pass by
+ * {@link AppxManifestPatcher}. A later operation for the same target overwrites the previous one.
+ * <p>
+ * The class is part of the content descriptor of the patched manifests, so it implements equality and serialization.
+ * It shouldn't be modified after it is passed to a task.
+ */
+public final class AppxManifestPatch implements Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	public static final String IDENTITY_NAME = "Name";
+	public static final String IDENTITY_PUBLISHER = "Publisher";
+	public static final String IDENTITY_VERSION = "Version";
+	public static final String IDENTITY_PROCESSOR_ARCHITECTURE = "ProcessorArchitecture";
+	public static final String IDENTITY_RESOURCE_ID = "ResourceId";
+
+	/**
+	 * Identity attribute local names to their values.
+	 */
+	private NavigableMap<String, String> identityAttributes = new TreeMap<>();
+	/**
+	 * Local names of the <code>Properties</code> child elements to their text contents.
+	 */
+	private NavigableMap<String, String> propertyTexts = new TreeMap<>();
+	/**
+	 * <code>TargetDeviceFamily</code> names to the <code>MinVersion</code> attribute values.
+	 */
+	private NavigableMap<String, String> targetDeviceFamilyMinVersions = new TreeMap<>();
+	/**
+	 * <code>TargetDeviceFamily</code> names to the <code>MaxVersionTested</code> attribute values.
+	 */
+	private NavigableMap<String, String> targetDeviceFamilyMaxVersionsTested = new TreeMap<>();
+	private NavigableSet<String> addedCapabilities = new TreeSet<>();
+	private NavigableSet<String> addedDeviceCapabilities = new TreeSet<>();
+	private NavigableSet<String> removedCapabilities = new TreeSet<>();
+
+	/**
+	 * Creates a new instance without any operations.
+	 */
+	public AppxManifestPatch() {
+	}
+
+	/**
+	 * Sets an attribute of the <code>Identity</code> element.
+	 *
+	 * @param localname
+	 *            The local name of the attribute. E.g. {@link #IDENTITY_NAME}.
+	 * @param value
+	 *            The value to set, or <code>null</code> to keep the original.
+	 * @return <code>this</code>
+	 */
+	public AppxManifestPatch setIdentityAttribute(String localname, String value) {
+		Objects.requireNonNull(localname, "attribute name");
+		if (value == null) {
+			identityAttributes.remove(localname);
+		} else {
+			identityAttributes.put(localname, value);
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the text contents of a child element of <code>Properties</code>.
+	 * <p>
+	 * E.g. <code>DisplayName</code>, <code>PublisherDisplayName</code>, or <code>Description</code>. The element is
+	 * added if it doesn't exist.
+	 *
+	 * @param localname
+	 *            The local name of the element.
+	 * @param value
+	 *            The text to set, or <code>null</code> to keep the original.
+	 * @return <code>this</code>
+	 */
+	public AppxManifestPatch setPropertyText(String localname, String value) {
+		Objects.requireNonNull(localname, "property name");
+		if (value == null) {
+			propertyTexts.remove(localname);
+		} else {
+			propertyTexts.put(localname, value);
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the versions of a <code>TargetDeviceFamily</code> dependency.
+	 * <p>
+	 * If the manifest doesn't contain the device family, it is added. In that case both of the versions need to be
+	 * specified.
+	 *
+	 * @param name
+	 *            The name of the device family. E.g. <code>Windows.Universal</code>.
+	 * @param minversion
+	 *            The <code>MinVersion</code> to set, or <code>null</code> to keep the original.
+	 * @param maxversiontested
+	 *            The <code>MaxVersionTested</code> to set, or <code>null</code> to keep the original.
+	 * @return <code>this</code>
+	 */
+	public AppxManifestPatch setTargetDeviceFamily(String name, String minversion, String maxversiontested) {
+		Objects.requireNonNull(name, "target device family name");
+		putOrRemove(targetDeviceFamilyMinVersions, name, minversion);
+		putOrRemove(targetDeviceFamilyMaxVersionsTested, name, maxversiontested);
+		return this;
+	}
+
+	/**
+	 * Adds a <code>Capability</code> element with the given name, unless it is already declared.
+	 *
+	 * @param name
+	 *            The capability name.
+	 * @return <code>this</code>
+	 */
+	public AppxManifestPatch addCapability(String name) {
+		Objects.requireNonNull(name, "capability name");
+		removedCapabilities.remove(name);
+		addedCapabilities.add(name);
+		return this;
+	}
+
+	/**
+	 * Adds a <code>DeviceCapability</code> element with the given name, unless it is already declared.
+	 *
+	 * @param name
+	 *            The device capability name.
+	 * @return <code>this</code>
+	 */
+	public AppxManifestPatch addDeviceCapability(String name) {
+		Objects.requireNonNull(name, "device capability name");
+		removedCapabilities.remove(name);
+		addedDeviceCapabilities.add(name);
+		return this;
+	}
+
+	/**
+	 * Removes all the capability declarations with the given name.
+	 * <p>
+	 * Any child element of <code>Capabilities</code> with the given <code>Name</code> attribute is removed.
+	 *
+	 * @param name
+	 *            The capability name.
+	 * @return <code>this</code>
+	 */
+	public AppxManifestPatch removeCapability(String name) {
+		Objects.requireNonNull(name, "capability name");
+		addedCapabilities.remove(name);
+		addedDeviceCapabilities.remove(name);
+		removedCapabilities.add(name);
+		return this;
+	}
+
+	public NavigableMap<String, String> getIdentityAttributes() {
+		return identityAttributes;
+	}
+
+	public NavigableMap<String, String> getPropertyTexts() {
+		return propertyTexts;
+	}
+
+	public NavigableMap<String, String> getTargetDeviceFamilyMinVersions() {
+		return targetDeviceFamilyMinVersions;
+	}
+
+	public NavigableMap<String, String> getTargetDeviceFamilyMaxVersionsTested() {
+		return targetDeviceFamilyMaxVersionsTested;
+	}
+
+	public NavigableSet<String> getAddedCapabilities() {
+		return addedCapabilities;
+	}
+
+	public NavigableSet<String> getAddedDeviceCapabilities() {
+		return addedDeviceCapabilities;
+	}
+
+	public NavigableSet<String> getRemovedCapabilities() {
+		return removedCapabilities;
+	}
+
+	/**
+	 * Applies the patch to the manifest read from the input, and writes the result to the output.
+	 * <p>
+	 * The streams are not closed.
+	 *
+	 * @param is
+	 *            The input manifest.
+	 * @param os
+	 *            The output to write the patched manifest to.
+	 * @throws IOException
+	 *             If the patching failed.
+	 * @throws IllegalArgumentException
+	 *             If the input is not a valid manifest, or the patch cannot be applied.
+	 */
+	public void apply(InputStream is, OutputStream os) throws IOException, IllegalArgumentException {
+		AppxManifestPatcher.patch(is, os, this);
+	}
+
+	/**
+	 * Checks if the patch has no operations.
+	 *
+	 * @return <code>true</code> if the patch doesn't modify the manifest.
+	 */
+	public boolean isEmpty() {
+		return identityAttributes.isEmpty() && isIdentityOnly();
+	}
+
+	/**
+	 * Checks if the patch only modifies attributes of the <code>Identity</code> element.
+	 *
+	 * @return <code>true</code> if there are no other operations.
+	 */
+	public boolean isIdentityOnly() {
+		return propertyTexts.isEmpty() && targetDeviceFamilyMinVersions.isEmpty()
+				&& targetDeviceFamilyMaxVersionsTested.isEmpty() && addedCapabilities.isEmpty()
+				&& addedDeviceCapabilities.isEmpty() && removedCapabilities.isEmpty();
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		SerialUtils.writeExternalMap(out, identityAttributes);
+		SerialUtils.writeExternalMap(out, propertyTexts);
+		SerialUtils.writeExternalMap(out, targetDeviceFamilyMinVersions);
+		SerialUtils.writeExternalMap(out, targetDeviceFamilyMaxVersionsTested);
+		SerialUtils.writeExternalCollection(out, addedCapabilities);
+		SerialUtils.writeExternalCollection(out, addedDeviceCapabilities);
+		SerialUtils.writeExternalCollection(out, removedCapabilities);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		identityAttributes = SerialUtils.readExternalSortedImmutableNavigableMap(in);
+		propertyTexts = SerialUtils.readExternalSortedImmutableNavigableMap(in);
+		targetDeviceFamilyMinVersions = SerialUtils.readExternalSortedImmutableNavigableMap(in);
+		targetDeviceFamilyMaxVersionsTested = SerialUtils.readExternalSortedImmutableNavigableMap(in);
+		addedCapabilities = SerialUtils.readExternalSortedImmutableNavigableSet(in);
+		addedDeviceCapabilities = SerialUtils.readExternalSortedImmutableNavigableSet(in);
+		removedCapabilities = SerialUtils.readExternalSortedImmutableNavigableSet(in);
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((addedCapabilities == null) ? 0 : addedCapabilities.hashCode());
+		result = prime * result + ((addedDeviceCapabilities == null) ? 0 : addedDeviceCapabilities.hashCode());
+		result = prime * result + ((identityAttributes == null) ? 0 : identityAttributes.hashCode());
+		result = prime * result + ((propertyTexts == null) ? 0 : propertyTexts.hashCode());
+		result = prime * result + ((removedCapabilities == null) ? 0 : removedCapabilities.hashCode());
+		result = prime * result
+				+ ((targetDeviceFamilyMaxVersionsTested == null) ? 0 : targetDeviceFamilyMaxVersionsTested.hashCode());
+		result = prime * result
+				+ ((targetDeviceFamilyMinVersions == null) ? 0 : targetDeviceFamilyMinVersions.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		AppxManifestPatch other = (AppxManifestPatch) obj;
+		if (addedCapabilities == null) {
+			if (other.addedCapabilities != null)
+				return false;
+		} else if (!addedCapabilities.equals(other.addedCapabilities))
+			return false;
+		if (addedDeviceCapabilities == null) {
+			if (other.addedDeviceCapabilities != null)
+				return false;
+		} else if (!addedDeviceCapabilities.equals(other.addedDeviceCapabilities))
+			return false;
+		if (identityAttributes == null) {
+			if (other.identityAttributes != null)
+				return false;
+		} else if (!identityAttributes.equals(other.identityAttributes))
+			return false;
+		if (propertyTexts == null) {
+			if (other.propertyTexts != null)
+				return false;
+		} else if (!propertyTexts.equals(other.propertyTexts))
+			return false;
+		if (removedCapabilities == null) {
+			if (other.removedCapabilities != null)
+				return false;
+		} else if (!removedCapabilities.equals(other.removedCapabilities))
+			return false;
+		if (targetDeviceFamilyMaxVersionsTested == null) {
+			if (other.targetDeviceFamilyMaxVersionsTested != null)
+				return false;
+		} else if (!targetDeviceFamilyMaxVersionsTested.equals(other.targetDeviceFamilyMaxVersionsTested))
+			return false;
+		if (targetDeviceFamilyMinVersions == null) {
+			if (other.targetDeviceFamilyMinVersions != null)
+				return false;
+		} else if (!targetDeviceFamilyMinVersions.equals(other.targetDeviceFamilyMinVersions))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "AppxManifestPatch[identityAttributes=" + identityAttributes + ", propertyTexts=" + propertyTexts
+				+ ", targetDeviceFamilyMinVersions=" + targetDeviceFamilyMinVersions
+				+ ", targetDeviceFamilyMaxVersionsTested=" + targetDeviceFamilyMaxVersionsTested
+				+ ", addedCapabilities=" + addedCapabilities + ", addedDeviceCapabilities=" + addedDeviceCapabilities
+				+ ", removedCapabilities=" + removedCapabilities + "]";
+	}
+
+	private static void putOrRemove(NavigableMap<String, String> map, String key, String value) {
+		if (value == null) {
+			map.remove(key);
+		} else {
+			map.put(key, value);
+		}
+	}
+}
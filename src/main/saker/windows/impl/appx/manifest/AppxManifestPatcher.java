@@ -0,0 +1,862 @@
+package saker.windows.impl.appx.manifest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import saker.windows.impl.SakerWindowsXmlUtils;
+
+/**
+ * Streaming patcher of an <code>AppxManifest.xml</code>.
+ * <p>
+ * The operations of an {@link AppxManifestPatch} are applied in a single pass. The manifest is read and written event
+ * by event, and only the elements that are targeted by the operations are modified. Every other event is copied to
+ * the output, so the formatting of the original manifest is kept, and the memory use doesn't depend on the size of
+ * the manifest. The inserted elements are indented the same way as their siblings. The output is always UTF-8
+ * encoded, and the nodes outside of the root element are separated by new lines, as the whitespace between them is
+ * not reported by the parser.
+ * <p>
+ * The inserted elements are placed according to the element order of the manifest schema:
+ * <ul>
+ * <li><code>Properties</code> children are appended.</li>
+ * <li><code>TargetDeviceFamily</code> elements are inserted before the other <code>Dependencies</code>.</li>
+ * <li><code>Capability</code> elements are inserted before the device capabilities, <code>DeviceCapability</code>
+ * elements are appended.</li>
+ * <li>A new <code>Capabilities</code> element is inserted before <code>Extensions</code> or at the end of
+ * <code>Package</code>.</li>
+ * </ul>
+ */
+final class AppxManifestPatcher {
+	private static final String ELEM_PACKAGE = "Package";
+	private static final String ELEM_IDENTITY = "Identity";
+	private static final String ELEM_PROPERTIES = "Properties";
+	private static final String ELEM_DEPENDENCIES = "Dependencies";
+	private static final String ELEM_TARGET_DEVICE_FAMILY = "TargetDeviceFamily";
+	private static final String ELEM_CAPABILITIES = "Capabilities";
+	private static final String ELEM_CAPABILITY = "Capability";
+	private static final String ELEM_DEVICE_CAPABILITY = "DeviceCapability";
+	private static final String ELEM_EXTENSIONS = "Extensions";
+	private static final String ATTR_NAME = "Name";
+	private static final String ATTR_MIN_VERSION = "MinVersion";
+	private static final String ATTR_MAX_VERSION_TESTED = "MaxVersionTested";
+
+	private AppxManifestPatcher() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Patches the manifest read from the input, and writes it to the output.
+	 * <p>
+	 * The streams are not closed.
+	 *
+	 * @param is
+	 *            The input manifest.
+	 * @param os
+	 *            The output to write the patched manifest to.
+	 * @param patch
+	 *            The operations to apply.
+	 * @throws IOException
+	 *             If the patching failed.
+	 * @throws IllegalArgumentException
+	 *             If the input is not a valid manifest, or the patch cannot be applied.
+	 */
+	public static void patch(InputStream is, OutputStream os, AppxManifestPatch patch)
+			throws IOException, IllegalArgumentException {
+		copy(is, os, patch, (elem, writer, empty) -> {
+			setIdentityAttributes(elem, patch);
+			elem.write(writer, empty);
+		});
+	}
+
+	/**
+	 * Parses the manifest read from the input, and creates a template that can be used to write multiple patched
+	 * variants of it.
+	 * <p>
+	 * The stream is not closed.
+	 *
+	 * @param is
+	 *            The input manifest.
+	 * @return The created template.
+	 * @throws IOException
+	 *             If the parsing failed.
+	 * @throws IllegalArgumentException
+	 *             If the input is not a valid manifest.
+	 */
+	public static PatchTemplate createTemplate(InputStream is) throws IOException, IllegalArgumentException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		StartElementData[] identity = { null };
+		boolean[] identityempty = { false };
+		int[] identityrange = { 0, 0 };
+		copy(is, baos, new AppxManifestPatch(), (elem, writer, empty) -> {
+			//the identity element is written as is, and its range is recorded in the output
+			//the start tag of the parent may not be closed yet
+			closeStartTag(writer);
+			writer.flush();
+			identityrange[0] = baos.size();
+			elem.write(writer, empty);
+			closeStartTag(writer);
+			writer.flush();
+			identityrange[1] = baos.size();
+			identity[0] = elem;
+			identityempty[0] = empty;
+		});
+		return new PatchTemplate(baos.toByteArray(), identityrange[0], identityrange[1], identity[0],
+				identityempty[0]);
+	}
+
+	/**
+	 * Template for writing patched variants of a manifest.
+	 * <p>
+	 * The template contains the output bytes of the manifest, and the original contents of the <code>Identity</code>
+	 * element. When a variant is written, only the <code>Identity</code> element is serialized again, the rest of the
+	 * output is copied from the template.
+	 * <p>
+	 * The template is immutable, and the variants may be written concurrently.
+	 */
+	public static final class PatchTemplate {
+		private final byte[] output;
+		private final int identityStart;
+		private final int identityEnd;
+		private final StartElementData identity;
+		private final boolean identityEmpty;
+
+		PatchTemplate(byte[] output, int identityStart, int identityEnd, StartElementData identity,
+				boolean identityEmpty) {
+			this.output = output;
+			this.identityStart = identityStart;
+			this.identityEnd = identityEnd;
+			this.identity = identity;
+			this.identityEmpty = identityEmpty;
+		}
+
+		/**
+		 * Writes a patched variant of the manifest to the output.
+		 * <p>
+		 * The stream is not closed.
+		 *
+		 * @param os
+		 *            The output to write the patched manifest to.
+		 * @param patch
+		 *            The operations to apply. Only <code>Identity</code> attributes can be modified.
+		 * @throws IOException
+		 *             If the writing failed.
+		 * @throws IllegalArgumentException
+		 *             If the patch contains other operations than modifying the <code>Identity</code>.
+		 */
+		public void write(OutputStream os, AppxManifestPatch patch) throws IOException, IllegalArgumentException {
+			if (!patch.isIdentityOnly()) {
+				throw new IllegalArgumentException(
+						"Only Identity attributes can be patched using a template: " + patch);
+			}
+			os.write(output, 0, identityStart);
+			StartElementData elem = new StartElementData(identity);
+			setIdentityAttributes(elem, patch);
+			try {
+				XMLStreamWriter writer = SakerWindowsXmlUtils.getXMLOutputFactory().createXMLStreamWriter(os,
+						StandardCharsets.UTF_8.name());
+				try {
+					elem.write(writer, identityEmpty);
+					closeStartTag(writer);
+					writer.flush();
+				} finally {
+					//doesn't close the underlying stream
+					writer.close();
+				}
+			} catch (XMLStreamException e) {
+				throw new IOException("Failed to patch Appx manifest.", e);
+			}
+			os.write(output, identityEnd, output.length - identityEnd);
+		}
+	}
+
+	private static void setIdentityAttributes(StartElementData elem, AppxManifestPatch patch) {
+		for (Entry<String, String> entry : patch.getIdentityAttributes().entrySet()) {
+			elem.setAttribute(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Writes the start tag that was started last, without writing any content.
+	 * <p>
+	 * The writers don't close the start tags until the next event is written, so an empty content is written.
+	 */
+	private static void closeStartTag(XMLStreamWriter writer) throws XMLStreamException {
+		writer.writeCharacters("");
+	}
+
+	private static void copy(InputStream is, OutputStream os, AppxManifestPatch patch,
+			IdentityElementWriter identitywriter) throws IOException, IllegalArgumentException {
+		try {
+			XMLStreamReader reader = SakerWindowsXmlUtils.getXMLInputFactory().createXMLStreamReader(is);
+			try {
+				XMLStreamWriter writer = SakerWindowsXmlUtils.getXMLOutputFactory().createXMLStreamWriter(os,
+						StandardCharsets.UTF_8.name());
+				try {
+					new PatchTransform(reader, writer, patch, identitywriter).run();
+					writer.flush();
+				} finally {
+					//doesn't close the underlying stream
+					writer.close();
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Failed to patch Appx manifest.", e);
+		}
+	}
+
+	@FunctionalInterface
+	private interface IdentityElementWriter {
+		public void write(StartElementData elem, XMLStreamWriter writer, boolean empty) throws XMLStreamException;
+	}
+
+	/**
+	 * The state of a single patching pass.
+	 * <p>
+	 * The whitespace between the elements is buffered until the next event, so it can be dropped with the removed
+	 * elements, and reused as indentation for the inserted ones.
+	 */
+	private static final class PatchTransform {
+		private final XMLStreamReader reader;
+		private final XMLStreamWriter writer;
+		private final AppxManifestPatch patch;
+		private final IdentityElementWriter identityWriter;
+
+		private int depth = 0;
+		private String rootNamespace;
+		private String rootPrefix;
+		private boolean identityFound = false;
+		/**
+		 * The local name of the current child element of the root, if it is in the root namespace.
+		 */
+		private String section;
+		private final StringBuilder pendingWhitespace = new StringBuilder();
+		/**
+		 * The whitespace before the last child element of the root.
+		 */
+		private String sectionIndent = "";
+		/**
+		 * The whitespace before the last child element of the current section.
+		 */
+		private String childIndent;
+
+		private boolean propertiesFound = false;
+		private final Set<String> seenProperties = new HashSet<>();
+		private final Set<String> seenTargetDeviceFamilies = new HashSet<>();
+		private boolean targetDeviceFamiliesInserted = false;
+		private final Set<String> seenCapabilities = new HashSet<>();
+		private boolean capabilitiesInserted = false;
+		private boolean capabilitiesSectionFound = false;
+
+		public PatchTransform(XMLStreamReader reader, XMLStreamWriter writer, AppxManifestPatch patch,
+				IdentityElementWriter identityWriter) {
+			this.reader = reader;
+			this.writer = writer;
+			this.patch = patch;
+			this.identityWriter = identityWriter;
+		}
+
+		public void run() throws XMLStreamException {
+			int event = reader.getEventType();
+			while (true) {
+				switch (event) {
+					case XMLStreamConstants.START_DOCUMENT: {
+						//the output is always written as UTF-8
+						String xmlversion = reader.getVersion();
+						writer.writeStartDocument(StandardCharsets.UTF_8.name(),
+								xmlversion == null ? "1.0" : xmlversion);
+						//the whitespace outside of the root element is not reported, separate the nodes by new lines
+						writer.writeCharacters("\n");
+						break;
+					}
+					case XMLStreamConstants.START_ELEMENT: {
+						//the next event is already read
+						event = startElement();
+						continue;
+					}
+					case XMLStreamConstants.END_ELEMENT: {
+						endElement();
+						break;
+					}
+					case XMLStreamConstants.CHARACTERS:
+					case XMLStreamConstants.SPACE: {
+						if (depth > 0 && reader.isWhiteSpace()) {
+							pendingWhitespace.append(reader.getTextCharacters(), reader.getTextStart(),
+									reader.getTextLength());
+							break;
+						}
+						flushWhitespace();
+						writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(),
+								reader.getTextLength());
+						break;
+					}
+					case XMLStreamConstants.CDATA: {
+						flushWhitespace();
+						writer.writeCData(reader.getText());
+						break;
+					}
+					case XMLStreamConstants.COMMENT: {
+						flushWhitespace();
+						writer.writeComment(reader.getText());
+						if (depth == 0) {
+							writer.writeCharacters("\n");
+						}
+						break;
+					}
+					case XMLStreamConstants.PROCESSING_INSTRUCTION: {
+						flushWhitespace();
+						String data = reader.getPIData();
+						if (data == null || data.isEmpty()) {
+							writer.writeProcessingInstruction(reader.getPITarget());
+						} else {
+							writer.writeProcessingInstruction(reader.getPITarget(), data);
+						}
+						if (depth == 0) {
+							writer.writeCharacters("\n");
+						}
+						break;
+					}
+					case XMLStreamConstants.ENTITY_REFERENCE: {
+						flushWhitespace();
+						writer.writeEntityRef(reader.getLocalName());
+						break;
+					}
+					case XMLStreamConstants.DTD: {
+						writer.writeDTD(reader.getText());
+						writer.writeCharacters("\n");
+						break;
+					}
+					case XMLStreamConstants.END_DOCUMENT: {
+						if (!identityFound) {
+							throw new IllegalArgumentException("Identity element not found in AppxManifest.");
+						}
+						if (!propertiesFound && !patch.getPropertyTexts().isEmpty()) {
+							throw new IllegalArgumentException("Properties element not found in AppxManifest.");
+						}
+						if (!targetDeviceFamiliesInserted && (!patch.getTargetDeviceFamilyMinVersions().isEmpty()
+								|| !patch.getTargetDeviceFamilyMaxVersionsTested().isEmpty())) {
+							throw new IllegalArgumentException("Dependencies element not found in AppxManifest.");
+						}
+						writer.writeEndDocument();
+						return;
+					}
+					default: {
+						break;
+					}
+				}
+				event = reader.next();
+			}
+		}
+
+		/**
+		 * Handles the current start element.
+		 *
+		 * @return The next event that should be handled.
+		 */
+		private int startElement() throws XMLStreamException {
+			++depth;
+			String localname = reader.getLocalName();
+			boolean inroot = false;
+			switch (depth) {
+				case 1: {
+					if (!ELEM_PACKAGE.equals(localname)) {
+						throw new IllegalArgumentException(
+								"Invalid AppxManifest.xml, expected Package root element instead of "
+										+ reader.getName());
+					}
+					rootNamespace = reader.getNamespaceURI();
+					rootPrefix = reader.getPrefix();
+					break;
+				}
+				case 2: {
+					inroot = Objects.equals(rootNamespace, reader.getNamespaceURI());
+					section = inroot ? localname : null;
+					sectionIndent = pendingWhitespace.toString();
+					if (!inroot) {
+						childIndent = null;
+						break;
+					}
+					if (ELEM_CAPABILITIES.equals(localname)) {
+						capabilitiesSectionFound = true;
+						childIndent = null;
+					} else if (ELEM_EXTENSIONS.equals(localname) && !capabilitiesSectionFound
+							&& hasCapabilitiesToAdd()) {
+						String indent = takeWhitespace();
+						writeCapabilitiesSection(indent);
+						pendingWhitespace.append(indent);
+						childIndent = null;
+					} else {
+						childIndent = null;
+					}
+					break;
+				}
+				case 3: {
+					if (section == null) {
+						break;
+					}
+					inroot = Objects.equals(rootNamespace, reader.getNamespaceURI());
+					if (pendingWhitespace.length() > 0) {
+						childIndent = pendingWhitespace.toString();
+					}
+					switch (section) {
+						case ELEM_PROPERTIES: {
+							String text = inroot ? patch.getPropertyTexts().get(localname) : null;
+							if (text != null && seenProperties.add(localname)) {
+								flushWhitespace();
+								new StartElementData(reader).write(writer, false);
+								writer.writeCharacters(text);
+								skipElementContents();
+								writer.writeEndElement();
+								--depth;
+								return reader.next();
+							}
+							break;
+						}
+						case ELEM_DEPENDENCIES: {
+							if ((!inroot || !ELEM_TARGET_DEVICE_FAMILY.equals(localname))
+									&& !targetDeviceFamiliesInserted) {
+								String indent = takeWhitespace();
+								insertTargetDeviceFamilies(indent);
+								pendingWhitespace.append(indent);
+							}
+							break;
+						}
+						case ELEM_CAPABILITIES: {
+							String name = reader.getAttributeValue(null, ATTR_NAME);
+							if (name != null && patch.getRemovedCapabilities().contains(name)) {
+								//the indentation is removed with the element
+								pendingWhitespace.setLength(0);
+								skipElementContents();
+								--depth;
+								return reader.next();
+							}
+							if (localname.endsWith(ELEM_DEVICE_CAPABILITY) && !capabilitiesInserted) {
+								String indent = takeWhitespace();
+								insertCapabilities(indent);
+								pendingWhitespace.append(indent);
+							}
+							if (name != null) {
+								seenCapabilities.add(name);
+							}
+							break;
+						}
+						default: {
+							break;
+						}
+					}
+					break;
+				}
+				default: {
+					break;
+				}
+			}
+			flushWhitespace();
+
+			StartElementData elem = new StartElementData(reader);
+			boolean identity = false;
+			if (depth == 2 && inroot && !identityFound && ELEM_IDENTITY.equals(localname)) {
+				identityFound = true;
+				identity = true;
+			} else if (depth == 3 && inroot && ELEM_DEPENDENCIES.equals(section)
+					&& ELEM_TARGET_DEVICE_FAMILY.equals(localname)) {
+				String name = elem.getAttribute(ATTR_NAME);
+				if (name != null && seenTargetDeviceFamilies.add(name)) {
+					elem.setAttribute(ATTR_MIN_VERSION, patch.getTargetDeviceFamilyMinVersions().get(name));
+					elem.setAttribute(ATTR_MAX_VERSION_TESTED,
+							patch.getTargetDeviceFamilyMaxVersionsTested().get(name));
+				}
+			}
+			int event = reader.next();
+			//no content, keep it as an empty element
+			boolean empty = event == XMLStreamConstants.END_ELEMENT;
+			if (identity) {
+				identityWriter.write(elem, writer, empty);
+			} else if (empty && depth <= 2 && hasElementsToInsertAtEnd()) {
+				//elements are inserted, the end element is handled separately
+				elem.write(writer, false);
+				return event;
+			} else {
+				elem.write(writer, empty);
+			}
+			if (empty) {
+				endElementWritten();
+				return reader.next();
+			}
+			return event;
+		}
+
+		private void endElement() throws XMLStreamException {
+			if (depth == 2 && section != null) {
+				String indent = getChildIndent();
+				boolean inserted = false;
+				switch (section) {
+					case ELEM_PROPERTIES: {
+						propertiesFound = true;
+						for (Entry<String, String> entry : patch.getPropertyTexts().entrySet()) {
+							if (seenProperties.add(entry.getKey())) {
+								writer.writeCharacters(indent);
+								writeStartElement(entry.getKey(), false);
+								writer.writeCharacters(entry.getValue());
+								writer.writeEndElement();
+								inserted = true;
+							}
+						}
+						break;
+					}
+					case ELEM_DEPENDENCIES: {
+						inserted = insertTargetDeviceFamilies(indent);
+						break;
+					}
+					case ELEM_CAPABILITIES: {
+						inserted = insertCapabilities(indent);
+						inserted |= insertDeviceCapabilities(indent);
+						break;
+					}
+					default: {
+						break;
+					}
+				}
+				if (inserted && pendingWhitespace.length() == 0) {
+					pendingWhitespace.append(sectionIndent);
+				}
+			} else if (depth == 1) {
+				if (!capabilitiesSectionFound && hasCapabilitiesToAdd()) {
+					writeCapabilitiesSection(sectionIndent);
+				}
+			}
+			flushWhitespace();
+			writer.writeEndElement();
+			endElementWritten();
+		}
+
+		private void endElementWritten() throws XMLStreamException {
+			--depth;
+			if (depth == 0) {
+				writer.writeCharacters("\n");
+			} else if (depth == 1) {
+				section = null;
+			}
+		}
+
+		private boolean hasElementsToInsertAtEnd() {
+			if (depth == 1) {
+				return !capabilitiesSectionFound && hasCapabilitiesToAdd();
+			}
+			if (section == null) {
+				return false;
+			}
+			switch (section) {
+				case ELEM_PROPERTIES: {
+					return !patch.getPropertyTexts().isEmpty();
+				}
+				case ELEM_DEPENDENCIES: {
+					return !patch.getTargetDeviceFamilyMinVersions().isEmpty()
+							|| !patch.getTargetDeviceFamilyMaxVersionsTested().isEmpty();
+				}
+				case ELEM_CAPABILITIES: {
+					return hasCapabilitiesToAdd();
+				}
+				default: {
+					return false;
+				}
+			}
+		}
+
+		private boolean hasCapabilitiesToAdd() {
+			return !patch.getAddedCapabilities().isEmpty() || !patch.getAddedDeviceCapabilities().isEmpty();
+		}
+
+		/**
+		 * Writes the <code>TargetDeviceFamily</code> elements that are not yet present in the manifest.
+		 *
+		 * @return <code>true</code> if any elements were written.
+		 */
+		private boolean insertTargetDeviceFamilies(String indent) throws XMLStreamException {
+			if (targetDeviceFamiliesInserted) {
+				return false;
+			}
+			targetDeviceFamiliesInserted = true;
+			NavigableSet<String> names = new TreeSet<>(patch.getTargetDeviceFamilyMinVersions().keySet());
+			names.addAll(patch.getTargetDeviceFamilyMaxVersionsTested().keySet());
+			boolean result = false;
+			for (String name : names) {
+				if (!seenTargetDeviceFamilies.add(name)) {
+					continue;
+				}
+				String minversion = patch.getTargetDeviceFamilyMinVersions().get(name);
+				String maxversiontested = patch.getTargetDeviceFamilyMaxVersionsTested().get(name);
+				if (minversion == null || maxversiontested == null) {
+					throw new IllegalArgumentException("TargetDeviceFamily not found in AppxManifest: " + name
+							+ ". MinVersion and MaxVersionTested are required to add it.");
+				}
+				writer.writeCharacters(indent);
+				writeStartElement(ELEM_TARGET_DEVICE_FAMILY, true);
+				writer.writeAttribute(ATTR_NAME, name);
+				writer.writeAttribute(ATTR_MIN_VERSION, minversion);
+				writer.writeAttribute(ATTR_MAX_VERSION_TESTED, maxversiontested);
+				result = true;
+			}
+			return result;
+		}
+
+		/**
+		 * Writes the added <code>Capability</code> elements that are not yet present in the manifest.
+		 *
+		 * @return <code>true</code> if any elements were written.
+		 */
+		private boolean insertCapabilities(String indent) throws XMLStreamException {
+			if (capabilitiesInserted) {
+				return false;
+			}
+			capabilitiesInserted = true;
+			return insertCapabilityElements(indent, ELEM_CAPABILITY, patch.getAddedCapabilities());
+		}
+
+		private boolean insertDeviceCapabilities(String indent) throws XMLStreamException {
+			return insertCapabilityElements(indent, ELEM_DEVICE_CAPABILITY, patch.getAddedDeviceCapabilities());
+		}
+
+		private boolean insertCapabilityElements(String indent, String elementname, Set<String> names)
+				throws XMLStreamException {
+			boolean result = false;
+			for (String name : names) {
+				if (!seenCapabilities.add(name)) {
+					continue;
+				}
+				writer.writeCharacters(indent);
+				writeStartElement(elementname, true);
+				writer.writeAttribute(ATTR_NAME, name);
+				result = true;
+			}
+			return result;
+		}
+
+		/**
+		 * Writes a new <code>Capabilities</code> element that contains the added capabilities.
+		 */
+		private void writeCapabilitiesSection(String indent) throws XMLStreamException {
+			capabilitiesSectionFound = true;
+			String capindent = getChildIndent();
+			writer.writeCharacters(indent);
+			writeStartElement(ELEM_CAPABILITIES, false);
+			insertCapabilities(capindent);
+			insertDeviceCapabilities(capindent);
+			writer.writeCharacters(sectionIndent);
+			writer.writeEndElement();
+		}
+
+		/**
+		 * Gets the indentation for the inserted child elements of a section.
+		 * <p>
+		 * If the section has no children, the indentation is derived from the indentation of the section.
+		 */
+		private String getChildIndent() {
+			if (childIndent != null) {
+				return childIndent;
+			}
+			int idx = sectionIndent.lastIndexOf('\n');
+			if (idx < 0) {
+				return sectionIndent;
+			}
+			return sectionIndent + sectionIndent.substring(idx + 1);
+		}
+
+		private void writeStartElement(String localname, boolean empty) throws XMLStreamException {
+			String prefix = rootPrefix == null ? "" : rootPrefix;
+			String ns = rootNamespace == null ? "" : rootNamespace;
+			if (empty) {
+				writer.writeEmptyElement(prefix, localname, ns);
+			} else {
+				writer.writeStartElement(prefix, localname, ns);
+			}
+		}
+
+		/**
+		 * Skips the events until the end of the current element.
+		 */
+		private void skipElementContents() throws XMLStreamException {
+			int skipdepth = 1;
+			while (skipdepth > 0) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					++skipdepth;
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					--skipdepth;
+				}
+			}
+		}
+
+		private String takeWhitespace() {
+			String result = pendingWhitespace.toString();
+			pendingWhitespace.setLength(0);
+			return result;
+		}
+
+		private void flushWhitespace() throws XMLStreamException {
+			if (pendingWhitespace.length() > 0) {
+				writer.writeCharacters(takeWhitespace());
+			}
+		}
+	}
+
+	/**
+	 * The contents of a start element that is read from a {@link XMLStreamReader}.
+	 * <p>
+	 * The contents are copied, as the reader needs to be advanced to decide whether the element is empty.
+	 */
+	private static final class StartElementData {
+		private final String prefix;
+		private final String localName;
+		private final String namespaceURI;
+		private final String[] namespacePrefixes;
+		private final String[] namespaceURIs;
+		private String[] attributePrefixes;
+		private String[] attributeNamespaceURIs;
+		private String[] attributeLocalNames;
+		private String[] attributeValues;
+
+		public StartElementData(StartElementData copy) {
+			this.prefix = copy.prefix;
+			this.localName = copy.localName;
+			this.namespaceURI = copy.namespaceURI;
+			this.namespacePrefixes = copy.namespacePrefixes;
+			this.namespaceURIs = copy.namespaceURIs;
+			//the attribute arrays are modified in place
+			this.attributePrefixes = copy.attributePrefixes.clone();
+			this.attributeNamespaceURIs = copy.attributeNamespaceURIs.clone();
+			this.attributeLocalNames = copy.attributeLocalNames.clone();
+			this.attributeValues = copy.attributeValues.clone();
+		}
+
+		public StartElementData(XMLStreamReader reader) {
+			this.prefix = reader.getPrefix();
+			this.localName = reader.getLocalName();
+			this.namespaceURI = reader.getNamespaceURI();
+
+			int nscount = reader.getNamespaceCount();
+			this.namespacePrefixes = new String[nscount];
+			this.namespaceURIs = new String[nscount];
+			for (int i = 0; i < nscount; i++) {
+				this.namespacePrefixes[i] = reader.getNamespacePrefix(i);
+				this.namespaceURIs[i] = reader.getNamespaceURI(i);
+			}
+
+			int attrcount = reader.getAttributeCount();
+			this.attributePrefixes = new String[attrcount];
+			this.attributeNamespaceURIs = new String[attrcount];
+			this.attributeLocalNames = new String[attrcount];
+			this.attributeValues = new String[attrcount];
+			for (int i = 0; i < attrcount; i++) {
+				this.attributePrefixes[i] = reader.getAttributePrefix(i);
+				this.attributeNamespaceURIs[i] = reader.getAttributeNamespace(i);
+				this.attributeLocalNames[i] = reader.getAttributeLocalName(i);
+				this.attributeValues[i] = reader.getAttributeValue(i);
+			}
+		}
+
+		/**
+		 * Gets the value of the attribute with the given local name.
+		 * <p>
+		 * The attribute is looked up the same way as in {@link #setAttribute(String, String)}.
+		 *
+		 * @param localname
+		 *            The local name of the attribute.
+		 * @return The value or <code>null</code> if not found.
+		 */
+		public String getAttribute(String localname) {
+			int idx = indexOfAttribute(localname);
+			return idx < 0 ? null : attributeValues[idx];
+		}
+
+		/**
+		 * Sets the value of the attribute with the given local name.
+		 * <p>
+		 * The attribute has the same prefix as the element. If the attribute exists, its value is replaced in place,
+		 * else it is appended to the attributes.
+		 * 
+		 * @param localname
+		 *            The local name of the attribute.
+		 * @param value
+		 *            The value to set, or <code>null</code> to leave the attribute unchanged.
+		 */
+		public void setAttribute(String localname, String value) {
+			if (value == null) {
+				return;
+			}
+			int idx = indexOfAttribute(localname);
+			if (idx >= 0) {
+				attributeValues[idx] = value;
+				return;
+			}
+			boolean prefixed = !isEmpty(prefix);
+			int len = attributeLocalNames.length;
+			attributePrefixes = Arrays.copyOf(attributePrefixes, len + 1);
+			attributeNamespaceURIs = Arrays.copyOf(attributeNamespaceURIs, len + 1);
+			attributeLocalNames = Arrays.copyOf(attributeLocalNames, len + 1);
+			attributeValues = Arrays.copyOf(attributeValues, len + 1);
+			attributePrefixes[len] = prefixed ? prefix : null;
+			attributeNamespaceURIs[len] = prefixed ? namespaceURI : null;
+			attributeLocalNames[len] = localname;
+			attributeValues[len] = value;
+		}
+
+		private int indexOfAttribute(String localname) {
+			boolean prefixed = !isEmpty(prefix);
+			for (int i = 0; i < attributeLocalNames.length; i++) {
+				if (!localname.equals(attributeLocalNames[i])) {
+					continue;
+				}
+				if (prefixed ? prefix.equals(attributePrefixes[i]) : isEmpty(attributePrefixes[i])) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		public void write(XMLStreamWriter writer, boolean empty) throws XMLStreamException {
+			String elemprefix = prefix == null ? "" : prefix;
+			String elemns = namespaceURI == null ? "" : namespaceURI;
+			if (empty) {
+				writer.writeEmptyElement(elemprefix, localName, elemns);
+			} else {
+				writer.writeStartElement(elemprefix, localName, elemns);
+			}
+			for (int i = 0; i < namespacePrefixes.length; i++) {
+				String nsprefix = namespacePrefixes[i];
+				if (isEmpty(nsprefix)) {
+					writer.writeDefaultNamespace(namespaceURIs[i]);
+				} else {
+					writer.writeNamespace(nsprefix, namespaceURIs[i]);
+				}
+			}
+			for (int i = 0; i < attributeLocalNames.length; i++) {
+				String attrprefix = attributePrefixes[i];
+				if (isEmpty(attrprefix)) {
+					writer.writeAttribute(attributeLocalNames[i], attributeValues[i]);
+				} else {
+					writer.writeAttribute(attrprefix, attributeNamespaceURIs[i], attributeLocalNames[i],
+							attributeValues[i]);
+				}
+			}
+		}
+
+		private static boolean isEmpty(String s) {
+			return s == null || s.isEmpty();
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package saker.windows.impl.appx.manifest;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import saker.build.file.path.SakerPath;
+import saker.build.thirdparty.saker.util.io.SerialUtils;
+
+/**
+ * A patched variant of a manifest that is created by {@link PatchMultiAppxManifestWorkerTaskFactory}.
+ */
+public final class PatchAppxManifestVariant implements Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	private SakerPath relativeOutput;
+	private String processorArchitecture;
+	private String version;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public PatchAppxManifestVariant() {
+	}
+
+	/**
+	 * Creates a new instance.
+	 *
+	 * @param relativeOutput
+	 *            The output path of the patched manifest relative to the build directory.
+	 * @param processorArchitecture
+	 *            The processor architecture to set, or <code>null</code> to keep the original.
+	 * @param version
+	 *            The version to set, or <code>null</code> to keep the original.
+	 */
+	public PatchAppxManifestVariant(SakerPath relativeOutput, String processorArchitecture, String version) {
+		this.relativeOutput = relativeOutput;
+		this.processorArchitecture = processorArchitecture;
+		this.version = version;
+	}
+
+	public SakerPath getRelativeOutput() {
+		return relativeOutput;
+	}
+
+	public String getProcessorArchitecture() {
+		return processorArchitecture;
+	}
+
+	public String getVersion() {
+		return version;
+	}
+
+	/**
+	 * Creates the patch that is applied to the manifest for this variant.
+	 *
+	 * @return The patch.
+	 */
+	public AppxManifestPatch toPatch() {
+		return new AppxManifestPatch()
+				.setIdentityAttribute(AppxManifestPatch.IDENTITY_PROCESSOR_ARCHITECTURE, processorArchitecture)
+				.setIdentityAttribute(AppxManifestPatch.IDENTITY_VERSION, version);
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeObject(relativeOutput);
+		out.writeObject(processorArchitecture);
+		out.writeObject(version);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		relativeOutput = SerialUtils.readExternalObject(in);
+		processorArchitecture = SerialUtils.readExternalObject(in);
+		version = SerialUtils.readExternalObject(in);
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((processorArchitecture == null) ? 0 : processorArchitecture.hashCode());
+		result = prime * result + ((relativeOutput == null) ? 0 : relativeOutput.hashCode());
+		result = prime * result + ((version == null) ? 0 : version.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		PatchAppxManifestVariant other = (PatchAppxManifestVariant) obj;
+		if (processorArchitecture == null) {
+			if (other.processorArchitecture != null)
+				return false;
+		} else if (!processorArchitecture.equals(other.processorArchitecture))
+			return false;
+		if (relativeOutput == null) {
+			if (other.relativeOutput != null)
+				return false;
+		} else if (!relativeOutput.equals(other.relativeOutput))
+			return false;
+		if (version == null) {
+			if (other.version != null)
+				return false;
+		} else if (!version.equals(other.version))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "PatchAppxManifestVariant[" + (relativeOutput != null ? "relativeOutput=" + relativeOutput + ", " : "")
+				+ (processorArchitecture != null ? "processorArchitecture=" + processorArchitecture + ", " : "")
+				+ (version != null ? "version=" + version : "") + "]";
+	}
+}
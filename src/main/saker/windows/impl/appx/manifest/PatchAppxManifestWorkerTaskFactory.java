@@ -7,22 +7,8 @@ import java.io.InputStream;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.io.OutputStream;
-import java.util.Objects;
 import java.util.UUID;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
 import saker.build.exception.InvalidPathFormatException;
 import saker.build.file.SakerDirectory;
 import saker.build.file.SakerFile;
@@ -39,6 +25,7 @@ import saker.build.task.TaskFactory;
 import saker.build.task.utils.dependencies.EqualityTaskOutputChangeDetector;
 import saker.build.thirdparty.saker.util.ObjectUtils;
 import saker.build.thirdparty.saker.util.io.SerialUtils;
+import saker.build.thirdparty.saker.util.io.UnsyncByteArrayOutputStream;
 import saker.build.thirdparty.saker.util.io.function.IOSupplier;
 import saker.build.trace.BuildTrace;
 import saker.std.api.file.location.ExecutionFileLocation;
@@ -47,14 +34,16 @@ import saker.std.api.file.location.FileLocationVisitor;
 import saker.std.api.file.location.LocalFileLocation;
 import saker.std.api.util.SakerStandardUtils;
 import saker.windows.api.appx.manifest.PatchAppxManifestWorkerTaskOutput;
+import saker.windows.impl.appx.ContentHashSakerFile;
+import saker.windows.impl.metrics.WorkerTaskMetrics;
 import saker.windows.main.appx.manifest.PatchAppxManifestTaskFactory;
 
 public class PatchAppxManifestWorkerTaskFactory implements TaskFactory<Object>, Task<Object>, Externalizable {
 	private static final long serialVersionUID = 1L;
 
 	private FileLocation file;
-	private String processorArchitecture;
-	private String version;
+	private AppxManifestPatch patch;
+	private boolean contentHash;
 
 	/**
 	 * For {@link Externalizable}.
@@ -62,16 +51,22 @@ public class PatchAppxManifestWorkerTaskFactory implements TaskFactory<Object>,
 	public PatchAppxManifestWorkerTaskFactory() {
 	}
 
-	public PatchAppxManifestWorkerTaskFactory(FileLocation file) {
+	public PatchAppxManifestWorkerTaskFactory(FileLocation file, AppxManifestPatch patch) {
 		this.file = file;
+		this.patch = patch;
 	}
 
-	public void setProcessorArchitecture(String processorArchitecture) {
-		this.processorArchitecture = processorArchitecture;
-	}
-
-	public void setVersion(String version) {
-		this.version = version;
+	/**
+	 * Sets if the output should have a content descriptor based on the hash of the patched contents.
+	 * <p>
+	 * If not set, the content descriptor is based on the contents of the input manifest and the patch, so any
+	 * modification to the input causes the dependent tasks to rerun, even if the output doesn't change.
+	 *
+	 * @param contentHash
+	 *            <code>true</code> to use the hash of the output contents.
+	 */
+	public void setContentHash(boolean contentHash) {
+		this.contentHash = contentHash;
 	}
 
 	@Override
@@ -81,6 +76,15 @@ public class PatchAppxManifestWorkerTaskFactory implements TaskFactory<Object>,
 
 	@Override
 	public Object run(TaskContext taskcontext) throws Exception {
+		WorkerTaskMetrics metrics = new WorkerTaskMetrics(this);
+		try {
+			return runWithMetrics(taskcontext, metrics);
+		} finally {
+			metrics.finish();
+		}
+	}
+
+	private Object runWithMetrics(TaskContext taskcontext, WorkerTaskMetrics metrics) throws Exception {
 		if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
 			BuildTrace.classifyTask(BuildTrace.CLASSIFICATION_WORKER);
 		}
@@ -90,7 +94,9 @@ public class PatchAppxManifestWorkerTaskFactory implements TaskFactory<Object>,
 
 		SakerPath outputrelativepath = taskid.getRelativeOutput();
 
-		AppxManifestPatchingSakerFile[] addfile = { null };
+		metrics.startPhase("Patch manifest");
+		metrics.addFiles(1);
+		SakerFile[] addfile = { null };
 
 		file.accept(new FileLocationVisitor() {
 			@Override
@@ -103,9 +109,8 @@ public class PatchAppxManifestWorkerTaskFactory implements TaskFactory<Object>,
 					throw ObjectUtils.sneakyThrow(new FileNotFoundException(localpath.toString()));
 				}
 
-				addfile[0] = new AppxManifestPatchingSakerFile(localpath.getFileName(),
-						() -> LocalFileProvider.getInstance().openInputStream(localpath),
-						new PatchedAppxManifestContentDescriptor(fcontents, processorArchitecture, version));
+				addfile[0] = createOutputFile(localpath.getFileName(),
+						() -> LocalFileProvider.getInstance().openInputStream(localpath), fcontents);
 			}
 
 			@Override
@@ -116,11 +121,12 @@ public class PatchAppxManifestWorkerTaskFactory implements TaskFactory<Object>,
 				}
 				ContentDescriptor fcontents = f.getContentDescriptor();
 				taskcontext.reportInputFileDependency(null, loc.getPath(), fcontents);
-				addfile[0] = new AppxManifestPatchingSakerFile(f.getName(), f::openInputStreamImpl,
-						new PatchedAppxManifestContentDescriptor(fcontents, processorArchitecture, version));
+				addfile[0] = createOutputFile(f.getName(), f::openInputStreamImpl, fcontents);
 			}
 		});
 
+		metrics.startPhase("Synchronize output");
+		metrics.addFiles(1);
 		SakerDirectory outputdir = taskcontext.getTaskUtilities().resolveDirectoryAtRelativePathCreate(
 				SakerPathFiles.requireBuildDirectory(taskcontext), outputrelativepath.getParent());
 
@@ -137,24 +143,24 @@ public class PatchAppxManifestWorkerTaskFactory implements TaskFactory<Object>,
 	@Override
 	public void writeExternal(ObjectOutput out) throws IOException {
 		out.writeObject(file);
-		out.writeObject(processorArchitecture);
-		out.writeObject(version);
+		out.writeObject(patch);
+		out.writeBoolean(contentHash);
 	}
 
 	@Override
 	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
 		file = SerialUtils.readExternalObject(in);
-		processorArchitecture = SerialUtils.readExternalObject(in);
-		version = SerialUtils.readExternalObject(in);
+		patch = SerialUtils.readExternalObject(in);
+		contentHash = in.readBoolean();
 	}
 
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
+		result = prime * result + (contentHash ? 1231 : 1237);
 		result = prime * result + ((file == null) ? 0 : file.hashCode());
-		result = prime * result + ((processorArchitecture == null) ? 0 : processorArchitecture.hashCode());
-		result = prime * result + ((version == null) ? 0 : version.hashCode());
+		result = prime * result + ((patch == null) ? 0 : patch.hashCode());
 		return result;
 	}
 
@@ -167,20 +173,17 @@ public class PatchAppxManifestWorkerTaskFactory implements TaskFactory<Object>,
 		if (getClass() != obj.getClass())
 			return false;
 		PatchAppxManifestWorkerTaskFactory other = (PatchAppxManifestWorkerTaskFactory) obj;
+		if (contentHash != other.contentHash)
+			return false;
 		if (file == null) {
 			if (other.file != null)
 				return false;
 		} else if (!file.equals(other.file))
 			return false;
-		if (processorArchitecture == null) {
-			if (other.processorArchitecture != null)
-				return false;
-		} else if (!processorArchitecture.equals(other.processorArchitecture))
-			return false;
-		if (version == null) {
-			if (other.version != null)
+		if (patch == null) {
+			if (other.patch != null)
 				return false;
-		} else if (!version.equals(other.version))
+		} else if (!patch.equals(other.patch))
 			return false;
 		return true;
 	}
@@ -188,16 +191,28 @@ public class PatchAppxManifestWorkerTaskFactory implements TaskFactory<Object>,
 	@Override
 	public String toString() {
 		return "PatchAppxManifestWorkerTaskFactory[" + (file != null ? "file=" + file + ", " : "")
-				+ (processorArchitecture != null ? "processorArchitecture=" + processorArchitecture + ", " : "")
-				+ (version != null ? "version=" + version : "") + "]";
+				+ (patch != null ? "patch=" + patch + ", " : "") + "contentHash=" + contentHash + "]";
 	}
 
-	private static class AppxManifestPatchingSakerFile extends SakerFileBase {
-		private static final String ELEM_PACKAGE = "Package";
-		private static final String ELEM_IDENTITY = "Identity";
-		private static final String ATTR_VERSION = "Version";
-		private static final String ATTR_PROCESSOR_ARCHITECTURE = "ProcessorArchitecture";
+	private SakerFile createOutputFile(String name, IOSupplier<? extends InputStream> inputsupplier,
+			ContentDescriptor inputcontents) {
+		if (!contentHash) {
+			return new AppxManifestPatchingSakerFile(name, inputsupplier,
+					new PatchedAppxManifestContentDescriptor(inputcontents, patch));
+		}
+		//patch the contents right away, as the content descriptor depends on the output
+		UnsyncByteArrayOutputStream os = new UnsyncByteArrayOutputStream();
+		try (InputStream is = inputsupplier.get()) {
+			AppxManifestPatcher.patch(is, os, patch);
+		} catch (IOException e) {
+			throw ObjectUtils.sneakyThrow(e);
+		} catch (Exception e) {
+			throw ObjectUtils.sneakyThrow(new IOException("Failed to patch Appx manifest.", e));
+		}
+		return new ContentHashSakerFile(name, os.toByteArrayRegion());
+	}
 
+	private static class AppxManifestPatchingSakerFile extends SakerFileBase {
 		private IOSupplier<? extends InputStream> inputSupplier;
 		private PatchedAppxManifestContentDescriptor contentDescriptor;
 
@@ -217,167 +232,13 @@ public class PatchAppxManifestWorkerTaskFactory implements TaskFactory<Object>,
 		@Override
 		public void writeToStreamImpl(OutputStream os) throws IOException, NullPointerException {
 			try (InputStream is = inputSupplier.get()) {
-				DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-				dbFactory.setNamespaceAware(true);
-				DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-				Document doc = dBuilder.parse(is);
-
-				patchAppxManifestXml(doc);
-
-				TransformerFactory transformerFactory = TransformerFactory.newInstance();
-				transformerFactory.setAttribute("indent-number", 4);
-				Transformer transformer = transformerFactory.newTransformer();
-				transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-				transformer.setOutputProperty(OutputKeys.METHOD, "xml");
-				transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-				transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
-				DOMSource source = new DOMSource(doc);
-				transformer.transform(source, new StreamResult(os));
+				AppxManifestPatcher.patch(is, os, contentDescriptor.getPatch());
 			} catch (IOException e) {
 				throw e;
 			} catch (Exception e) {
 				throw new IOException("Failed to patch Appx manifest.", e);
 			}
 		}
-
-		private void patchAppxManifestXml(Document doc) {
-			Element rootelem = doc.getDocumentElement();
-			if (!ELEM_PACKAGE.equals(rootelem.getLocalName())) {
-				throw new IllegalArgumentException(
-						"Invalid AppxManifest.xml, expected Package root element instead of " + rootelem.getNodeName());
-			}
-			String rootns = rootelem.getNamespaceURI();
-
-			String arch = contentDescriptor.getProcessorArchitecture();
-			String version = contentDescriptor.getVersion();
-			NodeList children = rootelem.getChildNodes();
-			for (int i = 0, clen = children.getLength(); i < clen; i++) {
-				Node item = children.item(i);
-				if (item.getNodeType() != Node.ELEMENT_NODE) {
-					continue;
-				}
-				if (!ELEM_IDENTITY.equals(item.getLocalName())) {
-					continue;
-				}
-				String elemns = item.getNamespaceURI();
-				if (!Objects.equals(rootns, elemns)) {
-					continue;
-				}
-				Element elem = (Element) item;
-				String prefix = elem.getPrefix();
-				if (prefix == null) {
-					if (arch != null) {
-						elem.setAttribute(ATTR_PROCESSOR_ARCHITECTURE, arch);
-					}
-					if (version != null) {
-						elem.setAttribute(ATTR_VERSION, version);
-					}
-				} else {
-					if (arch != null) {
-						elem.setAttribute(prefix + ":" + ATTR_PROCESSOR_ARCHITECTURE, arch);
-					}
-					if (version != null) {
-						elem.setAttribute(prefix + ":" + ATTR_VERSION, version);
-					}
-				}
-				return;
-			}
-			throw new IllegalArgumentException("Identity element not found in AppxManifest.");
-		}
-
-	}
-
-	private static class PatchedAppxManifestContentDescriptor implements ContentDescriptor, Externalizable {
-		private static final long serialVersionUID = 1L;
-
-		private ContentDescriptor originalContents;
-		private String processorArchitecture;
-		private String version;
-
-		/**
-		 * For {@link Externalizable}.
-		 */
-		public PatchedAppxManifestContentDescriptor() {
-		}
-
-		public PatchedAppxManifestContentDescriptor(ContentDescriptor originalContents, String processorArchitecture,
-				String version) {
-			this.originalContents = originalContents;
-			this.processorArchitecture = processorArchitecture;
-			this.version = version;
-		}
-
-		public ContentDescriptor getOriginalContents() {
-			return originalContents;
-		}
-
-		public String getProcessorArchitecture() {
-			return processorArchitecture;
-		}
-
-		public String getVersion() {
-			return version;
-		}
-
-		@Override
-		public void writeExternal(ObjectOutput out) throws IOException {
-			out.writeObject(originalContents);
-			out.writeObject(processorArchitecture);
-			out.writeObject(version);
-		}
-
-		@Override
-		public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-			originalContents = SerialUtils.readExternalObject(in);
-			processorArchitecture = SerialUtils.readExternalObject(in);
-			version = SerialUtils.readExternalObject(in);
-		}
-
-		@Override
-		public int hashCode() {
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + ((originalContents == null) ? 0 : originalContents.hashCode());
-			result = prime * result + ((processorArchitecture == null) ? 0 : processorArchitecture.hashCode());
-			result = prime * result + ((version == null) ? 0 : version.hashCode());
-			return result;
-		}
-
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (getClass() != obj.getClass())
-				return false;
-			PatchedAppxManifestContentDescriptor other = (PatchedAppxManifestContentDescriptor) obj;
-			if (originalContents == null) {
-				if (other.originalContents != null)
-					return false;
-			} else if (!originalContents.equals(other.originalContents))
-				return false;
-			if (processorArchitecture == null) {
-				if (other.processorArchitecture != null)
-					return false;
-			} else if (!processorArchitecture.equals(other.processorArchitecture))
-				return false;
-			if (version == null) {
-				if (other.version != null)
-					return false;
-			} else if (!version.equals(other.version))
-				return false;
-			return true;
-		}
-
-		@Override
-		public String toString() {
-			return "PatchedAppxManifestContentDescriptor["
-					+ (processorArchitecture != null ? "processorArchitecture=" + processorArchitecture + ", " : "")
-					+ (version != null ? "version=" + version + ", " : "")
-					+ (originalContents != null ? "originalContents=" + originalContents : "") + "]";
-		}
-
 	}
 
 }
@@ -0,0 +1,285 @@
+package saker.windows.impl.appx.manifest;
+
+import java.io.Externalizable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import saker.build.exception.InvalidPathFormatException;
+import saker.build.file.SakerDirectory;
+import saker.build.file.SakerFile;
+import saker.build.file.SakerFileBase;
+import saker.build.file.content.ContentDescriptor;
+import saker.build.file.content.DirectoryContentDescriptor;
+import saker.build.file.path.SakerPath;
+import saker.build.file.provider.LocalFileProvider;
+import saker.build.file.provider.SakerPathFiles;
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.task.Task;
+import saker.build.task.TaskContext;
+import saker.build.task.TaskFactory;
+import saker.build.task.identifier.TaskIdentifier;
+import saker.build.task.utils.dependencies.EqualityTaskOutputChangeDetector;
+import saker.build.thirdparty.saker.util.ImmutableUtils;
+import saker.build.thirdparty.saker.util.ObjectUtils;
+import saker.build.thirdparty.saker.util.io.SerialUtils;
+import saker.build.thirdparty.saker.util.io.UnsyncByteArrayOutputStream;
+import saker.build.thirdparty.saker.util.io.function.IOSupplier;
+import saker.build.thirdparty.saker.util.thread.ThreadUtils;
+import saker.build.trace.BuildTrace;
+import saker.std.api.file.location.ExecutionFileLocation;
+import saker.std.api.file.location.FileLocation;
+import saker.std.api.file.location.FileLocationVisitor;
+import saker.std.api.file.location.LocalFileLocation;
+import saker.std.api.util.SakerStandardUtils;
+import saker.windows.api.appx.manifest.PatchAppxManifestWorkerTaskOutput;
+import saker.windows.impl.appx.ContentHashSakerFile;
+import saker.windows.impl.metrics.WorkerTaskMetrics;
+import saker.windows.main.appx.manifest.PatchMultiAppxManifestTaskFactory;
+
+/**
+ * Creates multiple patched variants of a single manifest.
+ * <p>
+ * The source manifest is parsed at most once, and the variants are written from the created
+ * {@link AppxManifestPatcher.PatchTemplate}. The output files are written concurrently.
+ * <p>
+ * The task result is a list of {@link PatchAppxManifestWorkerTaskOutput} in the same order as the variants.
+ */
+public class PatchMultiAppxManifestWorkerTaskFactory
+		implements TaskFactory<Object>, Task<Object>, TaskIdentifier, Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	private FileLocation file;
+	private List<PatchAppxManifestVariant> variants;
+	private boolean contentHash;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public PatchMultiAppxManifestWorkerTaskFactory() {
+	}
+
+	public PatchMultiAppxManifestWorkerTaskFactory(FileLocation file, List<PatchAppxManifestVariant> variants) {
+		this.file = file;
+		this.variants = ImmutableUtils.makeImmutableList(variants);
+	}
+
+	/**
+	 * Sets if the outputs should have content descriptors based on the hash of the patched contents.
+	 *
+	 * @param contentHash
+	 *            <code>true</code> to use the hash of the output contents.
+	 * @see PatchAppxManifestWorkerTaskFactory#setContentHash(boolean)
+	 */
+	public void setContentHash(boolean contentHash) {
+		this.contentHash = contentHash;
+	}
+
+	@Override
+	public Task<? extends Object> createTask(ExecutionContext executioncontext) {
+		return this;
+	}
+
+	@Override
+	public Object run(TaskContext taskcontext) throws Exception {
+		WorkerTaskMetrics metrics = new WorkerTaskMetrics(this);
+		try {
+			return runWithMetrics(taskcontext, metrics);
+		} finally {
+			metrics.finish();
+		}
+	}
+
+	private Object runWithMetrics(TaskContext taskcontext, WorkerTaskMetrics metrics) throws Exception {
+		if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
+			BuildTrace.classifyTask(BuildTrace.CLASSIFICATION_WORKER);
+		}
+		taskcontext.setStandardOutDisplayIdentifier(PatchMultiAppxManifestTaskFactory.TASK_NAME);
+
+		Set<SakerPath> outputpaths = new HashSet<>();
+		for (PatchAppxManifestVariant variant : variants) {
+			if (!outputpaths.add(variant.getRelativeOutput())) {
+				throw new IllegalArgumentException(
+						"Multiple manifest variants have the same output path: " + variant.getRelativeOutput());
+			}
+		}
+
+		metrics.startPhase("Read manifest");
+		metrics.addFiles(1);
+		ContentDescriptor[] sourcecontents = { null };
+		PatchTemplateSupplier[] template = { null };
+		file.accept(new FileLocationVisitor() {
+			@Override
+			public void visit(LocalFileLocation loc) {
+				SakerPath localpath = loc.getLocalPath();
+				ContentDescriptor fcontents = taskcontext.getTaskUtilities()
+						.getReportExecutionDependency(SakerStandardUtils
+								.createLocalFileContentDescriptorExecutionProperty(localpath, UUID.randomUUID()));
+				if (fcontents == null || fcontents instanceof DirectoryContentDescriptor) {
+					throw ObjectUtils.sneakyThrow(new FileNotFoundException(localpath.toString()));
+				}
+				sourcecontents[0] = fcontents;
+				template[0] = new PatchTemplateSupplier(
+						() -> LocalFileProvider.getInstance().openInputStream(localpath));
+			}
+
+			@Override
+			public void visit(ExecutionFileLocation loc) {
+				SakerFile f = taskcontext.getTaskUtilities().resolveFileAtPath(loc.getPath());
+				if (f == null) {
+					throw ObjectUtils.sneakyThrow(new FileNotFoundException(loc.getPath().toString()));
+				}
+				ContentDescriptor fcontents = f.getContentDescriptor();
+				taskcontext.reportInputFileDependency(null, loc.getPath(), fcontents);
+				sourcecontents[0] = fcontents;
+				template[0] = new PatchTemplateSupplier(f::openInputStreamImpl);
+			}
+		});
+
+		metrics.startPhase("Patch manifests");
+		metrics.addFiles(variants.size());
+		SakerDirectory builddir = SakerPathFiles.requireBuildDirectory(taskcontext);
+		List<SakerFile> outputfiles = new ArrayList<>(variants.size());
+		List<PatchAppxManifestWorkerTaskOutput> result = new ArrayList<>(variants.size());
+		for (PatchAppxManifestVariant variant : variants) {
+			SakerPath relativeoutput = variant.getRelativeOutput();
+			SakerDirectory outputdir = taskcontext.getTaskUtilities()
+					.resolveDirectoryAtRelativePathCreate(builddir, relativeoutput.getParent());
+			SakerFile outfile;
+			if (contentHash) {
+				//the content descriptor depends on the output, so the template is used right away
+				UnsyncByteArrayOutputStream os = new UnsyncByteArrayOutputStream();
+				template[0].get().write(os, variant.toPatch());
+				outfile = new ContentHashSakerFile(relativeoutput.getFileName(), os.toByteArrayRegion());
+			} else {
+				outfile = new AppxManifestTemplateSakerFile(relativeoutput.getFileName(), template[0],
+						new PatchedAppxManifestContentDescriptor(sourcecontents[0], variant.toPatch()));
+			}
+			outputdir.add(outfile);
+			SakerPath outputfilesakerpath = outfile.getSakerPath();
+			taskcontext.reportOutputFileDependency(null, outputfilesakerpath, outfile.getContentDescriptor());
+			outputfiles.add(outfile);
+			result.add(new PatchAppxManifestWorkerTaskOutputImpl(outputfilesakerpath));
+		}
+		metrics.startPhase("Synchronize outputs");
+		metrics.addFiles(outputfiles.size());
+		ThreadUtils.runParallelItems(outputfiles, SakerFile::synchronize);
+
+		result = ImmutableUtils.unmodifiableList(result);
+		taskcontext.reportSelfTaskOutputChangeDetector(new EqualityTaskOutputChangeDetector(result));
+		return result;
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeObject(file);
+		SerialUtils.writeExternalCollection(out, variants);
+		out.writeBoolean(contentHash);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		file = SerialUtils.readExternalObject(in);
+		variants = SerialUtils.readExternalImmutableList(in);
+		contentHash = in.readBoolean();
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + (contentHash ? 1231 : 1237);
+		result = prime * result + ((file == null) ? 0 : file.hashCode());
+		result = prime * result + ((variants == null) ? 0 : variants.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		PatchMultiAppxManifestWorkerTaskFactory other = (PatchMultiAppxManifestWorkerTaskFactory) obj;
+		if (contentHash != other.contentHash)
+			return false;
+		if (file == null) {
+			if (other.file != null)
+				return false;
+		} else if (!file.equals(other.file))
+			return false;
+		if (variants == null) {
+			if (other.variants != null)
+				return false;
+		} else if (!variants.equals(other.variants))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "PatchMultiAppxManifestWorkerTaskFactory[" + (file != null ? "file=" + file + ", " : "")
+				+ (variants != null ? "variants=" + variants + ", " : "") + "contentHash=" + contentHash + "]";
+	}
+
+	/**
+	 * Parses the source manifest when a variant is first written.
+	 * <p>
+	 * If none of the output files need to be written, the source is not parsed.
+	 */
+	private static final class PatchTemplateSupplier {
+		private IOSupplier<? extends InputStream> inputSupplier;
+		private AppxManifestPatcher.PatchTemplate template;
+
+		public PatchTemplateSupplier(IOSupplier<? extends InputStream> inputSupplier) {
+			this.inputSupplier = inputSupplier;
+		}
+
+		public synchronized AppxManifestPatcher.PatchTemplate get() throws IOException {
+			if (template == null) {
+				try (InputStream is = inputSupplier.get()) {
+					template = AppxManifestPatcher.createTemplate(is);
+				} catch (IOException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new IOException("Failed to patch Appx manifest.", e);
+				}
+				inputSupplier = null;
+			}
+			return template;
+		}
+	}
+
+	private static class AppxManifestTemplateSakerFile extends SakerFileBase {
+		private PatchTemplateSupplier template;
+		private PatchedAppxManifestContentDescriptor contentDescriptor;
+
+		public AppxManifestTemplateSakerFile(String name, PatchTemplateSupplier template,
+				PatchedAppxManifestContentDescriptor contentDescriptor)
+				throws NullPointerException, InvalidPathFormatException {
+			super(name);
+			this.template = template;
+			this.contentDescriptor = contentDescriptor;
+		}
+
+		@Override
+		public ContentDescriptor getContentDescriptor() {
+			return contentDescriptor;
+		}
+
+		@Override
+		public void writeToStreamImpl(OutputStream os) throws IOException, NullPointerException {
+			template.get().write(os, contentDescriptor.getPatch());
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package saker.windows.impl.appx.manifest;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import saker.build.file.content.ContentDescriptor;
+import saker.build.thirdparty.saker.util.io.SerialUtils;
+
+final class PatchedAppxManifestContentDescriptor implements ContentDescriptor, Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	private ContentDescriptor originalContents;
+	private AppxManifestPatch patch;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public PatchedAppxManifestContentDescriptor() {
+	}
+
+	public PatchedAppxManifestContentDescriptor(ContentDescriptor originalContents, AppxManifestPatch patch) {
+		this.originalContents = originalContents;
+		this.patch = patch;
+	}
+
+	public ContentDescriptor getOriginalContents() {
+		return originalContents;
+	}
+
+	public AppxManifestPatch getPatch() {
+		return patch;
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeObject(originalContents);
+		out.writeObject(patch);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		originalContents = SerialUtils.readExternalObject(in);
+		patch = SerialUtils.readExternalObject(in);
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((originalContents == null) ? 0 : originalContents.hashCode());
+		result = prime * result + ((patch == null) ? 0 : patch.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		PatchedAppxManifestContentDescriptor other = (PatchedAppxManifestContentDescriptor) obj;
+		if (originalContents == null) {
+			if (other.originalContents != null)
+				return false;
+		} else if (!originalContents.equals(other.originalContents))
+			return false;
+		if (patch == null) {
+			if (other.patch != null)
+				return false;
+		} else if (!patch.equals(other.patch))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "PatchedAppxManifestContentDescriptor[" + (patch != null ? "patch=" + patch + ", " : "")
+				+ (originalContents != null ? "originalContents=" + originalContents : "") + "]";
+	}
+}
@@ -0,0 +1,572 @@
+package saker.windows.impl.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streaming pull parser for JSON input.
+ * <p>
+ * The parser reads the input incrementally, and doesn't build an object tree of the parsed values. The callers
+ * examine the next token using {@link #peek()}, and consume the values using the appropriate methods. The memory use
+ * of the parser only depends on the nesting depth and the length of the consumed strings, so arbitrarily large inputs
+ * can be processed if the values are bound to the result objects as they are read.
+ * <p>
+ * Unneeded values can be skipped using {@link #skipValue()} without reading their contents into memory.
+ * <p>
+ * An empty input (or one only containing whitespace) is accepted, in which case the first token is
+ * {@link Token#END_DOCUMENT}.
+ * <p>
+ * The class is not thread safe.
+ */
+public final class JSONPullParser {
+	public enum Token {
+		BEGIN_OBJECT,
+		END_OBJECT,
+		BEGIN_ARRAY,
+		END_ARRAY,
+		NAME,
+		STRING,
+		NUMBER,
+		BOOLEAN,
+		NULL,
+		END_DOCUMENT;
+	}
+
+	private static final int SCOPE_EMPTY_DOCUMENT = 0;
+	private static final int SCOPE_NONEMPTY_DOCUMENT = 1;
+	private static final int SCOPE_EMPTY_ARRAY = 2;
+	private static final int SCOPE_NONEMPTY_ARRAY = 3;
+	private static final int SCOPE_EMPTY_OBJECT = 4;
+	private static final int SCOPE_DANGLING_NAME = 5;
+	private static final int SCOPE_NONEMPTY_OBJECT = 6;
+
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	private final Reader reader;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int pos = 0;
+	private int limit = 0;
+	/**
+	 * The number of characters that were read before the current buffer contents. Used for error reporting.
+	 */
+	private long bufferOffset = 0;
+
+	private int[] scopes = new int[16];
+	private int scopeCount = 1;
+
+	private Token peeked;
+	/**
+	 * The literal text of the peeked {@link Token#NUMBER} or {@link Token#BOOLEAN}.
+	 * <p>
+	 * The contents of {@link Token#STRING} and {@link Token#NAME} are not read when peeked, but when consumed.
+	 */
+	private String peekedLiteral;
+
+	/**
+	 * Creates a new parser that reads the characters from the argument reader.
+	 * <p>
+	 * The reader is buffered by the parser.
+	 *
+	 * @param reader
+	 *            The reader.
+	 */
+	public JSONPullParser(Reader reader) {
+		this.reader = reader;
+		this.scopes[0] = SCOPE_EMPTY_DOCUMENT;
+	}
+
+	/**
+	 * Creates a new parser that reads the UTF-8 encoded input from the argument stream.
+	 *
+	 * @param is
+	 *            The input stream.
+	 */
+	public JSONPullParser(InputStream is) {
+		this(new InputStreamReader(is, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Gets the type of the next token without consuming it.
+	 *
+	 * @return The next token.
+	 * @throws IOException
+	 *             If the reading failed or the input is malformed.
+	 */
+	public Token peek() throws IOException {
+		Token result = peeked;
+		if (result == null) {
+			result = doPeek();
+			peeked = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Checks if the current array or object has more elements.
+	 *
+	 * @return <code>true</code> if there are more elements.
+	 * @throws IOException
+	 *             If the reading failed or the input is malformed.
+	 */
+	public boolean hasNext() throws IOException {
+		Token t = peek();
+		return t != Token.END_OBJECT && t != Token.END_ARRAY && t != Token.END_DOCUMENT;
+	}
+
+	public void beginObject() throws IOException {
+		expect(Token.BEGIN_OBJECT);
+		peeked = null;
+		pushScope(SCOPE_EMPTY_OBJECT);
+	}
+
+	public void endObject() throws IOException {
+		expect(Token.END_OBJECT);
+		peeked = null;
+		--scopeCount;
+	}
+
+	public void beginArray() throws IOException {
+		expect(Token.BEGIN_ARRAY);
+		peeked = null;
+		pushScope(SCOPE_EMPTY_ARRAY);
+	}
+
+	public void endArray() throws IOException {
+		expect(Token.END_ARRAY);
+		peeked = null;
+		--scopeCount;
+	}
+
+	/**
+	 * Consumes the next property name.
+	 *
+	 * @return The name.
+	 * @throws IOException
+	 *             If the next token is not a name, or the reading failed.
+	 */
+	public String nextName() throws IOException {
+		expect(Token.NAME);
+		peeked = null;
+		return readString();
+	}
+
+	/**
+	 * Consumes the next string value.
+	 * <p>
+	 * Numbers and booleans are accepted as well, their literal representation is returned.
+	 *
+	 * @return The string.
+	 * @throws IOException
+	 *             If the next token is not a string, number or boolean, or the reading failed.
+	 */
+	public String nextString() throws IOException {
+		Token t = peek();
+		switch (t) {
+			case STRING: {
+				peeked = null;
+				return readString();
+			}
+			case NUMBER:
+			case BOOLEAN: {
+				peeked = null;
+				return peekedLiteral;
+			}
+			default: {
+				throw unexpectedToken(Token.STRING, t);
+			}
+		}
+	}
+
+	/**
+	 * Consumes the next string value, or <code>null</code> literal.
+	 *
+	 * @return The string, or <code>null</code> if the value is <code>null</code>.
+	 * @throws IOException
+	 *             If the next token is not a string, number, boolean or null, or the reading failed.
+	 * @see #nextString()
+	 */
+	public String nextStringOrNull() throws IOException {
+		if (peek() == Token.NULL) {
+			peeked = null;
+			return null;
+		}
+		return nextString();
+	}
+
+	public boolean nextBoolean() throws IOException {
+		expect(Token.BOOLEAN);
+		peeked = null;
+		return "true".equals(peekedLiteral);
+	}
+
+	public void nextNull() throws IOException {
+		expect(Token.NULL);
+		peeked = null;
+	}
+
+	/**
+	 * Skips the next value.
+	 * <p>
+	 * If the value is an object or array, all of its contents are skipped. The contents of the skipped strings are not
+	 * retained.
+	 *
+	 * @throws IOException
+	 *             If the next token is not a value, or the reading failed.
+	 */
+	public void skipValue() throws IOException {
+		int depth = 0;
+		do {
+			Token t = peek();
+			switch (t) {
+				case BEGIN_OBJECT: {
+					beginObject();
+					++depth;
+					break;
+				}
+				case BEGIN_ARRAY: {
+					beginArray();
+					++depth;
+					break;
+				}
+				case END_OBJECT: {
+					if (depth == 0) {
+						throw unexpectedToken(null, t);
+					}
+					endObject();
+					--depth;
+					break;
+				}
+				case END_ARRAY: {
+					if (depth == 0) {
+						throw unexpectedToken(null, t);
+					}
+					endArray();
+					--depth;
+					break;
+				}
+				case NAME: {
+					if (depth == 0) {
+						throw unexpectedToken(null, t);
+					}
+					peeked = null;
+					skipString();
+					break;
+				}
+				case STRING: {
+					peeked = null;
+					skipString();
+					break;
+				}
+				case NUMBER:
+				case BOOLEAN:
+				case NULL: {
+					peeked = null;
+					break;
+				}
+				case END_DOCUMENT:
+				default: {
+					throw unexpectedToken(null, t);
+				}
+			}
+		} while (depth > 0);
+	}
+
+	private Token doPeek() throws IOException {
+		int scope = scopes[scopeCount - 1];
+		switch (scope) {
+			case SCOPE_EMPTY_DOCUMENT: {
+				scopes[scopeCount - 1] = SCOPE_NONEMPTY_DOCUMENT;
+				int c = nextNonWhitespace();
+				if (c < 0) {
+					return Token.END_DOCUMENT;
+				}
+				return readValue(c);
+			}
+			case SCOPE_NONEMPTY_DOCUMENT: {
+				int c = nextNonWhitespace();
+				if (c < 0) {
+					return Token.END_DOCUMENT;
+				}
+				throw syntaxError("Unexpected content after the document");
+			}
+			case SCOPE_EMPTY_ARRAY: {
+				scopes[scopeCount - 1] = SCOPE_NONEMPTY_ARRAY;
+				int c = nextNonWhitespaceInDocument();
+				if (c == ']') {
+					return Token.END_ARRAY;
+				}
+				return readValue(c);
+			}
+			case SCOPE_NONEMPTY_ARRAY: {
+				int c = nextNonWhitespaceInDocument();
+				if (c == ']') {
+					return Token.END_ARRAY;
+				}
+				if (c != ',') {
+					throw syntaxError("Expected ',' or ']'");
+				}
+				return readValue(nextNonWhitespaceInDocument());
+			}
+			case SCOPE_EMPTY_OBJECT:
+			case SCOPE_NONEMPTY_OBJECT: {
+				int c = nextNonWhitespaceInDocument();
+				if (c == '}') {
+					return Token.END_OBJECT;
+				}
+				if (scope == SCOPE_NONEMPTY_OBJECT) {
+					if (c != ',') {
+						throw syntaxError("Expected ',' or '}'");
+					}
+					c = nextNonWhitespaceInDocument();
+				}
+				if (c != '"') {
+					throw syntaxError("Expected property name");
+				}
+				scopes[scopeCount - 1] = SCOPE_DANGLING_NAME;
+				return Token.NAME;
+			}
+			case SCOPE_DANGLING_NAME: {
+				if (nextNonWhitespaceInDocument() != ':') {
+					throw syntaxError("Expected ':'");
+				}
+				scopes[scopeCount - 1] = SCOPE_NONEMPTY_OBJECT;
+				return readValue(nextNonWhitespaceInDocument());
+			}
+			default: {
+				throw new AssertionError(scope);
+			}
+		}
+	}
+
+	private Token readValue(int c) throws IOException {
+		switch (c) {
+			case '{': {
+				return Token.BEGIN_OBJECT;
+			}
+			case '[': {
+				return Token.BEGIN_ARRAY;
+			}
+			case '"': {
+				return Token.STRING;
+			}
+			case 't': {
+				readLiteralRemaining("rue");
+				peekedLiteral = "true";
+				return Token.BOOLEAN;
+			}
+			case 'f': {
+				readLiteralRemaining("alse");
+				peekedLiteral = "false";
+				return Token.BOOLEAN;
+			}
+			case 'n': {
+				readLiteralRemaining("ull");
+				return Token.NULL;
+			}
+			default: {
+				if (c == '-' || (c >= '0' && c <= '9')) {
+					peekedLiteral = readNumber((char) c);
+					return Token.NUMBER;
+				}
+				throw syntaxError("Unexpected character: '" + (char) c + "'");
+			}
+		}
+	}
+
+	private void readLiteralRemaining(String remaining) throws IOException {
+		for (int i = 0; i < remaining.length(); i++) {
+			if (pos == limit && !fillBuffer()) {
+				throw syntaxError("Unexpected end of input");
+			}
+			if (buffer[pos++] != remaining.charAt(i)) {
+				throw syntaxError("Invalid literal");
+			}
+		}
+	}
+
+	private String readNumber(char first) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append(first);
+		while (pos < limit || fillBuffer()) {
+			char c = buffer[pos];
+			if ((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+				sb.append(c);
+				++pos;
+			} else {
+				break;
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Reads the string contents after the opening quote.
+	 */
+	private String readString() throws IOException {
+		StringBuilder sb = null;
+		while (true) {
+			int start = pos;
+			while (pos < limit) {
+				char c = buffer[pos++];
+				if (c == '"') {
+					if (sb == null) {
+						return new String(buffer, start, pos - start - 1);
+					}
+					sb.append(buffer, start, pos - start - 1);
+					return sb.toString();
+				}
+				if (c == '\\') {
+					if (sb == null) {
+						sb = new StringBuilder();
+					}
+					sb.append(buffer, start, pos - start - 1);
+					sb.append(readEscapeCharacter());
+					start = pos;
+				}
+			}
+			if (sb == null) {
+				sb = new StringBuilder();
+			}
+			sb.append(buffer, start, pos - start);
+			if (!fillBuffer()) {
+				throw syntaxError("Unterminated string");
+			}
+		}
+	}
+
+	/**
+	 * Skips the string contents after the opening quote.
+	 */
+	private void skipString() throws IOException {
+		while (true) {
+			while (pos < limit) {
+				char c = buffer[pos++];
+				if (c == '"') {
+					return;
+				}
+				if (c == '\\') {
+					readEscapeCharacter();
+				}
+			}
+			if (!fillBuffer()) {
+				throw syntaxError("Unterminated string");
+			}
+		}
+	}
+
+	private char readEscapeCharacter() throws IOException {
+		if (pos == limit && !fillBuffer()) {
+			throw syntaxError("Unterminated escape sequence");
+		}
+		char c = buffer[pos++];
+		switch (c) {
+			case 'u': {
+				int result = 0;
+				for (int i = 0; i < 4; i++) {
+					if (pos == limit && !fillBuffer()) {
+						throw syntaxError("Unterminated escape sequence");
+					}
+					int digit = Character.digit(buffer[pos++], 16);
+					if (digit < 0) {
+						throw syntaxError("Invalid unicode escape sequence");
+					}
+					result = (result << 4) | digit;
+				}
+				return (char) result;
+			}
+			case 'b': {
+				return '\b';
+			}
+			case 't': {
+				return '\t';
+			}
+			case 'n': {
+				return '\n';
+			}
+			case 'f': {
+				return '\f';
+			}
+			case 'r': {
+				return '\r';
+			}
+			case '"':
+			case '\\':
+			case '/': {
+				return c;
+			}
+			default: {
+				throw syntaxError("Invalid escape sequence: \\" + c);
+			}
+		}
+	}
+
+	private int nextNonWhitespaceInDocument() throws IOException {
+		int c = nextNonWhitespace();
+		if (c < 0) {
+			throw syntaxError("Unexpected end of input");
+		}
+		return c;
+	}
+
+	private int nextNonWhitespace() throws IOException {
+		while (pos < limit || fillBuffer()) {
+			char c = buffer[pos++];
+			switch (c) {
+				case ' ':
+				case '\t':
+				case '\n':
+				case '\r': {
+					break;
+				}
+				default: {
+					return c;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private boolean fillBuffer() throws IOException {
+		bufferOffset += limit;
+		pos = 0;
+		limit = 0;
+		int read;
+		do {
+			read = reader.read(buffer, 0, buffer.length);
+		} while (read == 0);
+		if (read < 0) {
+			return false;
+		}
+		limit = read;
+		return true;
+	}
+
+	private void pushScope(int scope) {
+		if (scopeCount == scopes.length) {
+			scopes = Arrays.copyOf(scopes, scopeCount * 2);
+		}
+		scopes[scopeCount++] = scope;
+	}
+
+	private void expect(Token expected) throws IOException {
+		Token t = peek();
+		if (t != expected) {
+			throw unexpectedToken(expected, t);
+		}
+	}
+
+	private JSONPullParserException unexpectedToken(Token expected, Token found) {
+		if (expected == null) {
+			return syntaxError("Unexpected " + found);
+		}
+		return syntaxError("Expected " + expected + " but was " + found);
+	}
+
+	private JSONPullParserException syntaxError(String message) {
+		return new JSONPullParserException(message + " at character " + (bufferOffset + pos));
+	}
+}
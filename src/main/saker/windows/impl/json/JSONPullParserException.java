@@ -0,0 +1,14 @@
+package saker.windows.impl.json;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link JSONPullParser} if the input is not well formed, or doesn't match the expected structure.
+ */
+public class JSONPullParserException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	public JSONPullParserException(String message) {
+		super(message);
+	}
+}
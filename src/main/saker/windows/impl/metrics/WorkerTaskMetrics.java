@@ -0,0 +1,143 @@
+package saker.windows.impl.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import saker.build.task.Task;
+import saker.build.trace.BuildTrace;
+
+/**
+ * Records the time, file counts, and transferred bytes of the phases of a worker task execution.
+ * <p>
+ * The phases are sequential, starting a phase ends the previous one. When the execution is {@linkplain #finish()
+ * finished}, the recorded values are reported as build trace values of the task, and added to the process wide
+ * statistics in {@link WorkerTaskMetricsRegistry}.
+ * <p>
+ * The CPU time is the CPU time of the executing thread. The time spent in external processes (e.g. makeappx) is only
+ * included in the wall time.
+ * <p>
+ * The class is not thread safe, it should be used by the thread that runs the task.
+ */
+public final class WorkerTaskMetrics {
+	private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+	private final String taskName;
+	private final Map<String, PhaseValues> phases = new LinkedHashMap<>();
+
+	private PhaseValues currentPhase;
+	private long currentWallStart;
+	private long currentCpuStart;
+
+	public WorkerTaskMetrics(Task<?> task) {
+		this.taskName = task.getClass().getSimpleName();
+	}
+
+	/**
+	 * Ends the current phase if any, and starts a new one with the given name.
+	 * <p>
+	 * If a phase with the same name was already recorded, the values are added to it.
+	 *
+	 * @param name
+	 *            The name of the phase.
+	 */
+	public void startPhase(String name) {
+		endPhase();
+		currentPhase = phases.computeIfAbsent(name, x -> new PhaseValues());
+		currentCpuStart = getCurrentThreadCpuTime();
+		currentWallStart = System.nanoTime();
+	}
+
+	public void addFiles(long count) {
+		if (currentPhase != null) {
+			currentPhase.files += count;
+		}
+	}
+
+	public void addBytesRead(long bytes) {
+		if (currentPhase != null) {
+			currentPhase.bytesRead += bytes;
+		}
+	}
+
+	public void addBytesWritten(long bytes) {
+		if (currentPhase != null) {
+			currentPhase.bytesWritten += bytes;
+		}
+	}
+
+	/**
+	 * Ends the current phase and reports the recorded values.
+	 * <p>
+	 * Should be called once, when the task execution finishes, even if it failed.
+	 */
+	public void finish() {
+		endPhase();
+		if (phases.isEmpty()) {
+			return;
+		}
+		WorkerTaskMetricsRegistry.getInstance().add(taskName, phases);
+		if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
+			LinkedHashMap<Object, Object> phasevalues = new LinkedHashMap<>();
+			for (Entry<String, PhaseValues> entry : phases.entrySet()) {
+				phasevalues.put(entry.getKey(), entry.getValue().toTraceValues());
+			}
+			LinkedHashMap<Object, Object> values = new LinkedHashMap<>();
+			values.put("Phases", phasevalues);
+			BuildTrace.setValues(values, BuildTrace.VALUE_CATEGORY_TASK);
+		}
+	}
+
+	private void endPhase() {
+		PhaseValues phase = currentPhase;
+		if (phase == null) {
+			return;
+		}
+		phase.wallNanos += System.nanoTime() - currentWallStart;
+		if (currentCpuStart >= 0) {
+			phase.cpuNanos += getCurrentThreadCpuTime() - currentCpuStart;
+		}
+		currentPhase = null;
+	}
+
+	private static long getCurrentThreadCpuTime() {
+		try {
+			if (THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported()) {
+				return THREAD_MX_BEAN.getCurrentThreadCpuTime();
+			}
+		} catch (UnsupportedOperationException e) {
+			//cpu time measurement is disabled
+		}
+		return -1;
+	}
+
+	static final class PhaseValues {
+		long wallNanos;
+		long cpuNanos;
+		long files;
+		long bytesRead;
+		long bytesWritten;
+
+		Map<Object, Object> toTraceValues() {
+			LinkedHashMap<Object, Object> result = new LinkedHashMap<>();
+			result.put("Wall time (ms)", toMillis(wallNanos));
+			result.put("CPU time (ms)", toMillis(cpuNanos));
+			if (files != 0) {
+				result.put("Files", files);
+			}
+			if (bytesRead != 0) {
+				result.put("Bytes read", bytesRead);
+			}
+			if (bytesWritten != 0) {
+				result.put("Bytes written", bytesWritten);
+			}
+			return result;
+		}
+
+		private static double toMillis(long nanos) {
+			return Math.round(nanos / 10_000d) / 100d;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package saker.windows.impl.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of the accumulated worker task phase statistics.
+ * <p>
+ * The interface is registered in the platform MBean server with the {@value WorkerTaskMetricsRegistry#OBJECT_NAME}
+ * object name, so it can be read by JMX monitoring tools.
+ * <p>
+ * The keys of the returned maps are in the <code>&lt;task&gt;/&lt;phase&gt;</code> format, where task is the simple
+ * name of the worker task class.
+ */
+public interface WorkerTaskMetricsMXBean {
+	public Map<String, Long> getInvocationCounts();
+
+	public Map<String, Long> getWallTimeNanos();
+
+	public Map<String, Long> getCpuTimeNanos();
+
+	/**
+	 * Gets the number of files processed by the phases.
+	 * <p>
+	 * For the makeappx packaging tasks, the input files of the package are counted in the phase that mirrors or
+	 * resolves them.
+	 *
+	 * @return The file counts.
+	 */
+	public Map<String, Long> getFileCounts();
+
+	/**
+	 * Gets the number of bytes read by the phases.
+	 * <p>
+	 * The makeappx packaging phases don't report the bytes read, as the sizes of the packaged files are not known
+	 * without an additional file system call for each file. Their input file counts are reported by
+	 * {@link #getFileCounts()}.
+	 *
+	 * @return The read byte counts.
+	 */
+	public Map<String, Long> getBytesRead();
+
+	public Map<String, Long> getBytesWritten();
+
+	/**
+	 * Clears all accumulated statistics.
+	 */
+	public void reset();
+}
@@ -0,0 +1,130 @@
+package saker.windows.impl.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import saker.windows.impl.metrics.WorkerTaskMetrics.PhaseValues;
+
+/**
+ * Process wide accumulated statistics of the worker task phases.
+ * <p>
+ * The registry is registered as a {@link WorkerTaskMetricsMXBean} in the platform MBean server when the first task
+ * metrics are added. If another instance is already registered (e.g. by a previously loaded version of the bundle),
+ * it is replaced.
+ */
+public final class WorkerTaskMetricsRegistry implements WorkerTaskMetricsMXBean {
+	public static final String OBJECT_NAME = "saker.windows:type=WorkerTaskMetrics";
+
+	private static final WorkerTaskMetricsRegistry INSTANCE = new WorkerTaskMetricsRegistry();
+
+	private final ConcurrentMap<String, PhaseCounters> counters = new ConcurrentHashMap<>();
+	private volatile boolean registered;
+
+	private WorkerTaskMetricsRegistry() {
+	}
+
+	public static WorkerTaskMetricsRegistry getInstance() {
+		return INSTANCE;
+	}
+
+	@Override
+	public Map<String, Long> getInvocationCounts() {
+		return collect(c -> c.invocations);
+	}
+
+	@Override
+	public Map<String, Long> getWallTimeNanos() {
+		return collect(c -> c.wallNanos);
+	}
+
+	@Override
+	public Map<String, Long> getCpuTimeNanos() {
+		return collect(c -> c.cpuNanos);
+	}
+
+	@Override
+	public Map<String, Long> getFileCounts() {
+		return collect(c -> c.files);
+	}
+
+	@Override
+	public Map<String, Long> getBytesRead() {
+		return collect(c -> c.bytesRead);
+	}
+
+	@Override
+	public Map<String, Long> getBytesWritten() {
+		return collect(c -> c.bytesWritten);
+	}
+
+	@Override
+	public void reset() {
+		counters.clear();
+	}
+
+	void add(String taskname, Map<String, PhaseValues> phases) {
+		ensureRegistered();
+		for (Entry<String, PhaseValues> entry : phases.entrySet()) {
+			PhaseValues values = entry.getValue();
+			PhaseCounters c = counters.computeIfAbsent(taskname + "/" + entry.getKey(), x -> new PhaseCounters());
+			c.invocations.increment();
+			c.wallNanos.add(values.wallNanos);
+			c.cpuNanos.add(values.cpuNanos);
+			c.files.add(values.files);
+			c.bytesRead.add(values.bytesRead);
+			c.bytesWritten.add(values.bytesWritten);
+		}
+	}
+
+	private Map<String, Long> collect(Function<PhaseCounters, LongAdder> counter) {
+		TreeMap<String, Long> result = new TreeMap<>();
+		for (Entry<String, PhaseCounters> entry : counters.entrySet()) {
+			result.put(entry.getKey(), counter.apply(entry.getValue()).sum());
+		}
+		return result;
+	}
+
+	private void ensureRegistered() {
+		if (registered) {
+			return;
+		}
+		synchronized (this) {
+			if (registered) {
+				return;
+			}
+			//set it first, so the registration is attempted only once even if it fails
+			registered = true;
+			try {
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				ObjectName name = new ObjectName(OBJECT_NAME);
+				try {
+					server.registerMBean(this, name);
+				} catch (InstanceAlreadyExistsException e) {
+					server.unregisterMBean(name);
+					server.registerMBean(this, name);
+				}
+			} catch (Exception | LinkageError e) {
+				//the metrics are still reported to the build trace, no need to fail the build
+			}
+		}
+	}
+
+	private static final class PhaseCounters {
+		final LongAdder invocations = new LongAdder();
+		final LongAdder wallNanos = new LongAdder();
+		final LongAdder cpuNanos = new LongAdder();
+		final LongAdder files = new LongAdder();
+		final LongAdder bytesRead = new LongAdder();
+		final LongAdder bytesWritten = new LongAdder();
+	}
+}
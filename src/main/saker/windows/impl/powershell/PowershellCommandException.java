@@ -0,0 +1,28 @@
+package saker.windows.impl.powershell;
+
+import java.io.IOException;
+
+/**
+ * Thrown if a command that was executed by a {@link PowershellHost} failed.
+ * <p>
+ * The communication with the host is not affected by the failure.
+ */
+public class PowershellCommandException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	private final String output;
+
+	public PowershellCommandException(String output) {
+		super("PowerShell command failed.");
+		this.output = output;
+	}
+
+	/**
+	 * Gets the description of the error record that the command failed with.
+	 *
+	 * @return The output.
+	 */
+	public String getOutput() {
+		return output;
+	}
+}
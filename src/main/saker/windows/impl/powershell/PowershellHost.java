@@ -0,0 +1,506 @@
+package saker.windows.impl.powershell;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import saker.build.thirdparty.saker.util.ImmutableUtils;
+
+/**
+ * Long lived PowerShell processes that execute commands sent to them using the {@link PowershellHostProtocol}.
+ * <p>
+ * Starting a new PowerShell process has a significant overhead, therefore the host processes are kept alive and
+ * reused for consecutive commands. The host keeps a pool of processes. Each request is executed by an idle process,
+ * and a new process is started if all of them are busy, up to the maximum process count. If the maximum is reached,
+ * the requests wait for a process to become available. The processes are restarted if they exit or the communication
+ * with them fails.
+ * <p>
+ * Each request has a response timeout. If the process doesn't respond in time, the request fails, and the process is
+ * killed. This way a hung command doesn't block the other users of the host indefinitely.
+ * <p>
+ * The class is thread safe.
+ */
+public final class PowershellHost implements Closeable {
+	/**
+	 * The script that the default host process runs.
+	 * <p>
+	 * The commands are executed in a child scope so they don't affect each other. The progress output is turned off as
+	 * it would interfere with the framing. The console output is flushed, and a new line is written before the
+	 * response header, so the header is on its own line even if the command printed something directly to the console.
+	 */
+	private static final String HOST_SCRIPT = String.join("\n", //
+			"$ErrorActionPreference = 'Stop'", //
+			"$ProgressPreference = 'SilentlyContinue'", //
+			"$utf8 = New-Object System.Text.UTF8Encoding -ArgumentList $false", //
+			"$reader = New-Object System.IO.StreamReader -ArgumentList ([Console]::OpenStandardInput()), $utf8", //
+			"$writer = [Console]::OpenStandardOutput()", //
+			"while ($true) {", //
+			"	$line = $reader.ReadLine()", //
+			"	if ($line -eq $null) { break }", //
+			"	$parts = $line.Split(' ')", //
+			"	$status = 'ok'", //
+			"	try {", //
+			"		$Error.Clear()", //
+			"		if ($parts[1] -eq 'ping') {", //
+			"			$result = 'pong'", //
+			"		} elseif ($parts[1] -eq 'exec') {", //
+			"			$command = [ScriptBlock]::Create($utf8.GetString([Convert]::FromBase64String($parts[2])))", //
+			"			$result = (@(& $command) | ForEach-Object { [string]$_ }) -join \"`n\"", //
+			"		} else {", //
+			"			throw ('Unknown request: ' + $parts[1])", //
+			"		}", //
+			"	} catch {", //
+			"		$status = 'error'", //
+			"		$result = ($_ | Out-String).Trim()", //
+			"	}", //
+			"	$payload = $utf8.GetBytes([string]$result)", //
+			"	[Console]::Out.Flush()", //
+			"	$header = $utf8.GetBytes(\"`n#\" + $parts[0] + ' ' + $status + ' ' + $payload.Length + \"`n\")", //
+			"	$writer.Write($header, 0, $header.Length)", //
+			"	$writer.Write($payload, 0, $payload.Length)", //
+			"	$writer.Flush()", //
+			"}");
+
+	private static final List<String> DEFAULT_COMMAND = ImmutableUtils.asUnmodifiableArrayList("powershell",
+			"-NoProfile", "-NonInteractive", "-ExecutionPolicy", "Bypass", "-EncodedCommand",
+			Base64.getEncoder().encodeToString(HOST_SCRIPT.getBytes(StandardCharsets.UTF_16LE)));
+
+	private final List<String> command;
+	private final long responseTimeoutNanos;
+	private final int maxProcesses;
+
+	/**
+	 * The started processes that are not executing a request. The most recently used process is the first.
+	 * <p>
+	 * Guarded by <code>this</code>.
+	 */
+	private final Deque<HostProcess> idleProcesses = new ArrayDeque<>();
+	/**
+	 * The number of started processes, including the ones that are executing a request.
+	 * <p>
+	 * Guarded by <code>this</code>.
+	 */
+	private int processCount;
+	private boolean closed;
+
+	/**
+	 * Creates a new host that starts the processes using the given command.
+	 * <p>
+	 * The processes are started when the commands are executed.
+	 *
+	 * @param command
+	 *            The command to start a host process with.
+	 * @param responseTimeoutMillis
+	 *            The maximum time in milliseconds to wait for the response of a request.
+	 * @param maxProcesses
+	 *            The maximum number of host processes that execute requests concurrently.
+	 * @see #getDefaultCommand()
+	 */
+	public PowershellHost(List<String> command, long responseTimeoutMillis, int maxProcesses) {
+		if (responseTimeoutMillis <= 0) {
+			throw new IllegalArgumentException("Invalid response timeout: " + responseTimeoutMillis);
+		}
+		if (maxProcesses <= 0) {
+			throw new IllegalArgumentException("Invalid maximum process count: " + maxProcesses);
+		}
+		this.command = ImmutableUtils.makeImmutableList(command);
+		this.responseTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(responseTimeoutMillis);
+		this.maxProcesses = maxProcesses;
+	}
+
+	/**
+	 * Gets the command that starts a PowerShell host process.
+	 *
+	 * @return The command.
+	 */
+	public static List<String> getDefaultCommand() {
+		return DEFAULT_COMMAND;
+	}
+
+	/**
+	 * Executes the given command in a host process.
+	 * <p>
+	 * If the command couldn't be sent to the process, the command is sent again to another process.
+	 *
+	 * @param command
+	 *            The command to execute.
+	 * @return The response of the command.
+	 * @throws IOException
+	 *             If the communication with the host failed, or the host didn't respond in time.
+	 */
+	public PowershellResponse execute(String command) throws IOException {
+		return request(protocol -> protocol.execute(command));
+	}
+
+	/**
+	 * Executes the given command in a host process, and reads its output incrementally.
+	 * <p>
+	 * The output is passed to the reader as it is received from the host, without buffering the whole output in
+	 * memory.
+	 * <p>
+	 * If the command couldn't be sent to the process, the command is sent again to another process.
+	 *
+	 * @param <T>
+	 *            The result type.
+	 * @param command
+	 *            The command to execute.
+	 * @param reader
+	 *            The reader of the command output.
+	 * @return The result of the reader.
+	 * @throws PowershellCommandException
+	 *             If the command failed.
+	 * @throws IOException
+	 *             If the communication with the host failed, the host didn't respond in time, or the reader failed.
+	 */
+	public <T> T execute(String command, PowershellResponseReader<T> reader)
+			throws PowershellCommandException, IOException {
+		return request(protocol -> protocol.execute(command, reader));
+	}
+
+	/**
+	 * Checks if the host is operational by sending a ping request to one of its processes.
+	 * <p>
+	 * A host process is started if none is running.
+	 *
+	 * @throws IOException
+	 *             If the host failed to respond.
+	 */
+	public void ping() throws IOException {
+		request(PING_REQUEST);
+	}
+
+	/**
+	 * Closes the host.
+	 * <p>
+	 * The idle processes are stopped immediately, the processes that execute a request are stopped when the request
+	 * finishes.
+	 */
+	@Override
+	public void close() {
+		List<HostProcess> processes;
+		synchronized (this) {
+			closed = true;
+			processes = new ArrayList<>(idleProcesses);
+			idleProcesses.clear();
+			processCount -= processes.size();
+			notifyAll();
+		}
+		for (HostProcess proc : processes) {
+			proc.destroy();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + command + ", timeout: "
+				+ TimeUnit.NANOSECONDS.toMillis(responseTimeoutNanos) + " ms, max processes: " + maxProcesses + "]";
+	}
+
+	private <T> T request(ProtocolRequest<T> request) throws IOException {
+		try {
+			return runAndRelease(acquireProcess(), request);
+		} catch (PowershellHostRequestWriteException e) {
+			//the process exited in the meantime, or the pipe is broken
+			//the command wasn't executed, so it can be retried with another process
+			try {
+				return runAndRelease(acquireProcess(), request);
+			} catch (Throwable e2) {
+				e2.addSuppressed(e);
+				throw e2;
+			}
+		}
+	}
+
+	private <T> T runAndRelease(HostProcess proc, ProtocolRequest<T> request) throws IOException {
+		boolean reusable = false;
+		try {
+			T result = proc.run(request, responseTimeoutNanos);
+			reusable = true;
+			return result;
+		} catch (PowershellHostRequestWriteException e) {
+			throw e;
+		} catch (Throwable e) {
+			//the process can be reused if the response was read, e.g. if the command or the reader failed
+			//else the state of the protocol is undefined, and the process is stopped
+			reusable = !proc.isResponsePending();
+			throw e;
+		} finally {
+			releaseProcess(proc, reusable);
+		}
+	}
+
+	private HostProcess acquireProcess() throws IOException {
+		synchronized (this) {
+			while (true) {
+				if (closed) {
+					throw new IOException("PowerShell host is closed.");
+				}
+				HostProcess proc = idleProcesses.pollFirst();
+				if (proc != null) {
+					if (proc.isAlive()) {
+						return proc;
+					}
+					--processCount;
+					proc.destroy();
+					continue;
+				}
+				if (processCount < maxProcesses) {
+					++processCount;
+					break;
+				}
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for a PowerShell host process.");
+				}
+			}
+		}
+		//start the process outside of the lock, so the other requests can proceed in the meantime
+		try {
+			return HostProcess.start(command, responseTimeoutNanos);
+		} catch (Throwable e) {
+			synchronized (this) {
+				--processCount;
+				notifyAll();
+			}
+			throw e;
+		}
+	}
+
+	private void releaseProcess(HostProcess proc, boolean reusable) {
+		boolean destroy;
+		synchronized (this) {
+			destroy = closed || !reusable;
+			if (destroy) {
+				--processCount;
+			} else {
+				idleProcesses.addFirst(proc);
+			}
+			notifyAll();
+		}
+		if (destroy) {
+			proc.destroy();
+		}
+	}
+
+	private static void startErrorStreamDrainer(InputStream errorstream) {
+		//the error stream needs to be consumed, else the host may block when writing to it
+		Thread thread = new Thread(() -> {
+			byte[] buf = new byte[4096];
+			try (InputStream is = errorstream) {
+				while (is.read(buf) >= 0) {
+					//discard
+				}
+			} catch (IOException e) {
+				//the process exited
+			}
+		}, "PowerShell host stderr");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private static void startOutputReader(InputStream outputstream, ProcessOutputBuffer output) {
+		Thread thread = new Thread(() -> {
+			byte[] buf = new byte[8192];
+			try (InputStream is = outputstream) {
+				for (int read; (read = is.read(buf)) >= 0;) {
+					if (!output.write(buf, 0, read)) {
+						//the buffer was closed, the process is no longer used
+						return;
+					}
+				}
+			} catch (IOException | InterruptedException e) {
+				//the process exited
+			} finally {
+				output.endOfStream();
+			}
+		}, "PowerShell host stdout");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@FunctionalInterface
+	private interface ProtocolRequest<T> {
+		public T run(PowershellHostProtocol protocol) throws IOException;
+	}
+
+	private static final ProtocolRequest<Void> PING_REQUEST = protocol -> {
+		protocol.ping();
+		return null;
+	};
+
+	/**
+	 * A started host process.
+	 * <p>
+	 * The class is not thread safe, a process executes one request at a time.
+	 */
+	private static final class HostProcess {
+		private final Process process;
+		private final ProcessOutputBuffer output;
+		private final PowershellHostProtocol protocol;
+
+		private HostProcess(Process process, ProcessOutputBuffer output, PowershellHostProtocol protocol) {
+			this.process = process;
+			this.output = output;
+			this.protocol = protocol;
+		}
+
+		public static HostProcess start(List<String> command, long responseTimeoutNanos) throws IOException {
+			Process proc = new ProcessBuilder(command).start();
+			startErrorStreamDrainer(proc.getErrorStream());
+			ProcessOutputBuffer output = new ProcessOutputBuffer();
+			startOutputReader(proc.getInputStream(), output);
+			HostProcess result = new HostProcess(proc, output, new PowershellHostProtocol(
+					new BufferedInputStream(output), new BufferedOutputStream(proc.getOutputStream())));
+			try {
+				//health check of the new process
+				result.run(PING_REQUEST, responseTimeoutNanos);
+			} catch (Throwable e) {
+				result.destroy();
+				throw new IOException("Failed to start PowerShell host: " + command, e);
+			}
+			return result;
+		}
+
+		public <T> T run(ProtocolRequest<T> request, long responseTimeoutNanos) throws IOException {
+			output.setDeadline(System.nanoTime() + responseTimeoutNanos);
+			try {
+				return request.run(protocol);
+			} finally {
+				output.setDeadline(Long.MAX_VALUE);
+			}
+		}
+
+		public boolean isAlive() {
+			return process.isAlive();
+		}
+
+		public boolean isResponsePending() {
+			return protocol.isResponsePending();
+		}
+
+		public void destroy() {
+			try {
+				//closing the input makes the host script exit normally
+				process.getOutputStream().close();
+			} catch (IOException e) {
+				//ignore, destroying anyway
+			}
+			output.close();
+			process.destroyForcibly();
+		}
+	}
+
+	/**
+	 * Buffer for the output of a host process.
+	 * <p>
+	 * The output of the process is read by a separate thread, and written to the buffer. The reads from the buffer
+	 * wait for the data until the deadline of the current request. Reading the output of the process directly couldn't
+	 * be interrupted reliably, not even by killing the process, as its child processes may keep the output pipe open.
+	 */
+	private static final class ProcessOutputBuffer extends InputStream {
+		private final byte[] buffer = new byte[64 * 1024];
+		private int readPosition;
+		private int count;
+		private boolean endOfStream;
+		private boolean closed;
+		private long deadlineNanos = Long.MAX_VALUE;
+
+		public synchronized void setDeadline(long deadlineNanos) {
+			this.deadlineNanos = deadlineNanos;
+		}
+
+		/**
+		 * Writes the data to the buffer, waiting for free space if necessary.
+		 *
+		 * @return <code>false</code> if the buffer has been closed.
+		 */
+		public synchronized boolean write(byte[] b, int off, int len) throws InterruptedException {
+			while (len > 0) {
+				while (count == buffer.length && !closed) {
+					wait();
+				}
+				if (closed) {
+					return false;
+				}
+				int writeposition = (readPosition + count) % buffer.length;
+				int n = Math.min(len, Math.min(buffer.length - count, buffer.length - writeposition));
+				System.arraycopy(b, off, buffer, writeposition, n);
+				count += n;
+				off += n;
+				len -= n;
+				notifyAll();
+			}
+			return true;
+		}
+
+		public synchronized void endOfStream() {
+			endOfStream = true;
+			notifyAll();
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = { 0 };
+			int result = read(b, 0, 1);
+			if (result <= 0) {
+				return -1;
+			}
+			return b[0] & 0xFF;
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			while (count == 0) {
+				if (endOfStream || closed) {
+					return -1;
+				}
+				try {
+					if (deadlineNanos == Long.MAX_VALUE) {
+						wait();
+					} else {
+						long remaining = deadlineNanos - System.nanoTime();
+						if (remaining <= 0) {
+							throw new IOException("PowerShell host didn't respond in time.");
+						}
+						TimeUnit.NANOSECONDS.timedWait(this, remaining);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for PowerShell host response.");
+				}
+			}
+			int n = Math.min(len, Math.min(count, buffer.length - readPosition));
+			System.arraycopy(buffer, readPosition, b, off, n);
+			readPosition = (readPosition + n) % buffer.length;
+			count -= n;
+			notifyAll();
+			return n;
+		}
+
+		@Override
+		public synchronized int available() {
+			return count;
+		}
+
+		@Override
+		public synchronized void close() {
+			closed = true;
+			notifyAll();
+		}
+	}
+}
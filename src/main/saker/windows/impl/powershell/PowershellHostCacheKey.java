@@ -0,0 +1,88 @@
+package saker.windows.impl.powershell;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import saker.build.util.cache.CacheKey;
+
+/**
+ * Cache key for keeping a {@link PowershellHost} alive in the build environment.
+ * <p>
+ * The host process is stopped when the cached data is expired or the environment is closed.
+ */
+public class PowershellHostCacheKey implements CacheKey<PowershellHost, PowershellHost> {
+	private static final long EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+	private final List<String> command;
+	private final long responseTimeoutMillis;
+	private final int maxProcesses;
+
+	public PowershellHostCacheKey(List<String> command, long responseTimeoutMillis, int maxProcesses) {
+		this.command = command;
+		this.responseTimeoutMillis = responseTimeoutMillis;
+		this.maxProcesses = maxProcesses;
+	}
+
+	@Override
+	public PowershellHost allocate() throws Exception {
+		return new PowershellHost(command, responseTimeoutMillis, maxProcesses);
+	}
+
+	@Override
+	public PowershellHost generate(PowershellHost resource) throws Exception {
+		return resource;
+	}
+
+	@Override
+	public boolean validate(PowershellHost data, PowershellHost resource) {
+		//the host restarts the processes itself if necessary
+		return true;
+	}
+
+	@Override
+	public long getExpiry() {
+		return EXPIRY_MILLIS;
+	}
+
+	@Override
+	public void close(PowershellHost data, PowershellHost resource) throws Exception {
+		resource.close();
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((command == null) ? 0 : command.hashCode());
+		result = prime * result + maxProcesses;
+		result = prime * result + (int) (responseTimeoutMillis ^ (responseTimeoutMillis >>> 32));
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		PowershellHostCacheKey other = (PowershellHostCacheKey) obj;
+		if (command == null) {
+			if (other.command != null)
+				return false;
+		} else if (!command.equals(other.command))
+			return false;
+		if (maxProcesses != other.maxProcesses)
+			return false;
+		if (responseTimeoutMillis != other.responseTimeoutMillis)
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + command + ", timeout: " + responseTimeoutMillis
+				+ " ms, max processes: " + maxProcesses + "]";
+	}
+}
@@ -0,0 +1,369 @@
+package saker.windows.impl.powershell;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * The framed request-response protocol that is used to communicate with a {@link PowershellHost}.
+ * <p>
+ * The protocol only relies on the streams of the host process, and is independent of PowerShell. Any process that
+ * implements the same framing can be used as a host.
+ * <p>
+ * Requests are single lines that are terminated by <code>\n</code>:
+ *
+ * <pre>
+ * &lt;id&gt; exec &lt;base64 UTF-8 command&gt;
+ * &lt;id&gt; ping
+ * </pre>
+ *
+ * Each request is answered with a header line and a payload:
+ *
+ * <pre>
+ * \n#&lt;id&gt; &lt;ok|error&gt; &lt;payload byte length&gt;\n
+ * &lt;UTF-8 payload bytes&gt;
+ * </pre>
+ *
+ * The host must always write a new line before the header, so the header starts on its own line even if the output
+ * that the command printed directly to the console doesn't end with a new line. The request ids contain a random token
+ * that is unique to the protocol instance, therefore the output of the commands can't be mistaken for a response
+ * header. Any lines that the host prints before the response header are ignored. The response to a <code>ping</code>
+ * request has the <code>pong</code> payload.
+ * <p>
+ * The payload can be read incrementally using a {@link PowershellResponseReader}, in which case it is not buffered in
+ * memory.
+ * <p>
+ * The class is not thread safe.
+ */
+public final class PowershellHostProtocol {
+	public static final String REQUEST_EXEC = "exec";
+	public static final String REQUEST_PING = "ping";
+
+	public static final String STATUS_OK = "ok";
+	public static final String STATUS_ERROR = "error";
+
+	public static final String PING_RESPONSE = "pong";
+
+	/**
+	 * The maximum number of bytes of a line that is examined when looking for the response header. The rest of the
+	 * longer lines are skipped without buffering, as they are unrelated output.
+	 */
+	private static final int MAX_HEADER_LENGTH = 256;
+
+	private final InputStream in;
+	private final OutputStream out;
+
+	/**
+	 * The prefix of the request ids, unique to this protocol instance.
+	 */
+	private final String requestIdPrefix = UUID.randomUUID().toString().replace("-", "") + ".";
+	private int requestIdCounter = 0;
+	/**
+	 * Set if a request has been sent, but its response hasn't been fully read.
+	 */
+	private boolean responsePending = false;
+
+	public PowershellHostProtocol(InputStream in, OutputStream out) {
+		this.in = in;
+		this.out = out;
+	}
+
+	/**
+	 * Sends a request to execute the given command, and waits for its response.
+	 *
+	 * @param command
+	 *            The command.
+	 * @return The response.
+	 * @throws PowershellHostRequestWriteException
+	 *             If the request failed to be sent. The command was not executed.
+	 * @throws IOException
+	 *             If the response failed to be read, or the protocol was violated by the host.
+	 */
+	public PowershellResponse execute(String command) throws PowershellHostRequestWriteException, IOException {
+		return request(createExecRequest(command));
+	}
+
+	/**
+	 * Sends a request to execute the given command, and reads its output using the argument reader.
+	 * <p>
+	 * The output of the command is not buffered, but passed to the reader as it is received from the host.
+	 * <p>
+	 * If the reader throws an exception, the remaining output is still skipped so the protocol can be used for further
+	 * requests. See {@link #isResponsePending()}.
+	 *
+	 * @param <T>
+	 *            The result type.
+	 * @param command
+	 *            The command.
+	 * @param reader
+	 *            The reader of the output.
+	 * @return The result of the reader.
+	 * @throws PowershellHostRequestWriteException
+	 *             If the request failed to be sent. The command was not executed.
+	 * @throws PowershellCommandException
+	 *             If the command failed.
+	 * @throws IOException
+	 *             If the response failed to be read, the protocol was violated by the host, or the reader failed.
+	 */
+	public <T> T execute(String command, PowershellResponseReader<T> reader)
+			throws PowershellHostRequestWriteException, PowershellCommandException, IOException {
+		String id = sendRequest(createExecRequest(command));
+		String header = readResponseHeader(id);
+		String status = getHeaderStatus(header);
+		int length = getHeaderPayloadLength(header);
+		switch (status) {
+			case STATUS_OK: {
+				PayloadInputStream payload = new PayloadInputStream(in, length);
+				T result;
+				try {
+					result = reader.read(payload);
+				} catch (Throwable e) {
+					try {
+						payload.skipRemaining();
+						responsePending = false;
+					} catch (Throwable e2) {
+						e.addSuppressed(e2);
+					}
+					throw e;
+				}
+				payload.skipRemaining();
+				responsePending = false;
+				return result;
+			}
+			case STATUS_ERROR: {
+				String output = new String(readFully(length), StandardCharsets.UTF_8);
+				responsePending = false;
+				throw new PowershellCommandException(output);
+			}
+			default: {
+				throw new IOException("Unknown PowerShell host response status: " + header);
+			}
+		}
+	}
+
+	/**
+	 * Sends a ping request and checks its response.
+	 *
+	 * @throws IOException
+	 *             If the host is not operational.
+	 */
+	public void ping() throws IOException {
+		PowershellResponse response = request(REQUEST_PING);
+		if (!response.isSuccessful() || !PING_RESPONSE.equals(response.getOutput())) {
+			throw new IOException("Unexpected ping response from PowerShell host: " + response);
+		}
+	}
+
+	/**
+	 * Checks if the response of the last request wasn't fully read.
+	 * <p>
+	 * If this method returns <code>true</code> after a request failed, the state of the communication is undefined and
+	 * the protocol shouldn't be used anymore.
+	 *
+	 * @return <code>true</code> if there's a pending response.
+	 */
+	public boolean isResponsePending() {
+		return responsePending;
+	}
+
+	private PowershellResponse request(String request) throws PowershellHostRequestWriteException, IOException {
+		String id = sendRequest(request);
+		String header = readResponseHeader(id);
+		String status = getHeaderStatus(header);
+		int length = getHeaderPayloadLength(header);
+		byte[] payload = readFully(length);
+		String output = new String(payload, StandardCharsets.UTF_8);
+		switch (status) {
+			case STATUS_OK: {
+				responsePending = false;
+				return new PowershellResponse(true, output);
+			}
+			case STATUS_ERROR: {
+				responsePending = false;
+				return new PowershellResponse(false, output);
+			}
+			default: {
+				throw new IOException("Unknown PowerShell host response status: " + header);
+			}
+		}
+	}
+
+	private static String createExecRequest(String command) {
+		return REQUEST_EXEC + " " + Base64.getEncoder().encodeToString(command.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private String sendRequest(String request) throws PowershellHostRequestWriteException {
+		if (responsePending) {
+			throw new PowershellHostRequestWriteException("PowerShell host response is still pending.", null);
+		}
+		String id = requestIdPrefix + (++requestIdCounter);
+		responsePending = true;
+		try {
+			out.write((id + " " + request + "\n").getBytes(StandardCharsets.UTF_8));
+			out.flush();
+		} catch (IOException e) {
+			throw new PowershellHostRequestWriteException("Failed to send request to PowerShell host.", e);
+		}
+		return id;
+	}
+
+	private String readResponseHeader(String id) throws IOException {
+		String headerprefix = "#" + id + " ";
+		String header;
+		while (true) {
+			header = readLineStart();
+			if (header == null) {
+				throw new EOFException("PowerShell host exited before responding.");
+			}
+			if (header.startsWith(headerprefix)) {
+				break;
+			}
+			if (header.startsWith("#" + requestIdPrefix)) {
+				throw new IOException("Unexpected PowerShell host response header: " + header + " for request: " + id);
+			}
+			//some unrelated output of the command, ignore
+		}
+		return header;
+	}
+
+	private static String getHeaderStatus(String header) throws IOException {
+		int statusstart = header.indexOf(' ') + 1;
+		int statusend = header.indexOf(' ', statusstart);
+		if (statusend < 0) {
+			throw new IOException("Malformed PowerShell host response header: " + header);
+		}
+		return header.substring(statusstart, statusend);
+	}
+
+	private static int getHeaderPayloadLength(String header) throws IOException {
+		int length;
+		try {
+			length = Integer.parseInt(header.substring(header.lastIndexOf(' ') + 1).trim());
+		} catch (NumberFormatException e) {
+			throw new IOException("Malformed PowerShell host response header: " + header, e);
+		}
+		if (length < 0) {
+			throw new IOException("Malformed PowerShell host response header: " + header);
+		}
+		return length;
+	}
+
+	private byte[] readFully(int length) throws IOException {
+		byte[] result = new byte[length];
+		int offset = 0;
+		while (offset < length) {
+			int read = in.read(result, offset, length - offset);
+			if (read < 0) {
+				throw new EOFException("PowerShell host exited while writing the response.");
+			}
+			offset += read;
+		}
+		return result;
+	}
+
+	/**
+	 * Reads a line, and returns at most its first {@link #MAX_HEADER_LENGTH} bytes.
+	 */
+	private String readLineStart() throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		boolean any = false;
+		while (true) {
+			int b = in.read();
+			if (b < 0) {
+				if (!any) {
+					return null;
+				}
+				break;
+			}
+			any = true;
+			if (b == '\n') {
+				break;
+			}
+			if (baos.size() < MAX_HEADER_LENGTH) {
+				baos.write(b);
+			}
+		}
+		String result = new String(baos.toByteArray(), StandardCharsets.UTF_8);
+		if (result.endsWith("\r")) {
+			return result.substring(0, result.length() - 1);
+		}
+		return result;
+	}
+
+	/**
+	 * Input stream that is limited to the payload of a response.
+	 * <p>
+	 * Closing the stream has no effect, the underlying stream is used for further responses.
+	 */
+	private static final class PayloadInputStream extends InputStream {
+		private final InputStream in;
+		private int remaining;
+
+		public PayloadInputStream(InputStream in, int length) {
+			this.in = in;
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int result = in.read();
+			if (result < 0) {
+				throw new EOFException("PowerShell host exited while writing the response.");
+			}
+			--remaining;
+			return result;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (remaining <= 0) {
+				return -1;
+			}
+			int result = in.read(b, off, Math.min(len, remaining));
+			if (result < 0) {
+				throw new EOFException("PowerShell host exited while writing the response.");
+			}
+			remaining -= result;
+			return result;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			if (n <= 0 || remaining <= 0) {
+				return 0;
+			}
+			long result = in.skip(Math.min(n, remaining));
+			remaining -= (int) result;
+			return result;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return Math.min(in.available(), remaining);
+		}
+
+		@Override
+		public void close() {
+		}
+
+		public void skipRemaining() throws IOException {
+			while (remaining > 0) {
+				if (skip(remaining) <= 0) {
+					//skip may return 0 without reaching the end of the stream, read throws in that case
+					read();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package saker.windows.impl.powershell;
+
+import java.io.IOException;
+
+/**
+ * Thrown if a request couldn't be sent to the PowerShell host.
+ * <p>
+ * In this case the request wasn't executed, and can be safely retried with a new host.
+ */
+public class PowershellHostRequestWriteException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	public PowershellHostRequestWriteException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
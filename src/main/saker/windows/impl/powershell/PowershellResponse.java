@@ -0,0 +1,39 @@
+package saker.windows.impl.powershell;
+
+/**
+ * The response of a command that was executed by a {@link PowershellHost}.
+ */
+public final class PowershellResponse {
+	private final boolean successful;
+	private final String output;
+
+	public PowershellResponse(boolean successful, String output) {
+		this.successful = successful;
+		this.output = output;
+	}
+
+	/**
+	 * Checks if the command completed without throwing an error.
+	 *
+	 * @return <code>true</code> if the command was successful.
+	 */
+	public boolean isSuccessful() {
+		return successful;
+	}
+
+	/**
+	 * Gets the output of the command.
+	 * <p>
+	 * If the command failed, this is the description of the error record.
+	 *
+	 * @return The output, never <code>null</code>.
+	 */
+	public String getOutput() {
+		return output;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + (successful ? "successful" : "failed") + ", output=" + output + "]";
+	}
+}
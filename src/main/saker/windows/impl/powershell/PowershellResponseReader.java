@@ -0,0 +1,29 @@
+package saker.windows.impl.powershell;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Functional interface for incrementally reading the output of a successful command executed by a
+ * {@link PowershellHost}.
+ *
+ * @param <T>
+ *            The type of the read result.
+ */
+@FunctionalInterface
+public interface PowershellResponseReader<T> {
+	/**
+	 * Reads the output of the command.
+	 * <p>
+	 * The stream contains the UTF-8 encoded output bytes, and ends with the output. The reader doesn't need to read the
+	 * stream fully, the remaining bytes are skipped by the caller. The stream shouldn't be used after this method
+	 * returns.
+	 *
+	 * @param payload
+	 *            The output stream of the command.
+	 * @return The result of the reading.
+	 * @throws IOException
+	 *             If the reading failed.
+	 */
+	public T read(InputStream payload) throws IOException;
+}
@@ -0,0 +1,287 @@
+package saker.windows.impl.sdk;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import saker.build.file.path.SakerPath;
+import saker.build.file.provider.LocalFileProvider;
+import saker.build.runtime.environment.SakerEnvironment;
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.runtime.execution.ExecutionProperty;
+import saker.build.task.TaskContext;
+import saker.build.thirdparty.saker.util.ArrayUtils;
+import saker.build.thirdparty.saker.util.ImmutableUtils;
+import saker.build.thirdparty.saker.util.io.SerialUtils;
+import saker.sdk.support.api.EnvironmentSDKDescription;
+import saker.sdk.support.api.IndeterminateSDKDescription;
+import saker.sdk.support.api.SDKDescription;
+import saker.sdk.support.api.SDKReference;
+import saker.sdk.support.api.SDKSupportUtils;
+import saker.sdk.support.api.exc.SDKPathNotFoundException;
+import saker.windows.api.SakerWindowsUtils;
+
+/**
+ * Execution property that resolves the path of a tool executable from the Windows SDKs.
+ * <p>
+ * As execution property values are computed only once during a build execution, the SDK resolution and file checks
+ * are performed once for each (SDKs, tool) pair instead of in every task that uses the given tool.
+ * <p>
+ * The current value is <code>null</code> if the executable was not found.
+ */
+public class SDKToolExecutablePathExecutionProperty implements ExecutionProperty<SakerPath>, Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	public enum Tool {
+		MAKEAPPX("makeappx.exe",
+				new String[] { SakerWindowsUtils.SDK_NAME_WINDOWSKITS, SakerWindowsUtils.SDK_NAME_WINDOWSUAP,
+						SakerWindowsUtils.SDK_NAME_WINDOWSAPPCERTKIT },
+				new String[] { SakerWindowsUtils.SDK_WINDOWSKITS_PATH_MAKEAPPX_X86,
+						SakerWindowsUtils.SDK_WINDOWSUAP_PATH_MAKEAPPX_X86,
+						SakerWindowsUtils.SDK_WINDOWSAPPCERTKIT_PATH_MAKEAPPX },
+				new SDKDescription[] { SakerWindowsUtils.getDefaultWindowsKitsSDK(),
+						SakerWindowsUtils.getDefaultWindowsUapSDK(),
+						SakerWindowsUtils.getDefaultWindowsAppCertKitSDK() }),
+		SIGNTOOL("signtool.exe",
+				new String[] { SakerWindowsUtils.SDK_NAME_WINDOWSKITS, SakerWindowsUtils.SDK_NAME_WINDOWSAPPCERTKIT },
+				new String[] { SakerWindowsUtils.SDK_WINDOWSKITS_PATH_SIGNTOOL_X86,
+						SakerWindowsUtils.SDK_WINDOWSAPPCERTKIT_PATH_SIGNTOOL },
+				new SDKDescription[] { SakerWindowsUtils.getDefaultWindowsKitsSDK(),
+						SakerWindowsUtils.getDefaultWindowsAppCertKitSDK() }),
+
+		;
+
+		protected final String executableName;
+		/**
+		 * The SDK names in the order they are searched for the executable.
+		 */
+		protected final String[] sdkNames;
+		protected final String[] pathIdentifiers;
+		/**
+		 * The SDKs that are used if the associated SDK is not specified by the user.
+		 */
+		protected final SDKDescription[] defaultSDKs;
+
+		private Tool(String executableName, String[] sdkNames, String[] pathIdentifiers,
+				SDKDescription[] defaultSDKs) {
+			this.executableName = executableName;
+			this.sdkNames = sdkNames;
+			this.pathIdentifiers = pathIdentifiers;
+			this.defaultSDKs = defaultSDKs;
+		}
+
+		public String getExecutableName() {
+			return executableName;
+		}
+	}
+
+	private NavigableMap<String, SDKDescription> sdks;
+	private Tool tool;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public SDKToolExecutablePathExecutionProperty() {
+	}
+
+	private SDKToolExecutablePathExecutionProperty(NavigableMap<String, SDKDescription> sdks, Tool tool) {
+		this.sdks = sdks;
+		this.tool = tool;
+	}
+
+	/**
+	 * Gets the path to the executable of the given tool.
+	 * <p>
+	 * The SDKs are searched in the order of Windows Kits, Windows UAP, and Windows App Cert Kit, as applicable for the
+	 * tool. The SDKs that are not specified by the user are searched afterwards, using their default descriptions.
+	 *
+	 * @param taskcontext
+	 *            The task context.
+	 * @param sdks
+	 *            The SDKs specified by the user.
+	 * @param tool
+	 *            The tool to get the executable for.
+	 * @return The path to the executable.
+	 * @throws SDKPathNotFoundException
+	 *             If the executable was not found.
+	 * @throws Exception
+	 *             If the SDK resolution fails.
+	 */
+	public static SakerPath getExecutablePath(TaskContext taskcontext, NavigableMap<String, SDKDescription> sdks,
+			Tool tool) throws SDKPathNotFoundException, Exception {
+		NavigableMap<String, SDKDescription> toolsdks = new TreeMap<>(SDKSupportUtils.getSDKNameComparator());
+		boolean resolvable = true;
+		for (String sdkname : tool.sdkNames) {
+			SDKDescription desc = sdks.get(sdkname);
+			if (desc == null) {
+				continue;
+			}
+			if (!isResolvableInExecution(desc)) {
+				resolvable = false;
+				break;
+			}
+			toolsdks.put(sdkname, desc);
+		}
+		if (resolvable) {
+			SakerPath result = taskcontext.getTaskUtilities().getReportExecutionDependency(
+					new SDKToolExecutablePathExecutionProperty(ImmutableUtils.unmodifiableNavigableMap(toolsdks), tool));
+			if (result != null) {
+				return result;
+			}
+			//not found, resolve the executable in the task context to report the causes properly
+		}
+		return getExecutablePathInTask(taskcontext, sdks, tool);
+	}
+
+	@Override
+	public SakerPath getCurrentValue(ExecutionContext executioncontext) throws Exception {
+		SakerEnvironment environment = executioncontext.getEnvironment();
+		String[] sdknames = tool.sdkNames;
+		for (int i = 0; i < sdknames.length; i++) {
+			SDKDescription desc = sdks.get(sdknames[i]);
+			if (desc == null) {
+				continue;
+			}
+			SakerPath result = getExecutablePathFromSDKOrNull(environment, desc, tool.pathIdentifiers[i]);
+			if (result != null) {
+				return result;
+			}
+		}
+		for (int i = 0; i < sdknames.length; i++) {
+			if (sdks.containsKey(sdknames[i])) {
+				continue;
+			}
+			SakerPath result = getExecutablePathFromSDKOrNull(environment, tool.defaultSDKs[i],
+					tool.pathIdentifiers[i]);
+			if (result != null) {
+				return result;
+			}
+		}
+		return null;
+	}
+
+	private static SakerPath getExecutablePathInTask(TaskContext taskcontext,
+			NavigableMap<String, SDKDescription> sdks, Tool tool) throws Exception {
+		Throwable[] causes = {};
+		Map<String, SDKReference> sdkrefs = null;
+		String[] sdknames = tool.sdkNames;
+		for (int i = 0; i < sdknames.length; i++) {
+			String sdkname = sdknames[i];
+			if (!sdks.containsKey(sdkname)) {
+				continue;
+			}
+			try {
+				if (sdkrefs == null) {
+					//resolve only once, and only if necessary
+					sdkrefs = SDKSupportUtils.resolveSDKReferences(taskcontext, sdks);
+				}
+				SDKReference sdk = SDKSupportUtils.requireSDK(sdkrefs, sdkname);
+				return tryGetExecutablePathFromSDK(sdk, tool.pathIdentifiers[i]);
+			} catch (Exception e) {
+				causes = ArrayUtils.appended(causes, e);
+			}
+		}
+		for (int i = 0; i < sdknames.length; i++) {
+			if (sdks.containsKey(sdknames[i])) {
+				continue;
+			}
+			try {
+				SDKReference sdk = SDKSupportUtils.resolveSDKReference(taskcontext, tool.defaultSDKs[i]);
+				return tryGetExecutablePathFromSDK(sdk, tool.pathIdentifiers[i]);
+			} catch (Exception e) {
+				causes = ArrayUtils.appended(causes, e);
+			}
+		}
+		SDKPathNotFoundException exc = new SDKPathNotFoundException(tool.executableName + " not found in SDKs.");
+		for (Throwable c : causes) {
+			exc.addSuppressed(c);
+		}
+		throw exc;
+	}
+
+	private static boolean isResolvableInExecution(SDKDescription desc) {
+		while (desc instanceof IndeterminateSDKDescription) {
+			desc = ((IndeterminateSDKDescription) desc).getBaseSDKDescription();
+		}
+		return desc instanceof EnvironmentSDKDescription;
+	}
+
+	private static SakerPath getExecutablePathFromSDKOrNull(SakerEnvironment environment, SDKDescription desc,
+			String pathid) {
+		while (desc instanceof IndeterminateSDKDescription) {
+			desc = ((IndeterminateSDKDescription) desc).getBaseSDKDescription();
+		}
+		if (!(desc instanceof EnvironmentSDKDescription)) {
+			return null;
+		}
+		try {
+			SDKReference sdk = ((EnvironmentSDKDescription) desc).getSDK(environment);
+			if (sdk == null) {
+				return null;
+			}
+			return tryGetExecutablePathFromSDK(sdk, pathid);
+		} catch (Exception e) {
+			//the SDK is not available, or the executable is not present in it
+			return null;
+		}
+	}
+
+	private static SakerPath tryGetExecutablePathFromSDK(SDKReference sdk, String pathid)
+			throws Exception, IOException {
+		SakerPath exepath = sdk.getPath(pathid);
+		if (exepath != null && LocalFileProvider.getInstance().getFileAttributes(exepath).isRegularFile()) {
+			return exepath;
+		}
+		throw new SDKPathNotFoundException("Executable not found in SDK: " + sdk + " with path identifier: " + pathid);
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		SerialUtils.writeExternalMap(out, sdks);
+		out.writeObject(tool);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		sdks = SerialUtils.readExternalSortedImmutableNavigableMap(in, SDKSupportUtils.getSDKNameComparator());
+		tool = (Tool) in.readObject();
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((sdks == null) ? 0 : sdks.hashCode());
+		result = prime * result + ((tool == null) ? 0 : tool.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		SDKToolExecutablePathExecutionProperty other = (SDKToolExecutablePathExecutionProperty) obj;
+		if (sdks == null) {
+			if (other.sdks != null)
+				return false;
+		} else if (!sdks.equals(other.sdks))
+			return false;
+		if (tool != other.tool)
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[tool=" + tool + ", sdks=" + sdks + "]";
+	}
+
+}
@@ -71,14 +71,8 @@ public class VersionsWindowsKitsSDKReferenceEnvironmentProperty
 			}
 		}
 
-		WindowsKitsSDKReference sdkref;
-		sdkref = SakerWindowsImplUtils.searchWindowsKitsInProgramFiles(SakerWindowsImplUtils.PATH_PROGRAM_FILES_X86,
-				versionpredicate);
-		if (sdkref != null) {
-			return sdkref;
-		}
-		sdkref = SakerWindowsImplUtils.searchWindowsKitsInProgramFiles(SakerWindowsImplUtils.PATH_PROGRAM_FILES,
-				versionpredicate);
+		WindowsKitsSDKReference sdkref = SakerWindowsImplUtils.searchSDKRoots(environment,
+				root -> SakerWindowsImplUtils.searchWindowsKitsInProgramFiles(root, versionpredicate));
 		if (sdkref != null) {
 			return sdkref;
 		}
@@ -71,14 +71,8 @@ public class VersionsWindowsUapSDKReferenceEnvironmentProperty
 			}
 		}
 
-		WindowsUapSDKReference sdkref;
-		sdkref = SakerWindowsImplUtils.searchWindowsUapInProgramFiles(SakerWindowsImplUtils.PATH_PROGRAM_FILES_X86,
-				versionpredicate);
-		if (sdkref != null) {
-			return sdkref;
-		}
-		sdkref = SakerWindowsImplUtils.searchWindowsUapInProgramFiles(SakerWindowsImplUtils.PATH_PROGRAM_FILES,
-				versionpredicate);
+		WindowsUapSDKReference sdkref = SakerWindowsImplUtils.searchSDKRoots(environment,
+				root -> SakerWindowsImplUtils.searchWindowsUapInProgramFiles(root, versionpredicate));
 		if (sdkref != null) {
 			return sdkref;
 		}
@@ -4,7 +4,10 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 
 import saker.build.file.path.SakerPath;
 import saker.build.thirdparty.saker.util.ObjectUtils;
@@ -19,6 +22,13 @@ public class WindowsAppCertKitSDKReference implements SDKReference, Externalizab
 	 */
 	private transient SakerPath baseDirectory;
 
+	/**
+	 * Lowercase path identifiers mapped to their paths.
+	 * <p>
+	 * Lazily created after construction or deserialization.
+	 */
+	private transient volatile Map<String, SakerPath> pathTable;
+
 	/**
 	 * For {@link Externalizable}.
 	 */
@@ -38,22 +48,13 @@ public class WindowsAppCertKitSDKReference implements SDKReference, Externalizab
 		if (identifier == null) {
 			return null;
 		}
-		String loweridentifier = identifier.toLowerCase(Locale.ENGLISH);
-		switch (loweridentifier) {
-			case SakerWindowsUtils.SDK_WINDOWSAPPCERTKIT_PATH_HOME: {
-				return baseDirectory;
-			}
-			case SakerWindowsUtils.SDK_WINDOWSAPPCERTKIT_PATH_APPXLAUNCHER: {
-				return baseDirectory.resolve("microsoft.windows.softwarelogo.appxlauncher.exe");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSAPPCERTKIT_PATH_MAKEAPPX: {
-				return baseDirectory.resolve("makeappx.exe");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSAPPCERTKIT_PATH_SIGNTOOL: {
-				return baseDirectory.resolve("signtool.exe");
-			}
+		Map<String, SakerPath> paths = getPathTable();
+		SakerPath result = paths.get(identifier);
+		if (result != null) {
+			return result;
 		}
-		return null;
+		//toLowerCase returns the same string if there's nothing to convert, no allocation in that case
+		return paths.get(identifier.toLowerCase(Locale.ENGLISH));
 	}
 
 	@Override
@@ -61,6 +62,30 @@ public class WindowsAppCertKitSDKReference implements SDKReference, Externalizab
 		return null;
 	}
 
+	private Map<String, SakerPath> getPathTable() {
+		Map<String, SakerPath> result = pathTable;
+		if (result == null) {
+			//no need to synchronize, the table can be computed multiple times
+			result = createPathTable();
+			pathTable = result;
+		}
+		return result;
+	}
+
+	private Map<String, SakerPath> createPathTable() {
+		if (baseDirectory == null) {
+			//the base directory is not serialized
+			return Collections.emptyMap();
+		}
+		Map<String, SakerPath> result = new HashMap<>();
+		result.put(SakerWindowsUtils.SDK_WINDOWSAPPCERTKIT_PATH_HOME, baseDirectory);
+		result.put(SakerWindowsUtils.SDK_WINDOWSAPPCERTKIT_PATH_APPXLAUNCHER,
+				baseDirectory.resolve("microsoft.windows.softwarelogo.appxlauncher.exe"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSAPPCERTKIT_PATH_MAKEAPPX, baseDirectory.resolve("makeappx.exe"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSAPPCERTKIT_PATH_SIGNTOOL, baseDirectory.resolve("signtool.exe"));
+		return Collections.unmodifiableMap(result);
+	}
+
 	@Override
 	public void writeExternal(ObjectOutput out) throws IOException {
 	}
@@ -49,13 +49,8 @@ public class WindowsAppCertKitSDKReferenceEnvironmentProperty
 			return new WindowsAppCertKitSDKReference(installdir);
 		}
 
-		WindowsAppCertKitSDKReference sdkref;
-		sdkref = SakerWindowsImplUtils
-				.searchWindowsAppCertKitInProgramFiles(SakerWindowsImplUtils.PATH_PROGRAM_FILES_X86);
-		if (sdkref != null) {
-			return sdkref;
-		}
-		sdkref = SakerWindowsImplUtils.searchWindowsAppCertKitInProgramFiles(SakerWindowsImplUtils.PATH_PROGRAM_FILES);
+		WindowsAppCertKitSDKReference sdkref = SakerWindowsImplUtils.searchSDKRoots(environment,
+				SakerWindowsImplUtils::searchWindowsAppCertKitInProgramFiles);
 		if (sdkref != null) {
 			return sdkref;
 		}
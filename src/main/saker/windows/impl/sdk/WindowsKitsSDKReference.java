@@ -19,7 +19,10 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 
 import saker.build.file.path.SakerPath;
 import saker.build.file.provider.SakerPathFiles;
@@ -35,6 +38,13 @@ public class WindowsKitsSDKReference implements SDKReference, Externalizable {
 	 */
 	private transient SakerPath baseDirectory;
 
+	/**
+	 * Lowercase path identifiers mapped to their paths.
+	 * <p>
+	 * Lazily created after construction or deserialization.
+	 */
+	private transient volatile Map<String, SakerPath> pathTable;
+
 	/**
 	 * For {@link Externalizable}.
 	 */
@@ -60,114 +70,13 @@ public class WindowsKitsSDKReference implements SDKReference, Externalizable {
 		if (identifier == null) {
 			return null;
 		}
-		String loweridentifier = identifier.toLowerCase(Locale.ENGLISH);
-		switch (loweridentifier) {
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_HOME: {
-				return baseDirectory;
-			}
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_BIN_ARM: {
-				return baseDirectory.resolve("bin", version, "arm");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_BIN_ARM64: {
-				return baseDirectory.resolve("bin", version, "arm64");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_BIN_X64: {
-				return baseDirectory.resolve("bin", version, "x64");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_BIN_X86: {
-				return baseDirectory.resolve("bin", version, "x86");
-			}
-
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_INCLUDE_UCRT: {
-				return baseDirectory.resolve("Include", version, "ucrt");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_INCLUDE_CPPWINRT: {
-				return baseDirectory.resolve("Include", version, "cppwinrt");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_INCLUDE_WINRT: {
-				return baseDirectory.resolve("Include", version, "winrt");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_INCLUDE_SHARED: {
-				return baseDirectory.resolve("Include", version, "shared");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_INCLUDE_UM: {
-				return baseDirectory.resolve("Include", version, "um");
-			}
-
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_LIB_X64_UCRT: {
-				return baseDirectory.resolve("Lib", version, "ucrt", "x64");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_LIB_X64_UM: {
-				return baseDirectory.resolve("Lib", version, "um", "x64");
-			}
-
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_LIB_X86_UCRT: {
-				return baseDirectory.resolve("Lib", version, "ucrt", "x86");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_LIB_X86_UM: {
-				return baseDirectory.resolve("Lib", version, "um", "x86");
-			}
-
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_LIB_ARM64_UCRT: {
-				return baseDirectory.resolve("Lib", version, "ucrt", "arm64");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_LIB_ARM64_UM: {
-				return baseDirectory.resolve("Lib", version, "um", "arm64");
-			}
-
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_LIB_ARM_UCRT: {
-				return baseDirectory.resolve("Lib", version, "ucrt", "arm");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_LIB_ARM_UM: {
-				return baseDirectory.resolve("Lib", version, "um", "arm");
-			}
-
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_MAKEAPPX_X64: {
-				return baseDirectory.resolve("bin", version, "x64", "makeappx.exe");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_MAKEAPPX_X86: {
-				return baseDirectory.resolve("bin", version, "x86", "makeappx.exe");
-			}
-
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_SIGNTOOL_X86: {
-				return baseDirectory.resolve("bin", version, "x86", "signtool.exe");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_SIGNTOOL_X64: {
-				return baseDirectory.resolve("bin", version, "x64", "signtool.exe");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_SIGNTOOL_ARM: {
-				return baseDirectory.resolve("bin", version, "arm", "signtool.exe");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_SIGNTOOL_ARM64: {
-				return baseDirectory.resolve("bin", version, "arm64", "signtool.exe");
-			}
-
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_RC_X86: {
-				return baseDirectory.resolve("bin", version, "x86", "rc.exe");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_RC_X64: {
-				return baseDirectory.resolve("bin", version, "x64", "rc.exe");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_RC_ARM64: {
-				return baseDirectory.resolve("bin", version, "arm64", "rc.exe");
-			}
-
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_FXC_X86: {
-				return baseDirectory.resolve("bin", version, "x86", "fxc.exe");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_FXC_X64: {
-				return baseDirectory.resolve("bin", version, "x64", "fxc.exe");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_FXC_ARM64: {
-				return baseDirectory.resolve("bin", version, "arm64", "fxc.exe");
-			}
-
-			case SakerWindowsUtils.SDK_WINDOWSKITS_PATH_APPXLAUNCHER: {
-				return baseDirectory.resolve("App Certification Kit",
-						"microsoft.windows.softwarelogo.appxlauncher.exe");
-			}
+		Map<String, SakerPath> paths = getPathTable();
+		SakerPath result = paths.get(identifier);
+		if (result != null) {
+			return result;
 		}
-		return null;
+		//toLowerCase returns the same string if there's nothing to convert, no allocation in that case
+		return paths.get(identifier.toLowerCase(Locale.ENGLISH));
 	}
 
 	@Override
@@ -183,6 +92,77 @@ public class WindowsKitsSDKReference implements SDKReference, Externalizable {
 		return null;
 	}
 
+	private Map<String, SakerPath> getPathTable() {
+		Map<String, SakerPath> result = pathTable;
+		if (result == null) {
+			//no need to synchronize, the table can be computed multiple times
+			result = createPathTable();
+			pathTable = result;
+		}
+		return result;
+	}
+
+	private Map<String, SakerPath> createPathTable() {
+		Map<String, SakerPath> result = new HashMap<>();
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_HOME, baseDirectory);
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_BIN_ARM, baseDirectory.resolve("bin", version, "arm"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_BIN_ARM64, baseDirectory.resolve("bin", version, "arm64"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_BIN_X64, baseDirectory.resolve("bin", version, "x64"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_BIN_X86, baseDirectory.resolve("bin", version, "x86"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_INCLUDE_UCRT,
+				baseDirectory.resolve("Include", version, "ucrt"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_INCLUDE_CPPWINRT,
+				baseDirectory.resolve("Include", version, "cppwinrt"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_INCLUDE_WINRT,
+				baseDirectory.resolve("Include", version, "winrt"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_INCLUDE_SHARED,
+				baseDirectory.resolve("Include", version, "shared"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_INCLUDE_UM, baseDirectory.resolve("Include", version, "um"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_LIB_X64_UCRT,
+				baseDirectory.resolve("Lib", version, "ucrt", "x64"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_LIB_X64_UM,
+				baseDirectory.resolve("Lib", version, "um", "x64"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_LIB_X86_UCRT,
+				baseDirectory.resolve("Lib", version, "ucrt", "x86"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_LIB_X86_UM,
+				baseDirectory.resolve("Lib", version, "um", "x86"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_LIB_ARM64_UCRT,
+				baseDirectory.resolve("Lib", version, "ucrt", "arm64"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_LIB_ARM64_UM,
+				baseDirectory.resolve("Lib", version, "um", "arm64"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_LIB_ARM_UCRT,
+				baseDirectory.resolve("Lib", version, "ucrt", "arm"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_LIB_ARM_UM,
+				baseDirectory.resolve("Lib", version, "um", "arm"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_MAKEAPPX_X64,
+				baseDirectory.resolve("bin", version, "x64", "makeappx.exe"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_MAKEAPPX_X86,
+				baseDirectory.resolve("bin", version, "x86", "makeappx.exe"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_SIGNTOOL_X86,
+				baseDirectory.resolve("bin", version, "x86", "signtool.exe"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_SIGNTOOL_X64,
+				baseDirectory.resolve("bin", version, "x64", "signtool.exe"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_SIGNTOOL_ARM,
+				baseDirectory.resolve("bin", version, "arm", "signtool.exe"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_SIGNTOOL_ARM64,
+				baseDirectory.resolve("bin", version, "arm64", "signtool.exe"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_RC_X86,
+				baseDirectory.resolve("bin", version, "x86", "rc.exe"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_RC_X64,
+				baseDirectory.resolve("bin", version, "x64", "rc.exe"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_RC_ARM64,
+				baseDirectory.resolve("bin", version, "arm64", "rc.exe"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_FXC_X86,
+				baseDirectory.resolve("bin", version, "x86", "fxc.exe"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_FXC_X64,
+				baseDirectory.resolve("bin", version, "x64", "fxc.exe"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_FXC_ARM64,
+				baseDirectory.resolve("bin", version, "arm64", "fxc.exe"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSKITS_PATH_APPXLAUNCHER,
+				baseDirectory.resolve("App Certification Kit", "microsoft.windows.softwarelogo.appxlauncher.exe"));
+		return Collections.unmodifiableMap(result);
+	}
+
 	@Override
 	public void writeExternal(ObjectOutput out) throws IOException {
 		out.writeObject(baseDirectory);
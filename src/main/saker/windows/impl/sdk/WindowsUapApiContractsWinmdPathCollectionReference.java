@@ -5,17 +5,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 
 import saker.build.file.path.SakerPath;
 import saker.build.file.provider.LocalFileProvider;
@@ -26,12 +26,20 @@ import saker.sdk.support.api.exc.SDKManagementException;
 import saker.sdk.support.api.exc.SDKNotFoundException;
 import saker.sdk.support.api.exc.SDKPathNotFoundException;
 import saker.windows.api.SakerWindowsUtils;
+import saker.windows.impl.SakerWindowsXmlUtils;
 
 public final class WindowsUapApiContractsWinmdPathCollectionReference implements SDKPathCollectionReference, Externalizable {
 	private static final long serialVersionUID = 1L;
 
 	public static final WindowsUapApiContractsWinmdPathCollectionReference INSTANCE = new WindowsUapApiContractsWinmdPathCollectionReference();
 
+	/**
+	 * Platform.xml paths mapped to the winmd paths of the contained API contracts.
+	 * <p>
+	 * The Platform.xml files are rarely modified, so they're only reparsed if their attributes change.
+	 */
+	private static final Map<SakerPath, ResolvedContracts> RESOLVED_CONTRACTS_CACHE = new ConcurrentHashMap<>();
+
 	/**
 	 * For {@link Externalizable}.
 	 */
@@ -50,67 +58,112 @@ public final class WindowsUapApiContractsWinmdPathCollectionReference implements
 			throw new SDKPathNotFoundException(
 					"Platform.xml not found in SDK: " + SakerWindowsUtils.SDK_NAME_WINDOWSUAP);
 		}
-		Collection<SakerPath> result = new ArrayList<>();
+		BasicFileAttributes attrs;
+		try {
+			attrs = LocalFileProvider.getInstance().getFileAttributes(platformxmlpath);
+		} catch (IOException e) {
+			throw new SDKManagementException("Failed to parse Platform.xml at: " + platformxmlpath, e);
+		}
+		ResolvedContracts cached = RESOLVED_CONTRACTS_CACHE.get(platformxmlpath);
+		if (cached != null && cached.isValid(uapsdk, attrs)) {
+			return cached.winmdPaths;
+		}
+		List<SakerPath> winmdpaths = resolveContractWinmdPaths(uapsdk, platformxmlpath);
+		RESOLVED_CONTRACTS_CACHE.put(platformxmlpath, new ResolvedContracts(uapsdk, attrs, winmdpaths));
+		return winmdpaths;
+	}
+
+	private static List<SakerPath> resolveContractWinmdPaths(SDKReference uapsdk, SakerPath platformxmlpath)
+			throws Exception {
+		List<SakerPath> result = new ArrayList<>();
 		try (InputStream is = LocalFileProvider.getInstance().openInputStream(platformxmlpath)) {
-			DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-			//not namespace aware
-			DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-			Document doc = dBuilder.parse(is);
-			Element rootelem = doc.getDocumentElement();
-			if (!"ApplicationPlatform".equals(rootelem.getNodeName())) {
-				throw new IllegalArgumentException(
-						"Invalid Platform.xml found in " + SakerWindowsUtils.SDK_NAME_WINDOWSUAP + " SDK.");
-			}
-			String version = rootelem.getAttribute("version");
-			if (ObjectUtils.isNullOrEmpty(version)) {
-				throw new IllegalArgumentException("No version attribute found.");
-			}
-			String uapsdkversion = uapsdk.getProperty(SakerWindowsUtils.SDK_WINDOWSUAP_PROPERTY_VERSION);
-			if (!version.equals(uapsdkversion)) {
-				throw new IllegalArgumentException(
-						"Version mismatch in Platform.xml. Expected: " + version + " actual: " + uapsdkversion);
-			}
-			int foundnodes = 0;
-			NodeList children = rootelem.getChildNodes();
-			for (int i = 0, clen = children.getLength(); i < clen; i++) {
-				Node item = children.item(i);
-				if (item.getNodeType() != Node.ELEMENT_NODE) {
-					continue;
+			XMLStreamReader reader = SakerWindowsXmlUtils.getXMLInputFactory().createXMLStreamReader(is);
+			try {
+				reader.nextTag();
+				if (!"ApplicationPlatform".equals(reader.getLocalName())) {
+					throw new IllegalArgumentException(
+							"Invalid Platform.xml found in " + SakerWindowsUtils.SDK_NAME_WINDOWSUAP + " SDK.");
 				}
-				if (!"ContainedApiContracts".equals(item.getNodeName())) {
-					continue;
+				String version = reader.getAttributeValue(null, "version");
+				if (ObjectUtils.isNullOrEmpty(version)) {
+					throw new IllegalArgumentException("No version attribute found.");
 				}
-				++foundnodes;
-				NodeList contractchildren = item.getChildNodes();
-				for (int j = 0, cclen = contractchildren.getLength(); j < cclen; j++) {
-					Node contractitem = contractchildren.item(j);
-					if (contractitem.getNodeType() != Node.ELEMENT_NODE) {
+				String uapsdkversion = uapsdk.getProperty(SakerWindowsUtils.SDK_WINDOWSUAP_PROPERTY_VERSION);
+				if (!version.equals(uapsdkversion)) {
+					throw new IllegalArgumentException(
+							"Version mismatch in Platform.xml. Expected: " + version + " actual: " + uapsdkversion);
+				}
+				int foundnodes = 0;
+				//depth relative to the root element
+				int depth = 0;
+				while (reader.hasNext()) {
+					int event = reader.next();
+					if (event == XMLStreamConstants.END_ELEMENT) {
+						if (depth-- == 0) {
+							//end of root
+							break;
+						}
 						continue;
 					}
-					if (!"ApiContract".equals(contractitem.getNodeName())) {
+					if (event != XMLStreamConstants.START_ELEMENT) {
 						continue;
 					}
-					Element contractelem = (Element) contractitem;
-					String contractname = contractelem.getAttribute("name");
-					String contractversion = contractelem.getAttribute("version");
-					SakerPath winmdpath = uapsdk.getPath(SakerWindowsUtils
-							.getWindowsUapApiContractWinmdSDKPathIdentifier(contractname, contractversion));
-					if (winmdpath == null) {
-						throw new SDKPathNotFoundException("ApiContract winmd SDK path not found for: " + contractname
-								+ " / " + contractversion + " in SDK: " + uapsdk);
+					if (depth++ != 0) {
+						continue;
 					}
-					result.add(winmdpath);
+					if (!"ContainedApiContracts".equals(reader.getLocalName())) {
+						continue;
+					}
+					++foundnodes;
+					readContainedApiContracts(reader, uapsdk, result);
+					//the end element was consumed
+					--depth;
 				}
-			}
-			if (foundnodes == 0) {
-				throw new IllegalArgumentException("ContainedApiContracts element not found in Platform.xml");
+				if (foundnodes == 0) {
+					throw new IllegalArgumentException("ContainedApiContracts element not found in Platform.xml");
+				}
+			} finally {
+				reader.close();
 			}
 		} catch (SDKManagementException e) {
 			throw e;
 		} catch (Exception e) {
 			throw new SDKManagementException("Failed to parse Platform.xml at: " + platformxmlpath, e);
 		}
-		return result;
+		return Collections.unmodifiableList(result);
+	}
+
+	private static void readContainedApiContracts(XMLStreamReader reader, SDKReference uapsdk,
+			Collection<SakerPath> result) throws Exception {
+		//depth relative to the ContainedApiContracts element
+		int depth = 0;
+		while (true) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				if (depth-- == 0) {
+					return;
+				}
+				continue;
+			}
+			if (event != XMLStreamConstants.START_ELEMENT) {
+				continue;
+			}
+			if (depth++ != 0) {
+				continue;
+			}
+			if (!"ApiContract".equals(reader.getLocalName())) {
+				continue;
+			}
+			String contractname = getAttributeValueOrEmpty(reader, "name");
+			String contractversion = getAttributeValueOrEmpty(reader, "version");
+			SakerPath winmdpath = uapsdk.getPath(
+					SakerWindowsUtils.getWindowsUapApiContractWinmdSDKPathIdentifier(contractname, contractversion));
+			if (winmdpath == null) {
+				throw new SDKPathNotFoundException("ApiContract winmd SDK path not found for: " + contractname + " / "
+						+ contractversion + " in SDK: " + uapsdk);
+			}
+			result.add(winmdpath);
+		}
 	}
 
 	@Override
@@ -135,4 +188,28 @@ public final class WindowsUapApiContractsWinmdPathCollectionReference implements
 	public String toString() {
 		return getClass().getSimpleName() + "[]";
 	}
-}
\ No newline at end of file
+
+	private static String getAttributeValueOrEmpty(XMLStreamReader reader, String localname) {
+		String result = reader.getAttributeValue(null, localname);
+		return result == null ? "" : result;
+	}
+
+	private static final class ResolvedContracts {
+		protected final SDKReference sdk;
+		protected final long size;
+		protected final Object lastModified;
+		protected final List<SakerPath> winmdPaths;
+
+		public ResolvedContracts(SDKReference sdk, BasicFileAttributes attrs, List<SakerPath> winmdPaths) {
+			this.sdk = sdk;
+			this.size = attrs.size();
+			this.lastModified = attrs.lastModifiedTime();
+			this.winmdPaths = winmdPaths;
+		}
+
+		public boolean isValid(SDKReference sdk, BasicFileAttributes attrs) {
+			return this.sdk.equals(sdk) && size == attrs.size()
+					&& Objects.equals(lastModified, attrs.lastModifiedTime());
+		}
+	}
+}
@@ -4,7 +4,11 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import saker.build.file.path.SakerPath;
 import saker.build.file.provider.SakerPathFiles;
@@ -23,6 +27,18 @@ public class WindowsUapSDKReference implements SDKReference, Externalizable {
 	 */
 	private transient SakerPath baseDirectory;
 
+	/**
+	 * Lowercase path identifiers mapped to their paths.
+	 * <p>
+	 * Lazily created after construction or deserialization.
+	 */
+	private transient volatile Map<String, SakerPath> pathTable;
+	/**
+	 * Cache for the {@linkplain #SDK_PATH_APICONTRACT_PREFIX API contract} winmd paths, keyed by the path
+	 * identifiers.
+	 */
+	private final transient ConcurrentHashMap<String, SakerPath> apiContractPaths = new ConcurrentHashMap<>();
+
 	/**
 	 * For {@link Externalizable}.
 	 */
@@ -48,45 +64,39 @@ public class WindowsUapSDKReference implements SDKReference, Externalizable {
 		if (identifier == null) {
 			return null;
 		}
+		Map<String, SakerPath> paths = getPathTable();
+		SakerPath result = paths.get(identifier);
+		if (result != null) {
+			return result;
+		}
+		//toLowerCase returns the same string if there's nothing to convert, no allocation in that case
 		String loweridentifier = identifier.toLowerCase(Locale.ENGLISH);
-		switch (loweridentifier) {
-			case SakerWindowsUtils.SDK_WINDOWSUAP_PATH_HOME: {
-				return baseDirectory;
-			}
-			case SakerWindowsUtils.SDK_WINDOWSUAP_PATH_PLATFORM_XML: {
-				return baseDirectory.resolve("Platforms", "UAP", version, "Platform.xml");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSUAP_PATH_PREVIOUS_PLATFORMS_XML: {
-				return baseDirectory.resolve("Platforms", "UAP", version, "PreviousPlatforms.xml");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSUAP_PATH_FEATURES_XML: {
-				return baseDirectory.resolve("Platforms", "UAP", version, "Features.xml");
-			}
-
-			case SakerWindowsUtils.SDK_WINDOWSUAP_PATH_MAKEAPPX_X64: {
-				return baseDirectory.resolve("bin", version, "x64", "makeappx.exe");
-			}
-			case SakerWindowsUtils.SDK_WINDOWSUAP_PATH_MAKEAPPX_X86: {
-				return baseDirectory.resolve("bin", version, "x86", "makeappx.exe");
-			}
-
-			default: {
-				if (loweridentifier.startsWith(SDK_PATH_APICONTRACT_PREFIX)) {
-					int slashidx = identifier.lastIndexOf('/');
-					if (slashidx < 0) {
-						throw new SDKPathNotFoundException("Invalid apicontract SDK identifier: " + identifier);
-					}
-					String contractversion = identifier.substring(slashidx + 1);
-					String contract = identifier.substring(SDK_PATH_APICONTRACT_PREFIX.length(), slashidx);
-					return baseDirectory.resolve("References", this.version, contract, contractversion,
-							contract + ".winmd");
-				}
-				break;
-			}
+		result = paths.get(loweridentifier);
+		if (result != null) {
+			return result;
+		}
+		if (loweridentifier.startsWith(SDK_PATH_APICONTRACT_PREFIX)) {
+			return getApiContractPath(identifier);
 		}
 		return null;
 	}
 
+	private SakerPath getApiContractPath(String identifier) throws SDKPathNotFoundException {
+		SakerPath result = apiContractPaths.get(identifier);
+		if (result != null) {
+			return result;
+		}
+		int slashidx = identifier.lastIndexOf('/');
+		if (slashidx < 0) {
+			throw new SDKPathNotFoundException("Invalid apicontract SDK identifier: " + identifier);
+		}
+		String contractversion = identifier.substring(slashidx + 1);
+		String contract = identifier.substring(SDK_PATH_APICONTRACT_PREFIX.length(), slashidx);
+		result = baseDirectory.resolve("References", this.version, contract, contractversion, contract + ".winmd");
+		apiContractPaths.putIfAbsent(identifier, result);
+		return result;
+	}
+
 	@Override
 	public String getProperty(String identifier) throws Exception {
 		if (identifier == null) {
@@ -101,6 +111,32 @@ public class WindowsUapSDKReference implements SDKReference, Externalizable {
 		return null;
 	}
 
+	private Map<String, SakerPath> getPathTable() {
+		Map<String, SakerPath> result = pathTable;
+		if (result == null) {
+			//no need to synchronize, the table can be computed multiple times
+			result = createPathTable();
+			pathTable = result;
+		}
+		return result;
+	}
+
+	private Map<String, SakerPath> createPathTable() {
+		SakerPath platformdir = baseDirectory.resolve("Platforms", "UAP", version);
+		Map<String, SakerPath> result = new HashMap<>();
+		result.put(SakerWindowsUtils.SDK_WINDOWSUAP_PATH_HOME, baseDirectory);
+		result.put(SakerWindowsUtils.SDK_WINDOWSUAP_PATH_PLATFORM_XML, platformdir.resolve("Platform.xml"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSUAP_PATH_PREVIOUS_PLATFORMS_XML,
+				platformdir.resolve("PreviousPlatforms.xml"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSUAP_PATH_FEATURES_XML, platformdir.resolve("Features.xml"));
+
+		result.put(SakerWindowsUtils.SDK_WINDOWSUAP_PATH_MAKEAPPX_X64,
+				baseDirectory.resolve("bin", version, "x64", "makeappx.exe"));
+		result.put(SakerWindowsUtils.SDK_WINDOWSUAP_PATH_MAKEAPPX_X86,
+				baseDirectory.resolve("bin", version, "x86", "makeappx.exe"));
+		return Collections.unmodifiableMap(result);
+	}
+
 	@Override
 	public void writeExternal(ObjectOutput out) throws IOException {
 		out.writeObject(baseDirectory);
@@ -4,6 +4,7 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -27,7 +28,6 @@ import saker.build.task.TaskExecutionUtilities;
 import saker.build.task.TaskExecutionUtilities.MirroredFileContents;
 import saker.build.task.TaskFactory;
 import saker.build.task.utils.dependencies.EqualityTaskOutputChangeDetector;
-import saker.build.thirdparty.saker.util.ArrayUtils;
 import saker.build.thirdparty.saker.util.ImmutableUtils;
 import saker.build.thirdparty.saker.util.ObjectUtils;
 import saker.build.thirdparty.saker.util.io.SerialUtils;
@@ -36,16 +36,15 @@ import saker.process.api.CollectingProcessIOConsumer;
 import saker.process.api.SakerProcess;
 import saker.process.api.SakerProcessBuilder;
 import saker.sdk.support.api.SDKDescription;
-import saker.sdk.support.api.SDKReference;
 import saker.sdk.support.api.SDKSupportUtils;
-import saker.sdk.support.api.exc.SDKPathNotFoundException;
 import saker.std.api.file.location.ExecutionFileLocation;
 import saker.std.api.file.location.FileLocation;
 import saker.std.api.file.location.FileLocationVisitor;
 import saker.std.api.file.location.LocalFileLocation;
 import saker.std.api.util.SakerStandardUtils;
-import saker.windows.api.SakerWindowsUtils;
 import saker.windows.api.signtool.SigntoolSignWorkerTaskOutput;
+import saker.windows.impl.metrics.WorkerTaskMetrics;
+import saker.windows.impl.sdk.SDKToolExecutablePathExecutionProperty;
 import saker.windows.main.signtool.SigntoolSignTaskFactory;
 
 public class SigntoolSignWorkerTaskFactory
@@ -96,6 +95,16 @@ public class SigntoolSignWorkerTaskFactory
 
 	@Override
 	public SigntoolSignWorkerTaskOutput run(TaskContext taskcontext) throws Exception {
+		WorkerTaskMetrics metrics = new WorkerTaskMetrics(this);
+		try {
+			return runWithMetrics(taskcontext, metrics);
+		} finally {
+			metrics.finish();
+		}
+	}
+
+	private SigntoolSignWorkerTaskOutput runWithMetrics(TaskContext taskcontext, WorkerTaskMetrics metrics)
+			throws Exception {
 		if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
 			BuildTrace.classifyTask(BuildTrace.CLASSIFICATION_WORKER);
 		}
@@ -113,6 +122,7 @@ public class SigntoolSignWorkerTaskFactory
 		Path inputpath = taskcontext.getExecutionContext()
 				.toMirrorPath(outputdir.getSakerPath().resolve(outputfilename));
 		ProviderHolderPathKey inputpathkey = localfp.getPathKey(inputpath);
+		metrics.startPhase("Copy input");
 		input.accept(new FileLocationVisitor() {
 			@Override
 			public void visit(LocalFileLocation loc) {
@@ -146,10 +156,53 @@ public class SigntoolSignWorkerTaskFactory
 				}
 			}
 		});
+		long inputsize = Files.size(inputpath);
+		metrics.addFiles(1);
+		metrics.addBytesWritten(inputsize);
+
+		metrics.startPhase("Run signtool");
 		Path certpath = getPathOfFile(taskcontext, certificate);
 
-		SakerPath signtoolexe = getSigntoolExecutablePath(taskcontext);
+		SakerPath signtoolexe = getSigntoolExecutablePath(taskcontext, sdks);
+
+		runSigntool(taskcontext, signtoolexe, inputpath, certpath, algorithm, password, relativeoutputpath);
+		metrics.addBytesRead(inputsize);
 
+		metrics.startPhase("Synchronize output");
+		metrics.addFiles(1);
+
+		taskutils.addSynchronizeInvalidatedProviderPathFileToDirectory(outputdir, inputpathkey, outputfilename);
+		SakerFile outfile = outputdir.get(outputfilename);
+		SakerPath outputsakerpath = outfile.getSakerPath();
+		taskcontext.reportOutputFileDependency(null, outputsakerpath, outfile.getContentDescriptor());
+
+		SigntoolSignWorkerTaskOutputImpl result = new SigntoolSignWorkerTaskOutputImpl(outputsakerpath);
+		taskcontext.reportSelfTaskOutputChangeDetector(new EqualityTaskOutputChangeDetector(result));
+		return result;
+	}
+
+	/**
+	 * Runs signtool to sign the given file in place.
+	 *
+	 * @param taskcontext
+	 *            The task context.
+	 * @param signtoolexe
+	 *            The path to the signtool executable.
+	 * @param inputpath
+	 *            The file to sign.
+	 * @param certpath
+	 *            The certificate file or <code>null</code>.
+	 * @param algorithm
+	 *            The file digest algorithm or <code>null</code>.
+	 * @param password
+	 *            The certificate password or <code>null</code>.
+	 * @param displaypath
+	 *            The path to display in the log messages.
+	 * @throws Exception
+	 *             If the signing fails.
+	 */
+	public static void runSigntool(TaskContext taskcontext, SakerPath signtoolexe, Path inputpath, Path certpath,
+			String algorithm, String password, SakerPath displaypath) throws Exception {
 		List<String> cmd = new ArrayList<>();
 		cmd.add(signtoolexe.toString());
 		cmd.add("sign");
@@ -183,12 +236,12 @@ public class SigntoolSignWorkerTaskFactory
 					//as per documentation, this means warnings.
 					//don't throw an exception
 					printout = true;
-					SakerLog.warning().verbose().println("Signing finished with warnings: " + relativeoutputpath);
+					SakerLog.warning().verbose().println("Signing finished with warnings: " + displaypath);
 				} else {
 					throw new IOException("Failed to run signtool. Exit code: " + ec);
 				}
 			} else {
-				SakerLog.success().verbose().println("Signing completed: " + relativeoutputpath);
+				SakerLog.success().verbose().println("Signing completed: " + displaypath);
 			}
 		} catch (Throwable e) {
 			printout = true;
@@ -198,18 +251,22 @@ public class SigntoolSignWorkerTaskFactory
 				taskcontext.getStandardOut().write(outconsumer.getByteArrayRegion());
 			}
 		}
-
-		taskutils.addSynchronizeInvalidatedProviderPathFileToDirectory(outputdir, inputpathkey, outputfilename);
-		SakerFile outfile = outputdir.get(outputfilename);
-		SakerPath outputsakerpath = outfile.getSakerPath();
-		taskcontext.reportOutputFileDependency(null, outputsakerpath, outfile.getContentDescriptor());
-
-		SigntoolSignWorkerTaskOutputImpl result = new SigntoolSignWorkerTaskOutputImpl(outputsakerpath);
-		taskcontext.reportSelfTaskOutputChangeDetector(new EqualityTaskOutputChangeDetector(result));
-		return result;
 	}
 
-	private static Path getPathOfFile(TaskContext taskcontext, FileLocation fl) throws Exception {
+	/**
+	 * Gets the local file system path of the argument file location, and reports the dependencies on it.
+	 * <p>
+	 * Execution files are mirrored.
+	 *
+	 * @param taskcontext
+	 *            The task context.
+	 * @param fl
+	 *            The file location or <code>null</code>.
+	 * @return The local path or <code>null</code> if the argument is <code>null</code>.
+	 * @throws Exception
+	 *             If the file is not found or failed to mirror.
+	 */
+	public static Path getPathOfFile(TaskContext taskcontext, FileLocation fl) throws Exception {
 		if (fl == null) {
 			return null;
 		}
@@ -246,60 +303,10 @@ public class SigntoolSignWorkerTaskFactory
 		return this;
 	}
 
-	private SakerPath getSigntoolExecutablePath(TaskContext taskcontext) throws Exception {
-		Throwable[] causes = {};
-		boolean haswk = sdks.containsKey(SakerWindowsUtils.SDK_NAME_WINDOWSKITS);
-		if (haswk) {
-			try {
-				SDKReference sdk = SDKSupportUtils.requireSDK(SDKSupportUtils.resolveSDKReferences(taskcontext, sdks),
-						SakerWindowsUtils.SDK_NAME_WINDOWSKITS);
-				return tryGetExecutablePathFromSDK(sdk, SakerWindowsUtils.SDK_WINDOWSKITS_PATH_SIGNTOOL_X86);
-			} catch (Exception e) {
-				causes = ArrayUtils.appended(causes, e);
-			}
-		}
-		boolean hasappcertkit = sdks.containsKey(SakerWindowsUtils.SDK_NAME_WINDOWSAPPCERTKIT);
-		if (hasappcertkit) {
-			try {
-				SDKReference sdk = SDKSupportUtils.requireSDK(SDKSupportUtils.resolveSDKReferences(taskcontext, sdks),
-						SakerWindowsUtils.SDK_NAME_WINDOWSAPPCERTKIT);
-				return tryGetExecutablePathFromSDK(sdk, SakerWindowsUtils.SDK_WINDOWSAPPCERTKIT_PATH_SIGNTOOL);
-			} catch (Exception e) {
-				causes = ArrayUtils.appended(causes, e);
-			}
-		}
-		if (!haswk) {
-			try {
-				SDKReference sdk = SDKSupportUtils.resolveSDKReference(taskcontext,
-						SakerWindowsUtils.getDefaultWindowsKitsSDK());
-				return tryGetExecutablePathFromSDK(sdk, SakerWindowsUtils.SDK_WINDOWSKITS_PATH_SIGNTOOL_X86);
-			} catch (Exception e) {
-				causes = ArrayUtils.appended(causes, e);
-			}
-		}
-		if (!hasappcertkit) {
-			try {
-				SDKReference sdk = SDKSupportUtils.resolveSDKReference(taskcontext,
-						SakerWindowsUtils.getDefaultWindowsAppCertKitSDK());
-				return tryGetExecutablePathFromSDK(sdk, SakerWindowsUtils.SDK_WINDOWSAPPCERTKIT_PATH_SIGNTOOL);
-			} catch (Exception e) {
-				causes = ArrayUtils.appended(causes, e);
-			}
-		}
-		SDKPathNotFoundException exc = new SDKPathNotFoundException("signtool.exe not found in SDKs.");
-		for (Throwable c : causes) {
-			exc.addSuppressed(c);
-		}
-		throw exc;
-	}
-
-	private static SakerPath tryGetExecutablePathFromSDK(SDKReference sdk, String pathid)
-			throws Exception, IOException {
-		SakerPath makeappxpath = sdk.getPath(pathid);
-		if (makeappxpath != null && LocalFileProvider.getInstance().getFileAttributes(makeappxpath).isRegularFile()) {
-			return makeappxpath;
-		}
-		throw new SDKPathNotFoundException("Executable not found in SDK: " + sdk + " with path identifier: " + pathid);
+	public static SakerPath getSigntoolExecutablePath(TaskContext taskcontext,
+			NavigableMap<String, SDKDescription> sdks) throws Exception {
+		return SDKToolExecutablePathExecutionProperty.getExecutablePath(taskcontext, sdks,
+				SDKToolExecutablePathExecutionProperty.Tool.SIGNTOOL);
 	}
 
 	@Override
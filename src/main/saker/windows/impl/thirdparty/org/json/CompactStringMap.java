@@ -0,0 +1,267 @@
+package saker.windows.impl.thirdparty.org.json;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Map implementation for the properties of a {@link JSONObject}.
+ * <p>
+ * Most parsed objects only have a few properties, so the entries are stored in
+ * arrays and looked up linearly. If the number of entries grows past
+ * {@link #ARRAY_THRESHOLD}, the entries are moved to a {@link HashMap}.
+ * <p>
+ * The keys must not be <code>null</code>. The iteration order is unspecified.
+ */
+final class CompactStringMap extends AbstractMap<String, Object> {
+    /**
+     * The maximum number of entries that are stored in the arrays.
+     */
+    static final int ARRAY_THRESHOLD = 8;
+
+    private String[] keys;
+    private Object[] values;
+    private int size;
+    /**
+     * The map that holds the entries after the arrays were outgrown, or
+     * <code>null</code> if the arrays are in use.
+     */
+    private HashMap<String, Object> hashMap;
+
+    CompactStringMap() {
+    }
+
+    CompactStringMap(int initialCapacity) {
+        if (initialCapacity > ARRAY_THRESHOLD) {
+            this.hashMap = new HashMap<String, Object>(initialCapacity);
+        }
+    }
+
+    @Override
+    public int size() {
+        if (this.hashMap != null) {
+            return this.hashMap.size();
+        }
+        return this.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (this.hashMap != null) {
+            return this.hashMap.containsKey(key);
+        }
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (this.hashMap != null) {
+            return this.hashMap.get(key);
+        }
+        int idx = indexOf(key);
+        return idx < 0 ? null : this.values[idx];
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        if (key == null) {
+            throw new NullPointerException("Null key.");
+        }
+        if (this.hashMap != null) {
+            return this.hashMap.put(key, value);
+        }
+        int idx = indexOf(key);
+        if (idx >= 0) {
+            Object prev = this.values[idx];
+            this.values[idx] = value;
+            return prev;
+        }
+        if (this.size == ARRAY_THRESHOLD) {
+            HashMap<String, Object> hm = new HashMap<String, Object>(ARRAY_THRESHOLD * 4);
+            for (int i = 0; i < this.size; i++) {
+                hm.put(this.keys[i], this.values[i]);
+            }
+            hm.put(key, value);
+            this.hashMap = hm;
+            this.keys = null;
+            this.values = null;
+            this.size = 0;
+            return null;
+        }
+        if (this.keys == null) {
+            this.keys = new String[ARRAY_THRESHOLD];
+            this.values = new Object[ARRAY_THRESHOLD];
+        }
+        this.keys[this.size] = key;
+        this.values[this.size] = value;
+        ++this.size;
+        return null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (this.hashMap != null) {
+            return this.hashMap.remove(key);
+        }
+        int idx = indexOf(key);
+        if (idx < 0) {
+            return null;
+        }
+        Object prev = this.values[idx];
+        removeIndex(idx);
+        return prev;
+    }
+
+    @Override
+    public void clear() {
+        if (this.hashMap != null) {
+            this.hashMap.clear();
+            return;
+        }
+        for (int i = 0; i < this.size; i++) {
+            this.keys[i] = null;
+            this.values[i] = null;
+        }
+        this.size = 0;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (this.hashMap != null) {
+            return this.hashMap.entrySet();
+        }
+        return new ArrayEntrySet();
+    }
+
+    private int indexOf(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        // the keys are often the same instances as the lookup keys, check the identity first
+        for (int i = 0; i < this.size; i++) {
+            if (this.keys[i] == key) {
+                return i;
+            }
+        }
+        for (int i = 0; i < this.size; i++) {
+            if (this.keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeIndex(int idx) {
+        int moved = this.size - idx - 1;
+        if (moved > 0) {
+            System.arraycopy(this.keys, idx + 1, this.keys, idx, moved);
+            System.arraycopy(this.values, idx + 1, this.values, idx, moved);
+        }
+        --this.size;
+        this.keys[this.size] = null;
+        this.values[this.size] = null;
+    }
+
+    private final class ArrayEntrySet extends AbstractSet<Entry<String, Object>> {
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+            return new ArrayEntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return CompactStringMap.this.size();
+        }
+    }
+
+    private final class ArrayEntryIterator implements Iterator<Entry<String, Object>> {
+        private int index = 0;
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            return this.index < CompactStringMap.this.size;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (CompactStringMap.this.hashMap != null) {
+                throw new ConcurrentModificationException();
+            }
+            if (this.index >= CompactStringMap.this.size) {
+                throw new NoSuchElementException();
+            }
+            this.last = this.index++;
+            return new ArrayEntry(this.last);
+        }
+
+        @Override
+        public void remove() {
+            if (this.last < 0) {
+                throw new IllegalStateException();
+            }
+            if (CompactStringMap.this.hashMap != null) {
+                throw new ConcurrentModificationException();
+            }
+            removeIndex(this.last);
+            this.index = this.last;
+            this.last = -1;
+        }
+    }
+
+    private final class ArrayEntry implements Entry<String, Object> {
+        private final int index;
+
+        ArrayEntry(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getKey() {
+            return CompactStringMap.this.keys[this.index];
+        }
+
+        @Override
+        public Object getValue() {
+            return CompactStringMap.this.values[this.index];
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            Object prev = CompactStringMap.this.values[this.index];
+            CompactStringMap.this.values[this.index] = value;
+            return prev;
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) obj;
+            Object value = getValue();
+            return getKey().equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
@@ -168,13 +168,14 @@ public class JSONObject {
      * Construct an empty JSONObject.
      */
     public JSONObject() {
-        // HashMap is used on purpose to ensure that elements are unordered by 
+        // An unordered map is used on purpose to ensure that elements are unordered by 
         // the specification.
         // JSON tends to be a portable transfer format to allows the container 
         // implementations to rearrange their items for a faster element 
         // retrieval based on associative access.
         // Therefore, an implementation mustn't rely on the order of the item.
-        this.map = new HashMap<String, Object>();
+        // The map is array based for small objects, and switches to a HashMap as it grows.
+        this.map = new CompactStringMap();
     }
 
     /**
@@ -221,6 +222,11 @@ public class JSONObject {
                 throw x.syntaxError("A JSONObject text must end with '}'");
             case '}':
                 return;
+            case '"':
+            case '\'':
+                // the repeated keys of the parsed objects share the same instance
+                key = x.nextKey(c);
+                break;
             default:
                 x.back();
                 key = x.nextValue().toString();
@@ -279,9 +285,9 @@ public class JSONObject {
      */
     public JSONObject(Map<?, ?> m) {
         if (m == null) {
-            this.map = new HashMap<String, Object>();
+            this.map = new CompactStringMap();
         } else {
-            this.map = new HashMap<String, Object>(m.size());
+            this.map = new CompactStringMap(m.size());
         	for (final Entry<?, ?> e : m.entrySet()) {
         	    if(e.getKey() == null) {
         	        throw new NullPointerException("Null key.");
@@ -450,7 +456,7 @@ public class JSONObject {
      * @param initialCapacity initial capacity of the internal map.
      */
     protected JSONObject(int initialCapacity){
-        this.map = new HashMap<String, Object>(initialCapacity);
+        this.map = new CompactStringMap(initialCapacity);
     }
 
     /**
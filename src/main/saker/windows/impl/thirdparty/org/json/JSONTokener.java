@@ -4,7 +4,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.StringReader;
 
 /*
 Copyright (c) 2002 JSON.org
@@ -34,26 +33,46 @@ SOFTWARE.
  * A JSONTokener takes a source string and extracts characters and tokens from
  * it. It is used by the JSONObject and JSONArray constructors to parse
  * JSON source strings.
+ * <p>
+ * The characters are read from a buffer. When constructed from a string or a
+ * character array, the buffer is the whole input, else it is filled from the
+ * reader in bulk. The line and column positions are only computed when
+ * a syntax error is reported.
  * @author JSON.org
  * @version 2014-05-03
  */
 public class JSONTokener {
-    /** current read character position on the current line. */
-    private long character;
+    /** the size of the buffer when reading from a Reader. */
+    private static final int BUFFER_SIZE = 8 * 1024;
+    /** the size of the object key cache, must be a power of two. */
+    private static final int KEY_CACHE_SIZE = 256;
+    /** the maximum length of the cached object keys. */
+    private static final int KEY_CACHE_MAX_LENGTH = 64;
+
     /** flag to indicate if the end of the input has been found. */
     private boolean eof;
-    /** current read index of the input. */
-    private long index;
-    /** current line of the input. */
-    private long line;
-    /** previous character read from the input. */
-    private char previous;
-    /** Reader for the input. */
+    /** Reader for the input, or null if the whole input is in the buffer. */
     private final Reader reader;
     /** flag to indicate that a previous character was requested. */
     private boolean usePrevious;
-    /** the number of characters read in the previous line. */
-    private long characterPreviousLine;
+
+    /** the buffered characters of the input. */
+    private final char[] buffer;
+    /** the index of the next character to read in the buffer. */
+    private int pos;
+    /** the end index of the valid characters in the buffer. */
+    private int limit;
+    /** the input index of the first character in the buffer. */
+    private long bufferIndex;
+
+    /**
+     * The line position at the start of the buffer. Updated when the buffer
+     * is refilled.
+     */
+    private final Position bufferPosition;
+
+    /** cache of the parsed object keys, lazily allocated. */
+    private String[] keyCache;
 
 
     /**
@@ -62,14 +81,7 @@ public class JSONTokener {
      * @param reader     A reader.
      */
     public JSONTokener(Reader reader) {
-		this.reader = reader;
-        this.eof = false;
-        this.usePrevious = false;
-        this.previous = 0;
-        this.index = 0;
-        this.character = 1;
-        this.characterPreviousLine = 0;
-        this.line = 1;
+        this(reader, new char[BUFFER_SIZE], 0);
     }
 
 
@@ -88,7 +100,30 @@ public class JSONTokener {
      * @param s     A source string.
      */
     public JSONTokener(String s) {
-        this(new StringReader(s));
+        this(s.toCharArray());
+    }
+
+
+    /**
+     * Construct a JSONTokener from a character array. The array is used
+     * directly without copying, and shouldn't be modified while parsing.
+     *
+     * @param chars     The source characters.
+     */
+    public JSONTokener(char[] chars) {
+        this(null, chars, chars.length);
+    }
+
+
+    private JSONTokener(Reader reader, char[] buffer, int limit) {
+        this.reader = reader;
+        this.buffer = buffer;
+        this.pos = 0;
+        this.limit = limit;
+        this.bufferIndex = 0;
+        this.eof = false;
+        this.usePrevious = false;
+        this.bufferPosition = new Position();
     }
 
 
@@ -100,25 +135,49 @@ public class JSONTokener {
      *  or if already at the start of the string
      */
     public void back() throws JSONException {
-        if (this.usePrevious || this.index <= 0) {
+        if (this.usePrevious || this.bufferIndex + this.pos <= 0) {
             throw new JSONException("Stepping back two steps is not supported");
         }
-        this.decrementIndexes();
+        this.pos--;
         this.usePrevious = true;
         this.eof = false;
     }
 
     /**
-     * Decrements the indexes for the {@link #back()} method based on the previous character read.
+     * Fills the buffer from the reader.
+     * <p>
+     * The last character of the buffer is kept as the first one, so the
+     * {@link #back()} method can step back to it.
+     * @return true if more characters are available.
+     * @throws JSONException Thrown if there is an error reading the source.
      */
-    private void decrementIndexes() {
-        this.index--;
-        if(this.previous=='\r' || this.previous == '\n') {
-            this.line--;
-            this.character=this.characterPreviousLine ;
-        } else if(this.character > 0){
-            this.character--;
+    private boolean fill() throws JSONException {
+        if (this.reader == null) {
+            return false;
+        }
+        int keep = 0;
+        if (this.limit > 0) {
+            // the position of the next buffer is calculated before discarding the characters
+            this.bufferPosition.advance(this.buffer, 0, this.limit - 1);
+            this.bufferIndex += this.limit - 1;
+            this.buffer[0] = this.buffer[this.limit - 1];
+            keep = 1;
+        }
+        this.pos = keep;
+        this.limit = keep;
+        int read;
+        try {
+            do {
+                read = this.reader.read(this.buffer, keep, this.buffer.length - keep);
+            } while (read == 0);
+        } catch (IOException exception) {
+            throw new JSONException(exception);
         }
+        if (read < 0) {
+            return false;
+        }
+        this.limit = keep + read;
+        return true;
     }
 
     /**
@@ -156,48 +215,18 @@ public class JSONTokener {
      * @throws JSONException Thrown if there is an error reading the source string.
      */
     public char next() throws JSONException {
-        int c;
-        if (this.usePrevious) {
-            this.usePrevious = false;
-            c = this.previous;
-        } else {
-            try {
-                c = this.reader.read();
-            } catch (IOException exception) {
-                throw new JSONException(exception);
-            }
-        }
-        if (c <= 0) { // End of stream
+        this.usePrevious = false;
+        if (this.pos >= this.limit && !this.fill()) {
             this.eof = true;
             return 0;
         }
-        this.incrementIndexes(c);
-        this.previous = (char) c;
-        return this.previous;
-    }
-
-    /**
-     * Increments the internal indexes according to the previous character
-     * read and the character passed as the current character.
-     * @param c the current character read.
-     */
-    private void incrementIndexes(int c) {
-        if(c > 0) {
-            this.index++;
-            if(c=='\r') {
-                this.line++;
-                this.characterPreviousLine = this.character;
-                this.character=0;
-            }else if (c=='\n') {
-                if(this.previous != '\r') {
-                    this.line++;
-                    this.characterPreviousLine = this.character;
-                }
-                this.character=0;
-            } else {
-                this.character++;
-            }
+        char c = this.buffer[this.pos];
+        if (c == 0) { // End of stream
+            this.eof = true;
+            return 0;
         }
+        this.pos++;
+        return c;
     }
 
     /**
@@ -254,10 +283,23 @@ public class JSONTokener {
      * @return  A character, or 0 if there are no more characters.
      */
     public char nextClean() throws JSONException {
+        this.usePrevious = false;
         for (;;) {
-            char c = this.next();
-            if (c == 0 || c > ' ') {
-                return c;
+            while (this.pos < this.limit) {
+                char c = this.buffer[this.pos];
+                if (c > ' ') {
+                    this.pos++;
+                    return c;
+                }
+                if (c == 0) {
+                    this.eof = true;
+                    return 0;
+                }
+                this.pos++;
+            }
+            if (!this.fill()) {
+                this.eof = true;
+                return 0;
             }
         }
     }
@@ -276,8 +318,32 @@ public class JSONTokener {
      */
     public String nextString(char quote) throws JSONException {
         char c;
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = null;
         for (;;) {
+            // copy the unescaped runs of characters in bulk
+            int start = this.pos;
+            int end = start;
+            while (end < this.limit) {
+                c = this.buffer[end];
+                if (c == quote || c == '\\' || c == '\n' || c == '\r' || c == 0) {
+                    break;
+                }
+                end++;
+            }
+            if (sb == null && end < this.limit && this.buffer[end] == quote) {
+                // no escapes, the string can be created directly from the buffer
+                this.pos = end + 1;
+                this.usePrevious = false;
+                return new String(this.buffer, start, end - start);
+            }
+            if (sb == null) {
+                sb = new StringBuilder(Math.max(16, (end - start) * 2));
+            }
+            if (end > start) {
+                this.pos = end;
+                this.usePrevious = false;
+                sb.append(this.buffer, start, end - start);
+            }
             c = this.next();
             switch (c) {
             case 0:
@@ -329,6 +395,67 @@ public class JSONTokener {
     }
 
 
+    /**
+     * Return the characters of an object key up to the next close quote
+     * character.
+     * <p>
+     * Same as {@link #nextString(char)}, but the returned strings are cached,
+     * so the repeated keys of the parsed objects share the same instances.
+     * @param quote The quoting character.
+     * @return      A String.
+     * @throws JSONException Unterminated string.
+     */
+    String nextKey(char quote) throws JSONException {
+        int start = this.pos;
+        int end = start;
+        while (end < this.limit) {
+            char c = this.buffer[end];
+            if (c == quote) {
+                int len = end - start;
+                if (len > KEY_CACHE_MAX_LENGTH) {
+                    break;
+                }
+                this.pos = end + 1;
+                this.usePrevious = false;
+                return this.cachedKey(start, len);
+            }
+            if (c == '\\' || c == '\n' || c == '\r' || c == 0) {
+                break;
+            }
+            end++;
+        }
+        // escapes or spans multiple buffers, not cached
+        return this.nextString(quote);
+    }
+
+    private String cachedKey(int start, int len) {
+        char[] buf = this.buffer;
+        int h = 0;
+        for (int i = 0; i < len; i++) {
+            h = 31 * h + buf[start + i];
+        }
+        String[] cache = this.keyCache;
+        if (cache == null) {
+            cache = new String[KEY_CACHE_SIZE];
+            this.keyCache = cache;
+        }
+        int idx = (h ^ (h >>> 16)) & (KEY_CACHE_SIZE - 1);
+        String cached = cache[idx];
+        if (cached != null && cached.length() == len) {
+            int i = 0;
+            while (i < len && cached.charAt(i) == buf[start + i]) {
+                i++;
+            }
+            if (i == len) {
+                return cached;
+            }
+        }
+        String result = new String(buf, start, len);
+        cache[idx] = result;
+        return result;
+    }
+
+
     /**
      * Get the text up but not including the specified character or the
      * end of line, whichever comes first.
@@ -451,7 +578,60 @@ public class JSONTokener {
      */
     @Override
     public String toString() {
-        return " at " + this.index + " [character " + this.character + " line " +
-                this.line + "]";
+        // compute the position lazily from the state at the start of the buffer
+        Position position = new Position(this.bufferPosition);
+        position.advance(this.buffer, 0, this.pos);
+        return " at " + (this.bufferIndex + this.pos) + " [character " + position.character + " line " +
+                position.line + "]";
+    }
+
+    /**
+     * The line and column position in the input.
+     */
+    private static final class Position {
+        /** current read character position on the current line. */
+        long character = 1;
+        /** current line of the input. */
+        long line = 1;
+        /** the number of characters read in the previous line. */
+        long characterPreviousLine = 0;
+        /** previous character read from the input. */
+        char previous = 0;
+
+        Position() {
+        }
+
+        Position(Position copy) {
+            this.character = copy.character;
+            this.line = copy.line;
+            this.characterPreviousLine = copy.characterPreviousLine;
+            this.previous = copy.previous;
+        }
+
+        /**
+         * Advances the position through the given characters.
+         * @param chars the characters.
+         * @param start the start index (inclusive).
+         * @param end the end index (exclusive).
+         */
+        void advance(char[] chars, int start, int end) {
+            for (int i = start; i < end; i++) {
+                char c = chars[i];
+                if (c == '\r') {
+                    this.line++;
+                    this.characterPreviousLine = this.character;
+                    this.character = 0;
+                } else if (c == '\n') {
+                    if (this.previous != '\r') {
+                        this.line++;
+                        this.characterPreviousLine = this.character;
+                    }
+                    this.character = 0;
+                } else {
+                    this.character++;
+                }
+                this.previous = c;
+            }
+        }
     }
 }
@@ -64,6 +64,31 @@ public class TaskDocs {
 	public static class DocPackageAppxWorkerTaskOutput {
 	}
 
+	@NestTypeInformation(qualifiedName = "BuildAppxWorkerTaskOutput")
+	@NestInformation("Output of the fused .appx build task.")
+	@NestFieldInformation(value = "Path",
+			type = @NestTypeUsage(SakerPath.class),
+			info = @NestInformation("The absolute output path of the .appx archive."))
+	public static class DocBuildAppxWorkerTaskOutput {
+	}
+
+	@NestTypeInformation(qualifiedName = "BuildBundleAppxWorkerTaskOutput")
+	@NestInformation("Output of the multi-architecture .appxbundle build task.")
+	@NestFieldInformation(value = "Path",
+			type = @NestTypeUsage(SakerPath.class),
+			info = @NestInformation("The absolute output path of the .appxbundle archive."))
+	@NestFieldInformation(value = "UnsignedPath",
+			type = @NestTypeUsage(SakerPath.class),
+			info = @NestInformation("The absolute output path of the .appxbundle archive before signing.\n"
+					+ "Same as Path if the bundle is not signed."))
+	@NestFieldInformation(value = "Packages",
+			type = @NestTypeUsage(value = Map.class,
+					elementTypes = { DocAppxProcessorArchitecture.class, SakerPath.class }),
+			info = @NestInformation("The absolute output paths of the .appx packages in the bundle mapped to "
+					+ "their processor architectures."))
+	public static class DocBuildBundleAppxWorkerTaskOutput {
+	}
+
 	@NestTypeInformation(qualifiedName = "BundleAppxWorkerTaskOutput")
 	@NestInformation("Output of the .appxbundle packager task.")
 	@NestFieldInformation(value = "Path",
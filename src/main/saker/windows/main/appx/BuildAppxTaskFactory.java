@@ -0,0 +1,215 @@
+package saker.windows.main.appx;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import saker.build.file.path.SakerPath;
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.runtime.execution.SakerLog;
+import saker.build.task.ParameterizableTask;
+import saker.build.task.TaskContext;
+import saker.build.task.exception.MissingRequiredParameterException;
+import saker.build.task.utils.SimpleStructuredObjectTaskResult;
+import saker.build.task.utils.annot.SakerInput;
+import saker.build.task.utils.dependencies.EqualityTaskOutputChangeDetector;
+import saker.build.thirdparty.saker.util.ObjectUtils;
+import saker.build.thirdparty.saker.util.StringUtils;
+import saker.build.trace.BuildTrace;
+import saker.nest.scriptinfo.reflection.annot.NestInformation;
+import saker.nest.scriptinfo.reflection.annot.NestParameterInformation;
+import saker.nest.scriptinfo.reflection.annot.NestTaskInformation;
+import saker.nest.scriptinfo.reflection.annot.NestTypeUsage;
+import saker.nest.utils.FrontendTaskFactory;
+import saker.sdk.support.api.SDKDescription;
+import saker.sdk.support.main.SDKSupportFrontendUtils;
+import saker.sdk.support.main.option.SDKDescriptionTaskOption;
+import saker.std.api.file.location.FileLocation;
+import saker.std.main.dir.prepare.RelativeContentsTaskOption;
+import saker.std.main.file.option.FileLocationTaskOption;
+import saker.std.main.file.utils.TaskOptionUtils;
+import saker.windows.impl.appx.BuildAppxWorkerTaskFactory;
+import saker.windows.impl.appx.BuildAppxWorkerTaskIdentifier;
+import saker.windows.impl.appx.manifest.AppxManifest;
+import saker.windows.impl.appx.manifest.AppxManifestPatch;
+import saker.windows.main.TaskDocs;
+import saker.windows.main.TaskDocs.DocAppxProcessorArchitecture;
+import saker.windows.main.TaskDocs.DocBuildAppxWorkerTaskOutput;
+import saker.windows.main.TaskDocs.DocSigntoolAlgorithm;
+import saker.windows.main.appx.manifest.PatchAppxManifestTaskFactory;
+import saker.windows.main.signtool.SigntoolSignTaskFactory;
+
+@NestTaskInformation(returnType = @NestTypeUsage(DocBuildAppxWorkerTaskOutput.class))
+@NestInformation("Creates an .appx package from the application contents in a single step.\n"
+		+ "The task performs the work of the " + PrepareAppxTaskFactory.TASK_NAME + "(), "
+		+ PatchAppxManifestTaskFactory.TASK_NAME + "(), " + PackageAppxTaskFactory.TASK_NAME + "(), and "
+		+ SigntoolSignTaskFactory.TASK_NAME + "() tasks, without creating their intermediate outputs. "
+		+ "The application contents are not copied to a prepared directory, and no unsigned package is "
+		+ "kept if the package is signed.\n"
+		+ "The task uses the makeappx and signtool tools to perform its operations.")
+
+@NestParameterInformation(value = "AppxManifest",
+		type = @NestTypeUsage(FileLocationTaskOption.class),
+		info = @NestInformation("Specifies the AppxManifest.xml for the application.\n"
+				+ "The file set for this parameter will be placed into the application package "
+				+ "with the AppxManifest.xml name.\n"
+				+ "You don't need to use this parameter if you already specify an AppxManifest.xml using "
+				+ "the Contents parameter."))
+@NestParameterInformation(value = "Contents",
+		type = @NestTypeUsage(value = Collection.class, elementTypes = { RelativeContentsTaskOption.class }),
+		info = @NestInformation("Specifies the file contents of the application.\n"
+				+ "All file contents of the application should be specified for this parameter."))
+@NestParameterInformation(value = "ProcessorArchitecture",
+		type = @NestTypeUsage(DocAppxProcessorArchitecture.class),
+		info = @NestInformation("Specified the value that should be set for the "
+				+ "Package/Identity:ProcessorArchitecture attribute of the manifest."))
+@NestParameterInformation(value = "Version",
+		type = @NestTypeUsage(String.class),
+		info = @NestInformation("Specified the value that should be set for the "
+				+ "Package/Identity:Version attribute of the manifest."))
+@NestParameterInformation(value = "IdentityName",
+		type = @NestTypeUsage(String.class),
+		info = @NestInformation("Specified the value that should be set for the "
+				+ "Package/Identity:Name attribute of the manifest."))
+@NestParameterInformation(value = "Publisher",
+		type = @NestTypeUsage(String.class),
+		info = @NestInformation("Specified the value that should be set for the "
+				+ "Package/Identity:Publisher attribute of the manifest."))
+@NestParameterInformation(value = "Certificate",
+		type = @NestTypeUsage(FileLocationTaskOption.class),
+		info = @NestInformation("Specifies the certificate for signing.\n"
+				+ "The file is passed as the /f argument for signtool.\n"
+				+ "If not specified, the package is not signed."))
+@NestParameterInformation(value = "Algorithm",
+		type = @NestTypeUsage(DocSigntoolAlgorithm.class),
+		info = @NestInformation("Specifies the file digest algorithm to use to create file signatures.\n"
+				+ "The value is passed as the /fd argument for signtool."))
+@NestParameterInformation(value = "Password",
+		type = @NestTypeUsage(String.class),
+		info = @NestInformation("Specifies the password to use when opening a PFX file.\n"
+				+ "The value is passed as the /p argument for signtool."))
+@NestParameterInformation(value = "Output",
+		type = @NestTypeUsage(SakerPath.class),
+		info = @NestInformation("A forward relative output path that specifies the output location of the .appx package.\n"
+				+ "It can be used to have a better output location than the automatically generated one."))
+@NestParameterInformation(value = "SDKs",
+		type = @NestTypeUsage(value = Map.class,
+				elementTypes = { saker.sdk.support.main.TaskDocs.DocSdkNameOption.class,
+						SDKDescriptionTaskOption.class }),
+		info = @NestInformation(TaskDocs.SDKS))
+public class BuildAppxTaskFactory extends FrontendTaskFactory<Object> {
+	private static final SakerPath PATH_APPXMANIFESTXML = SakerPath.valueOf("AppxManifest.xml");
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String TASK_NAME = "saker.appx.build";
+
+	@Override
+	public ParameterizableTask<? extends Object> createTask(ExecutionContext executioncontext) {
+		return new ParameterizableTask<Object>() {
+
+			@SakerInput(value = "AppxManifest")
+			public FileLocationTaskOption appxManifestOption;
+
+			@SakerInput(value = "Contents")
+			public Collection<RelativeContentsTaskOption> contentsOption;
+
+			@SakerInput(value = "ProcessorArchitecture")
+			public String processorArchitectureOption;
+			@SakerInput(value = "Version")
+			public String versionOption;
+			@SakerInput(value = "IdentityName")
+			public String identityNameOption;
+			@SakerInput(value = "Publisher")
+			public String publisherOption;
+
+			@SakerInput(value = { "Certificate" })
+			public FileLocationTaskOption certificateOption;
+			@SakerInput(value = { "Password" })
+			public String passwordOption;
+			@SakerInput(value = { "Algorithm" })
+			public String algorithmOption;
+
+			@SakerInput(value = { "SDKs" })
+			public Map<String, SDKDescriptionTaskOption> sdksOption;
+
+			@SakerInput(value = "Output")
+			public SakerPath outputOption;
+
+			@Override
+			public Object run(TaskContext taskcontext) throws Exception {
+				if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
+					BuildTrace.classifyTask(BuildTrace.CLASSIFICATION_FRONTEND);
+				}
+
+				NavigableMap<String, SDKDescription> sdks = SDKSupportFrontendUtils.toSDKDescriptionMap(sdksOption);
+				FileLocation certfl = TaskOptionUtils.toFileLocation(certificateOption, taskcontext);
+
+				FileLocation appxfl = TaskOptionUtils.toFileLocation(appxManifestOption, taskcontext);
+				contentsOption = ObjectUtils.cloneArrayList(contentsOption, RelativeContentsTaskOption::clone);
+				NavigableMap<SakerPath, FileLocation> resources = RelativeContentsTaskOption.toInputMap(taskcontext,
+						contentsOption, null);
+				if (resources == null) {
+					resources = new TreeMap<>();
+				}
+				if (appxfl == null) {
+					appxfl = ObjectUtils.getMapValue(resources, PATH_APPXMANIFESTXML);
+					if (appxfl == null) {
+						taskcontext.abortExecution(new MissingRequiredParameterException(
+								"No AppxManifest.xml specified.", taskcontext.getTaskId()));
+						return null;
+					}
+				} else {
+					FileLocation prevappx = resources.put(PATH_APPXMANIFESTXML, appxfl);
+					if (prevappx != null && !prevappx.equals(appxfl)) {
+						taskcontext.abortExecution(new IllegalArgumentException(
+								"Multiple AppxManifest.xml files specified: " + prevappx + " and " + appxfl));
+						return null;
+					}
+				}
+
+				if (processorArchitectureOption != null
+						&& !PatchAppxManifestTaskFactory.KNOWN_ARCHITECTURES.contains(processorArchitectureOption)) {
+					SakerLog.warning().taskScriptPosition(taskcontext)
+							.println("Unrecognized processor architecture value: " + processorArchitectureOption
+									+ ". Possible values: " + StringUtils.toStringJoin(", ",
+											PatchAppxManifestTaskFactory.KNOWN_ARCHITECTURES));
+				}
+				AppxManifestPatch patch = new AppxManifestPatch();
+				patch.setIdentityAttribute(AppxManifestPatch.IDENTITY_PROCESSOR_ARCHITECTURE,
+						processorArchitectureOption);
+				patch.setIdentityAttribute(AppxManifestPatch.IDENTITY_VERSION, versionOption);
+				patch.setIdentityAttribute(AppxManifestPatch.IDENTITY_NAME, identityNameOption);
+				patch.setIdentityAttribute(AppxManifestPatch.IDENTITY_PUBLISHER, publisherOption);
+
+				SakerPath outputpath;
+				if (outputOption != null) {
+					TaskOptionUtils.requireForwardRelativePathWithFileName(outputOption, "Output");
+					outputpath = SakerPath.valueOf(TASK_NAME).resolve(outputOption);
+				} else {
+					AppxManifest manifest = PrepareAppxTaskFactory.getAppxManifest(taskcontext, appxfl);
+					SakerPath inferred = PrepareAppxTaskFactory.inferOutputPath(
+							ObjectUtils.nullDefault(identityNameOption, manifest.getIdentityName()),
+							ObjectUtils.nullDefault(versionOption, manifest.getIdentityVersion()),
+							ObjectUtils.nullDefault(processorArchitectureOption,
+									manifest.getIdentityProcessorArchitecture()));
+					outputpath = SakerPath.valueOf(TASK_NAME).resolve(inferred.getFileName() + ".appx");
+				}
+
+				BuildAppxWorkerTaskIdentifier workertaskid = new BuildAppxWorkerTaskIdentifier(outputpath);
+				BuildAppxWorkerTaskFactory workertask = new BuildAppxWorkerTaskFactory(resources);
+				workertask.setManifestPatch(patch);
+				workertask.setSdks(sdks);
+				workertask.setCertificate(certfl);
+				workertask.setPassword(passwordOption);
+				workertask.setAlgorithm(algorithmOption);
+				taskcontext.startTask(workertaskid, workertask, null);
+
+				SimpleStructuredObjectTaskResult result = new SimpleStructuredObjectTaskResult(workertaskid);
+				taskcontext.reportSelfTaskOutputChangeDetector(new EqualityTaskOutputChangeDetector(result));
+				return result;
+			}
+		};
+	}
+}
@@ -0,0 +1,297 @@
+package saker.windows.main.appx;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import saker.build.file.path.SakerPath;
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.runtime.execution.SakerLog;
+import saker.build.task.ParameterizableTask;
+import saker.build.task.TaskContext;
+import saker.build.task.exception.MissingRequiredParameterException;
+import saker.build.task.utils.SimpleStructuredObjectTaskResult;
+import saker.build.task.utils.annot.SakerInput;
+import saker.build.task.utils.dependencies.EqualityTaskOutputChangeDetector;
+import saker.build.thirdparty.saker.util.ObjectUtils;
+import saker.build.thirdparty.saker.util.StringUtils;
+import saker.build.trace.BuildTrace;
+import saker.nest.scriptinfo.reflection.annot.NestFieldInformation;
+import saker.nest.scriptinfo.reflection.annot.NestInformation;
+import saker.nest.scriptinfo.reflection.annot.NestParameterInformation;
+import saker.nest.scriptinfo.reflection.annot.NestTaskInformation;
+import saker.nest.scriptinfo.reflection.annot.NestTypeInformation;
+import saker.nest.scriptinfo.reflection.annot.NestTypeUsage;
+import saker.nest.utils.FrontendTaskFactory;
+import saker.sdk.support.api.SDKDescription;
+import saker.sdk.support.main.SDKSupportFrontendUtils;
+import saker.sdk.support.main.option.SDKDescriptionTaskOption;
+import saker.std.api.file.location.FileLocation;
+import saker.std.main.dir.prepare.RelativeContentsTaskOption;
+import saker.std.main.file.option.FileLocationTaskOption;
+import saker.std.main.file.utils.TaskOptionUtils;
+import saker.windows.impl.appx.BuildAppxWorkerTaskFactory;
+import saker.windows.impl.appx.BuildAppxWorkerTaskIdentifier;
+import saker.windows.impl.appx.BuildBundleAppxWorkerTaskFactory;
+import saker.windows.impl.appx.BuildBundleAppxWorkerTaskIdentifier;
+import saker.windows.impl.appx.manifest.AppxManifest;
+import saker.windows.impl.appx.manifest.AppxManifestPatch;
+import saker.windows.main.TaskDocs;
+import saker.windows.main.TaskDocs.DocAppxProcessorArchitecture;
+import saker.windows.main.TaskDocs.DocBuildBundleAppxWorkerTaskOutput;
+import saker.windows.main.TaskDocs.DocSigntoolAlgorithm;
+import saker.windows.main.appx.manifest.PatchAppxManifestTaskFactory;
+
+@NestTaskInformation(returnType = @NestTypeUsage(DocBuildBundleAppxWorkerTaskOutput.class))
+@NestInformation("Creates an .appxbundle that contains an .appx package for each specified processor architecture.\n"
+		+ "The task builds the packages the same way as " + BuildAppxTaskFactory.TASK_NAME + "(), concurrently "
+		+ "for all architectures, and creates the bundle from them the same way as " + BundleAppxTaskFactory.TASK_NAME
+		+ "().\n"
+		+ "The contents that are shared by all architectures only need to be specified once. "
+		+ "The AppxManifest.xml of each package has its ProcessorArchitecture set to the architecture of the package.\n"
+		+ "If a certificate is specified, both the packages and the bundle are signed.")
+
+@NestParameterInformation(value = "Architectures",
+		aliases = "",
+		required = true,
+		type = @NestTypeUsage(value = Collection.class,
+				elementTypes = BuildBundleAppxTaskFactory.ArchitectureContentsTaskOption.class),
+		info = @NestInformation("Specifies the processor architectures and their architecture specific contents.\n"
+				+ "An .appx package is created for each architecture."))
+@NestParameterInformation(value = "AppxManifest",
+		type = @NestTypeUsage(FileLocationTaskOption.class),
+		info = @NestInformation("Specifies the AppxManifest.xml for the packages.\n"
+				+ "It can be overridden for a specific architecture. You don't need to use this parameter if you "
+				+ "already specify an AppxManifest.xml using the Contents parameter."))
+@NestParameterInformation(value = "Contents",
+		type = @NestTypeUsage(value = Collection.class, elementTypes = { RelativeContentsTaskOption.class }),
+		info = @NestInformation("Specifies the file contents that are shared by all architectures.\n"
+				+ "The files are added to each package."))
+@NestParameterInformation(value = "Version",
+		type = @NestTypeUsage(String.class),
+		info = @NestInformation("Specified the value that should be set for the "
+				+ "Package/Identity:Version attribute of the manifests."))
+@NestParameterInformation(value = "IdentityName",
+		type = @NestTypeUsage(String.class),
+		info = @NestInformation("Specified the value that should be set for the "
+				+ "Package/Identity:Name attribute of the manifests."))
+@NestParameterInformation(value = "Publisher",
+		type = @NestTypeUsage(String.class),
+		info = @NestInformation("Specified the value that should be set for the "
+				+ "Package/Identity:Publisher attribute of the manifests."))
+@NestParameterInformation(value = "Certificate",
+		type = @NestTypeUsage(FileLocationTaskOption.class),
+		info = @NestInformation("Specifies the certificate for signing.\n"
+				+ "The file is passed as the /f argument for signtool.\n"
+				+ "If not specified, the packages and the bundle are not signed."))
+@NestParameterInformation(value = "Algorithm",
+		type = @NestTypeUsage(DocSigntoolAlgorithm.class),
+		info = @NestInformation("Specifies the file digest algorithm to use to create file signatures.\n"
+				+ "The value is passed as the /fd argument for signtool."))
+@NestParameterInformation(value = "Password",
+		type = @NestTypeUsage(String.class),
+		info = @NestInformation("Specifies the password to use when opening a PFX file.\n"
+				+ "The value is passed as the /p argument for signtool."))
+@NestParameterInformation(value = "Output",
+		type = @NestTypeUsage(SakerPath.class),
+		info = @NestInformation("A forward relative output path that specifies the output location of the .appxbundle.\n"
+				+ "It can be used to have a better output location than the automatically generated one."))
+@NestParameterInformation(value = "SDKs",
+		type = @NestTypeUsage(value = Map.class,
+				elementTypes = { saker.sdk.support.main.TaskDocs.DocSdkNameOption.class,
+						SDKDescriptionTaskOption.class }),
+		info = @NestInformation(TaskDocs.SDKS))
+public class BuildBundleAppxTaskFactory extends FrontendTaskFactory<Object> {
+	private static final SakerPath PATH_APPXMANIFESTXML = SakerPath.valueOf("AppxManifest.xml");
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String TASK_NAME = "saker.appx.build.bundle";
+
+	@Override
+	public ParameterizableTask<? extends Object> createTask(ExecutionContext executioncontext) {
+		return new ParameterizableTask<Object>() {
+
+			@SakerInput(value = { "", "Architectures" }, required = true)
+			public Collection<ArchitectureContentsTaskOption> architecturesOption;
+
+			@SakerInput(value = "AppxManifest")
+			public FileLocationTaskOption appxManifestOption;
+
+			@SakerInput(value = "Contents")
+			public Collection<RelativeContentsTaskOption> contentsOption;
+
+			@SakerInput(value = "Version")
+			public String versionOption;
+			@SakerInput(value = "IdentityName")
+			public String identityNameOption;
+			@SakerInput(value = "Publisher")
+			public String publisherOption;
+
+			@SakerInput(value = { "Certificate" })
+			public FileLocationTaskOption certificateOption;
+			@SakerInput(value = { "Password" })
+			public String passwordOption;
+			@SakerInput(value = { "Algorithm" })
+			public String algorithmOption;
+
+			@SakerInput(value = { "SDKs" })
+			public Map<String, SDKDescriptionTaskOption> sdksOption;
+
+			@SakerInput(value = "Output")
+			public SakerPath outputOption;
+
+			@Override
+			public Object run(TaskContext taskcontext) throws Exception {
+				if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
+					BuildTrace.classifyTask(BuildTrace.CLASSIFICATION_FRONTEND);
+				}
+
+				NavigableMap<String, SDKDescription> sdks = SDKSupportFrontendUtils.toSDKDescriptionMap(sdksOption);
+				FileLocation certfl = TaskOptionUtils.toFileLocation(certificateOption, taskcontext);
+				FileLocation sharedappxfl = TaskOptionUtils.toFileLocation(appxManifestOption, taskcontext);
+
+				//the shared contents are resolved once for all architectures
+				contentsOption = ObjectUtils.cloneArrayList(contentsOption, RelativeContentsTaskOption::clone);
+				NavigableMap<SakerPath, FileLocation> sharedresources = RelativeContentsTaskOption
+						.toInputMap(taskcontext, contentsOption, null);
+				if (sharedresources == null) {
+					sharedresources = new TreeMap<>();
+				}
+
+				NavigableMap<String, NavigableMap<SakerPath, FileLocation>> archresources = new TreeMap<>();
+				for (ArchitectureContentsTaskOption archoption : architecturesOption) {
+					if (archoption == null) {
+						continue;
+					}
+					String arch = archoption.getProcessorArchitecture();
+					if (ObjectUtils.isNullOrEmpty(arch)) {
+						taskcontext.abortExecution(new MissingRequiredParameterException(
+								"ProcessorArchitecture is not specified for architecture contents.",
+								taskcontext.getTaskId()));
+						return null;
+					}
+					if (!PatchAppxManifestTaskFactory.KNOWN_ARCHITECTURES.contains(arch)) {
+						SakerLog.warning().taskScriptPosition(taskcontext)
+								.println("Unrecognized processor architecture value: " + arch + ". Possible values: "
+										+ StringUtils.toStringJoin(", ",
+												PatchAppxManifestTaskFactory.KNOWN_ARCHITECTURES));
+					}
+					NavigableMap<SakerPath, FileLocation> resources = new TreeMap<>(sharedresources);
+					NavigableMap<SakerPath, FileLocation> specificresources = RelativeContentsTaskOption.toInputMap(
+							taskcontext, ObjectUtils.cloneArrayList(archoption.getContents(),
+									RelativeContentsTaskOption::clone),
+							null);
+					if (specificresources != null) {
+						for (Entry<SakerPath, FileLocation> entry : specificresources.entrySet()) {
+							FileLocation prev = resources.put(entry.getKey(), entry.getValue());
+							if (prev != null && !prev.equals(entry.getValue())) {
+								taskcontext.abortExecution(new IllegalArgumentException("Multiple files specified for "
+										+ entry.getKey() + " of architecture " + arch + ": " + prev + " and "
+										+ entry.getValue()));
+								return null;
+							}
+						}
+					}
+					FileLocation appxfl = TaskOptionUtils.toFileLocation(archoption.getAppxManifest(), taskcontext);
+					if (appxfl == null) {
+						appxfl = sharedappxfl;
+					}
+					if (appxfl == null) {
+						if (!resources.containsKey(PATH_APPXMANIFESTXML)) {
+							taskcontext.abortExecution(new MissingRequiredParameterException(
+									"No AppxManifest.xml specified for architecture: " + arch,
+									taskcontext.getTaskId()));
+							return null;
+						}
+					} else {
+						resources.put(PATH_APPXMANIFESTXML, appxfl);
+					}
+					if (archresources.put(arch, resources) != null) {
+						taskcontext.abortExecution(
+								new IllegalArgumentException("Architecture specified multiple times: " + arch));
+						return null;
+					}
+				}
+				if (archresources.isEmpty()) {
+					taskcontext.abortExecution(new MissingRequiredParameterException("No architectures specified.",
+							taskcontext.getTaskId()));
+					return null;
+				}
+
+				SakerPath outputpath;
+				if (outputOption != null) {
+					TaskOptionUtils.requireForwardRelativePathWithFileName(outputOption, "Output");
+					outputpath = SakerPath.valueOf(TASK_NAME).resolve(outputOption);
+				} else {
+					AppxManifest manifest = PrepareAppxTaskFactory.getAppxManifest(taskcontext,
+							archresources.firstEntry().getValue().get(PATH_APPXMANIFESTXML));
+					SakerPath inferred = PrepareAppxTaskFactory.inferOutputPath(
+							ObjectUtils.nullDefault(identityNameOption, manifest.getIdentityName()),
+							ObjectUtils.nullDefault(versionOption, manifest.getIdentityVersion()), null);
+					outputpath = SakerPath.valueOf(TASK_NAME).resolve(inferred.getFileName() + ".appxbundle");
+				}
+				SakerPath packagesdir = outputpath.getParent().resolve(outputpath.getFileName() + ".packages");
+
+				//start the package tasks here, so they are executed concurrently
+				NavigableMap<String, BuildAppxWorkerTaskIdentifier> packagetasks = new TreeMap<>();
+				for (Entry<String, NavigableMap<SakerPath, FileLocation>> entry : archresources.entrySet()) {
+					String arch = entry.getKey();
+					AppxManifestPatch patch = new AppxManifestPatch();
+					patch.setIdentityAttribute(AppxManifestPatch.IDENTITY_PROCESSOR_ARCHITECTURE, arch);
+					patch.setIdentityAttribute(AppxManifestPatch.IDENTITY_VERSION, versionOption);
+					patch.setIdentityAttribute(AppxManifestPatch.IDENTITY_NAME, identityNameOption);
+					patch.setIdentityAttribute(AppxManifestPatch.IDENTITY_PUBLISHER, publisherOption);
+
+					BuildAppxWorkerTaskIdentifier packagetaskid = new BuildAppxWorkerTaskIdentifier(
+							packagesdir.resolve(arch + ".appx"));
+					BuildAppxWorkerTaskFactory packagetask = new BuildAppxWorkerTaskFactory(entry.getValue());
+					packagetask.setManifestPatch(patch);
+					packagetask.setSdks(sdks);
+					packagetask.setCertificate(certfl);
+					packagetask.setPassword(passwordOption);
+					packagetask.setAlgorithm(algorithmOption);
+					taskcontext.startTask(packagetaskid, packagetask, null);
+					packagetasks.put(arch, packagetaskid);
+				}
+
+				BuildBundleAppxWorkerTaskIdentifier workertaskid = new BuildBundleAppxWorkerTaskIdentifier(
+						outputpath);
+				BuildBundleAppxWorkerTaskFactory workertask = new BuildBundleAppxWorkerTaskFactory(packagetasks);
+				workertask.setSdks(sdks);
+				workertask.setCertificate(certfl);
+				workertask.setPassword(passwordOption);
+				workertask.setAlgorithm(algorithmOption);
+				taskcontext.startTask(workertaskid, workertask, null);
+
+				SimpleStructuredObjectTaskResult result = new SimpleStructuredObjectTaskResult(workertaskid);
+				taskcontext.reportSelfTaskOutputChangeDetector(new EqualityTaskOutputChangeDetector(result));
+				return result;
+			}
+		};
+	}
+
+	@NestTypeInformation(qualifiedName = "AppxArchitectureContents")
+	@NestInformation("Describes the contents of an .appx package for a given processor architecture.")
+	@NestFieldInformation(value = "ProcessorArchitecture",
+			type = @NestTypeUsage(DocAppxProcessorArchitecture.class),
+			info = @NestInformation("The processor architecture of the package.\n"
+					+ "The value is set for the Package/Identity:ProcessorArchitecture attribute of the manifest."))
+	@NestFieldInformation(value = "Contents",
+			type = @NestTypeUsage(value = Collection.class, elementTypes = { RelativeContentsTaskOption.class }),
+			info = @NestInformation("The architecture specific file contents of the package.\n"
+					+ "These are added to the contents that are shared by all architectures."))
+	@NestFieldInformation(value = "AppxManifest",
+			type = @NestTypeUsage(FileLocationTaskOption.class),
+			info = @NestInformation("The AppxManifest.xml for the package.\n"
+					+ "If specified, it overrides the shared manifest."))
+	public interface ArchitectureContentsTaskOption {
+		public String getProcessorArchitecture();
+
+		public Collection<RelativeContentsTaskOption> getContents();
+
+		public FileLocationTaskOption getAppxManifest();
+	}
+}
@@ -24,6 +24,7 @@ import saker.sdk.support.api.SDKDescription;
 import saker.sdk.support.main.SDKSupportFrontendUtils;
 import saker.sdk.support.main.option.SDKDescriptionTaskOption;
 import saker.std.main.file.utils.TaskOptionUtils;
+import saker.windows.api.appx.BuildAppxWorkerTaskOutput;
 import saker.windows.api.appx.PackageAppxWorkerTaskOutput;
 import saker.windows.api.signtool.SigntoolSignWorkerTaskOutput;
 import saker.windows.impl.appx.BundleAppxWorkerTaskFactory;
@@ -187,6 +188,10 @@ public class BundleAppxTaskFactory extends FrontendTaskFactory<Object> {
 			};
 		}
 
+		public static MappingKeyTaskOption valueOf(BuildAppxWorkerTaskOutput input) {
+			return valueOf(input.getPath());
+		}
+
 		public static MappingKeyTaskOption valueOf(PackageAppxWorkerTaskOutput input) {
 			return valueOf(input.getPath());
 		}
@@ -1,6 +1,5 @@
 package saker.windows.main.appx;
 
-import java.io.InputStream;
 import java.nio.file.NoSuchFileException;
 import java.util.Collection;
 import java.util.NavigableMap;
@@ -8,14 +7,6 @@ import java.util.StringJoiner;
 import java.util.TreeMap;
 import java.util.UUID;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
 import saker.build.file.SakerFile;
 import saker.build.file.content.ContentDescriptor;
 import saker.build.file.content.DirectoryContentDescriptor;
@@ -46,6 +37,7 @@ import saker.std.main.file.option.FileLocationTaskOption;
 import saker.std.main.file.utils.TaskOptionUtils;
 import saker.windows.impl.appx.PrepareAppxWorkerTaskFactory;
 import saker.windows.impl.appx.PrepareAppxWorkerTaskIdentifier;
+import saker.windows.impl.appx.manifest.AppxManifest;
 import saker.windows.main.TaskDocs.DocPrepareAppxWorkerTaskOutput;
 
 @NestTaskInformation(returnType = @NestTypeUsage(DocPrepareAppxWorkerTaskOutput.class))
@@ -140,7 +132,11 @@ public class PrepareAppxTaskFactory extends FrontendTaskFactory<Object> {
 
 	protected static SakerPath inferOutputPathFromAppxManifest(TaskContext taskcontext, FileLocation fl)
 			throws Exception {
-		SakerPath[] result = { null };
+		return inferOutputPathFromAppxManifest(getAppxManifest(taskcontext, fl));
+	}
+
+	protected static AppxManifest getAppxManifest(TaskContext taskcontext, FileLocation fl) throws Exception {
+		AppxManifest[] result = { null };
 
 		fl.accept(new FileLocationVisitor() {
 			@Override
@@ -152,8 +148,9 @@ public class PrepareAppxTaskFactory extends FrontendTaskFactory<Object> {
 					throw ObjectUtils
 							.sneakyThrow(new NoSuchFileException("Specified AppxManifest is not a file: " + path));
 				}
-				try (InputStream is = LocalFileProvider.getInstance().openInputStream(path)) {
-					result[0] = inferOutputPathFromAppxManifestStream(is);
+				try {
+					result[0] = AppxManifest.get(taskcontext.getExecutionContext().getEnvironment(), path, cd,
+							() -> LocalFileProvider.getInstance().openInputStream(path));
 				} catch (Exception e) {
 					throw ObjectUtils.sneakyThrow(e);
 				}
@@ -169,9 +166,11 @@ public class PrepareAppxTaskFactory extends FrontendTaskFactory<Object> {
 					throw ObjectUtils
 							.sneakyThrow(new NoSuchFileException("Specified AppxManifest is not a file: " + path));
 				}
-				taskcontext.reportInputFileDependency(DEP_TAG_APPXMANIFESTXML_CONTENTS, path, f.getContentDescriptor());
-				try (InputStream is = f.openInputStream()) {
-					result[0] = inferOutputPathFromAppxManifestStream(is);
+				ContentDescriptor cd = f.getContentDescriptor();
+				taskcontext.reportInputFileDependency(DEP_TAG_APPXMANIFESTXML_CONTENTS, path, cd);
+				try {
+					result[0] = AppxManifest.get(taskcontext.getExecutionContext().getEnvironment(), path, cd,
+							f::openInputStream);
 				} catch (Exception e) {
 					throw ObjectUtils.sneakyThrow(e);
 				}
@@ -180,45 +179,26 @@ public class PrepareAppxTaskFactory extends FrontendTaskFactory<Object> {
 		return result[0];
 	}
 
-	protected static SakerPath inferOutputPathFromAppxManifestStream(InputStream is) throws Exception {
-		DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-		//not namespace aware
-		DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-		Document doc = dBuilder.parse(is);
-		Element rootelem = doc.getDocumentElement();
-		if (!"Package".equals(rootelem.getNodeName())) {
-			throw new IllegalArgumentException(
-					"Invalid AppxManifest.xml, expected Package root element instead of " + rootelem.getNodeName());
+	protected static SakerPath inferOutputPathFromAppxManifest(AppxManifest manifest) {
+		return inferOutputPath(manifest.getIdentityName(), manifest.getIdentityVersion(),
+				manifest.getIdentityProcessorArchitecture());
+	}
+
+	protected static SakerPath inferOutputPath(String name, String version, String arch) {
+		StringJoiner joiner = new StringJoiner("_");
+		if (!ObjectUtils.isNullOrEmpty(name)) {
+			joiner.add(name);
 		}
-		NodeList children = rootelem.getChildNodes();
-		for (int i = 0, clen = children.getLength(); i < clen; i++) {
-			Node item = children.item(i);
-			if (item.getNodeType() != Node.ELEMENT_NODE) {
-				continue;
-			}
-			if (!"Identity".equals(item.getNodeName())) {
-				continue;
-			}
-			Element elem = (Element) item;
-			String name = elem.getAttribute("Name");
-			String version = elem.getAttribute("Version");
-			String arch = elem.getAttribute("ProcessorArchitecture");
-			StringJoiner joiner = new StringJoiner("_");
-			if (!ObjectUtils.isNullOrEmpty(name)) {
-				joiner.add(name);
-			}
-			if (!ObjectUtils.isNullOrEmpty(version)) {
-				joiner.add(version);
-			}
-			if (!ObjectUtils.isNullOrEmpty(arch)) {
-				joiner.add(arch);
-			}
-			String joined = joiner.toString();
-			if (ObjectUtils.isNullOrEmpty(joined)) {
-				joined = "default";
-			}
-			return SakerPath.valueOf(joined);
+		if (!ObjectUtils.isNullOrEmpty(version)) {
+			joiner.add(version);
+		}
+		if (!ObjectUtils.isNullOrEmpty(arch)) {
+			joiner.add(arch);
+		}
+		String joined = joiner.toString();
+		if (ObjectUtils.isNullOrEmpty(joined)) {
+			joined = "default";
 		}
-		throw new IllegalArgumentException("Identity element not found in AppxManifest.");
+		return SakerPath.valueOf(joined);
 	}
 }
@@ -73,30 +73,8 @@ public class RegisterAppxTaskFactory extends FrontendTaskFactory<Object> {
 
 				FileLocation appx = appxReferenceOption.getAppxManifest(taskcontext);
 
-				StructuredTaskResult[] appxpathtaskresult = { null };
-				appx.accept(new FileLocationVisitor() {
-					@Override
-					public void visit(LocalFileLocation loc) {
-						appxpathtaskresult[0] = StructuredTaskResult.createLiteral(loc.getLocalPath());
-					}
-
-					@Override
-					public void visit(ExecutionFileLocation loc) {
-						SakerPath locpath = loc.getPath();
-						SakerPath locparentpath = locpath.getParent();
-						TaskFactory<? extends SakerPath> mirrortf = SakerStandardTaskUtils
-								.createMirroringTaskFactory(locparentpath);
-						TaskIdentifier mirrortaskid = SakerStandardTaskUtils
-								.createMirroringTaskIdentifier(locparentpath);
-						taskcontext.startTask(mirrortaskid, mirrortf, null);
-
-						String appxfilename = locpath.getFileName();
-						appxpathtaskresult[0] = new FileNameResolvingStructuredTaskResult(appxfilename, mirrortaskid);
-					}
-
-				});
-
-				RegisterAppxWorkerTaskFactory workertask = new RegisterAppxWorkerTaskFactory(appxpathtaskresult[0]);
+				RegisterAppxWorkerTaskFactory workertask = new RegisterAppxWorkerTaskFactory(
+						createAppxManifestLocalPathTaskResult(taskcontext, appx));
 				workertask.setAllowReinstall(allowReinstall);
 				taskcontext.startTask(workertask, workertask, null);
 
@@ -107,6 +85,43 @@ public class RegisterAppxTaskFactory extends FrontendTaskFactory<Object> {
 		};
 	}
 
+	/**
+	 * Creates a structured task result that resolves to the local file system path of the given AppxManifest.xml.
+	 * <p>
+	 * If the manifest is in the execution file system, its directory is mirrored.
+	 * 
+	 * @param taskcontext
+	 *            The task context.
+	 * @param appx
+	 *            The location of the manifest.
+	 * @return The structured task result.
+	 */
+	public static StructuredTaskResult createAppxManifestLocalPathTaskResult(TaskContext taskcontext,
+			FileLocation appx) {
+		StructuredTaskResult[] appxpathtaskresult = { null };
+		appx.accept(new FileLocationVisitor() {
+			@Override
+			public void visit(LocalFileLocation loc) {
+				appxpathtaskresult[0] = StructuredTaskResult.createLiteral(loc.getLocalPath());
+			}
+
+			@Override
+			public void visit(ExecutionFileLocation loc) {
+				SakerPath locpath = loc.getPath();
+				SakerPath locparentpath = locpath.getParent();
+				TaskFactory<? extends SakerPath> mirrortf = SakerStandardTaskUtils
+						.createMirroringTaskFactory(locparentpath);
+				TaskIdentifier mirrortaskid = SakerStandardTaskUtils.createMirroringTaskIdentifier(locparentpath);
+				taskcontext.startTask(mirrortaskid, mirrortf, null);
+
+				String appxfilename = locpath.getFileName();
+				appxpathtaskresult[0] = new FileNameResolvingStructuredTaskResult(appxfilename, mirrortaskid);
+			}
+
+		});
+		return appxpathtaskresult[0];
+	}
+
 	private static final class FileNameResolvingStructuredTaskResult implements StructuredTaskResult, Externalizable {
 		private static final long serialVersionUID = 1L;
 
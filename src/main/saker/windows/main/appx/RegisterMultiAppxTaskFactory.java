@@ -0,0 +1,94 @@
+package saker.windows.main.appx;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.task.ParameterizableTask;
+import saker.build.task.TaskContext;
+import saker.build.task.utils.SimpleStructuredListTaskResult;
+import saker.build.task.utils.StructuredTaskResult;
+import saker.build.task.utils.annot.SakerInput;
+import saker.build.task.utils.dependencies.EqualityTaskOutputChangeDetector;
+import saker.build.trace.BuildTrace;
+import saker.nest.scriptinfo.reflection.annot.NestInformation;
+import saker.nest.scriptinfo.reflection.annot.NestParameterInformation;
+import saker.nest.scriptinfo.reflection.annot.NestTaskInformation;
+import saker.nest.scriptinfo.reflection.annot.NestTypeUsage;
+import saker.nest.utils.FrontendTaskFactory;
+import saker.std.api.file.location.FileLocation;
+import saker.windows.impl.appx.RegisterMultiAppxElementTaskResult;
+import saker.windows.impl.appx.RegisterMultiAppxWorkerTaskFactory;
+import saker.windows.main.TaskDocs.DocRegisterAppxWorkerTaskOutput;
+
+@NestTaskInformation(returnType = @NestTypeUsage(value = List.class,
+		elementTypes = DocRegisterAppxWorkerTaskOutput.class))
+@NestInformation("Registers multiple appx package directories for the user.\n"
+		+ "The task works the same way as " + RegisterAppxTaskFactory.TASK_NAME + "(), but registers all of the "
+		+ "specified packages concurrently.\n"
+		+ "If a package depends on another package that is registered by the same task, it will be registered "
+		+ "after its dependency.\n"
+		+ "The task returns the registration results in the same order as the Appxs parameter.")
+
+@NestParameterInformation(value = "Appxs",
+		aliases = "",
+		required = true,
+		type = @NestTypeUsage(value = Collection.class,
+				elementTypes = RegisterAppxTaskFactory.AppxReferenceTaskOption.class),
+		info = @NestInformation("The appx packages to register.\n"
+				+ "The elements should be paths to the AppxManifest.xml files of the prepared application packages. "
+				+ "The outputs of the " + PrepareAppxTaskFactory.TASK_NAME + "() task can also be specified.\n"
+				+ "All files related to the applications will be mirrored to the local filesystem if necessary."))
+@NestParameterInformation(value = "AllowReinstall",
+		type = @NestTypeUsage(boolean.class),
+		info = @NestInformation("Specifies if reinstalling the applications is allowed.\n"
+				+ "Setting this parameter to true will cause the task to reinstall an application "
+				+ "if the registration failed due to related errors."))
+public class RegisterMultiAppxTaskFactory extends FrontendTaskFactory<Object> {
+	private static final long serialVersionUID = 1L;
+
+	public static final String TASK_NAME = "saker.appx.register.multi";
+
+	@Override
+	public ParameterizableTask<? extends Object> createTask(ExecutionContext executioncontext) {
+		return new ParameterizableTask<Object>() {
+
+			@SakerInput(value = { "", "Appxs" }, required = true)
+			public Collection<RegisterAppxTaskFactory.AppxReferenceTaskOption> appxsOption;
+
+			@SakerInput(value = "AllowReinstall")
+			public boolean allowReinstall = false;
+
+			@Override
+			public Object run(TaskContext taskcontext) throws Exception {
+				if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
+					BuildTrace.classifyTask(BuildTrace.CLASSIFICATION_FRONTEND);
+				}
+
+				List<StructuredTaskResult> manifestpathresults = new ArrayList<>();
+				for (RegisterAppxTaskFactory.AppxReferenceTaskOption appxoption : appxsOption) {
+					if (appxoption == null) {
+						continue;
+					}
+					FileLocation appx = appxoption.getAppxManifest(taskcontext);
+					manifestpathresults.add(
+							RegisterAppxTaskFactory.createAppxManifestLocalPathTaskResult(taskcontext, appx));
+				}
+
+				RegisterMultiAppxWorkerTaskFactory workertask = new RegisterMultiAppxWorkerTaskFactory(
+						manifestpathresults);
+				workertask.setAllowReinstall(allowReinstall);
+				taskcontext.startTask(workertask, workertask, null);
+
+				List<StructuredTaskResult> elementresults = new ArrayList<>(manifestpathresults.size());
+				for (int i = 0; i < manifestpathresults.size(); i++) {
+					elementresults.add(new RegisterMultiAppxElementTaskResult(workertask, i));
+				}
+				SimpleStructuredListTaskResult result = new SimpleStructuredListTaskResult(elementresults);
+				taskcontext.reportSelfTaskOutputChangeDetector(new EqualityTaskOutputChangeDetector(result));
+				return result;
+			}
+		};
+	}
+}
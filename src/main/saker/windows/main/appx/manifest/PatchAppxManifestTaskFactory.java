@@ -1,5 +1,6 @@
 package saker.windows.main.appx.manifest;
 
+import java.util.Collection;
 import java.util.Set;
 
 import saker.build.file.path.SakerPath;
@@ -11,16 +12,20 @@ import saker.build.task.utils.SimpleStructuredObjectTaskResult;
 import saker.build.task.utils.annot.SakerInput;
 import saker.build.task.utils.dependencies.EqualityTaskOutputChangeDetector;
 import saker.build.thirdparty.saker.util.ImmutableUtils;
+import saker.build.thirdparty.saker.util.ObjectUtils;
 import saker.build.thirdparty.saker.util.StringUtils;
 import saker.build.trace.BuildTrace;
+import saker.nest.scriptinfo.reflection.annot.NestFieldInformation;
 import saker.nest.scriptinfo.reflection.annot.NestInformation;
 import saker.nest.scriptinfo.reflection.annot.NestParameterInformation;
 import saker.nest.scriptinfo.reflection.annot.NestTaskInformation;
+import saker.nest.scriptinfo.reflection.annot.NestTypeInformation;
 import saker.nest.scriptinfo.reflection.annot.NestTypeUsage;
 import saker.nest.utils.FrontendTaskFactory;
 import saker.std.api.file.location.FileLocation;
 import saker.std.main.file.option.FileLocationTaskOption;
 import saker.std.main.file.utils.TaskOptionUtils;
+import saker.windows.impl.appx.manifest.AppxManifestPatch;
 import saker.windows.impl.appx.manifest.PatchAppxManifestWorkerTaskFactory;
 import saker.windows.impl.appx.manifest.PatchAppxManifestWorkerTaskIdentifier;
 import saker.windows.main.TaskDocs.DocAppxProcessorArchitecture;
@@ -28,7 +33,8 @@ import saker.windows.main.TaskDocs.DocPatchAppxManifestWorkerTaskOutput;
 
 @NestTaskInformation(returnType = @NestTypeUsage(DocPatchAppxManifestWorkerTaskOutput.class))
 @NestInformation("Patches some values in the specified AppxManifest.xml.\n"
-		+ "The task can be used to replace, insert, or modify some values in the specified AppxManifest.xml file.")
+		+ "The task can be used to replace, insert, or modify some values in the specified AppxManifest.xml file.\n"
+		+ "All the specified modifications are applied in a single pass over the manifest.")
 
 @NestParameterInformation(value = "AppxManifest",
 		aliases = { "", "Manifest" },
@@ -43,11 +49,61 @@ import saker.windows.main.TaskDocs.DocPatchAppxManifestWorkerTaskOutput;
 		type = @NestTypeUsage(String.class),
 		info = @NestInformation("Specified the value that should be set for the "
 				+ "Package/Identity:Version attribute."))
+@NestParameterInformation(value = "IdentityName",
+		type = @NestTypeUsage(String.class),
+		info = @NestInformation("Specified the value that should be set for the "
+				+ "Package/Identity:Name attribute."))
+@NestParameterInformation(value = "Publisher",
+		type = @NestTypeUsage(String.class),
+		info = @NestInformation("Specified the value that should be set for the "
+				+ "Package/Identity:Publisher attribute."))
+@NestParameterInformation(value = "DisplayName",
+		type = @NestTypeUsage(String.class),
+		info = @NestInformation("Specified the text that should be set for the "
+				+ "Package/Properties/DisplayName element.\n"
+				+ "The element is added if it doesn't exist."))
+@NestParameterInformation(value = "PublisherDisplayName",
+		type = @NestTypeUsage(String.class),
+		info = @NestInformation("Specified the text that should be set for the "
+				+ "Package/Properties/PublisherDisplayName element.\n"
+				+ "The element is added if it doesn't exist."))
+@NestParameterInformation(value = "Description",
+		type = @NestTypeUsage(String.class),
+		info = @NestInformation("Specified the text that should be set for the "
+				+ "Package/Properties/Description element.\n"
+				+ "The element is added if it doesn't exist."))
+@NestParameterInformation(value = "TargetDeviceFamilies",
+		type = @NestTypeUsage(value = Collection.class,
+				elementTypes = PatchAppxManifestTaskFactory.TargetDeviceFamilyTaskOption.class),
+		info = @NestInformation("Specifies the versions that should be set for the "
+				+ "Package/Dependencies/TargetDeviceFamily elements.\n"
+				+ "The device families are matched by their names. If a device family is not present in the manifest, "
+				+ "it is added. In that case both MinVersion and MaxVersionTested must be specified."))
+@NestParameterInformation(value = "AddCapabilities",
+		type = @NestTypeUsage(value = Collection.class, elementTypes = String.class),
+		info = @NestInformation("Names of the capabilities that should be declared in the manifest.\n"
+				+ "A Capability element is added for each name that is not yet declared."))
+@NestParameterInformation(value = "AddDeviceCapabilities",
+		type = @NestTypeUsage(value = Collection.class, elementTypes = String.class),
+		info = @NestInformation("Names of the device capabilities that should be declared in the manifest.\n"
+				+ "A DeviceCapability element is added for each name that is not yet declared."))
+@NestParameterInformation(value = "RemoveCapabilities",
+		type = @NestTypeUsage(value = Collection.class, elementTypes = String.class),
+		info = @NestInformation("Names of the capabilities that should be removed from the manifest.\n"
+				+ "All the elements in Package/Capabilities with the given names are removed."))
 
 @NestParameterInformation(value = "Output",
 		type = @NestTypeUsage(SakerPath.class),
 		info = @NestInformation("A forward relative output path that specifies the output location of the output patched manifest file.\n"
 				+ "It can be used to have a better output location than the automatically generated one."))
+@NestParameterInformation(value = "ContentHash",
+		type = @NestTypeUsage(boolean.class),
+		info = @NestInformation("Specifies if the content descriptor of the output should be based on the hash of "
+				+ "the patched contents.\n"
+				+ "By default, any modification of the input manifest causes the dependent tasks to rerun. "
+				+ "If this parameter is set to true, the dependent tasks are only rerun if the patched output "
+				+ "actually changes.\n"
+				+ "The default is false."))
 public class PatchAppxManifestTaskFactory extends FrontendTaskFactory<Object> {
 	private static final long serialVersionUID = 1L;
 
@@ -67,10 +123,34 @@ public class PatchAppxManifestTaskFactory extends FrontendTaskFactory<Object> {
 			public String processorArchitectureOption;
 			@SakerInput(value = "Version")
 			public String versionOption;
+			@SakerInput(value = "IdentityName")
+			public String identityNameOption;
+			@SakerInput(value = "Publisher")
+			public String publisherOption;
+
+			@SakerInput(value = "DisplayName")
+			public String displayNameOption;
+			@SakerInput(value = "PublisherDisplayName")
+			public String publisherDisplayNameOption;
+			@SakerInput(value = "Description")
+			public String descriptionOption;
+
+			@SakerInput(value = "TargetDeviceFamilies")
+			public Collection<TargetDeviceFamilyTaskOption> targetDeviceFamiliesOption;
+
+			@SakerInput(value = "AddCapabilities")
+			public Collection<String> addCapabilitiesOption;
+			@SakerInput(value = "AddDeviceCapabilities")
+			public Collection<String> addDeviceCapabilitiesOption;
+			@SakerInput(value = "RemoveCapabilities")
+			public Collection<String> removeCapabilitiesOption;
 
 			@SakerInput(value = "Output")
 			public SakerPath outputOption;
 
+			@SakerInput(value = "ContentHash")
+			public boolean contentHash = false;
+
 			@Override
 			public Object run(TaskContext taskcontext) throws Exception {
 				if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
@@ -100,11 +180,54 @@ public class PatchAppxManifestTaskFactory extends FrontendTaskFactory<Object> {
 									+ ". Possible values: " + StringUtils.toStringJoin(", ", KNOWN_ARCHITECTURES));
 				}
 
+				AppxManifestPatch patch = new AppxManifestPatch();
+				patch.setIdentityAttribute(AppxManifestPatch.IDENTITY_PROCESSOR_ARCHITECTURE,
+						processorArchitectureOption);
+				patch.setIdentityAttribute(AppxManifestPatch.IDENTITY_VERSION, versionOption);
+				patch.setIdentityAttribute(AppxManifestPatch.IDENTITY_NAME, identityNameOption);
+				patch.setIdentityAttribute(AppxManifestPatch.IDENTITY_PUBLISHER, publisherOption);
+				patch.setPropertyText("DisplayName", displayNameOption);
+				patch.setPropertyText("PublisherDisplayName", publisherDisplayNameOption);
+				patch.setPropertyText("Description", descriptionOption);
+				if (targetDeviceFamiliesOption != null) {
+					for (TargetDeviceFamilyTaskOption tdf : targetDeviceFamiliesOption) {
+						if (tdf == null) {
+							continue;
+						}
+						String name = tdf.getName();
+						if (ObjectUtils.isNullOrEmpty(name)) {
+							throw new IllegalArgumentException("TargetDeviceFamily Name is not specified.");
+						}
+						patch.setTargetDeviceFamily(name, tdf.getMinVersion(), tdf.getMaxVersionTested());
+					}
+				}
+				//the removals are applied last, so they take precedence
+				if (addCapabilitiesOption != null) {
+					for (String cap : addCapabilitiesOption) {
+						if (!ObjectUtils.isNullOrEmpty(cap)) {
+							patch.addCapability(cap);
+						}
+					}
+				}
+				if (addDeviceCapabilitiesOption != null) {
+					for (String cap : addDeviceCapabilitiesOption) {
+						if (!ObjectUtils.isNullOrEmpty(cap)) {
+							patch.addDeviceCapability(cap);
+						}
+					}
+				}
+				if (removeCapabilitiesOption != null) {
+					for (String cap : removeCapabilitiesOption) {
+						if (!ObjectUtils.isNullOrEmpty(cap)) {
+							patch.removeCapability(cap);
+						}
+					}
+				}
+
 				PatchAppxManifestWorkerTaskIdentifier workertaskid = new PatchAppxManifestWorkerTaskIdentifier(
 						outputpath);
-				PatchAppxManifestWorkerTaskFactory workertask = new PatchAppxManifestWorkerTaskFactory(file);
-				workertask.setProcessorArchitecture(processorArchitectureOption);
-				workertask.setVersion(versionOption);
+				PatchAppxManifestWorkerTaskFactory workertask = new PatchAppxManifestWorkerTaskFactory(file, patch);
+				workertask.setContentHash(contentHash);
 
 				taskcontext.startTask(workertaskid, workertask, null);
 
@@ -115,4 +238,22 @@ public class PatchAppxManifestTaskFactory extends FrontendTaskFactory<Object> {
 		};
 	}
 
+	@NestTypeInformation(qualifiedName = "AppxTargetDeviceFamily")
+	@NestInformation("Describes the versions of a target device family in an AppxManifest.xml.")
+	@NestFieldInformation(value = "Name",
+			type = @NestTypeUsage(String.class),
+			info = @NestInformation("The name of the device family. E.g. Windows.Universal or Windows.Desktop."))
+	@NestFieldInformation(value = "MinVersion",
+			type = @NestTypeUsage(String.class),
+			info = @NestInformation("The minimum version of the device family that the package supports."))
+	@NestFieldInformation(value = "MaxVersionTested",
+			type = @NestTypeUsage(String.class),
+			info = @NestInformation("The maximum version of the device family that the package was tested against."))
+	public interface TargetDeviceFamilyTaskOption {
+		public String getName();
+
+		public String getMinVersion();
+
+		public String getMaxVersionTested();
+	}
 }
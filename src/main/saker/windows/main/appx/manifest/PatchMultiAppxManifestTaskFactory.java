@@ -0,0 +1,152 @@
+package saker.windows.main.appx.manifest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import saker.build.file.path.SakerPath;
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.runtime.execution.SakerLog;
+import saker.build.task.ParameterizableTask;
+import saker.build.task.TaskContext;
+import saker.build.task.utils.SimpleStructuredObjectTaskResult;
+import saker.build.task.utils.annot.SakerInput;
+import saker.build.task.utils.dependencies.EqualityTaskOutputChangeDetector;
+import saker.build.thirdparty.saker.util.StringUtils;
+import saker.build.trace.BuildTrace;
+import saker.nest.scriptinfo.reflection.annot.NestFieldInformation;
+import saker.nest.scriptinfo.reflection.annot.NestInformation;
+import saker.nest.scriptinfo.reflection.annot.NestParameterInformation;
+import saker.nest.scriptinfo.reflection.annot.NestTaskInformation;
+import saker.nest.scriptinfo.reflection.annot.NestTypeInformation;
+import saker.nest.scriptinfo.reflection.annot.NestTypeUsage;
+import saker.nest.utils.FrontendTaskFactory;
+import saker.std.api.file.location.FileLocation;
+import saker.std.main.file.option.FileLocationTaskOption;
+import saker.std.main.file.utils.TaskOptionUtils;
+import saker.windows.impl.appx.manifest.PatchAppxManifestVariant;
+import saker.windows.impl.appx.manifest.PatchMultiAppxManifestWorkerTaskFactory;
+import saker.windows.main.TaskDocs.DocAppxProcessorArchitecture;
+import saker.windows.main.TaskDocs.DocPatchAppxManifestWorkerTaskOutput;
+
+@NestTaskInformation(returnType = @NestTypeUsage(value = List.class,
+		elementTypes = DocPatchAppxManifestWorkerTaskOutput.class))
+@NestInformation("Creates multiple patched variants of the specified AppxManifest.xml.\n"
+		+ "The task works the same way as " + PatchAppxManifestTaskFactory.TASK_NAME + "(), but creates an output "
+		+ "manifest for each specified variant. The input manifest is only parsed once.\n"
+		+ "The task returns the outputs in the same order as the Variants parameter.")
+
+@NestParameterInformation(value = "AppxManifest",
+		aliases = { "", "Manifest" },
+		required = true,
+		type = @NestTypeUsage(FileLocationTaskOption.class),
+		info = @NestInformation("The input AppxManifest.xml file that should be patched."))
+@NestParameterInformation(value = "Variants",
+		required = true,
+		type = @NestTypeUsage(value = Collection.class,
+				elementTypes = PatchMultiAppxManifestTaskFactory.PatchVariantTaskOption.class),
+		info = @NestInformation("The variants of the manifest that should be created.\n"
+				+ "Each variant specifies the values to set in the manifest, and optionally its output path."))
+@NestParameterInformation(value = "ContentHash",
+		type = @NestTypeUsage(boolean.class),
+		info = @NestInformation("Specifies if the content descriptor of the output should be based on the hash of "
+				+ "the patched contents.\n"
+				+ "By default, any modification of the input manifest causes the dependent tasks to rerun. "
+				+ "If this parameter is set to true, the dependent tasks are only rerun if the patched output "
+				+ "actually changes.\n"
+				+ "The default is false."))
+public class PatchMultiAppxManifestTaskFactory extends FrontendTaskFactory<Object> {
+	private static final long serialVersionUID = 1L;
+
+	public static final String TASK_NAME = "saker.appx.manifest.patch.multi";
+
+	@Override
+	public ParameterizableTask<? extends Object> createTask(ExecutionContext executioncontext) {
+		return new ParameterizableTask<Object>() {
+
+			@SakerInput(value = { "", "Manifest", "AppxManifest" }, required = true)
+			public FileLocationTaskOption manifestOption;
+
+			@SakerInput(value = "Variants", required = true)
+			public Collection<PatchVariantTaskOption> variantsOption;
+
+			@SakerInput(value = "ContentHash")
+			public boolean contentHash = false;
+
+			@Override
+			public Object run(TaskContext taskcontext) throws Exception {
+				if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
+					BuildTrace.classifyTask(BuildTrace.CLASSIFICATION_FRONTEND);
+				}
+
+				FileLocation file = TaskOptionUtils.toFileLocation(manifestOption, taskcontext);
+
+				List<PatchAppxManifestVariant> variants = new ArrayList<>();
+				for (PatchVariantTaskOption variantoption : variantsOption) {
+					if (variantoption == null) {
+						continue;
+					}
+					String processorarchitecture = variantoption.getProcessorArchitecture();
+					String version = variantoption.getVersion();
+					SakerPath output = variantoption.getOutput();
+
+					SakerPath outputpath;
+					if (output != null) {
+						TaskOptionUtils.requireForwardRelativePathWithFileName(output, "Output");
+						outputpath = SakerPath.valueOf(TASK_NAME).resolve(output);
+					} else {
+						outputpath = SakerPath.valueOf(TASK_NAME);
+						if (processorarchitecture != null) {
+							outputpath = outputpath.resolve(processorarchitecture);
+						}
+						if (version != null) {
+							outputpath = outputpath.resolve(version);
+						}
+						outputpath = outputpath.resolve("AppxManifest.xml");
+					}
+
+					if (processorarchitecture != null
+							&& !PatchAppxManifestTaskFactory.KNOWN_ARCHITECTURES.contains(processorarchitecture)) {
+						SakerLog.warning().taskScriptPosition(taskcontext)
+								.println("Unrecognized processor architecture value: " + processorarchitecture
+										+ ". Possible values: " + StringUtils.toStringJoin(", ",
+												PatchAppxManifestTaskFactory.KNOWN_ARCHITECTURES));
+					}
+					variants.add(new PatchAppxManifestVariant(outputpath, processorarchitecture, version));
+				}
+
+				PatchMultiAppxManifestWorkerTaskFactory workertask = new PatchMultiAppxManifestWorkerTaskFactory(
+						file, variants);
+				workertask.setContentHash(contentHash);
+				taskcontext.startTask(workertask, workertask, null);
+
+				SimpleStructuredObjectTaskResult result = new SimpleStructuredObjectTaskResult(workertask);
+				taskcontext.reportSelfTaskOutputChangeDetector(new EqualityTaskOutputChangeDetector(result));
+				return result;
+			}
+		};
+	}
+
+	@NestTypeInformation(qualifiedName = "PatchAppxManifestVariant")
+	@NestInformation("Describes a patched variant of an AppxManifest.xml.")
+	@NestFieldInformation(value = "ProcessorArchitecture",
+			type = @NestTypeUsage(DocAppxProcessorArchitecture.class),
+			info = @NestInformation("Specified the value that should be set for the "
+					+ "Package/Identity:ProcessorArchitecture attribute."))
+	@NestFieldInformation(value = "Version",
+			type = @NestTypeUsage(String.class),
+			info = @NestInformation("Specified the value that should be set for the "
+					+ "Package/Identity:Version attribute."))
+	@NestFieldInformation(value = "Output",
+			type = @NestTypeUsage(SakerPath.class),
+			info = @NestInformation("A forward relative output path that specifies the output location of the "
+					+ "patched manifest file of the variant.\n"
+					+ "If not specified, the output location is determined by the other fields of the variant."))
+	public interface PatchVariantTaskOption {
+		public String getProcessorArchitecture();
+
+		public String getVersion();
+
+		public SakerPath getOutput();
+	}
+}
@@ -0,0 +1,149 @@
+package testing.saker.windows.appx;
+
+import java.util.Map;
+
+import saker.windows.impl.appx.AppxRegistrationResult;
+import saker.windows.impl.thirdparty.org.json.JSONObject;
+import saker.windows.impl.thirdparty.org.json.JSONTokener;
+import testing.saker.SakerTest;
+import testing.saker.SakerTestCase;
+
+/**
+ * Tests the interpretation of the registration script outputs using recorded <code>ConvertTo-Json -Compress</code>
+ * outputs of the script.
+ */
+@SakerTest
+public class AppxRegistrationResultTest extends SakerTestCase {
+	private static final String MANIFEST_PATH = "C:\\build\\Example.App\\AppxManifest.xml";
+	private static final String IDENTITY_NAME = "Example.App";
+	private static final String PACKAGE_FULL_NAME = "Example.App_1.0.0.0_x64__8wekyb3d8bbwe";
+
+	private static final String OUTPUT_ALREADY_INSTALLED = "Add-AppxPackage : Deployment failed with HRESULT: "
+			+ "0x80073CFB, The provided package is already installed, and reinstallation of the package was blocked. "
+			+ "Check the AppXDeployment-Server event log for details.\\r\\nDeployment of package "
+			+ PACKAGE_FULL_NAME + " was blocked because the provided package has the same identity as an "
+			+ "already-installed package but the contents are different.";
+	private static final String OUTPUT_DEVELOPER_MODE = "Add-AppxPackage : Deployment failed with HRESULT: "
+			+ "0x80073CFF, To install this application you need either a Windows developer license or a "
+			+ "sideloading-enabled system.";
+	private static final String OUTPUT_ACCESS_DENIED = "Add-AppxPackage : Deployment failed with HRESULT: "
+			+ "0x80070005, Access is denied.";
+
+	private static final String RECORDED_SUCCESS = "{\"Stage\":\"register\",\"Registered\":true,"
+			+ "\"RegisterOutput\":null,\"Output\":null,\"IdentityName\":null,\"PackageFullName\":null}";
+	private static final String RECORDED_REINSTALLED = "{\"Stage\":\"reregister\",\"Registered\":true,"
+			+ "\"RegisterOutput\":\"" + OUTPUT_ALREADY_INSTALLED + "\",\"Output\":null,\"IdentityName\":\""
+			+ IDENTITY_NAME + "\",\"PackageFullName\":\"" + PACKAGE_FULL_NAME + "\"}";
+	private static final String RECORDED_DEVELOPER_MODE = "{\"Stage\":\"register\",\"Registered\":false,"
+			+ "\"RegisterOutput\":\"" + OUTPUT_DEVELOPER_MODE
+			+ "\",\"Output\":null,\"IdentityName\":null,\"PackageFullName\":null}";
+	private static final String RECORDED_IDENTITY_NAME_FAILED = "{\"Stage\":\"identity\",\"Registered\":false,"
+			+ "\"RegisterOutput\":\"" + OUTPUT_ALREADY_INSTALLED
+			+ "\",\"Output\":\"Identity Name not found in AppxManifest.xml.\",\"IdentityName\":null,"
+			+ "\"PackageFullName\":null}";
+	private static final String RECORDED_IDENTITY_PACKAGE_FAILED = "{\"Stage\":\"identity\",\"Registered\":false,"
+			+ "\"RegisterOutput\":\"" + OUTPUT_ALREADY_INSTALLED
+			+ "\",\"Output\":\"Found 0 installed packages with name: " + IDENTITY_NAME + "\",\"IdentityName\":\""
+			+ IDENTITY_NAME + "\",\"PackageFullName\":null}";
+	private static final String RECORDED_REMOVE_FAILED = "{\"Stage\":\"remove\",\"Registered\":false,"
+			+ "\"RegisterOutput\":\"" + OUTPUT_ALREADY_INSTALLED
+			+ "\",\"Output\":\"Remove-AppxPackage : Deployment failed with HRESULT: 0x80073CFA, Removal failed.\","
+			+ "\"IdentityName\":\"" + IDENTITY_NAME + "\",\"PackageFullName\":\"" + PACKAGE_FULL_NAME + "\"}";
+	private static final String RECORDED_REREGISTER_FAILED = "{\"Stage\":\"reregister\",\"Registered\":false,"
+			+ "\"RegisterOutput\":\"" + OUTPUT_ALREADY_INSTALLED + "\",\"Output\":\"" + OUTPUT_ACCESS_DENIED
+			+ "\",\"IdentityName\":\"" + IDENTITY_NAME + "\",\"PackageFullName\":\"" + PACKAGE_FULL_NAME + "\"}";
+	private static final String RECORDED_NO_REINSTALL_ALREADY_INSTALLED = "{\"Stage\":\"register\","
+			+ "\"Registered\":false,\"RegisterOutput\":\"" + OUTPUT_ALREADY_INSTALLED
+			+ "\",\"Output\":null,\"IdentityName\":null,\"PackageFullName\":null}";
+	private static final String RECORDED_NO_REINSTALL_ACCESS_DENIED = "{\"Stage\":\"register\","
+			+ "\"Registered\":false,\"RegisterOutput\":\"" + OUTPUT_ACCESS_DENIED
+			+ "\",\"Output\":null,\"IdentityName\":null,\"PackageFullName\":null}";
+	/**
+	 * The output of the parallel registration script if a registration script failed unexpectedly.
+	 */
+	private static final String RECORDED_PARALLEL_FAILED = "{\"Stage\":\"register\",\"Registered\":false,"
+			+ "\"RegisterOutput\":\"Unexpected registration output: \"}";
+
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		AppxRegistrationResult success = parse(RECORDED_SUCCESS);
+		assertTrue(success.isRegistered());
+		assertTrue(!success.isReinstalled());
+		assertEquals(success.getRegisterHResult(), null);
+		assertEquals(success.getRegisterOutput(), null);
+		assertEquals(success.getPackageFullName(), null);
+		assertEquals(success.getFailureMessage(MANIFEST_PATH, true), null);
+		assertEquals(success.getFailureMessage(MANIFEST_PATH, false), null);
+
+		AppxRegistrationResult reinstalled = parse(RECORDED_REINSTALLED);
+		assertTrue(reinstalled.isRegistered());
+		assertTrue(reinstalled.isReinstalled());
+		assertEquals(reinstalled.getRegisterHResult(), AppxRegistrationResult.HRESULT_ALREADY_REGISTERED);
+		assertEquals(reinstalled.getIdentityName(), IDENTITY_NAME);
+		assertEquals(reinstalled.getPackageFullName(), PACKAGE_FULL_NAME);
+		assertEquals(reinstalled.getOutput(), null);
+		assertEquals(reinstalled.getFailureMessage(MANIFEST_PATH, true), null);
+
+		//the reinstallation is skipped by the script, as it doesn't help
+		AppxRegistrationResult developermode = parse(RECORDED_DEVELOPER_MODE);
+		assertTrue(!developermode.isRegistered());
+		assertTrue(!developermode.isReinstalled());
+		assertEquals(developermode.getStage(), AppxRegistrationResult.STAGE_REGISTER);
+		assertEquals(developermode.getRegisterHResult(), AppxRegistrationResult.HRESULT_DEVELOPER_MODE_NOT_ENABLED);
+		assertFailureMessage(developermode, true, "make sure developer mode is enabled");
+		assertFailureMessage(developermode, false, "make sure developer mode is enabled");
+
+		AppxRegistrationResult identitynamefailed = parse(RECORDED_IDENTITY_NAME_FAILED);
+		assertTrue(!identitynamefailed.isRegistered());
+		assertTrue(!identitynamefailed.isReinstalled());
+		assertEquals(identitynamefailed.getFailureMessage(MANIFEST_PATH, true),
+				"Failed to determine Identity Name from AppxManifest.xml: " + MANIFEST_PATH);
+
+		AppxRegistrationResult identitypackagefailed = parse(RECORDED_IDENTITY_PACKAGE_FAILED);
+		assertEquals(identitypackagefailed.getFailureMessage(MANIFEST_PATH, true),
+				"Failed to determine appx package full name for: " + IDENTITY_NAME);
+
+		AppxRegistrationResult removefailed = parse(RECORDED_REMOVE_FAILED);
+		assertTrue(!removefailed.isRegistered());
+		assertTrue(!removefailed.isReinstalled());
+		assertEquals(removefailed.getPackageFullName(), PACKAGE_FULL_NAME);
+		assertEquals(removefailed.getFailureMessage(MANIFEST_PATH, true),
+				"Failed to remove appx package: " + PACKAGE_FULL_NAME);
+
+		AppxRegistrationResult reregisterfailed = parse(RECORDED_REREGISTER_FAILED);
+		assertTrue(!reregisterfailed.isRegistered());
+		assertTrue(!reregisterfailed.isReinstalled());
+		assertEquals(reregisterfailed.getRegisterHResult(), AppxRegistrationResult.HRESULT_ALREADY_REGISTERED);
+		assertTrue(reregisterfailed.getOutput().contains("0x80070005"));
+		assertEquals(reregisterfailed.getFailureMessage(MANIFEST_PATH, true),
+				"Failed to register appx after removing it: " + MANIFEST_PATH);
+
+		AppxRegistrationResult noreinstallregistered = parse(RECORDED_NO_REINSTALL_ALREADY_INSTALLED);
+		assertTrue(!noreinstallregistered.isRegistered());
+		assertTrue(!noreinstallregistered.isReinstalled());
+		assertEquals(noreinstallregistered.getFailureMessage(MANIFEST_PATH, false),
+				"Appx is already registered in developement mode on this computer: " + MANIFEST_PATH);
+
+		AppxRegistrationResult noreinstallfailed = parse(RECORDED_NO_REINSTALL_ACCESS_DENIED);
+		assertEquals(noreinstallfailed.getRegisterHResult(), "0x80070005");
+		assertEquals(noreinstallfailed.getFailureMessage(MANIFEST_PATH, false),
+				"Unknown deployment error, see output for more info.");
+
+		AppxRegistrationResult parallelfailed = parse(RECORDED_PARALLEL_FAILED);
+		assertTrue(!parallelfailed.isRegistered());
+		assertEquals(parallelfailed.getOutput(), null);
+		assertEquals(parallelfailed.getRegisterHResult(), null);
+		assertEquals(parallelfailed.getFailureMessage(MANIFEST_PATH, true),
+				"Failed to register appx: " + MANIFEST_PATH);
+	}
+
+	private static AppxRegistrationResult parse(String recordedoutput) {
+		return new AppxRegistrationResult((JSONObject) new JSONTokener(recordedoutput).nextValue());
+	}
+
+	private static void assertFailureMessage(AppxRegistrationResult result, boolean allowreinstall,
+			String expectedpart) {
+		String message = result.getFailureMessage(MANIFEST_PATH, allowreinstall);
+		assertTrue(message != null && message.contains(expectedpart));
+	}
+}
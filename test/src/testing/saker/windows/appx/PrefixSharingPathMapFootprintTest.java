@@ -0,0 +1,108 @@
+package testing.saker.windows.appx;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import saker.build.file.path.SakerPath;
+import saker.windows.impl.appx.PrefixSharingPathMap;
+import testing.saker.SakerTest;
+import testing.saker.SakerTestCase;
+
+/**
+ * Compares the serialized size and the estimated heap usage of {@link PrefixSharingPathMap} to a {@link TreeMap} with
+ * the same packaging-like mappings.
+ */
+@SakerTest
+public class PrefixSharingPathMapFootprintTest extends SakerTestCase {
+	private static final int ENTRY_COUNT = 20000;
+	private static final int HEAP_SAMPLE_MAP_COUNT = 5;
+	private static final String[] DIRECTORY_NAMES = { "assets", "images", "scale-200", "x64", "lib", "res", "strings",
+			"en-us", "fonts", "data" };
+	private static final String OUTPUT_DIRECTORY = "c:/Users/dev/project/build/saker.java.compile/default/mirror/";
+
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		List<String> relativepaths = generateRelativePaths(new Random(7));
+
+		TreeMap<SakerPath, SakerPath> treemap = createTreeMap(relativepaths);
+		PrefixSharingPathMap prefixmap = PrefixSharingPathMap.create(treemap);
+		int treemapserialsize = getSerializedSize(treemap);
+		int prefixmapserialsize = getSerializedSize(prefixmap);
+		System.out.println("Serialized size of " + ENTRY_COUNT + " entries: TreeMap: " + treemapserialsize
+				+ " bytes, PrefixSharingPathMap: " + prefixmapserialsize + " bytes");
+		assertTrue(prefixmapserialsize < treemapserialsize);
+
+		long treemapheap = estimateHeapUsage(() -> createTreeMap(relativepaths));
+		long prefixmapheap = estimateHeapUsage(() -> PrefixSharingPathMap.create(createTreeMap(relativepaths)));
+		System.out.println("Estimated heap usage of " + ENTRY_COUNT + " entries: TreeMap: " + treemapheap
+				+ " bytes, PrefixSharingPathMap: " + prefixmapheap + " bytes");
+		//the estimate depends on the garbage collector, so only a significant difference is asserted
+		assertTrue(prefixmapheap * 2 < treemapheap);
+	}
+
+	private static List<String> generateRelativePaths(Random random) {
+		List<String> result = new ArrayList<>(ENTRY_COUNT);
+		for (int i = 0; i < ENTRY_COUNT; i++) {
+			StringBuilder sb = new StringBuilder();
+			int depth = 3 + random.nextInt(4);
+			for (int j = 0; j < depth; j++) {
+				sb.append(DIRECTORY_NAMES[random.nextInt(DIRECTORY_NAMES.length)]).append('/');
+			}
+			sb.append("file").append(i).append(".bin");
+			result.add(sb.toString());
+		}
+		return result;
+	}
+
+	private static TreeMap<SakerPath, SakerPath> createTreeMap(List<String> relativepaths) {
+		TreeMap<SakerPath, SakerPath> result = new TreeMap<>();
+		for (String path : relativepaths) {
+			//new strings, so the maps don't share them through the argument list
+			result.put(SakerPath.valueOf(new String(path)), SakerPath.valueOf(OUTPUT_DIRECTORY + path));
+		}
+		return result;
+	}
+
+	private static int getSerializedSize(NavigableMap<SakerPath, SakerPath> map) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(baos)) {
+			out.writeObject(map);
+		}
+		return baos.size();
+	}
+
+	/**
+	 * Estimates the average retained heap size of the created objects by comparing the used memory before and after
+	 * creating them.
+	 */
+	private static long estimateHeapUsage(Supplier<?> factory) {
+		Object[] retained = new Object[HEAP_SAMPLE_MAP_COUNT];
+		long before = getUsedMemory();
+		for (int i = 0; i < retained.length; i++) {
+			retained[i] = factory.get();
+		}
+		long after = getUsedMemory();
+		long result = (after - before) / retained.length;
+		//keep the objects reachable until the measurement is done
+		if (retained[retained.length - 1] == null) {
+			throw new AssertionError();
+		}
+		return result;
+	}
+
+	private static long getUsedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,245 @@
+package testing.saker.windows.appx;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import saker.build.file.path.SakerPath;
+import saker.windows.impl.appx.PrefixSharingPathMap;
+import testing.saker.SakerTest;
+import testing.saker.SakerTestCase;
+
+/**
+ * Randomized test that checks that {@link PrefixSharingPathMap} behaves the same way as a {@link TreeMap} with the
+ * same contents, including its views and serialized forms.
+ */
+@SakerTest
+public class PrefixSharingPathMapTest extends SakerTestCase {
+	private static final long[] SEEDS = { 1, 2, 3 };
+	private static final String[] NAMES = { "a", "b", "assets", "x64", "img", "c.png", "d" };
+	private static final int ENTRY_COUNT = 30;
+	/**
+	 * The maximum number of nested views that are compared.
+	 */
+	private static final int MAX_VIEW_DEPTH = 2;
+
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		for (long seed : SEEDS) {
+			testSeed(new Random(seed));
+		}
+	}
+
+	private static void testSeed(Random random) throws Exception {
+		TreeMap<SakerPath, SakerPath> expected = new TreeMap<>();
+		List<SakerPath> probes = new ArrayList<>();
+		for (int i = 0; i < ENTRY_COUNT * 2; i++) {
+			String relative = randomRelativePath(random);
+			SakerPath key = SakerPath.valueOf(relative);
+			probes.add(key);
+			//every other probe is not in the map
+			if (i % 2 == 0) {
+				expected.put(key, SakerPath.valueOf((random.nextBoolean() ? "c:/build/dir/" : "wd:/x/") + relative));
+			}
+		}
+		expected.put(SakerPath.valueOf("/usr/a"), SakerPath.valueOf("/"));
+		probes.add(SakerPath.valueOf("/usr/a"));
+		probes.add(SakerPath.valueOf("c:/z"));
+		probes.add(SakerPath.EMPTY);
+
+		PrefixSharingPathMap map = PrefixSharingPathMap.create(expected);
+		assertMapEquals(map, expected, probes, 0);
+		//unsorted source
+		assertMapEquals(PrefixSharingPathMap.create(new HashMap<>(expected)), expected, probes, 0);
+
+		SakerPath viewbound = probes.get(4);
+		List<Object> deserialized = roundTrip(map, map.descendingMap().headMap(viewbound, true));
+		assertMapEquals(deserialized.get(0), expected, probes, 0);
+		assertMapEquals(deserialized.get(1), expected.descendingMap().headMap(viewbound, true), probes, 0);
+
+		testSerializationFormats(expected, probes);
+		testFingerprint(expected, probes);
+	}
+
+	/**
+	 * Tests the round trip of the maps that are serialized in the different formats.
+	 */
+	private static void testSerializationFormats(TreeMap<SakerPath, SakerPath> source, List<SakerPath> probes)
+			throws Exception {
+		TreeMap<SakerPath, SakerPath> valuesbased = new TreeMap<>();
+		TreeMap<SakerPath, SakerPath> keysbased = new TreeMap<>();
+		TreeMap<SakerPath, SakerPath> explicit = new TreeMap<>();
+		for (SakerPath key : source.keySet()) {
+			if (key.getRoot() != null) {
+				continue;
+			}
+			SakerPath absolute = SakerPath.valueOf("c:/out/dir/" + key);
+			valuesbased.put(key, absolute);
+			keysbased.put(absolute, key);
+			explicit.put(key, SakerPath.valueOf("d:/" + key));
+		}
+		//not based on the same path as the others
+		explicit.put(SakerPath.valueOf("zz"), SakerPath.valueOf("c:/other/zz"));
+
+		for (TreeMap<SakerPath, SakerPath> expected : Arrays.asList(valuesbased, keysbased, explicit)) {
+			PrefixSharingPathMap map = PrefixSharingPathMap.create(expected);
+			List<Object> deserialized = roundTrip(map, map.tailMap(probes.get(2), false));
+			assertMapEquals(deserialized.get(0), expected, probes, 1);
+			assertMapEquals(deserialized.get(1), expected.tailMap(probes.get(2), false), probes, 1);
+			assertEquals(deserialized.get(0), map);
+		}
+	}
+
+	/**
+	 * Tests that maps with equal contents have the same fingerprint, are equal, and have the same hash code.
+	 */
+	private static void testFingerprint(TreeMap<SakerPath, SakerPath> expected, List<SakerPath> probes)
+			throws Exception {
+		PrefixSharingPathMap sorted = PrefixSharingPathMap.create(expected);
+		PrefixSharingPathMap unsorted = PrefixSharingPathMap.create(new HashMap<>(expected));
+		PrefixSharingPathMap deserialized = (PrefixSharingPathMap) roundTrip(sorted).get(0);
+		//same contents in different order
+		PrefixSharingPathMap descending = (PrefixSharingPathMap) sorted.descendingMap();
+		for (PrefixSharingPathMap map : Arrays.asList(unsorted, deserialized, descending)) {
+			assertTrue(Arrays.equals(sorted.getFingerprint(), map.getFingerprint()));
+			assertEquals(sorted, map);
+			assertEquals(map, sorted);
+			assertEquals(sorted.hashCode(), map.hashCode());
+		}
+
+		SakerPath bound = probes.get(3);
+		//views with the same contents as a separately created map
+		PrefixSharingPathMap headview = (PrefixSharingPathMap) sorted.headMap(bound, true);
+		PrefixSharingPathMap headcopy = PrefixSharingPathMap.create(new TreeMap<>(expected.headMap(bound, true)));
+		assertTrue(Arrays.equals(headview.getFingerprint(), headcopy.getFingerprint()));
+		assertEquals(headview, headcopy);
+		assertEquals(headview.hashCode(), headcopy.hashCode());
+
+		TreeMap<SakerPath, SakerPath> modified = new TreeMap<>(expected);
+		modified.put(expected.firstKey(), SakerPath.valueOf("q/q"));
+		PrefixSharingPathMap modifiedmap = PrefixSharingPathMap.create(modified);
+		assertTrue(!sorted.equals(modifiedmap));
+		assertTrue(!Arrays.equals(sorted.getFingerprint(), modifiedmap.getFingerprint()));
+		assertEquals(headview.equals(modifiedmap.headMap(bound, true)),
+				expected.headMap(bound, true).equals(modified.headMap(bound, true)));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void assertMapEquals(Object actualobj, NavigableMap<SakerPath, SakerPath> expected,
+			List<SakerPath> probes, int depth) {
+		NavigableMap<SakerPath, SakerPath> actual = (NavigableMap<SakerPath, SakerPath>) actualobj;
+		assertEquals(actual, expected);
+		assertEquals(expected, actual);
+		assertEquals(actual.hashCode(), expected.hashCode());
+		assertEquals(actual.size(), expected.size());
+		assertEquals(new ArrayList<>(actual.entrySet()), new ArrayList<>(expected.entrySet()));
+		assertEquals(new ArrayList<>(actual.keySet()), new ArrayList<>(expected.keySet()));
+		assertEquals(new ArrayList<>(actual.descendingKeySet()), new ArrayList<>(expected.descendingKeySet()));
+		assertEquals(actual.firstEntry(), expected.firstEntry());
+		assertEquals(actual.lastEntry(), expected.lastEntry());
+		for (SakerPath probe : probes) {
+			assertEquals(actual.get(probe), expected.get(probe));
+			assertEquals(actual.containsKey(probe), expected.containsKey(probe));
+			assertEquals(actual.lowerEntry(probe), expected.lowerEntry(probe));
+			assertEquals(actual.floorEntry(probe), expected.floorEntry(probe));
+			assertEquals(actual.ceilingEntry(probe), expected.ceilingEntry(probe));
+			assertEquals(actual.higherEntry(probe), expected.higherEntry(probe));
+			assertEquals(actual.navigableKeySet().ceiling(probe), expected.navigableKeySet().ceiling(probe));
+		}
+		if (depth >= MAX_VIEW_DEPTH) {
+			return;
+		}
+		assertMapEquals(actual.descendingMap(), expected.descendingMap(), probes, depth + 1);
+		//only some of the probes are used as view bounds to keep the run time reasonable
+		int boundstep = depth == 0 ? 3 : 20;
+		for (int i = 0; i < probes.size(); i += boundstep) {
+			SakerPath bound = probes.get(i);
+			for (boolean inclusive : new boolean[] { true, false }) {
+				assertViewEquals(() -> actual.headMap(bound, inclusive), () -> expected.headMap(bound, inclusive),
+						probes, depth);
+				assertViewEquals(() -> actual.tailMap(bound, inclusive), () -> expected.tailMap(bound, inclusive),
+						probes, depth);
+			}
+			for (int j = 0; j < probes.size(); j += boundstep) {
+				SakerPath to = probes.get(j);
+				if (compare(expected, bound, to) > 0) {
+					try {
+						actual.subMap(bound, true, to, false);
+						throw new AssertionError("Expected exception for inverted bounds: " + bound + " - " + to);
+					} catch (IllegalArgumentException e) {
+					}
+					continue;
+				}
+				assertViewEquals(() -> actual.subMap(bound, true, to, false),
+						() -> expected.subMap(bound, true, to, false), probes, depth);
+			}
+		}
+	}
+
+	/**
+	 * Compares the views if the bounds are in the range of the expected map.
+	 * <p>
+	 * The views of {@link TreeMap} throw {@link IllegalArgumentException} for bounds that are out of the range of the
+	 * view, while the views of {@link PrefixSharingPathMap} accept them.
+	 */
+	private static void assertViewEquals(ViewSupplier actual, ViewSupplier expected, List<SakerPath> probes,
+			int depth) {
+		NavigableMap<SakerPath, SakerPath> expectedview;
+		try {
+			expectedview = expected.get();
+		} catch (IllegalArgumentException e) {
+			return;
+		}
+		assertMapEquals(actual.get(), expectedview, probes, depth + 1);
+	}
+
+	private static int compare(NavigableMap<SakerPath, SakerPath> map, SakerPath l, SakerPath r) {
+		if (map.comparator() == null) {
+			return l.compareTo(r);
+		}
+		return map.comparator().compare(l, r);
+	}
+
+	@FunctionalInterface
+	private interface ViewSupplier {
+		public NavigableMap<SakerPath, SakerPath> get();
+	}
+
+	private static List<Object> roundTrip(Object... objects) throws IOException, ClassNotFoundException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(baos)) {
+			for (Object o : objects) {
+				out.writeObject(o);
+			}
+		}
+		List<Object> result = new ArrayList<>();
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+			for (int i = 0; i < objects.length; i++) {
+				result.add(in.readObject());
+			}
+		}
+		return result;
+	}
+
+	private static String randomRelativePath(Random random) {
+		StringBuilder sb = new StringBuilder();
+		int depth = 1 + random.nextInt(4);
+		for (int i = 0; i < depth; i++) {
+			if (i > 0) {
+				sb.append('/');
+			}
+			sb.append(NAMES[random.nextInt(NAMES.length)]);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,153 @@
+package testing.saker.windows.powershell;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import saker.windows.impl.powershell.PowershellHost;
+import saker.windows.impl.powershell.PowershellResponse;
+import testing.saker.SakerTest;
+import testing.saker.SakerTestCase;
+
+/**
+ * Tests the framing of the PowerShell host communication using a POSIX shell script that stands in for the PowerShell
+ * process.
+ */
+@SakerTest
+public class PowershellHostProtocolTest extends SakerTestCase {
+	private static final long RESPONSE_TIMEOUT_MILLIS = 2000;
+	private static final long SLOW_COMMAND_MILLIS = 1000;
+
+	/**
+	 * Stand-in for the host process that implements the same framing as the host script in {@link PowershellHost}.
+	 * <p>
+	 * The commands are sh scripts that are run in the host shell. Their standard output is the payload of the
+	 * response, and the file descriptor 3 is the output stream of the host, so they can print unrelated output to it.
+	 */
+	private static final String STANDIN_HOST_SCRIPT = String.join("\n", //
+			"out=$(mktemp)", //
+			"trap 'rm -f \"$out\"' EXIT", //
+			"while IFS=' ' read -r id req arg; do", //
+			"	status=ok", //
+			"	case \"$req\" in", //
+			"		ping) printf 'pong' > \"$out\" ;;", //
+			"		exec)", //
+			"			cmd=$(printf '%s' \"$arg\" | base64 -d)", //
+			"			{ eval \"$cmd\"; } 3>&1 > \"$out\" 2> /dev/null || status=error", //
+			"			;;", //
+			"		*) printf 'Unknown request: %s' \"$req\" > \"$out\"; status=error ;;", //
+			"	esac", //
+			"	printf '\\n#%s %s %s\\n' \"$id\" \"$status\" \"$(wc -c < \"$out\" | tr -d ' ')\"", //
+			"	cat \"$out\"", //
+			"done", //
+			"");
+
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		if (!Files.isRegularFile(Paths.get("/bin/sh"))) {
+			//no POSIX shell to run the stand-in host with
+			return;
+		}
+		Path script = Files.createTempFile("standin_host", ".sh");
+		try {
+			Files.write(script, STANDIN_HOST_SCRIPT.getBytes(StandardCharsets.UTF_8));
+			List<String> command = Arrays.asList("/bin/sh", script.toString());
+			try (PowershellHost host = new PowershellHost(command, RESPONSE_TIMEOUT_MILLIS, 1)) {
+				testHost(host);
+			}
+			try (PowershellHost host = new PowershellHost(command, RESPONSE_TIMEOUT_MILLIS, 2)) {
+				testHost(host);
+				testConcurrentRequests(host);
+			}
+		} finally {
+			Files.deleteIfExists(script);
+		}
+	}
+
+	private static void testHost(PowershellHost host) throws Throwable {
+		host.ping();
+		assertOutput(host.execute("printf hello"), "hello");
+		assertOutput(host.execute("printf 'multi\\nline\\n'"), "multi\nline\n");
+
+		//unrelated output that doesn't end with a new line
+		assertOutput(host.execute("printf 'no new line' >&3; printf first"), "first");
+		//unrelated output that looks like a response header
+		assertOutput(host.execute("echo '#1 ok 5' >&3; echo '#' >&3; printf second"), "second");
+		//unrelated line that is longer than a header
+		assertOutput(host.execute("head -c 100000 /dev/zero | tr '\\0' a >&3; printf third"), "third");
+
+		PowershellResponse failed = host.execute("printf failure; false");
+		assertTrue(!failed.isSuccessful());
+		assertEquals(failed.getOutput(), "failure");
+
+		String streamed = host.execute("printf streamed", in -> {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			byte[] buffer = new byte[3];
+			for (int read; (read = in.read(buffer)) > 0;) {
+				baos.write(buffer, 0, read);
+			}
+			return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+		});
+		assertEquals(streamed, "streamed");
+		//the reader doesn't consume the payload
+		assertEquals(host.execute("printf unread", in -> "read"), "read");
+		assertOutput(host.execute("printf after"), "after");
+
+		//hangs by waiting for a request line that is never sent
+		long start = System.nanoTime();
+		try {
+			host.execute("read -r line");
+			throw new AssertionError("The request didn't time out.");
+		} catch (IOException e) {
+		}
+		assertTrue((System.nanoTime() - start) / 1_000_000 < RESPONSE_TIMEOUT_MILLIS * 5);
+		//the host is restarted for the next request
+		assertOutput(host.execute("printf restarted"), "restarted");
+
+		//hangs while a child process keeps the output of the host open, even after the host is killed
+		start = System.nanoTime();
+		try {
+			host.execute("sleep 10 >&3 & read -r line");
+			throw new AssertionError("The request didn't time out.");
+		} catch (IOException e) {
+		}
+		assertTrue((System.nanoTime() - start) / 1_000_000 < RESPONSE_TIMEOUT_MILLIS * 5);
+		assertOutput(host.execute("printf 'restarted again'"), "restarted again");
+		host.ping();
+	}
+
+	private static void testConcurrentRequests(PowershellHost host) throws Throwable {
+		AtomicReference<Object> slowresult = new AtomicReference<>();
+		Thread slowthread = new Thread(() -> {
+			try {
+				slowresult.set(host.execute("sleep " + SLOW_COMMAND_MILLIS / 1000 + "; printf slow").getOutput());
+			} catch (Throwable e) {
+				slowresult.set(e);
+			}
+		});
+		slowthread.start();
+		try {
+			//give time for the slow request to be sent
+			Thread.sleep(SLOW_COMMAND_MILLIS / 5);
+			//executed by another host process, not waiting for the slow request
+			long start = System.nanoTime();
+			assertOutput(host.execute("printf fast"), "fast");
+			assertTrue((System.nanoTime() - start) / 1_000_000 < SLOW_COMMAND_MILLIS / 2);
+		} finally {
+			slowthread.join();
+		}
+		assertEquals(slowresult.get(), "slow");
+	}
+
+	private static void assertOutput(PowershellResponse response, String expected) {
+		assertTrue(response.isSuccessful());
+		assertEquals(response.getOutput(), expected);
+	}
+}